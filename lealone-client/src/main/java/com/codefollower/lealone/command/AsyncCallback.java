@@ -0,0 +1,49 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.command;
+
+import com.codefollower.lealone.message.DbException;
+
+/**
+ * A callback that is notified when the response of an asynchronous
+ * (pipelined) command arrives.
+ * <p>
+ * The callback is invoked by the thread that reads the response from the
+ * connection, while it holds the session lock. It should therefore return
+ * quickly and must not execute other commands on the same session.
+ *
+ * @param <T> the result type
+ */
+public interface AsyncCallback<T> {
+
+    /**
+     * The command completed successfully.
+     *
+     * @param result the result
+     */
+    void onSuccess(T result);
+
+    /**
+     * The command failed.
+     *
+     * @param e the exception
+     */
+    void onFailure(DbException e);
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.command;
+
+import java.io.IOException;
+
+import com.codefollower.lealone.engine.SessionRemote;
+import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.value.Transfer;
+
+/**
+ * The pending result of a command that was sent to the server without
+ * waiting for the response.
+ * <p>
+ * The server processes the requests of a connection in order, so the
+ * responses arrive in the same order the requests were sent. Each response
+ * carries the id of its request, which is verified when it is read.
+ *
+ * @param <T> the result type
+ */
+public abstract class CommandFuture<T> {
+
+    private final SessionRemote session;
+    private final Transfer transfer;
+    private final int requestId;
+    private final AsyncCallback<T> callback;
+    private volatile boolean done;
+    private T result;
+    private DbException exception;
+
+    protected CommandFuture(SessionRemote session, Transfer transfer, int requestId, AsyncCallback<T> callback) {
+        this.session = session;
+        this.transfer = transfer;
+        this.requestId = requestId;
+        this.callback = callback;
+    }
+
+    /**
+     * Create a future that is already completed, for commands that had to be
+     * executed synchronously.
+     *
+     * @param result the result
+     * @param callback the callback (may be null)
+     * @return the completed future
+     */
+    static <T> CommandFuture<T> completed(T result, AsyncCallback<T> callback) {
+        CommandFuture<T> f = new CommandFuture<T>(null, null, -1, callback) {
+            @Override
+            protected T readResult(Transfer transfer) {
+                throw DbException.throwInternalError();
+            }
+        };
+        f.setResult(result, null);
+        return f;
+    }
+
+    /**
+     * Read the response payload (the part after the status and request id).
+     *
+     * @param transfer the transfer object
+     * @return the result
+     */
+    protected abstract T readResult(Transfer transfer) throws IOException;
+
+    /**
+     * Read the response of this request from the connection. This method is
+     * called by the session, in the order the requests were sent.
+     *
+     * @throws IOException if there is a communication problem
+     */
+    public void readResponse() throws IOException {
+        try {
+            session.readStatus(transfer);
+            int id = transfer.readInt();
+            if (id != requestId) {
+                // the connection is out of sync, it can not be used any longer
+                throw new IOException("unexpected request id " + id + ", expected " + requestId);
+            }
+            setResult(readResult(transfer), null);
+        } catch (DbException e) {
+            setResult(null, e);
+        }
+    }
+
+    /**
+     * Complete this request with the given exception, for example because
+     * the connection was broken.
+     *
+     * @param e the exception
+     */
+    public void fail(DbException e) {
+        setResult(null, e);
+    }
+
+    private void setResult(T result, DbException exception) {
+        this.result = result;
+        this.exception = exception;
+        done = true;
+        if (callback != null) {
+            try {
+                if (exception == null) {
+                    callback.onSuccess(result);
+                } else {
+                    callback.onFailure(exception);
+                }
+            } catch (Throwable t) {
+                if (session != null) {
+                    session.getTrace().error(t, "callback");
+                }
+            }
+        }
+    }
+
+    /**
+     * Check if the response was already received.
+     *
+     * @return true if it was
+     */
+    public boolean isDone() {
+        return done;
+    }
+
+    /**
+     * Wait for the response, reading the responses of all requests that were
+     * sent earlier on the same connection.
+     *
+     * @return the result
+     * @throws DbException if the command failed
+     */
+    public T get() {
+        if (!done) {
+            session.waitFor(this);
+        }
+        if (exception != null) {
+            throw exception;
+        }
+        return result;
+    }
+
+    public int getRequestId() {
+        return requestId;
+    }
+
+    public String toString() {
+        return "request " + requestId + (done ? " (done)" : "");
+    }
+}
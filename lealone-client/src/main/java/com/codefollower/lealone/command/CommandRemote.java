@@ -8,11 +8,13 @@ package com.codefollower.lealone.command;
 
 import java.io.IOException;
 import java.util.ArrayList;
+import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.constant.SysProperties;
 import com.codefollower.lealone.engine.SessionRemote;
 import com.codefollower.lealone.expression.ParameterInterface;
 import com.codefollower.lealone.expression.ParameterRemote;
 import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.message.QueryTrace;
 import com.codefollower.lealone.message.Trace;
 import com.codefollower.lealone.result.ResultInterface;
 import com.codefollower.lealone.result.ResultRemote;
@@ -41,6 +43,8 @@ public class CommandRemote implements CommandInterface {
     private final int created;
 
     private Transaction transaction;
+    private QueryTrace queryTrace;
+    private QueryTrace.Span queryTraceSpan;
 
     public CommandRemote(SessionRemote session, ArrayList<Transfer> transferList, String sql, int fetchSize) {
         this.transferList = transferList;
@@ -157,8 +161,10 @@ public class CommandRemote implements CommandInterface {
                         fetch = fetchSize;
                     }
                     transfer.writeInt(fetch);
+                    writeQueryTraceId(transfer);
                     sendParameters(transfer);
                     session.done(transfer);
+                    readQueryTrace(transfer);
                     int columnCount = transfer.readInt();
                     int rowCount = transfer.readInt();
                     if (result != null) {
@@ -176,6 +182,7 @@ public class CommandRemote implements CommandInterface {
                     session.removeServer(e, i--, ++count);
                 }
             }
+            queryTrace = null;
             session.autoCommitIfCluster();
             session.readSessionState();
             return result;
@@ -198,14 +205,17 @@ public class CommandRemote implements CommandInterface {
                         session.traceOperation("COMMAND_EXECUTE_UPDATE", id);
                         transfer.writeInt(SessionRemote.COMMAND_EXECUTE_UPDATE).writeInt(id);
                     }
+                    writeQueryTraceId(transfer);
                     sendParameters(transfer);
                     session.done(transfer);
+                    readQueryTrace(transfer);
                     updateCount = transfer.readInt();
                     autoCommit = transfer.readBoolean();
                 } catch (IOException e) {
                     session.removeServer(e, i--, ++count);
                 }
             }
+            queryTrace = null;
             session.setAutoCommitFromServer(autoCommit);
             session.autoCommitIfCluster();
             session.readSessionState();
@@ -213,12 +223,140 @@ public class CommandRemote implements CommandInterface {
         }
     }
 
+    /**
+     * Send the query to the server without waiting for the response. Several
+     * statements can be in flight on the same connection; the responses are
+     * read in order, either by {@link CommandFuture#get()} or by the next
+     * synchronous operation on the session. The current parameter values are
+     * sent immediately, so the parameters may be changed after this call.
+     * <p>
+     * If the session is clustered, or the command is part of a distributed
+     * transaction, the query is executed synchronously.
+     *
+     * @param maxRows the maximum number of rows to return
+     * @param callback the callback (may be null)
+     * @return the pending result
+     */
+    public CommandFuture<ResultInterface> executeQueryAsync(final int maxRows, AsyncCallback<ResultInterface> callback) {
+        if (!isAsyncPossible()) {
+            return CommandFuture.completed(executeQuery(maxRows, false), callback);
+        }
+        checkParameters();
+        synchronized (session) {
+            prepareIfRequired();
+            final SessionRemote s = session;
+            final int objectId = s.getNextId();
+            final int fetch = fetchSize;
+            Transfer transfer = transferList.get(0);
+            CommandFuture<ResultInterface> f = new CommandFuture<ResultInterface>(s, transfer, objectId, callback) {
+                @Override
+                protected ResultInterface readResult(Transfer transfer) throws IOException {
+                    int columnCount = transfer.readInt();
+                    int rowCount = transfer.readInt();
+                    if (rowCount < 0)
+                        return new ResultRemoteCursor(s, transfer, objectId, columnCount, fetch);
+                    else
+                        return new ResultRemoteInMemory(s, transfer, objectId, columnCount, rowCount, fetch);
+                }
+            };
+            s.limitPendingRequests();
+            try {
+                s.traceOperation("COMMAND_EXECUTE_QUERY_ASYNC", id);
+                transfer.writeInt(SessionRemote.COMMAND_EXECUTE_QUERY_ASYNC) //
+                        .writeInt(id).writeInt(objectId).writeInt(maxRows).writeInt(fetch);
+                sendParameters(transfer);
+                transfer.flush();
+            } catch (IOException e) {
+                throw DbException.convertIOException(e, sql);
+            }
+            s.addPendingRequest(f);
+            return f;
+        }
+    }
+
+    /**
+     * Send the update to the server without waiting for the response.
+     *
+     * @param callback the callback (may be null)
+     * @return the pending update count
+     * @see #executeQueryAsync(int, AsyncCallback)
+     */
+    public CommandFuture<Integer> executeUpdateAsync(AsyncCallback<Integer> callback) {
+        if (!isAsyncPossible()) {
+            return CommandFuture.completed(executeUpdate(), callback);
+        }
+        checkParameters();
+        synchronized (session) {
+            prepareIfRequired();
+            final SessionRemote s = session;
+            int requestId = s.getNextId();
+            Transfer transfer = transferList.get(0);
+            CommandFuture<Integer> f = new CommandFuture<Integer>(s, transfer, requestId, callback) {
+                @Override
+                protected Integer readResult(Transfer transfer) throws IOException {
+                    int updateCount = transfer.readInt();
+                    s.setAutoCommitFromServer(transfer.readBoolean());
+                    return updateCount;
+                }
+            };
+            s.limitPendingRequests();
+            try {
+                s.traceOperation("COMMAND_EXECUTE_UPDATE_ASYNC", id);
+                transfer.writeInt(SessionRemote.COMMAND_EXECUTE_UPDATE_ASYNC).writeInt(id).writeInt(requestId);
+                sendParameters(transfer);
+                transfer.flush();
+            } catch (IOException e) {
+                throw DbException.convertIOException(e, sql);
+            }
+            s.addPendingRequest(f);
+            return f;
+        }
+    }
+
+    private boolean isAsyncPossible() {
+        if (transaction != null && !transaction.isAutoCommit()) {
+            return false;
+        }
+        session.checkClosed();
+        return session.isAsyncSupported();
+    }
+
     private void checkParameters() {
         for (ParameterInterface p : parameters) {
             p.checkSet();
         }
     }
 
+    /**
+     * Trace the next execution of this command. The trace id is sent to the
+     * server, and the spans recorded there are added below the given span.
+     * Asynchronous executions are not traced.
+     *
+     * @param trace the trace
+     * @param span the span of the remote call
+     */
+    public void setQueryTrace(QueryTrace trace, QueryTrace.Span span) {
+        queryTrace = trace;
+        queryTraceSpan = span;
+    }
+
+    private void writeQueryTraceId(Transfer transfer) throws IOException {
+        if (transfer.getVersion() >= Constants.TCP_PROTOCOL_VERSION_13) {
+            transfer.writeLong(queryTrace == null ? 0 : queryTrace.getId());
+        }
+    }
+
+    private void readQueryTrace(Transfer transfer) throws IOException {
+        if (transfer.getVersion() >= Constants.TCP_PROTOCOL_VERSION_13) {
+            if (queryTrace == null) {
+                // no spans are sent if the statement is not traced
+                transfer.readInt();
+            } else {
+                queryTrace.read(transfer, queryTraceSpan);
+            }
+        }
+    }
+
     private void sendParameters(Transfer transfer) throws IOException {
         int len = parameters.size();
         transfer.writeInt(len);
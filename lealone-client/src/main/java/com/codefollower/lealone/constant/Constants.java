@@ -86,6 +86,12 @@ public class Constants {
      */
     public static final int TCP_PROTOCOL_VERSION_12 = 12;
 
+    /**
+     * The TCP protocol version number 13. Execute requests carry the id of
+     * the query trace, and the responses of traced requests the spans.
+     */
+    public static final int TCP_PROTOCOL_VERSION_13 = 13;
+
     /**
      * The major version of this database.
      */
@@ -350,6 +356,12 @@ public class Constants {
      */
     public static final String PREFIX_INDEX = "INDEX_";
 
+    /**
+     * The name prefix used for the hidden tables that store the rows of
+     * materialized views.
+     */
+    public static final String PREFIX_MATERIALIZED_VIEW = "MATERIALIZED_VIEW_";
+
     /**
      * The name prefix used for synthetic nested join tables.
      */
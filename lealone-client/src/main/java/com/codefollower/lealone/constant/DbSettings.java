@@ -56,6 +56,15 @@ public class DbSettings extends SettingsBase {
      */
     public final int analyzeSample = get("ANALYZE_SAMPLE", 10000);
 
+    /**
+     * Database setting <code>CONCURRENT_READS</code> (default: false).<br />
+     * Queries that only read MVStore tables are executed in parallel with the
+     * statements of other sessions, instead of one statement at a time.
+     * Statements that change the schema are not synchronized with such
+     * queries.
+     */
+    public final boolean concurrentReads = get("CONCURRENT_READS", false);
+
     /**
      * Database setting <code>DATABASE_TO_UPPER</code> (default: true).<br />
      * Database short names are converted to uppercase for the DATABASE()
@@ -126,6 +135,21 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean functionsInSchema = get("FUNCTIONS_IN_SCHEMA", true);
 
+    /**
+     * Database setting <code>GROUP_COMMIT</code> (default: false).<br />
+     * If set, a commit only returns after the transaction log is synced to
+     * disk. A background thread syncs the log for all commits that are
+     * waiting, so that concurrent commits share one sync.
+     */
+    public final boolean groupCommit = get("GROUP_COMMIT", false);
+
+    /**
+     * Database setting <code>HASH_JOIN</code> (default: true).<br />
+     * Join a table using a temporary hash table if the join condition is an
+     * equality and the table has no usable index.
+     */
+    public final boolean hashJoin = get("HASH_JOIN", true);
+
     /**
      * Database setting <code>LARGE_RESULT_BUFFER_SIZE</code> (default: 4096).<br />
      * Buffer size for large result sets. Set this value to 0 to disable the
@@ -139,6 +163,30 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean largeTransactions = get("LARGE_TRANSACTIONS", true);
 
+    /**
+     * Database setting <code>LINK_BATCH_SIZE</code> (default: 100).<br />
+     * The number of rows that are inserted into or updated in a linked table
+     * with one JDBC batch. The rows of a statement are sent at the latest when
+     * the statement completes. Set to 0 or 1 to send each row on its own.
+     */
+    public final int linkBatchSize = get("LINK_BATCH_SIZE", 100);
+
+    /**
+     * Database setting <code>LINK_CONNECTIONS</code> (default: 4).<br />
+     * The maximum number of connections that are opened to the same target
+     * database of linked tables. The connections are opened when needed.
+     */
+    public final int linkConnections = get("LINK_CONNECTIONS", 4);
+
+    /**
+     * Database setting <code>LINK_PARALLEL_SCAN</code> (default: 0).<br />
+     * The number of key range queries a full scan of a linked table is split
+     * into. The queries run in parallel, each on its own connection. Only
+     * tables with a single column integer primary key are split. Set to 0 or
+     * 1 to scan with a single query.
+     */
+    public final int linkParallelScan = get("LINK_PARALLEL_SCAN", 0);
+
     /**
      * Database setting <code>MAX_COMPACT_COUNT</code>
      * (default: Integer.MAX_VALUE).<br />
@@ -152,6 +200,16 @@ public class DbSettings extends SettingsBase {
      */
     public final int maxCompactTime = get("MAX_COMPACT_TIME", 200);
 
+    /**
+     * Database setting <code>MAX_MEMORY_GROUP_BY</code>
+     * (default: 64 MB).<br />
+     * The estimated memory in bytes a GROUP BY query may use for its groups.
+     * If there are more groups, the rows of the new groups are written to
+     * temporary files, split by the hash code of the group, and aggregated
+     * one partition at a time. Set to 0 to disable.
+     */
+    public final int maxMemoryGroupBy = get("MAX_MEMORY_GROUP_BY", 64 * 1024 * 1024);
+
     /**
      * Database setting <code>MAX_MEMORY_ROWS_DISTINCT</code> (default:
      * 10000).<br />
@@ -169,6 +227,31 @@ public class DbSettings extends SettingsBase {
      */
     public int maxQueryTimeout = get("MAX_QUERY_TIMEOUT", 0);
 
+    /**
+     * Database setting <code>MAX_SPILL_SIZE</code> (default: 4096).<br />
+     * The maximum size in MB of all temporary result files of this database
+     * that are open at the same time. A query that needs more fails instead
+     * of filling the disk. Set to 0 for no limit.
+     */
+    public final int maxSpillSize = get("MAX_SPILL_SIZE", 4096);
+
+    /**
+     * Database setting <code>METRICS_REPORT_INTERVAL</code> (default: 0).<br />
+     * The interval in milliseconds in which the metrics of the database
+     * (caches, file operations, checkpoints, TCP server and distributed
+     * transactions) are reported. Set to 0 to disable reporting.
+     */
+    public final int metricsReportInterval = get("METRICS_REPORT_INTERVAL", 0);
+
+    /**
+     * Database setting <code>METRICS_REPORTER</code> (default: null).<br />
+     * The name of a class that implements
+     * com.codefollower.lealone.api.MetricsReporter and receives the periodic
+     * metrics reports. If not set, the metrics are written to the trace file
+     * (trace level INFO).
+     */
+    public final String metricsReporter = get("METRICS_REPORTER", null);
+
     /**
      * Database setting <code>NESTED_JOINS</code> (default: true).<br />
      * Whether nested joins should be supported.
@@ -275,6 +358,38 @@ public class DbSettings extends SettingsBase {
      */
     public final int queryCacheSize = get("QUERY_CACHE_SIZE", 8);
 
+    /**
+     * Database setting <code>QUERY_STATISTICS</code> (default: false).<br />
+     * Collect execution statistics per statement. The statistics are listed in
+     * the table INFORMATION_SCHEMA.QUERY_STATISTICS. Collecting can also be
+     * switched on and off at runtime using JMX.
+     */
+    public final boolean queryStatistics = get("QUERY_STATISTICS", false);
+
+    /**
+     * Database setting <code>QUERY_STATISTICS_MAX_ENTRIES</code>
+     * (default: 100).<br />
+     * The maximum number of distinct statements kept in the query statistics.
+     * If there are more, the statements that were not executed for the longest
+     * time are removed.
+     */
+    public final int queryStatisticsMaxEntries = get("QUERY_STATISTICS_MAX_ENTRIES", 100);
+
+    /**
+     * Database setting <code>QUERY_TRACE_MAX_ENTRIES</code> (default: 100).<br />
+     * The number of most recent statement traces that are kept.
+     */
+    public final int queryTraceMaxEntries = get("QUERY_TRACE_MAX_ENTRIES", 100);
+
+    /**
+     * Database setting <code>QUERY_TRACE_SAMPLING</code> (default: 0).<br />
+     * Trace one out of this number of statements, 0 disables tracing. The
+     * timed spans of a traced statement, including the spans of the region
+     * servers it was sent to, are listed in the table
+     * INFORMATION_SCHEMA.QUERY_TRACES.
+     */
+    public final int queryTraceSampling = get("QUERY_TRACE_SAMPLING", 0);
+
     /**
      * Database setting <code>RECOMPILE_ALWAYS</code> (default: false).<br />
      * Always recompile prepared statements.
@@ -290,6 +405,14 @@ public class DbSettings extends SettingsBase {
      */
     public final int reconnectCheckDelay = get("RECONNECT_CHECK_DELAY", 200);
 
+    /**
+     * Database setting <code>RESULT_CACHE_SIZE</code> (default: 0).<br />
+     * The maximum memory used by the database wide result cache, in KB.
+     * Results of deterministic queries are shared between sessions until one
+     * of the tables they read is modified. Set to 0 to disable.
+     */
+    public final int resultCacheSize = get("RESULT_CACHE_SIZE", 0);
+
     /**
      * Database setting <code>ROWID</code> (default: true).<br />
      * If set, each table has a pseudo-column _ROWID_.
@@ -304,6 +427,15 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean selectForUpdateMvcc = get("SELECT_FOR_UPDATE_MVCC", true);
 
+    /**
+     * Database setting <code>SHARED_COMMAND_CACHE_SIZE</code> (default: 64).<br />
+     * The size of the database wide command cache, in number of distinct
+     * statements. Prepared SELECT, INSERT, UPDATE and DELETE statements are
+     * shared between sessions of the same user and schema, so that each
+     * statement is only parsed and optimized once. Set to 0 to disable.
+     */
+    public final int sharedCommandCacheSize = get("SHARED_COMMAND_CACHE_SIZE", 64);
+
     /**
      * Database setting <code>SHARE_LINKED_CONNECTIONS</code>
      * (default: true).<br />
@@ -313,6 +445,52 @@ public class DbSettings extends SettingsBase {
      */
     public final boolean shareLinkedConnections = get("SHARE_LINKED_CONNECTIONS", true);
 
+    /**
+     * Database setting <code>SPILL_DIRECTORY</code>
+     * (default: null).<br />
+     * The directory for temporary result files of in-memory databases.
+     * If not set, the system temp directory is used. Persistent databases
+     * keep their temporary files next to the database files.
+     */
+    public final String spillDirectory = get("SPILL_DIRECTORY", null);
+
+    /**
+     * Database setting <code>SPILL_TO_DISK</code>
+     * (default: true).<br />
+     * Whether large results of in-memory databases (for example the merged
+     * results of distributed queries) are buffered in temporary files, the
+     * same way as for persistent databases.
+     */
+    public final boolean spillToDisk = get("SPILL_TO_DISK", true);
+
+    /**
+     * Database setting <code>TRACE_BUFFER_SIZE</code>
+     * (default: 0).<br />
+     * The number of trace messages that can wait to be written to the trace
+     * file. If set, messages are written by a background thread, and messages
+     * are dropped (and counted) if the buffer is full. If 0, messages are
+     * written by the thread that creates them.
+     */
+    public final int traceBufferSize = get("TRACE_BUFFER_SIZE", 0);
+
+    /**
+     * Database setting <code>TRACE_ROTATE_INTERVAL</code>
+     * (default: 0).<br />
+     * The number of seconds after which the trace file is renamed to .old and
+     * a new file is started, in addition to the rotation when the maximum file
+     * size is reached. 0 disables time based rotation.
+     */
+    public final int traceRotateInterval = get("TRACE_ROTATE_INTERVAL", 0);
+
+    /**
+     * Database setting <code>VECTORIZED_EXECUTION</code>
+     * (default: true).<br />
+     * Evaluate the condition of single table queries for a batch of rows at
+     * once, if the condition only uses comparisons, AND, OR, NOT and simple
+     * arithmetic on numeric, date and boolean columns.
+     */
+    public final boolean vectorizedExecution = get("VECTORIZED_EXECUTION", true);
+
     /**
      * Database setting <code>DEFAULT_TABLE_ENGINE</code>
      * (default: null).<br />
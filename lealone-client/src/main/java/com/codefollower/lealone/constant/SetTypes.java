@@ -207,6 +207,16 @@ public class SetTypes {
 
     public static final int SERVER_TYPE = 39;
 
+    /**
+     * The type of a SET PROFILER_INTERVAL statement.
+     */
+    public static final int PROFILER_INTERVAL = 40;
+
+    /**
+     * The type of a SET PROFILER_THRESHOLD statement.
+     */
+    public static final int PROFILER_THRESHOLD = 41;
+
     private static final ArrayList<String> TYPES = New.arrayList();
 
     private SetTypes() {
@@ -255,6 +265,8 @@ public class SetTypes {
         list.add(REDO_LOG_BINARY, "REDO_LOG_BINARY");
         list.add(BINARY_COLLATION, "BINARY_COLLATION");
         list.add(SERVER_TYPE, "SERVER_TYPE");
+        list.add(PROFILER_INTERVAL, "PROFILER_INTERVAL");
+        list.add(PROFILER_THRESHOLD, "PROFILER_THRESHOLD");
     }
 
     /**
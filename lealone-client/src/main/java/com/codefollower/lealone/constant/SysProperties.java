@@ -128,6 +128,15 @@ public class SysProperties {
     public static final boolean CHECK2 = false;
     //*/
 
+    /**
+     * System property <code>client.async.max.pending</code> (default: 64).<br />
+     * The maximum number of asynchronous requests of a client session whose
+     * response was not read yet. When it is reached, the oldest response is
+     * read before the next request is sent, so that the client and the server
+     * do not both block on full socket buffers.
+     */
+    public static final int CLIENT_ASYNC_MAX_PENDING = getProperty("client.async.max.pending", 64);
+
     /**
      * System property <code>client.trace.directory</code> (default:
      * trace.db/).<br />
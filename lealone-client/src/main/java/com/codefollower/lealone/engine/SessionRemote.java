@@ -10,8 +10,10 @@ import java.io.IOException;
 import java.net.Socket;
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.LinkedList;
 
 import com.codefollower.lealone.api.DatabaseEventListener;
+import com.codefollower.lealone.command.CommandFuture;
 import com.codefollower.lealone.command.CommandInterface;
 import com.codefollower.lealone.command.CommandRemote;
 import com.codefollower.lealone.constant.Constants;
@@ -61,6 +63,8 @@ public class SessionRemote extends SessionWithState implements DataHandler {
     public static final int SESSION_SET_AUTOCOMMIT = 15;
     public static final int SESSION_UNDO_LOG_POS = 16;
     public static final int LOB_READ = 17;
+    public static final int COMMAND_EXECUTE_QUERY_ASYNC = 18;
+    public static final int COMMAND_EXECUTE_UPDATE_ASYNC = 19;
 
     public static final int COMMAND_EXECUTE_DISTRIBUTED_QUERY = 100;
     public static final int COMMAND_EXECUTE_DISTRIBUTED_UPDATE = 101;
@@ -95,6 +99,12 @@ public class SessionRemote extends SessionWithState implements DataHandler {
     private boolean cluster;
     private Transaction transaction;
 
+    /**
+     * The asynchronous requests that were sent but whose response was not
+     * read yet, in the order they were sent.
+     */
+    private final LinkedList<CommandFuture<?>> pendingRequests = new LinkedList<CommandFuture<?>>();
+
     public SessionRemote(ConnectionInfo ci) {
         this.connectionInfo = ci;
     }
@@ -107,7 +117,7 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         trans.setSSL(ci.isSSL());
         trans.init();
         trans.writeInt(Constants.TCP_PROTOCOL_VERSION_6);
-        trans.writeInt(Constants.TCP_PROTOCOL_VERSION_12);
+        trans.writeInt(Constants.TCP_PROTOCOL_VERSION_13);
         trans.writeString(db);
         trans.writeString(ci.getOriginalURL());
         trans.writeString(ci.getUserName());
@@ -523,6 +533,11 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         RuntimeException closeError = null;
         if (transferList != null) {
             synchronized (this) {
+                try {
+                    readPendingResponses();
+                } catch (IOException e) {
+                    trace.error(e, "close");
+                }
                 for (Transfer transfer : transferList) {
                     try {
                         traceOperation("SESSION_CLOSE", 0);
@@ -573,6 +588,21 @@ public class SessionRemote extends SessionWithState implements DataHandler {
      */
     public void done(Transfer transfer) throws IOException {
         transfer.flush();
+        readPendingResponses();
+        readStatus(transfer);
+    }
+
+    /**
+     * Read the status code of a response and throw any exception the server
+     * sent. Unlike {@link #done(Transfer)}, this method neither flushes the
+     * output nor reads the responses of pending asynchronous requests.
+     *
+     * @param transfer the transfer object
+     * @throws DbException if the server sent an exception
+     * @throws IOException if there is a communication problem between client
+     *             and server
+     */
+    public void readStatus(Transfer transfer) throws IOException {
         int status = transfer.readInt();
         if (status == STATUS_ERROR) {
             String sqlstate = transfer.readString();
@@ -599,6 +629,86 @@ public class SessionRemote extends SessionWithState implements DataHandler {
         }
     }
 
+    /**
+     * Check if commands can be sent asynchronously. This is only supported
+     * if the session is connected to exactly one server.
+     *
+     * @return true if it is
+     */
+    public boolean isAsyncSupported() {
+        return !cluster && transferList != null && transferList.size() == 1;
+    }
+
+    /**
+     * Register an asynchronous request whose response was not read yet. The
+     * request must already be written to the connection.
+     *
+     * @param request the request
+     */
+    public synchronized void addPendingRequest(CommandFuture<?> request) {
+        pendingRequests.add(request);
+    }
+
+    /**
+     * Read the oldest responses until another asynchronous request may be
+     * sent without exceeding the maximum number of pending requests. This
+     * must be called before the request is written to the connection.
+     */
+    public synchronized void limitPendingRequests() {
+        int max = Math.max(1, SysProperties.CLIENT_ASYNC_MAX_PENDING);
+        while (pendingRequests.size() >= max) {
+            try {
+                readNextPendingResponse();
+            } catch (IOException e) {
+                // the pending requests were failed
+                trace.debug(e, "limitPendingRequests");
+            }
+        }
+    }
+
+    /**
+     * Read responses until the given request is completed.
+     *
+     * @param request the request to wait for
+     */
+    public synchronized void waitFor(CommandFuture<?> request) {
+        while (!request.isDone()) {
+            if (pendingRequests.isEmpty()) {
+                throw DbException.throwInternalError("request is not pending: " + request);
+            }
+            try {
+                readNextPendingResponse();
+            } catch (IOException e) {
+                // the pending requests, including this one, were failed
+                trace.debug(e, "waitFor");
+            }
+        }
+    }
+
+    /**
+     * Read the responses of all pending asynchronous requests. The responses
+     * of these requests arrive before the response of any request sent later.
+     */
+    private void readPendingResponses() throws IOException {
+        while (!pendingRequests.isEmpty()) {
+            readNextPendingResponse();
+        }
+    }
+
+    private void readNextPendingResponse() throws IOException {
+        CommandFuture<?> request = pendingRequests.removeFirst();
+        try {
+            request.readResponse();
+        } catch (IOException e) {
+            DbException ex = DbException.convertIOException(e, null);
+            request.fail(ex);
+            while (!pendingRequests.isEmpty()) {
+                pendingRequests.removeFirst().fail(ex);
+            }
+            throw e;
+        }
+    }
+
     /**
      * Returns true if the connection was opened in cluster mode.
      *
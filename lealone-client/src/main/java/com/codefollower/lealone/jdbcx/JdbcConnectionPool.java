@@ -23,7 +23,13 @@ package com.codefollower.lealone.jdbcx;
 import java.io.PrintWriter;
 import java.sql.Connection;
 import java.sql.SQLException;
-import java.util.ArrayList;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
 import javax.sql.ConnectionEvent;
 import javax.sql.ConnectionEventListener;
 import javax.sql.ConnectionPoolDataSource;
@@ -32,7 +38,6 @@ import javax.sql.PooledConnection;
 
 //## Java 1.6 ##
 import com.codefollower.lealone.message.DbException;
-import com.codefollower.lealone.util.New;
 
 /*## Java 1.7 ##
 import java.util.logging.Logger;
@@ -60,6 +65,13 @@ import java.util.logging.Logger;
  *     }
  * }
  * </pre>
+ * <p>
+ * Borrowing and returning a connection does not take a pool-wide lock: the
+ * number of active connections is limited by a fair semaphore (so waiting
+ * threads are served in order), and unused connections are kept in a few
+ * lock-free stacks, one of which is chosen per thread. Connections that were
+ * not used for a while are validated before they are handed out, and
+ * connections that are not returned in time can be reported as leaks.
  *
  * @author Christian d'Heureuse
  *      (<a href="http://www.source-code.biz">www.source-code.biz</a>)
@@ -69,14 +81,32 @@ public class JdbcConnectionPool implements DataSource, ConnectionEventListener {
 
     private static final int DEFAULT_TIMEOUT = 30;
     private static final int DEFAULT_MAX_CONNECTIONS = 10;
+    private static final int DEFAULT_VALIDATION_INTERVAL = 5000;
+    private static final int VALIDATION_TIMEOUT = 5;
+    private static final int MAX_STRIPES = 16;
 
     private final ConnectionPoolDataSource dataSource;
-    private final ArrayList<PooledConnection> recycledConnections = New.arrayList();
+    private final IdleStack[] idleStacks;
+    private final PoolSemaphore permits = new PoolSemaphore(DEFAULT_MAX_CONNECTIONS);
+    private final ConcurrentHashMap<PooledConnection, PoolEntry> activeEntries =
+            new ConcurrentHashMap<PooledConnection, PoolEntry>();
+    private final AtomicInteger activeConnections = new AtomicInteger();
+    private final AtomicInteger idleConnections = new AtomicInteger();
     private PrintWriter logWriter;
-    private int maxConnections = DEFAULT_MAX_CONNECTIONS;
-    private int timeout = DEFAULT_TIMEOUT;
-    private int activeConnections;
-    private boolean isDisposed;
+    private volatile int maxConnections = DEFAULT_MAX_CONNECTIONS;
+    private volatile int timeout = DEFAULT_TIMEOUT;
+    private volatile int validationInterval = DEFAULT_VALIDATION_INTERVAL;
+    private volatile int leakDetectionThreshold;
+    private volatile boolean isDisposed;
+
+    private final AtomicLong nextLeakCheck = new AtomicLong();
+    private final AtomicLong borrowCount = new AtomicLong();
+    private final AtomicLong borrowNanos = new AtomicLong();
+    private final AtomicLong maxBorrowNanos = new AtomicLong();
+    private final AtomicLong timeoutCount = new AtomicLong();
+    private final AtomicLong createdCount = new AtomicLong();
+    private final AtomicLong validationFailures = new AtomicLong();
+    private final AtomicLong leakCount = new AtomicLong();
 
     protected JdbcConnectionPool(ConnectionPoolDataSource dataSource) {
         this.dataSource = dataSource;
@@ -87,6 +117,14 @@ public class JdbcConnectionPool implements DataSource, ConnectionEventListener {
                 // ignore
             }
         }
+        int stripes = 1;
+        while (stripes < MAX_STRIPES && stripes < Runtime.getRuntime().availableProcessors()) {
+            stripes <<= 1;
+        }
+        idleStacks = new IdleStack[stripes];
+        for (int i = 0; i < stripes; i++) {
+            idleStacks[i] = new IdleStack();
+        }
     }
 
     /**
@@ -125,9 +163,14 @@ public class JdbcConnectionPool implements DataSource, ConnectionEventListener {
         if (max < 1) {
             throw new IllegalArgumentException("Invalid maxConnections value: " + max);
         }
+        int diff = max - maxConnections;
         this.maxConnections = max;
-        // notify waiting threads if the value was increased
-        notifyAll();
+        if (diff > 0) {
+            // wakes up waiting threads
+            permits.release(diff);
+        } else if (diff < 0) {
+            permits.reducePermits(-diff);
+        }
     }
 
     /**
@@ -135,7 +178,7 @@ public class JdbcConnectionPool implements DataSource, ConnectionEventListener {
      *
      * @return the max the maximum number of connections
      */
-    public synchronized int getMaxConnections() {
+    public int getMaxConnections() {
         return maxConnections;
     }
 
@@ -144,7 +187,7 @@ public class JdbcConnectionPool implements DataSource, ConnectionEventListener {
      *
      * @return the timeout in seconds
      */
-    public synchronized int getLoginTimeout() {
+    public int getLoginTimeout() {
         return timeout;
     }
 
@@ -155,13 +198,55 @@ public class JdbcConnectionPool implements DataSource, ConnectionEventListener {
      *
      * @param seconds the timeout, 0 meaning the default
      */
-    public synchronized void setLoginTimeout(int seconds) {
+    public void setLoginTimeout(int seconds) {
         if (seconds == 0) {
             seconds = DEFAULT_TIMEOUT;
         }
         this.timeout = seconds;
     }
 
+    /**
+     * Sets how long (in milliseconds) a connection may stay unused before it
+     * is validated again when it is borrowed. The default is 5 seconds. The
+     * value 0 means connections are validated on each borrow, a negative
+     * value disables validation.
+     *
+     * @param millis the validation interval in milliseconds
+     */
+    public void setValidationInterval(int millis) {
+        this.validationInterval = millis;
+    }
+
+    /**
+     * Gets the validation interval in milliseconds.
+     *
+     * @return the validation interval
+     */
+    public int getValidationInterval() {
+        return validationInterval;
+    }
+
+    /**
+     * Sets how long (in milliseconds) a connection may be in use before it is
+     * reported as a possible leak, together with the stack trace of the
+     * caller that borrowed it. Reports are written to the log writer. The
+     * default is 0, meaning leak detection is disabled.
+     *
+     * @param millis the threshold in milliseconds, 0 to disable
+     */
+    public void setLeakDetectionThreshold(int millis) {
+        this.leakDetectionThreshold = millis;
+    }
+
+    /**
+     * Gets the leak detection threshold in milliseconds.
+     *
+     * @return the threshold, or 0 if disabled
+     */
+    public int getLeakDetectionThreshold() {
+        return leakDetectionThreshold;
+    }
+
     /**
      * Closes all unused pooled connections.
      * Exceptions while closing are written to the log stream (if set).
@@ -171,9 +256,15 @@ public class JdbcConnectionPool implements DataSource, ConnectionEventListener {
             return;
         }
         isDisposed = true;
-        ArrayList<PooledConnection> list = recycledConnections;
-        for (int i = 0, size = list.size(); i < size; i++) {
-            closeConnection(list.get(i));
+        closeIdleConnections();
+    }
+
+    private void closeIdleConnections() {
+        for (IdleStack stack : idleStacks) {
+            for (PoolEntry e = stack.pop(); e != null; e = stack.pop()) {
+                idleConnections.decrementAndGet();
+                closeConnection(e.pc);
+            }
         }
     }
 
@@ -191,20 +282,39 @@ public class JdbcConnectionPool implements DataSource, ConnectionEventListener {
      *      or a timeout occurred
      */
     public Connection getConnection() throws SQLException {
-        long max = System.currentTimeMillis() + timeout * 1000;
-        do {
-            synchronized (this) {
-                if (activeConnections < maxConnections) {
-                    return getConnectionNow();
-                }
-                try {
-                    wait(1000);
-                } catch (InterruptedException e) {
-                    // ignore
+        long start = System.nanoTime();
+        if (leakDetectionThreshold > 0) {
+            checkLeaks();
+        }
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(timeout, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        if (!acquired) {
+            timeoutCount.incrementAndGet();
+            throw new SQLException("Login timeout", "08001", 8001);
+        }
+        boolean success = false;
+        try {
+            Connection conn = getConnectionNow();
+            success = true;
+            long nanos = System.nanoTime() - start;
+            borrowCount.incrementAndGet();
+            borrowNanos.addAndGet(nanos);
+            for (long max = maxBorrowNanos.get(); nanos > max; max = maxBorrowNanos.get()) {
+                if (maxBorrowNanos.compareAndSet(max, nanos)) {
+                    break;
                 }
             }
-        } while (System.currentTimeMillis() <= max);
-        throw new SQLException("Login timeout", "08001", 8001);
+            return conn;
+        } finally {
+            if (!success) {
+                permits.release();
+            }
+        }
     }
 
     /**
@@ -218,18 +328,80 @@ public class JdbcConnectionPool implements DataSource, ConnectionEventListener {
         if (isDisposed) {
             throw new IllegalStateException("Connection pool has been disposed.");
         }
-        PooledConnection pc;
-        if (!recycledConnections.isEmpty()) {
-            pc = recycledConnections.remove(recycledConnections.size() - 1);
-        } else {
-            pc = dataSource.getPooledConnection();
+        PoolEntry e;
+        Connection conn = null;
+        while ((e = pollIdle()) != null) {
+            conn = e.pc.getConnection();
+            if (isValid(e, conn)) {
+                break;
+            }
+            validationFailures.incrementAndGet();
+            closeConnection(e.pc);
+        }
+        if (e == null) {
+            e = new PoolEntry(dataSource.getPooledConnection());
+            createdCount.incrementAndGet();
+            conn = e.pc.getConnection();
         }
-        Connection conn = pc.getConnection();
-        activeConnections++;
-        pc.addConnectionEventListener(this);
+        e.borrowTime = System.currentTimeMillis();
+        e.lastUsed = e.borrowTime;
+        if (leakDetectionThreshold > 0) {
+            e.borrowStack = new Exception("Connection borrowed by thread " + Thread.currentThread().getName());
+            e.leakReported = false;
+        }
+        activeEntries.put(e.pc, e);
+        activeConnections.incrementAndGet();
+        e.pc.addConnectionEventListener(this);
         return conn;
     }
 
+    private PoolEntry pollIdle() {
+        int mask = idleStacks.length - 1;
+        int index = (int) Thread.currentThread().getId();
+        for (int i = 0; i <= mask; i++) {
+            PoolEntry e = idleStacks[(index + i) & mask].pop();
+            if (e != null) {
+                idleConnections.decrementAndGet();
+                return e;
+            }
+        }
+        return null;
+    }
+
+    private boolean isValid(PoolEntry e, Connection conn) {
+        int interval = validationInterval;
+        if (interval < 0 || System.currentTimeMillis() - e.lastUsed < interval) {
+            return true;
+        }
+        try {
+            return conn.isValid(VALIDATION_TIMEOUT);
+        } catch (SQLException ex) {
+            return false;
+        }
+    }
+
+    private void checkLeaks() {
+        long now = System.currentTimeMillis();
+        long next = nextLeakCheck.get();
+        int threshold = leakDetectionThreshold;
+        // only one thread checks, at most a few times per threshold
+        if (now < next || !nextLeakCheck.compareAndSet(next, now + Math.max(threshold / 4, 1))) {
+            return;
+        }
+        for (PoolEntry e : activeEntries.values()) {
+            Exception stack = e.borrowStack;
+            if (!e.leakReported && stack != null && now - e.borrowTime > threshold) {
+                e.leakReported = true;
+                leakCount.incrementAndGet();
+                PrintWriter w = logWriter;
+                if (w != null) {
+                    w.println("Connection leak detected: in use for " + (now - e.borrowTime) + " ms");
+                    stack.printStackTrace(w);
+                }
+            }
+        }
+    }
+
     /**
      * This method usually puts the connection back into the pool. There are
      * some exceptions: if the pool is disposed, the connection is disposed as
@@ -237,19 +409,27 @@ public class JdbcConnectionPool implements DataSource, ConnectionEventListener {
      *
      * @param pc the pooled connection
      */
-    synchronized void recycleConnection(PooledConnection pc) {
-        if (activeConnections <= 0) {
+    void recycleConnection(PooledConnection pc) {
+        PoolEntry e = activeEntries.remove(pc);
+        if (e == null || activeConnections.decrementAndGet() < 0) {
             throw new AssertionError();
         }
-        activeConnections--;
-        if (!isDisposed && activeConnections < maxConnections) {
-            recycledConnections.add(pc);
+        e.lastUsed = System.currentTimeMillis();
+        e.borrowStack = null;
+        if (!isDisposed && idleConnections.incrementAndGet() <= maxConnections) {
+            int index = (int) Thread.currentThread().getId();
+            idleStacks[index & (idleStacks.length - 1)].push(e);
+            if (isDisposed) {
+                // dispose was called concurrently
+                closeIdleConnections();
+            }
         } else {
+            if (!isDisposed) {
+                idleConnections.decrementAndGet();
+            }
             closeConnection(pc);
         }
-        if (activeConnections >= maxConnections - 1) {
-            notifyAll();
-        }
+        permits.release();
     }
 
     private void closeConnection(PooledConnection pc) {
@@ -286,8 +466,84 @@ public class JdbcConnectionPool implements DataSource, ConnectionEventListener {
      *
      * @return the number of active connections.
      */
-    public synchronized int getActiveConnections() {
-        return activeConnections;
+    public int getActiveConnections() {
+        return activeConnections.get();
+    }
+
+    /**
+     * Returns the number of unused connections that are kept in the pool.
+     *
+     * @return the number of idle connections
+     */
+    public int getIdleConnections() {
+        return idleConnections.get();
+    }
+
+    /**
+     * Returns the number of connections handed out so far.
+     *
+     * @return the borrow count
+     */
+    public long getBorrowCount() {
+        return borrowCount.get();
+    }
+
+    /**
+     * Returns the average time getConnection() took, including the time
+     * spent waiting for a free connection.
+     *
+     * @return the average borrow latency in microseconds
+     */
+    public long getAverageBorrowMicros() {
+        long count = borrowCount.get();
+        return count == 0 ? 0 : borrowNanos.get() / count / 1000;
+    }
+
+    /**
+     * Returns the longest time getConnection() took.
+     *
+     * @return the maximum borrow latency in microseconds
+     */
+    public long getMaxBorrowMicros() {
+        return maxBorrowNanos.get() / 1000;
+    }
+
+    /**
+     * Returns how often getConnection() failed because no connection became
+     * available within the timeout.
+     *
+     * @return the number of timeouts
+     */
+    public long getTimeoutCount() {
+        return timeoutCount.get();
+    }
+
+    /**
+     * Returns the number of physical connections this pool has opened.
+     *
+     * @return the number of created connections
+     */
+    public long getCreatedConnections() {
+        return createdCount.get();
+    }
+
+    /**
+     * Returns the number of idle connections that were found to be invalid
+     * when they were borrowed, and were therefore closed.
+     *
+     * @return the number of validation failures
+     */
+    public long getValidationFailures() {
+        return validationFailures.get();
+    }
+
+    /**
+     * Returns the number of connections reported as possible leaks.
+     *
+     * @return the number of leaks
+     */
+    public long getLeakCount() {
+        return leakCount.get();
     }
 
     /**
@@ -335,5 +591,76 @@ public class JdbcConnectionPool implements DataSource, ConnectionEventListener {
     }
 //*/
 
+    /**
+     * A pooled connection with its bookkeeping data.
+     */
+    private static class PoolEntry {
+        final PooledConnection pc;
+        volatile long borrowTime;
+        volatile long lastUsed;
+        volatile Exception borrowStack;
+        volatile boolean leakReported;
+
+        PoolEntry(PooledConnection pc) {
+            this.pc = pc;
+        }
+    }
+
+    /**
+     * A lock-free (Treiber) stack of idle connections. The most recently
+     * returned connection is handed out first.
+     */
+    private static class IdleStack {
+
+        private final AtomicReference<Node> head = new AtomicReference<Node>();
+
+        void push(PoolEntry e) {
+            Node n = new Node(e);
+            do {
+                n.next = head.get();
+            } while (!head.compareAndSet(n.next, n));
+        }
+
+        PoolEntry pop() {
+            while (true) {
+                Node n = head.get();
+                if (n == null) {
+                    return null;
+                }
+                if (head.compareAndSet(n, n.next)) {
+                    return n.entry;
+                }
+            }
+        }
+
+        /**
+         * A stack node.
+         */
+        private static class Node {
+            final PoolEntry entry;
+            Node next;
+
+            Node(PoolEntry entry) {
+                this.entry = entry;
+            }
+        }
+    }
+
+    /**
+     * A fair semaphore whose number of permits can also be reduced.
+     */
+    private static class PoolSemaphore extends Semaphore {
+
+        private static final long serialVersionUID = 1L;
+
+        PoolSemaphore(int permits) {
+            super(permits, true);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
 
 }
@@ -0,0 +1,297 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.message;
+
+import java.io.IOException;
+import java.util.ArrayList;
+
+import com.codefollower.lealone.util.MathUtils;
+import com.codefollower.lealone.util.New;
+import com.codefollower.lealone.value.Transfer;
+
+/**
+ * The timed spans of one traced statement. A trace is started by the server
+ * that received the statement. If parts of the statement are executed by
+ * other servers, the trace id is sent along with the request, and the spans
+ * recorded there are sent back and added below the span of the remote call.
+ * Spans may be added concurrently by several threads.
+ */
+public class QueryTrace {
+
+    private final long id;
+    private final String sql;
+    private final long start;
+    private final long startTime;
+    private final ArrayList<Span> spans = New.arrayList();
+    private final Span root;
+
+    /**
+     * Create a new trace. The root span starts now.
+     *
+     * @param id the trace id
+     * @param sql the statement
+     * @param name the name of the root span
+     */
+    public QueryTrace(long id, String sql, String name) {
+        this.id = id;
+        this.sql = sql;
+        start = System.nanoTime();
+        startTime = System.currentTimeMillis();
+        root = new Span(0, null, name, 0);
+        spans.add(root);
+    }
+
+    /**
+     * Create a new random trace id.
+     *
+     * @return the id (never 0)
+     */
+    public static long nextId() {
+        long id;
+        do {
+            id = MathUtils.secureRandomLong();
+        } while (id == 0);
+        return id;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getSQL() {
+        return sql;
+    }
+
+    /**
+     * Get the time when the trace was started.
+     *
+     * @return the time in milliseconds since 1970
+     */
+    public long getStartTime() {
+        return startTime;
+    }
+
+    public Span getRoot() {
+        return root;
+    }
+
+    /**
+     * End the root span.
+     */
+    public void end() {
+        endSpan(root);
+    }
+
+    /**
+     * Start a new span.
+     *
+     * @param parent the parent span, or null for the root span
+     * @param name the name
+     * @return the span
+     */
+    public synchronized Span startSpan(Span parent, String name) {
+        Span s = new Span(spans.size(), parent, name, System.nanoTime() - start);
+        spans.add(s);
+        return s;
+    }
+
+    /**
+     * End a span.
+     *
+     * @param span the span
+     */
+    public synchronized void endSpan(Span span) {
+        span.duration = System.nanoTime() - start - span.start;
+    }
+
+    /**
+     * Add a span that was measured by the caller. The start time may be before
+     * the trace was started, for example for work done while preparing the
+     * statement.
+     *
+     * @param parent the parent span
+     * @param name the name
+     * @param startNanos the start time (System.nanoTime)
+     * @param nanos the duration in nanoseconds
+     */
+    public synchronized void addSpan(Span parent, String name, long startNanos, long nanos) {
+        Span s = new Span(spans.size(), parent, name, startNanos - start);
+        s.duration = nanos;
+        spans.add(s);
+    }
+
+    /**
+     * Add time to the span with the given name below the parent. This is used
+     * for operations that run many times, such as visibility checks of rows.
+     * The span is created the first time.
+     *
+     * @param parent the parent span
+     * @param name the name
+     * @param nanos the time in nanoseconds
+     */
+    public synchronized void addTime(Span parent, String name, long nanos) {
+        for (int i = spans.size() - 1; i >= 0; i--) {
+            Span s = spans.get(i);
+            if (s.parent == parent && s.name.equals(name)) {
+                s.duration += nanos;
+                s.count++;
+                return;
+            }
+        }
+        addSpan(parent, name, System.nanoTime() - nanos, nanos);
+    }
+
+    /**
+     * Get a copy of the list of spans, in the order they were started.
+     *
+     * @return the spans
+     */
+    public synchronized ArrayList<Span> getSpans() {
+        return New.arrayList(spans);
+    }
+
+    /**
+     * Send all spans except the root span to the server that started the
+     * trace.
+     *
+     * @param transfer the transfer object
+     */
+    public synchronized void write(Transfer transfer) throws IOException {
+        transfer.writeInt(spans.size() - 1);
+        for (int i = 1, size = spans.size(); i < size; i++) {
+            Span s = spans.get(i);
+            transfer.writeInt(s.parent == root ? -1 : s.parent.id - 1);
+            transfer.writeString(s.name);
+            transfer.writeLong(s.start - root.start);
+            transfer.writeLong(s.duration);
+            transfer.writeInt(s.count);
+        }
+    }
+
+    /**
+     * Read the spans sent by a remote server and add them below the given
+     * span. The start times are relative to the start of the parent span,
+     * the network latency is not taken into account.
+     *
+     * @param transfer the transfer object
+     * @param parent the span of the remote call
+     */
+    public synchronized void read(Transfer transfer, Span parent) throws IOException {
+        int len = transfer.readInt();
+        Span[] list = new Span[len];
+        for (int i = 0; i < len; i++) {
+            int p = transfer.readInt();
+            Span s = new Span(spans.size(), p < 0 ? parent : list[p], transfer.readString(), parent.start
+                    + transfer.readLong());
+            s.duration = transfer.readLong();
+            s.count = transfer.readInt();
+            list[i] = s;
+            spans.add(s);
+        }
+    }
+
+    public String toString() {
+        StringBuilder buff = new StringBuilder();
+        buff.append("trace ").append(Long.toHexString(id)).append(": ").append(sql).append('\n');
+        for (Span s : getSpans()) {
+            for (int i = 0; i <= s.depth; i++) {
+                buff.append("  ");
+            }
+            buff.append(s.name);
+            if (s.count > 1) {
+                buff.append(" (").append(s.count).append("x)");
+            }
+            buff.append(" start: ").append(toMillis(s.start)).append(" ms, time: ").append(toMillis(s.duration))
+                    .append(" ms\n");
+        }
+        return buff.toString();
+    }
+
+    private static double toMillis(long nanos) {
+        return Math.round(nanos / 1000d) / 1000d;
+    }
+
+    /**
+     * A timed part of the execution of a statement.
+     */
+    public static class Span {
+
+        final int id;
+        final Span parent;
+        final int depth;
+        final String name;
+        final long start;
+        long duration;
+        int count = 1;
+
+        Span(int id, Span parent, String name, long start) {
+            this.id = id;
+            this.parent = parent;
+            this.depth = parent == null ? 0 : parent.depth + 1;
+            this.name = name;
+            this.start = start;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        /**
+         * Get the id of the parent span.
+         *
+         * @return the id, or -1 for the root span
+         */
+        public int getParentId() {
+            return parent == null ? -1 : parent.id;
+        }
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        /**
+         * Get the start time relative to the start of the trace.
+         *
+         * @return the time in nanoseconds (negative if the span started before
+         *         the trace)
+         */
+        public long getStart() {
+            return start;
+        }
+
+        public long getDuration() {
+            return duration;
+        }
+
+        /**
+         * Get how many times the operation of this span was run.
+         *
+         * @return the count
+         */
+        public int getCount() {
+            return count;
+        }
+    }
+
+}
@@ -14,6 +14,9 @@ import java.sql.DriverManager;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
 
 import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.constant.ErrorCode;
@@ -28,6 +31,10 @@ import com.codefollower.lealone.util.New;
  * 'log' is already used in the database domain and means 'transaction log'. It
  * is possible to write after close was called, but that means for each write
  * the file will be opened and closed again (which is slower).
+ * <p>
+ * If a buffer size is set, file trace messages are added to a bounded ring
+ * buffer without locking, and written by a background thread. Messages are
+ * dropped (and counted) if the buffer is full.
  */
 public class TraceSystem implements TraceWriter {
 
@@ -81,6 +88,12 @@ public class TraceSystem implements TraceWriter {
 
     private static final int CHECK_SIZE_EACH_WRITES = 128;
 
+    /**
+     * How long the writer thread waits if there are no messages, in
+     * nanoseconds. Buffered messages are flushed to the file before waiting.
+     */
+    private static final long WRITER_WAIT_NANOS = 20 * 1000 * 1000;
+
     private int levelSystemOut = DEFAULT_TRACE_LEVEL_SYSTEM_OUT;
     private int levelFile = DEFAULT_TRACE_LEVEL_FILE;
     private int levelMax;
@@ -95,6 +108,18 @@ public class TraceSystem implements TraceWriter {
     private boolean writingErrorLogged;
     private TraceWriter writer = this;
     private PrintStream sysOut = System.out;
+    private long rotateInterval;
+    private long fileOpened;
+
+    private AtomicReferenceArray<Entry> buffer;
+    private final AtomicLong bufferHead = new AtomicLong();
+    private final AtomicLong bufferTail = new AtomicLong();
+    private final AtomicLong droppedCount = new AtomicLong();
+    private long droppedReported;
+    private volatile long writtenCount;
+    private volatile Thread writerThread;
+    private volatile boolean stopWriter;
+    private long fileSize;
 
     /**
      * Create a new trace system object.
@@ -176,6 +201,60 @@ public class TraceSystem implements TraceWriter {
         this.maxFileSize = max;
     }
 
+    /**
+     * Set the time after which the trace file is renamed to .old and a new
+     * file is started.
+     *
+     * @param millis the time in milliseconds, 0 to only rotate by size
+     */
+    public void setRotateInterval(long millis) {
+        this.rotateInterval = millis;
+    }
+
+    /**
+     * Write file trace messages in a background thread. The messages are
+     * added to a buffer of the given size, and dropped if it is full.
+     *
+     * @param size the number of messages, 0 to write the messages in the
+     *            calling thread
+     */
+    public void setBufferSize(int size) {
+        stopWriterThread();
+        if (size > 0 && fileName != null) {
+            buffer = new AtomicReferenceArray<Entry>(size);
+            bufferHead.set(0);
+            bufferTail.set(0);
+            stopWriter = false;
+            Thread t = new Thread(new Runnable() {
+                public void run() {
+                    writeBuffered();
+                }
+            }, "H2 Trace Writer");
+            t.setDaemon(true);
+            writerThread = t;
+            t.start();
+        }
+    }
+
+    /**
+     * Get the number of file trace messages that were dropped because the
+     * buffer was full.
+     *
+     * @return the number of messages
+     */
+    public long getDroppedCount() {
+        return droppedCount.get();
+    }
+
+    /**
+     * Get the number of file trace messages written by the background thread.
+     *
+     * @return the number of messages
+     */
+    public long getWrittenCount() {
+        return writtenCount;
+    }
+
     /**
      * Set the trace level to use for System.out
      *
@@ -221,11 +300,15 @@ public class TraceSystem implements TraceWriter {
         return levelFile;
     }
 
-    private synchronized String format(String module, String s) {
+    private String format(String module, String s) {
+        return format(System.currentTimeMillis(), module, s);
+    }
+
+    private synchronized String format(long time, String module, String s) {
         if (dateFormat == null) {
             dateFormat = new SimpleDateFormat("MM-dd HH:mm:ss ");
         }
-        return dateFormat.format(new Date()) + module + ": " + s;
+        return dateFormat.format(new Date(time)) + module + ": " + s;
     }
 
     public void write(int level, String module, String s, Throwable t) {
@@ -239,39 +322,152 @@ public class TraceSystem implements TraceWriter {
         }
         if (fileName != null) {
             if (level <= levelFile) {
-                writeFile(format(module, s), t);
+                if (writerThread == null) {
+                    writeFile(format(module, s), t);
+                } else {
+                    offer(new Entry(System.currentTimeMillis(), module, s, t));
+                }
+            }
+        }
+    }
+
+    /**
+     * Add a message to the buffer, or drop it if the buffer is full. Each
+     * writing thread claims a slot by incrementing the tail; only the writer
+     * thread moves the head.
+     *
+     * @param e the message
+     */
+    private void offer(Entry e) {
+        AtomicReferenceArray<Entry> buff = buffer;
+        int size = buff.length();
+        while (true) {
+            long tail = bufferTail.get();
+            if (tail - bufferHead.get() >= size) {
+                droppedCount.incrementAndGet();
+                return;
+            }
+            if (bufferTail.compareAndSet(tail, tail + 1)) {
+                buff.set((int) (tail % size), e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * The loop of the writer thread.
+     */
+    void writeBuffered() {
+        while (true) {
+            boolean stop = stopWriter;
+            if (drain() == 0) {
+                if (stop) {
+                    break;
+                }
+                LockSupport.parkNanos(this, WRITER_WAIT_NANOS);
             }
         }
     }
 
+    /**
+     * Write all buffered messages to the file. Only called by the writer
+     * thread, or after it was stopped.
+     *
+     * @return the number of messages written
+     */
+    private synchronized int drain() {
+        AtomicReferenceArray<Entry> buff = buffer;
+        int size = buff.length();
+        int count = 0;
+        try {
+            long dropped = droppedCount.get();
+            if (dropped > droppedReported) {
+                if (openWriter()) {
+                    writeLine(format(System.currentTimeMillis(), Trace.DATABASE, (dropped - droppedReported)
+                            + " trace messages dropped, the trace buffer is full"), null);
+                }
+                droppedReported = dropped;
+            }
+            while (true) {
+                long head = bufferHead.get();
+                if (head == bufferTail.get()) {
+                    break;
+                }
+                int index = (int) (head % size);
+                Entry e = buff.get(index);
+                if (e == null) {
+                    // the slot is claimed, but the message is not set yet
+                    Thread.yield();
+                    continue;
+                }
+                buff.set(index, null);
+                bufferHead.set(head + 1);
+                if (fileName != null && openWriter()) {
+                    writeLine(format(e.time, e.module, e.message), e.throwable);
+                }
+                count++;
+            }
+            if (count > 0) {
+                writtenCount += count;
+                if (printWriter != null) {
+                    printWriter.flush();
+                    if (isRotationRequired(fileSize)) {
+                        rotate();
+                    }
+                }
+            }
+        } catch (Exception e) {
+            logWritingError(e);
+        }
+        return count;
+    }
+
+    private void stopWriterThread() {
+        Thread t = writerThread;
+        if (t == null) {
+            return;
+        }
+        stopWriter = true;
+        LockSupport.unpark(t);
+        try {
+            t.join(10000);
+        } catch (InterruptedException e) {
+            // ignore
+        }
+        writerThread = null;
+        // messages added while the thread was stopping
+        drain();
+    }
+
+    private boolean isRotationRequired(long size) {
+        if (maxFileSize > 0 && size > maxFileSize) {
+            return true;
+        }
+        return rotateInterval > 0 && System.currentTimeMillis() - fileOpened > rotateInterval;
+    }
+
+    private void rotate() {
+        closeWriter();
+        String old = fileName + ".old";
+        FileUtils.delete(old);
+        FileUtils.moveTo(fileName, old);
+        fileOpened = System.currentTimeMillis();
+    }
+
     private synchronized void writeFile(String s, Throwable t) {
         try {
             if (checkSize++ >= CHECK_SIZE_EACH_WRITES) {
                 checkSize = 0;
-                closeWriter();
-                if (maxFileSize > 0 && FileUtils.size(fileName) > maxFileSize) {
-                    String old = fileName + ".old";
-                    FileUtils.delete(old);
-                    FileUtils.moveTo(fileName, old);
+                if (isRotationRequired(FileUtils.size(fileName))) {
+                    rotate();
+                } else {
+                    closeWriter();
                 }
             }
             if (!openWriter()) {
                 return;
             }
-            printWriter.println(s);
-            if (t != null) {
-                if (levelFile == ERROR && t instanceof JdbcSQLException) {
-                    JdbcSQLException se = (JdbcSQLException) t;
-                    int code = se.getErrorCode();
-                    if (ErrorCode.isCommon(code)) {
-                        printWriter.println(t.toString());
-                    } else {
-                        t.printStackTrace(printWriter);
-                    }
-                } else {
-                    t.printStackTrace(printWriter);
-                }
-            }
+            writeLine(s, t);
             printWriter.flush();
             if (closed) {
                 closeWriter();
@@ -281,6 +477,24 @@ public class TraceSystem implements TraceWriter {
         }
     }
 
+    private void writeLine(String s, Throwable t) {
+        printWriter.println(s);
+        fileSize += s.length() + 1;
+        if (t != null) {
+            if (levelFile == ERROR && t instanceof JdbcSQLException) {
+                JdbcSQLException se = (JdbcSQLException) t;
+                int code = se.getErrorCode();
+                if (ErrorCode.isCommon(code)) {
+                    printWriter.println(t.toString());
+                } else {
+                    t.printStackTrace(printWriter);
+                }
+            } else {
+                t.printStackTrace(printWriter);
+            }
+        }
+    }
+
     private void logWritingError(Exception e) {
         if (writingErrorLogged) {
             return;
@@ -303,7 +517,11 @@ public class TraceSystem implements TraceWriter {
                     return false;
                 }
                 fileWriter = IOUtils.getBufferedWriter(FileUtils.newOutputStream(fileName, true));
-                printWriter = new PrintWriter(fileWriter, true);
+                printWriter = new PrintWriter(fileWriter, false);
+                fileSize = FileUtils.size(fileName);
+                if (fileOpened == 0) {
+                    fileOpened = System.currentTimeMillis();
+                }
             } catch (Exception e) {
                 logWritingError(e);
                 return false;
@@ -334,6 +552,8 @@ public class TraceSystem implements TraceWriter {
      * (slowing down tracing).
      */
     public void close() {
+        // not synchronized: the writer thread needs the lock to finish
+        stopWriterThread();
         closeWriter();
         closed = true;
     }
@@ -342,4 +562,22 @@ public class TraceSystem implements TraceWriter {
         // nothing to do (the file name is already set)
     }
 
+    /**
+     * A file trace message waiting in the buffer.
+     */
+    private static class Entry {
+
+        final long time;
+        final String module;
+        final String message;
+        final Throwable throwable;
+
+        Entry(long time, String module, String message, Throwable throwable) {
+            this.time = time;
+            this.module = module;
+            this.message = message;
+            this.throwable = throwable;
+        }
+    }
+
 }
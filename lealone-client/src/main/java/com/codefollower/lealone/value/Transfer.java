@@ -731,6 +731,10 @@ public class Transfer {
         this.version = version;
     }
 
+    public int getVersion() {
+        return version;
+    }
+
     public synchronized boolean isClosed() {
         return socket == null || socket.isClosed();
     }
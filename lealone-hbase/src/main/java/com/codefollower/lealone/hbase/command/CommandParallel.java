@@ -31,6 +31,7 @@ import org.apache.hadoop.hbase.util.Threads;
 
 import com.codefollower.lealone.command.Command;
 import com.codefollower.lealone.command.CommandInterface;
+import com.codefollower.lealone.command.CommandRemote;
 import com.codefollower.lealone.command.Prepared;
 import com.codefollower.lealone.command.dml.Select;
 import com.codefollower.lealone.constant.SysProperties;
@@ -40,6 +41,7 @@ import com.codefollower.lealone.hbase.engine.HBaseSession;
 import com.codefollower.lealone.hbase.result.HBaseSerializedResult;
 import com.codefollower.lealone.hbase.util.HBaseRegionInfo;
 import com.codefollower.lealone.hbase.util.HBaseUtils;
+import com.codefollower.lealone.message.QueryTrace;
 import com.codefollower.lealone.result.ResultInterface;
 import com.codefollower.lealone.transaction.Transaction;
 import com.codefollower.lealone.util.New;
@@ -50,7 +52,9 @@ public class CommandParallel implements CommandInterface {
     private final Prepared originalPrepared;
     private final String sql;
     private final List<CommandInterface> commands; //保证不会为null且size>=2
+    private final List<String> regionNames;
     private Transaction transaction;
+    private int remoteCallCount;
 
     public CommandParallel(HBaseSession originalSession, CommandProxy commandProxy, //
             byte[] tableName, List<byte[]> startKeys, String sql, Prepared originalPrepared) {
@@ -63,6 +67,7 @@ public class CommandParallel implements CommandInterface {
         this.originalPrepared = originalPrepared;
         this.sql = sql;
         this.commands = new ArrayList<CommandInterface>(startKeys.size());
+        this.regionNames = new ArrayList<String>(startKeys.size());
 
         try {
             if (pool == null) {
@@ -82,11 +87,14 @@ public class CommandParallel implements CommandInterface {
                     Command c = newSession.prepareLocal(planSQL());
                     HBasePrepared hp = (HBasePrepared) c.getPrepared();
                     hp.setRegionName(hri.getRegionName());
+                    c.setRecordStatistics(false); //只在CommandProxy中记录一次
                     commands.add(new CommandWrapper(c, newSession)); //newSession在Command关闭的时候自动关闭
                 } else {
                     commands.add(commandProxy.getCommandInterface(hri.getRegionServerURL(),
                             CommandProxy.createSQL(hri.getRegionName(), planSQL())));
+                    remoteCallCount++;
                 }
+                regionNames.add(hri.getRegionName());
             }
 
             //设置默认fetchSize，当执行Update、Delete之类的操作时也需要先抓取记录然后再判断记录是否满足条件。
@@ -103,11 +111,26 @@ public class CommandParallel implements CommandInterface {
         return newSession;
     }
 
+    int getRegionCount() {
+        return commands.size();
+    }
+
+    int getRemoteCallCount() {
+        return remoteCallCount;
+    }
+
     private String planSQL() {
-        if (originalPrepared.isQuery() && ((Select) originalPrepared).isGroupQuery())
-            return ((Select) originalPrepared).getPlanSQL(true);
-        else
+        if (!originalPrepared.isQuery())
             return sql;
+        Select select = (Select) originalPrepared;
+        //分组查询的每个Region只得到部分分组，LIMIT和OFFSET只能在合并后使用
+        if (select.isGroupQuery())
+            return select.getPlanSQL(true, false);
+        //非分组查询在合并时排序并计算DISTINCT、OFFSET和LIMIT，
+        //没有OFFSET时每个Region最多只需要返回按ORDER BY排在前面的LIMIT行
+        if (select.isMergeRequired())
+            return select.getPlanSQL(true, select.getOffset() == null);
+        return sql;
     }
 
     @Override
@@ -136,18 +159,48 @@ public class CommandParallel implements CommandInterface {
         //originalSelect.isGroupQuery()如果是false，那么按org.apache.hadoop.hbase.client.ClientScanner的功能来实现。
         //只要Select语句中出现聚合函数、groupBy、Having三者之一都被认为是GroupQuery，
         //对于GroupQuery需要把Select语句同时发给相关的RegionServer，得到结果后再合并。
-        if (!originalSelect.isGroupQuery())
-            return new HBaseSerializedResult(commands, maxRows, scrollable);
+        if (!originalSelect.isGroupQuery()) {
+            if (!originalSelect.isMergeRequired())
+                return new HBaseSerializedResult(commands, maxRows, scrollable);
+
+            //有OFFSET时每个Region不能只返回maxRows行
+            int regionMaxRows = originalSelect.getOffset() == null ? maxRows : 0;
+            HBaseSerializedResult rows = new HBaseSerializedResult(executeQueryParallel(regionMaxRows, scrollable));
+            try {
+                return originalSelect.queryMerge(rows, maxRows);
+            } finally {
+                rows.close();
+            }
+        }
+
+        List<ResultInterface> results = executeQueryParallel(maxRows, scrollable);
+        final QueryTrace trace = originalSession.getQueryTrace();
+        QueryTrace.Span span = trace == null ? null : trace.startSpan(originalSession.getQueryTraceSpan(), "merge");
+        String newSQL = originalSelect.getPlanSQL(true);
+        Select newSelect = (Select) createHBaseSession().prepare(newSQL, true);
+
+        ResultInterface result = new HBaseMergedResult(results, newSelect, originalSelect);
+        if (span != null)
+            trace.endSpan(span);
+        return result;
+    }
 
+    private List<ResultInterface> executeQueryParallel(final int maxRows, final boolean scrollable) {
+        final QueryTrace trace = originalSession.getQueryTrace();
         int size = commands.size();
         List<Future<ResultInterface>> futures = New.arrayList(size);
         List<ResultInterface> results = New.arrayList(size);
         for (int i = 0; i < size; i++) {
             final CommandInterface c = commands.get(i);
+            final QueryTrace.Span span = startQueryTrace(trace, c, i);
             c.setTransaction(transaction);
             futures.add(pool.submit(new Callable<ResultInterface>() {
                 public ResultInterface call() throws Exception {
-                    return c.executeQuery(maxRows, scrollable);
+                    try {
+                        return c.executeQuery(maxRows, scrollable);
+                    } finally {
+                        endQueryTrace(trace, c, span);
+                    }
                 }
             }));
         }
@@ -158,11 +211,7 @@ public class CommandParallel implements CommandInterface {
         } catch (Exception e) {
             throw new RuntimeException(e);
         }
-
-        String newSQL = originalSelect.getPlanSQL(true);
-        Select newSelect = (Select) createHBaseSession().prepare(newSQL, true);
-
-        return new HBaseMergedResult(results, newSelect, originalSelect);
+        return results;
     }
 
     @Override
@@ -170,12 +219,18 @@ public class CommandParallel implements CommandInterface {
         int updateCount = 0;
         int size = commands.size();
         List<Future<Integer>> futures = New.arrayList(size);
+        final QueryTrace trace = originalSession.getQueryTrace();
         for (int i = 0; i < size; i++) {
             final CommandInterface c = commands.get(i);
+            final QueryTrace.Span span = startQueryTrace(trace, c, i);
             c.setTransaction(transaction);
             futures.add(pool.submit(new Callable<Integer>() {
                 public Integer call() throws Exception {
-                    return c.executeUpdate();
+                    try {
+                        return c.executeUpdate();
+                    } finally {
+                        endQueryTrace(trace, c, span);
+                    }
                 }
             }));
         }
@@ -189,6 +244,32 @@ public class CommandParallel implements CommandInterface {
         return updateCount;
     }
 
+    /**
+     * 如果当前语句被跟踪，为每个Region的调用创建一个span，
+     * 远程RegionServer和本地新Session中记录的span都加到这个span下面
+     */
+    private QueryTrace.Span startQueryTrace(QueryTrace trace, CommandInterface c, int i) {
+        if (trace == null)
+            return null;
+        QueryTrace.Span span = trace.startSpan(originalSession.getQueryTraceSpan(), "region " + regionNames.get(i));
+        setQueryTrace(c, trace, span);
+        return span;
+    }
+
+    private static void endQueryTrace(QueryTrace trace, CommandInterface c, QueryTrace.Span span) {
+        if (span != null) {
+            trace.endSpan(span);
+            setQueryTrace(c, null, null);
+        }
+    }
+
+    private static void setQueryTrace(CommandInterface c, QueryTrace trace, QueryTrace.Span span) {
+        if (c instanceof CommandRemote)
+            ((CommandRemote) c).setQueryTrace(trace, span);
+        else if (c instanceof CommandWrapper)
+            ((CommandWrapper) c).setQueryTrace(trace, span);
+    }
+
     @Override
     public void close() {
         for (CommandInterface c : commands)
@@ -30,6 +30,7 @@ import org.apache.hadoop.hbase.util.Bytes;
 
 import com.codefollower.lealone.command.Command;
 import com.codefollower.lealone.command.CommandInterface;
+import com.codefollower.lealone.command.CommandRemote;
 import com.codefollower.lealone.command.Parser;
 import com.codefollower.lealone.command.Prepared;
 import com.codefollower.lealone.command.ddl.DefineCommand;
@@ -39,6 +40,7 @@ import com.codefollower.lealone.command.dml.Merge;
 import com.codefollower.lealone.command.dml.Select;
 import com.codefollower.lealone.command.dml.Update;
 import com.codefollower.lealone.engine.ConnectionInfo;
+import com.codefollower.lealone.engine.QueryStatisticsData;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.engine.SessionInterface;
 import com.codefollower.lealone.engine.SessionRemote;
@@ -47,6 +49,7 @@ import com.codefollower.lealone.hbase.engine.HBaseSession;
 import com.codefollower.lealone.hbase.util.HBaseRegionInfo;
 import com.codefollower.lealone.hbase.util.HBaseUtils;
 import com.codefollower.lealone.hbase.zookeeper.ZooKeeperAdmin;
+import com.codefollower.lealone.message.QueryTrace;
 import com.codefollower.lealone.result.ResultInterface;
 import com.codefollower.lealone.transaction.Transaction;
 import com.codefollower.lealone.util.StringUtils;
@@ -67,6 +70,11 @@ public class CommandProxy extends Command {
 
     private CommandInterface proxyCommand;
 
+    /**
+     * 解析rowKey并确定在哪里执行的开始时间和所用时间，如果还没有加到跟踪中，routeNanos大于0
+     */
+    private long routeStart, routeNanos;
+
     public CommandProxy(Session originalSession, String sql, Command originalCommand) {
         super(originalSession, sql);
         this.originalSession = (HBaseSession) originalSession;
@@ -88,6 +96,7 @@ public class CommandProxy extends Command {
 
     private void parseRowKey() {
         Command originalCommand = originalPrepared.getCommand();
+        routeStart = System.nanoTime();
         try {
             //1. DDL类型的SQL全转向Master处理
             if (originalPrepared instanceof DefineCommand) {
@@ -118,6 +127,8 @@ public class CommandProxy extends Command {
             }
         } catch (Exception e) {
             throw new RuntimeException(e);
+        } finally {
+            routeNanos = System.nanoTime() - routeStart;
         }
     }
 
@@ -212,36 +223,111 @@ public class CommandProxy extends Command {
 
     @Override
     public ResultInterface executeQuery(int maxrows, boolean scrollable) {
-        prepare();
-
-        if (isParameterized) {
-            //此时是一条新的proxyCommand，所以要设置fetchSize
-            proxyCommand.setFetchSize(super.getFetchSize());
-        }
+        QueryTrace queryTrace = startQueryTrace();
         try {
-            return proxyCommand.executeQuery(maxrows, scrollable);
+            prepare();
+
+            if (isParameterized) {
+                //此时是一条新的proxyCommand，所以要设置fetchSize
+                proxyCommand.setFetchSize(super.getFetchSize());
+            }
+            QueryStatisticsData statistics = getQueryStatisticsData();
+            long start = System.nanoTime();
+            QueryTrace.Span span = startRemoteSpan();
+            ResultInterface result;
+            try {
+                result = proxyCommand.executeQuery(maxrows, scrollable);
+            } finally {
+                endRemoteSpan(span);
+                if (originalSession.getAutoCommit())
+                    originalSession.endTransaction();
+            }
+            if (statistics != null)
+                recordStatistics(statistics, start, 0, Math.max(0, result.getRowCount()), getRegionCount(),
+                        getRemoteCallCount());
+            return result;
         } finally {
-            if (originalSession.getAutoCommit())
-                originalSession.endTransaction();
+            endQueryTrace(queryTrace);
         }
     }
 
     @Override
     public int executeUpdate() {
-        prepare();
-        int updateCount = proxyCommand.executeUpdate();
-        if (originalSession.getAutoCommit())
-            originalSession.endTransaction();
-
-        if (!originalSession.getDatabase().isMaster() && originalPrepared instanceof DefineCommand) {
-            originalSession.getDatabase().refreshMetaTable();
+        QueryTrace queryTrace = startQueryTrace();
+        try {
+            prepare();
+            QueryStatisticsData statistics = getQueryStatisticsData();
+            long start = System.nanoTime();
+            QueryTrace.Span span = startRemoteSpan();
+            int updateCount;
             try {
-                HBaseUtils.reset(); //执行完DDL后，元数据已变动，清除HConnection中的相关缓存
-            } catch (IOException e) {
-                throw new RuntimeException(e);
+                updateCount = proxyCommand.executeUpdate();
+            } finally {
+                endRemoteSpan(span);
+            }
+            if (originalSession.getAutoCommit())
+                originalSession.endTransaction();
+            if (statistics != null)
+                recordStatistics(statistics, start, 0, updateCount, getRegionCount(), getRemoteCallCount());
+
+            if (!originalSession.getDatabase().isMaster() && originalPrepared instanceof DefineCommand) {
+                originalSession.getDatabase().refreshMetaTable();
+                try {
+                    HBaseUtils.reset(); //执行完DDL后，元数据已变动，清除HConnection中的相关缓存
+                } catch (IOException e) {
+                    throw new RuntimeException(e);
+                }
             }
+            return updateCount;
+        } finally {
+            endQueryTrace(queryTrace);
+        }
+    }
+
+    /**
+     * 如果当前语句被跟踪，先加上解析rowKey所用的时间，
+     * 如果proxyCommand是远程的，再为远程调用创建一个span，RegionServer返回的span都加到它下面
+     */
+    private QueryTrace.Span startRemoteSpan() {
+        QueryTrace trace = originalSession.getQueryTrace();
+        if (trace == null)
+            return null;
+        if (routeNanos > 0) {
+            trace.addSpan(originalSession.getQueryTraceSpan(), "route", routeStart, routeNanos);
+            routeNanos = 0;
+        }
+        if (!(proxyCommand instanceof CommandRemote))
+            return null;
+        QueryTrace.Span span = trace.startSpan(originalSession.getQueryTraceSpan(), "remote");
+        ((CommandRemote) proxyCommand).setQueryTrace(trace, span);
+        return span;
+    }
+
+    private void endRemoteSpan(QueryTrace.Span span) {
+        if (span != null) {
+            originalSession.getQueryTrace().endSpan(span);
         }
-        return updateCount;
+    }
+
+    /**
+     * 如果proxyCommand是本地的Command，它自己会记录统计信息，此时返回null
+     */
+    private QueryStatisticsData getQueryStatisticsData() {
+        if (proxyCommand instanceof Command)
+            return null;
+        return originalSession.getDatabase().getQueryStatisticsData();
+    }
+
+    private int getRegionCount() {
+        if (proxyCommand instanceof CommandParallel)
+            return ((CommandParallel) proxyCommand).getRegionCount();
+        return 1;
+    }
+
+    private int getRemoteCallCount() {
+        if (proxyCommand instanceof CommandParallel)
+            return ((CommandParallel) proxyCommand).getRemoteCallCount();
+        return 1;
     }
 
     @Override
@@ -24,6 +24,7 @@ import com.codefollower.lealone.command.Command;
 import com.codefollower.lealone.command.CommandInterface;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.expression.ParameterInterface;
+import com.codefollower.lealone.message.QueryTrace;
 import com.codefollower.lealone.result.ResultInterface;
 import com.codefollower.lealone.transaction.Transaction;
 
@@ -36,6 +37,13 @@ class CommandWrapper implements CommandInterface {
         this.session = session;
     }
 
+    /**
+     * 在新Session中执行时，把span加到原始语句的跟踪中
+     */
+    void setQueryTrace(QueryTrace trace, QueryTrace.Span span) {
+        session.setQueryTrace(trace, span);
+    }
+
     @Override
     public int getCommandType() {
         return c.getCommandType();
@@ -167,7 +167,10 @@ public class HBaseParser extends Parser {
         if (readIf("NEXT")) {
             readIf("VALUE");
             readIf("MARGIN");
-            return new AlterSequenceNextValueMargin(session, sequence.getSchema(), sequence);
+            AlterSequenceNextValueMargin command = new AlterSequenceNextValueMargin(session, sequence.getSchema(), sequence);
+            if (currentTokenType == VALUE)
+                command.setSize(readExpression());
+            return command;
         }
         AlterSequence command = new AlterSequence(session, sequence.getSchema());
         command.setSequence(sequence);
@@ -297,8 +300,10 @@ public class HBaseParser extends Parser {
         if (isLocal)
             return command;
         //sql有可能在本机执行，也可能需要继续转发给其他节点
-        command = new CommandProxy(this, sql, command);
-        return command;
+        long start = System.nanoTime();
+        Command proxy = new CommandProxy(this, sql, command);
+        proxy.setPrepareTime(command.getParseTime(), command.getPrepareTime() + System.nanoTime() - start);
+        return proxy;
     }
 
     @Override
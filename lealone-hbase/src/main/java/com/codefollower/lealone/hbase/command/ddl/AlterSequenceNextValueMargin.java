@@ -23,6 +23,7 @@ import com.codefollower.lealone.command.ddl.AlterSequence;
 import com.codefollower.lealone.dbobject.Schema;
 import com.codefollower.lealone.dbobject.Sequence;
 import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.expression.Expression;
 import com.codefollower.lealone.hbase.dbobject.HBaseSequence;
 import com.codefollower.lealone.result.ResultInterface;
 import com.codefollower.lealone.value.Value;
@@ -30,20 +31,34 @@ import com.codefollower.lealone.value.ValueLong;
 
 public class AlterSequenceNextValueMargin extends AlterSequence {
     private HBaseSequence sequence;
+    private Expression size;
 
     public AlterSequenceNextValueMargin(Session session, Schema schema, Sequence sequence) {
         super(session, schema);
         this.sequence = (HBaseSequence) sequence;
     }
 
+    /**
+     * 租借的值的个数，如果没有指定就是序列的cacheSize
+     */
+    public void setSize(Expression size) {
+        this.size = size;
+    }
+
+    private long getSize() {
+        if (size == null)
+            return sequence.getCacheSize();
+        return size.optimize(session).getValue(session).getLong();
+    }
+
     @Override
     public int update() {
-        sequence.alterNextValueMargin(session);
+        sequence.alterNextValueMargin(session, getSize());
         return 0;
     }
 
     public ResultInterface query(int maxrows) {
-        return new ResultInterfaceImpl(sequence.alterNextValueMargin(session));
+        return new ResultInterfaceImpl(sequence.alterNextValueMargin(session, getSize()));
     }
 
     private static class ResultInterfaceImpl implements ResultInterface {
@@ -38,8 +38,9 @@ public class HBaseMergedResult extends DelegatedResult {
                 new HBaseMergedIndex(serializedResult, table, -1, IndexColumn.wrap(table.getColumns()), IndexType
                         .createScan(false)));
 
-        //2. 把多个结果集合并
-        ResultInterface mergedResult = newSelect.queryGroupMerge();
+        //2. 把多个结果集合并，如果不需要再计算，这就是最后一次合并，此时按ORDER BY、LIMIT只保留前N行
+        boolean calculationRequired = oldSelect.isCalculationRequired(newSelect);
+        ResultInterface mergedResult = newSelect.queryGroupMerge(!calculationRequired);
 
         //3. 计算合并后的结果集,
         //例如oldSelect="select avg"时，在分布式环境要转成newSelect="select count, sum"，
@@ -54,7 +55,7 @@ public class HBaseMergedResult extends DelegatedResult {
                     new HBaseMergedIndex(calculatedResult, table, -1, IndexColumn.wrap(table.getColumns()), IndexType
                             .createScan(false)));
             //5. 最终结果集
-            result = oldSelect.queryGroupMerge();
+            result = oldSelect.queryGroupMerge(true);
 
             //6. 立刻关闭中间结果集
             serializedResult.close();
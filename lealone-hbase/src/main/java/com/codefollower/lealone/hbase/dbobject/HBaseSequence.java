@@ -19,7 +19,17 @@
  */
 package com.codefollower.lealone.hbase.dbobject;
 
+import java.util.Properties;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.hadoop.hbase.util.Threads;
+
 import com.codefollower.lealone.command.CommandInterface;
+import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.dbobject.Schema;
 import com.codefollower.lealone.dbobject.Sequence;
 import com.codefollower.lealone.engine.Session;
@@ -28,34 +38,195 @@ import com.codefollower.lealone.hbase.command.CommandProxy;
 import com.codefollower.lealone.hbase.engine.HBaseDatabase;
 import com.codefollower.lealone.hbase.engine.HBaseSession;
 import com.codefollower.lealone.hbase.util.HBaseUtils;
+import com.codefollower.lealone.message.DbException;
 import com.codefollower.lealone.result.ResultInterface;
 
+/**
+ * 
+ * Master负责持久化序列的值，RegionServer每次从Master租借一段连续的值，
+ * 在本地用完之前就在后台预取下一段，取值时不需要加锁。
+ * 
+ * 租借的区间大小是自适应的: 如果一段区间在很短时间内就用完了，下次就租借更大的区间，
+ * 如果很长时间都用不完，下次就租借更小的区间，最小是序列的cacheSize。
+ *
+ */
 public class HBaseSequence extends Sequence {
+    /**
+     * 一次最多能租借的值的个数
+     */
+    private static final long MAX_RANGE_SIZE = HBaseUtils.getConfiguration().getLong(
+            Constants.PROJECT_NAME_PREFIX + "sequence.max.range.size", 1000000);
+
+    /**
+     * 如果租借的区间在这个时间(毫秒)内就用完了，下次租借两倍大小的区间，
+     * 如果超过这个时间的10倍才用完，下次租借一半大小的区间
+     */
+    private static final long RANGE_TARGET_TIME = HBaseUtils.getConfiguration().getLong(
+            Constants.PROJECT_NAME_PREFIX + "sequence.range.target.time", 1000);
+
+    private static ThreadPoolExecutor pool;
+
+    /**
+     * 从Master租借到的一段值: [next, end)，按increment递增或递减
+     */
+    private static class Range {
+        final AtomicLong next;
+        final long end;
+        /**
+         * 取到这个值时开始预取下一段
+         */
+        final long prefetchAt;
+        final long leaseTime = System.currentTimeMillis();
+
+        Range(long start, long end, long increment, long size) {
+            this.next = new AtomicLong(start);
+            this.end = end;
+            this.prefetchAt = start + increment * (size - Math.max(1, size / 4));
+        }
+    }
+
+    private volatile Range current;
+    private Range prefetched;
+    private boolean prefetching;
+    private long rangeSize;
+    private volatile Properties originalProperties;
+    private SessionInterface masterSession;
 
     public HBaseSequence(Schema schema, int id, String name, boolean belongsToTable) {
         super(schema, id, name, belongsToTable);
     }
 
     @Override
-    public synchronized void flush(Session session) {
+    public long getNext(Session session) {
         HBaseSession s = (HBaseSession) session;
-        if (s.getRegionServer() != null) {
-            SessionInterface si = null;
+        if (s.getRegionServer() == null) {
+            return super.getNext(session);
+        }
+        if (originalProperties == null) {
+            originalProperties = s.getOriginalProperties();
+        }
+        while (true) {
+            Range r = current;
+            if (r != null) {
+                long v = r.next.getAndAdd(increment);
+                if (increment > 0 ? v < r.end : v > r.end) {
+                    //只有一个线程能取到prefetchAt
+                    if (v == r.prefetchAt) {
+                        prefetch(r);
+                    }
+                    return v;
+                }
+            }
+            nextRange(r);
+        }
+    }
+
+    /**
+     * 当前区间用完时切换到预取的区间，如果还在预取就等待，如果没有预取到就同步租借
+     */
+    private synchronized void nextRange(Range old) {
+        if (current != old) {
+            //其他线程已经切换过了
+            return;
+        }
+        while (prefetching) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                throw DbException.convert(e);
+            }
+        }
+        Range r = prefetched;
+        prefetched = null;
+        if (r == null) {
+            r = lease(nextRangeSize(old));
+        }
+        current = r;
+    }
+
+    private void prefetch(final Range r) {
+        synchronized (this) {
+            if (prefetching || prefetched != null || current != r) {
+                return;
+            }
+            prefetching = true;
+        }
+        try {
+            getPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    Range next = null;
+                    try {
+                        next = lease(nextRangeSize(r));
+                    } catch (Throwable e) {
+                        //预取失败时在当前区间用完后再同步租借
+                        trace.error(e, "prefetch sequence " + getSQL());
+                    } finally {
+                        synchronized (HBaseSequence.this) {
+                            prefetched = next;
+                            prefetching = false;
+                            HBaseSequence.this.notifyAll();
+                        }
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                prefetching = false;
+                notifyAll();
+            }
+        }
+    }
+
+    private synchronized long nextRangeSize(Range old) {
+        if (old == null) {
+            rangeSize = cacheSize;
+        } else {
+            long time = System.currentTimeMillis() - old.leaseTime;
+            if (time < RANGE_TARGET_TIME) {
+                rangeSize = Math.min(rangeSize * 2, MAX_RANGE_SIZE);
+            } else if (time > RANGE_TARGET_TIME * 10) {
+                rangeSize = Math.max(rangeSize / 2, cacheSize);
+            }
+        }
+        return rangeSize;
+    }
+
+    /**
+     * 向Master租借size个值，同一时刻只有一个线程在租借(在nextRange中或在预取线程中)
+     */
+    private Range lease(long size) {
+        try {
+            if (masterSession == null || masterSession.isClosed()) {
+                masterSession = CommandProxy.getSessionInterface(originalProperties, HBaseUtils.getMasterURL());
+            }
+            CommandInterface ci = masterSession.prepareCommand("ALTER SEQUENCE " + getSQL() + " NEXT VALUE MARGIN " + size, 1);
+            ResultInterface ri = ci.executeQuery(-1, false);
+            ri.next();
+            long end = ri.currentRow()[0].getLong();
+            ci.close();
+            return new Range(end - increment * size, end, increment, size);
+        } catch (Exception e) {
+            closeMasterSession();
+            throw DbException.convert(e);
+        }
+    }
+
+    private synchronized void closeMasterSession() {
+        if (masterSession != null) {
             try {
-                si = CommandProxy.getSessionInterface(s.getOriginalProperties(), HBaseUtils.getMasterURL());
-                CommandInterface ci = si.prepareCommand("ALTER SEQUENCE " + getSQL() + " NEXT VALUE MARGIN", 1);
-                //ci.executeUpdate();
-                ResultInterface ri = ci.executeQuery(-1, false);
-                ri.next();
-                valueWithMargin = ri.currentRow()[0].getLong();
-                value = valueWithMargin - increment * cacheSize;
+                masterSession.close();
             } catch (Exception e) {
-                throw new RuntimeException(e);
-            } finally {
-                if (si != null)
-                    si.close();
+                //ignore
             }
-        } else if (s.getMaster() != null) {
+            masterSession = null;
+        }
+    }
+
+    @Override
+    public synchronized void flush(Session session) {
+        HBaseSession s = (HBaseSession) session;
+        if (s != null && s.getMaster() != null) {
             HBaseDatabase db = (HBaseDatabase) session.getDatabase();
             boolean oldNeedToAddRedoRecord = db.isNeedToAddRedoRecord();
             try {
@@ -67,9 +238,33 @@ public class HBaseSequence extends Sequence {
         }
     }
 
-    public synchronized long alterNextValueMargin(Session session) {
+    @Override
+    public synchronized long getCurrentValue() {
+        Range r = current;
+        if (r != null) {
+            long v = r.next.get() - increment;
+            return increment > 0 ? Math.min(v, r.end - increment) : Math.max(v, r.end - increment);
+        }
+        return super.getCurrentValue();
+    }
+
+    @Override
+    public void close() {
+        //RegionServer上未用完的值直接丢弃
+        closeMasterSession();
+        super.close();
+    }
+
+    /**
+     * 在Master上执行，把序列的值增加size个increment并持久化
+     * 
+     * @param session 当前session
+     * @param size 租借的值的个数
+     * @return 租借到的区间的结束值(不包含)
+     */
+    public synchronized long alterNextValueMargin(Session session, long size) {
         long value = this.value;
-        long valueWithMargin = increment * cacheSize;
+        long valueWithMargin = increment * Math.max(1, size);
         value = value + valueWithMargin;
         setStartValue(value);
 
@@ -77,4 +272,13 @@ public class HBaseSequence extends Sequence {
 
         return value;
     }
+
+    private static synchronized ThreadPoolExecutor getPool() {
+        if (pool == null) {
+            pool = new ThreadPoolExecutor(1, 20, 5, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                    Threads.newDaemonThreadFactory(HBaseSequence.class.getSimpleName()));
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
 }
@@ -43,6 +43,7 @@ import com.codefollower.lealone.hbase.result.HBaseSubqueryResult;
 import com.codefollower.lealone.hbase.transaction.Filter;
 import com.codefollower.lealone.hbase.util.HBaseUtils;
 import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.message.QueryTrace;
 import com.codefollower.lealone.result.Row;
 import com.codefollower.lealone.result.SearchRow;
 import com.codefollower.lealone.value.Value;
@@ -202,7 +203,10 @@ public class HBasePrimaryIndexCursor implements Cursor {
             return false;
 
         try {
+            QueryTrace trace = session.getQueryTrace();
+            long start = trace == null ? 0 : System.nanoTime();
             result = session.getRegionServer().next(scannerId, fetchSize);
+            long filterStart = trace == null ? 0 : System.nanoTime();
             ArrayList<Result> list = new ArrayList<Result>(result.length);
             try {
                 for (int i = 0; i < result.length; i++) {
@@ -215,6 +219,12 @@ public class HBasePrimaryIndexCursor implements Cursor {
             } catch (Exception e) {
                 throw DbException.convert(e);
             }
+            if (trace != null) {
+                //每批记录的扫描和可见性检查的时间累加到同一个span中
+                long now = System.nanoTime();
+                trace.addTime(session.getQueryTraceSpan(), "scan", filterStart - start);
+                trace.addTime(session.getQueryTraceSpan(), "visibility filter", now - filterStart);
+            }
 
             result = list.toArray(new Result[0]);
 
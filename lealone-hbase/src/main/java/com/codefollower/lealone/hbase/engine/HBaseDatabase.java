@@ -23,6 +23,7 @@ import java.sql.Connection;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
 
 import com.codefollower.lealone.constant.ErrorCode;
 import com.codefollower.lealone.dbobject.DbObject;
@@ -35,6 +36,7 @@ import com.codefollower.lealone.engine.MetaRecord;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.hbase.dbobject.table.HBaseTableEngine;
 import com.codefollower.lealone.hbase.metadata.MetaTable;
+import com.codefollower.lealone.hbase.transaction.TransactionMetrics;
 import com.codefollower.lealone.message.DbException;
 import com.codefollower.lealone.util.New;
 
@@ -233,4 +235,10 @@ public class HBaseDatabase extends Database {
     public boolean isMultiThreaded() {
         return true; //HBase总是使用多线程
     }
+
+    @Override
+    protected void addMetrics(Map<String, Object> metrics) {
+        super.addMetrics(metrics);
+        TransactionMetrics.addMetrics(metrics);
+    }
 }
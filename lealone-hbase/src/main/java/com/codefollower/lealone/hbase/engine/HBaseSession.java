@@ -52,6 +52,7 @@ import com.codefollower.lealone.hbase.transaction.CommitHashMap;
 import com.codefollower.lealone.hbase.transaction.Filter;
 import com.codefollower.lealone.hbase.transaction.RowKey;
 import com.codefollower.lealone.hbase.transaction.TimestampService;
+import com.codefollower.lealone.hbase.transaction.TransactionMetrics;
 import com.codefollower.lealone.hbase.util.HBaseUtils;
 import com.codefollower.lealone.message.DbException;
 import com.codefollower.lealone.result.Row;
@@ -191,6 +192,7 @@ public class HBaseSession extends Session {
         try {
             if (transaction != null) {
                 if (!getAutoCommit() && !undoRows.isEmpty()) {
+                    long start = System.nanoTime();
                     if (isRoot()) {
                         if (sessionRemoteCache.size() > 0)
                             parallelCommit();
@@ -208,6 +210,7 @@ public class HBaseSession extends Session {
                         checkConflict();
                         Filter.committed.commit(tid, commitTimestamp);
                     }
+                    TransactionMetrics.committed(System.nanoTime() - start);
                 }
             }
         } catch (Exception e) {
@@ -320,9 +323,11 @@ public class HBaseSession extends Session {
             synchronized (HBaseSession.class) {
                 if (transactionId < timestampService.first()) {
                     //1. 事务开始时间不能小于region server启动时从TimestampServiceTable中获得的上一次的最大时间戳
+                    TransactionMetrics.conflictAborted();
                     throw new RuntimeException("Aborting transaction after restarting region server");
                 } else if (!rowKeys.isEmpty() && transactionId < commitHashMap.getLargestDeletedTimestamp()) {
                     //2. Too old and not read only
+                    TransactionMetrics.conflictAborted();
                     throw new RuntimeException("Too old startTimestamp: ST " + transactionId + " MAX "
                             + commitHashMap.getLargestDeletedTimestamp());
                 } else {
@@ -330,6 +335,7 @@ public class HBaseSession extends Session {
                     for (RowKey r : rowKeys) {
                         long oldCommitTimestamp = commitHashMap.getLatestWriteForRow(r.hashCode());
                         if (oldCommitTimestamp != 0 && oldCommitTimestamp > transactionId) {
+                            TransactionMetrics.conflictAborted();
                             throw new RuntimeException("Write-write conflict: oldCommitTimestamp " + oldCommitTimestamp
                                     + ", startTimestamp " + transactionId);
                         }
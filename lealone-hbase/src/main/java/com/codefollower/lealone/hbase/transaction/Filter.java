@@ -131,7 +131,9 @@ public class Filter {
         if (queryTimestamp <= largestDeletedTimestamp)
             return true;
 
+        long start = System.nanoTime();
         commitTimestamp = TransactionStatusTable.getInstance().query(hostAndPort, queryTimestamp);
+        TransactionMetrics.statusTableLookup(System.nanoTime() - start);
         if (commitTimestamp != -1) {
             committed.commit(queryTimestamp, commitTimestamp);
             return true;
@@ -52,6 +52,7 @@ public class TimestampService {
     private void addBatch() throws IOException {
         maxTimestamp += TIMESTAMP_BATCH;
         timestampServiceTable.updateLastMaxTimestamp(maxTimestamp);
+        TransactionMetrics.timestampBatchAdded();
     }
 
     //事务用奇数版本号
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.hbase.transaction;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codefollower.lealone.util.LatencyHistogram;
+
+/**
+ * 当前进程中事务相关的统计信息，包括提交延迟(微秒)、因冲突而中止的事务、
+ * Filter.validRead查询TransactionStatusTable的次数以及TimestampService分配的时间戳批次。
+ */
+public class TransactionMetrics {
+    private static final AtomicLong commitCount = new AtomicLong();
+    private static final AtomicLong commitNanos = new AtomicLong();
+    private static final LatencyHistogram commitLatency = new LatencyHistogram();
+    private static final AtomicLong conflictAborts = new AtomicLong();
+    private static final AtomicLong statusTableLookups = new AtomicLong();
+    private static final AtomicLong statusTableLookupNanos = new AtomicLong();
+    private static final AtomicLong timestampBatches = new AtomicLong();
+
+    private TransactionMetrics() {
+    }
+
+    public static void committed(long nanos) {
+        commitCount.incrementAndGet();
+        commitNanos.addAndGet(nanos);
+        commitLatency.add(nanos / 1000);
+    }
+
+    public static void conflictAborted() {
+        conflictAborts.incrementAndGet();
+    }
+
+    public static void statusTableLookup(long nanos) {
+        statusTableLookups.incrementAndGet();
+        statusTableLookupNanos.addAndGet(nanos);
+    }
+
+    public static void timestampBatchAdded() {
+        timestampBatches.incrementAndGet();
+    }
+
+    public static void addMetrics(Map<String, Object> metrics) {
+        long commits = commitCount.get();
+        metrics.put("hbase.commit.count", commits);
+        metrics.put("hbase.commit.avgMicros", commits == 0 ? 0 : commitNanos.get() / commits / 1000);
+        metrics.put("hbase.commit.p50Micros", commitLatency.getPercentile(0.5));
+        metrics.put("hbase.commit.p99Micros", commitLatency.getPercentile(0.99));
+        metrics.put("hbase.commit.conflictAborts", conflictAborts.get());
+        long lookups = statusTableLookups.get();
+        metrics.put("hbase.statusTable.lookups", lookups);
+        metrics.put("hbase.statusTable.avgMicros", lookups == 0 ? 0 : statusTableLookupNanos.get() / lookups / 1000);
+        metrics.put("hbase.timestamp.batches", timestampBatches.get());
+    }
+}
@@ -191,6 +191,9 @@ public class MVStore {
     private long lastStoredVersion;
     private int fileReadCount;
     private int fileWriteCount;
+    private int storeCount;
+    private long storeNanos;
+    private long lastStoreNanos;
     private int unsavedPageCount;
     private int maxUnsavedPages;
 
@@ -809,6 +812,7 @@ public class MVStore {
         if (file == null) {
             return version;
         }
+        long start = System.nanoTime();
         long time = getTime();
         lastStoreTime = time;
         if (temp) {
@@ -962,6 +966,9 @@ public class MVStore {
         currentStoreVersion = -1;
         metaChanged = false;
         lastStoredVersion = storeVersion;
+        lastStoreNanos = System.nanoTime() - start;
+        storeNanos += lastStoreNanos;
+        storeCount++;
         return version;
     }
 
@@ -1649,6 +1656,60 @@ public class MVStore {
         return fileReadCount;
     }
 
+    /**
+     * Get the number of chunks written since this store was opened.
+     *
+     * @return the number of store operations
+     */
+    public int getStoreCount() {
+        return storeCount;
+    }
+
+    /**
+     * Get the time spent writing chunks since this store was opened.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getStoreNanos() {
+        return storeNanos;
+    }
+
+    /**
+     * Get the time the last chunk took to write.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getLastStoreNanos() {
+        return lastStoreNanos;
+    }
+
+    /**
+     * Get the percentage of live data in all chunks. A low fill rate means
+     * compacting the store would free a lot of space.
+     *
+     * @return the fill rate (0 - 100), 100 if there are no chunks
+     */
+    public int getFillRate() {
+        long maxLengthSum = 0, maxLengthLiveSum = 0;
+        for (Chunk c : chunks.values()) {
+            maxLengthSum += c.maxLength;
+            maxLengthLiveSum += c.maxLengthLive;
+        }
+        if (maxLengthSum <= 0) {
+            return 100;
+        }
+        return (int) (100 * maxLengthLiveSum / maxLengthSum);
+    }
+
+    /**
+     * Get the page cache, or null if there is no cache.
+     *
+     * @return the cache
+     */
+    public CacheLongKeyLIRS<Page> getCache() {
+        return cache;
+    }
+
     /**
      * Get the file name, or null for in-memory stores.
      *
@@ -245,6 +245,46 @@ public class CacheLongKeyLIRS<V> {
         return x;
     }
 
+    /**
+     * Get the number of cache hits.
+     *
+     * @return the number of hits
+     */
+    public long getHits() {
+        long x = 0;
+        for (Segment<V> s : segments) {
+            x += s.hits;
+        }
+        return x;
+    }
+
+    /**
+     * Get the number of cache misses, including lookups of non-resident
+     * entries.
+     *
+     * @return the number of misses
+     */
+    public long getMisses() {
+        long x = 0;
+        for (Segment<V> s : segments) {
+            x += s.misses;
+        }
+        return x;
+    }
+
+    /**
+     * Get the number of resident entries that were evicted from the cache.
+     *
+     * @return the number of evictions
+     */
+    public long getEvictions() {
+        long x = 0;
+        for (Segment<V> s : segments) {
+            x += s.evictions;
+        }
+        return x;
+    }
+
     /**
      * Set the maximum memory this cache should use. This will not
      * immediately cause entries to get removed however; it will only change
@@ -490,6 +530,13 @@ public class CacheLongKeyLIRS<V> {
          */
         long usedMemory;
 
+        /**
+         * The number of cache hits and misses, and the number of evicted
+         * entries. The counters are not synchronized, so they are only
+         * approximate.
+         */
+        long hits, misses, evictions;
+
         /**
          * How many other item are to be moved to the top of the stack before
          * the current item is moved.
@@ -612,13 +659,16 @@ public class CacheLongKeyLIRS<V> {
             Entry<V> e = find(key, hash);
             if (e == null) {
                 // the entry was not found
+                misses++;
                 return null;
             }
             V value = e.value;
             if (value == null) {
                 // it was a non-resident entry
+                misses++;
                 return null;
             }
+            hits++;
             if (e.isHot()) {
                 if (e != stack.stackNext) {
                     if (stackMoveDistance == 0 || stackMoveCounter - e.topMove > stackMoveDistance) {
@@ -792,6 +842,7 @@ public class CacheLongKeyLIRS<V> {
             while (usedMemory > maxMemory && queueSize > 1) {
                 Entry<V> e = queue.queuePrev;
                 usedMemory -= e.memory;
+                evictions++;
                 removeFromQueue(e);
                 e.value = null;
                 e.memory = 0;
@@ -9,8 +9,8 @@ package com.codefollower.lealone.mvstore.dbobject;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.codefollower.lealone.api.DatabaseEventListener;
 import com.codefollower.lealone.command.ddl.Analyze;
@@ -30,6 +30,7 @@ import com.codefollower.lealone.dbobject.table.Column;
 import com.codefollower.lealone.dbobject.table.IndexColumn;
 import com.codefollower.lealone.dbobject.table.Table;
 import com.codefollower.lealone.dbobject.table.TableBase;
+import com.codefollower.lealone.engine.Database;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.message.DbException;
 import com.codefollower.lealone.message.Trace;
@@ -54,7 +55,8 @@ public class MVTable extends TableBase {
     private long lastModificationId;
     private long rowCount;
     private volatile Session lockExclusive;
-    private HashSet<Session> lockShared = New.hashSet();
+    private final Set<Session> lockShared = Collections.newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+    private final Object lockSync = new Object();
     private final Trace traceLock;
     private int changesSinceAnalyze;
     private int nextAnalyze;
@@ -119,21 +121,34 @@ public class MVTable extends TableBase {
         if (lockExclusive == session) {
             return;
         }
-        synchronized (database) {
+        Object sync = getLockSync();
+        synchronized (sync) {
             try {
-                doLock(session, lockMode, exclusive);
+                doLock(session, lockMode, exclusive, sync);
             } finally {
                 session.setWaitForLock(null);
             }
         }
     }
 
+    /**
+     * Get the object to synchronize on when locking this table. In
+     * multi-threaded mode, commands synchronize on their session, so each
+     * table can use its own lock object. Otherwise it is the database, because
+     * a waiting session must release the database while it waits.
+     *
+     * @return the lock object
+     */
+    private Object getLockSync() {
+        return database.isMultiThreaded() ? lockSync : database;
+    }
+
     public void rename(String newName) {
         super.rename(newName);
         primaryIndex.renameTable(newName);
     }
 
-    private void doLock(Session session, int lockMode, boolean exclusive) {
+    private void doLock(Session session, int lockMode, boolean exclusive, Object sync) {
         traceLock(session, exclusive, "requesting for");
         // don't get the current time unless necessary
         long max = 0;
@@ -212,7 +227,7 @@ public class MVTable extends TableBase {
                     sleep = 1;
                 }
                 waitForLock = true;
-                database.wait(sleep);
+                sync.wait(sleep);
             } catch (InterruptedException e) {
                 // ignore
             }
@@ -310,17 +325,18 @@ public class MVTable extends TableBase {
     public void unlock(Session s) {
         if (database != null) {
             traceLock(s, lockExclusive == s, "unlock");
-            if (lockExclusive == s) {
-                lockExclusive = null;
-            }
-            if (lockShared.size() > 0) {
-                lockShared.remove(s);
-            }
+            Object sync = getLockSync();
             // TODO lock: maybe we need we fifo-queue to make sure nobody
             // starves. check what other databases do
-            synchronized (database) {
+            synchronized (sync) {
+                if (lockExclusive == s) {
+                    lockExclusive = null;
+                }
+                if (lockShared.size() > 0) {
+                    lockShared.remove(s);
+                }
                 if (database.getSessionCount() > 1 && waitForLock) {
-                    database.notifyAll();
+                    sync.notifyAll();
                 }
             }
         }
@@ -486,9 +502,23 @@ public class MVTable extends TableBase {
         list.clear();
     }
 
+    private void setModified(Session session) {
+        lastModificationId = database.getNextModificationDataId();
+        ((MVSession) session).addChangedTable(this);
+    }
+
+    /**
+     * Called after a transaction that changed this table is committed or
+     * rolled back. Other sessions may now see different rows, so the results
+     * of earlier queries can't be reused.
+     */
+    public void transactionEnded() {
+        lastModificationId = database.getNextModificationDataId();
+    }
+
     @Override
     public void removeRow(Session session, Row row) {
-        lastModificationId = database.getNextModificationDataId();
+        setModified(session);
         Transaction t = getTransaction(session);
         long savepoint = t.setSavepoint();
         try {
@@ -506,7 +536,7 @@ public class MVTable extends TableBase {
 
     @Override
     public void truncate(Session session) {
-        lastModificationId = database.getNextModificationDataId();
+        setModified(session);
         for (int i = indexes.size() - 1; i >= 0; i--) {
             Index index = indexes.get(i);
             index.truncate(session);
@@ -517,7 +547,7 @@ public class MVTable extends TableBase {
 
     @Override
     public void addRow(Session session, Row row) {
-        lastModificationId = database.getNextModificationDataId();
+        setModified(session);
         Transaction t = getTransaction(session);
         long savepoint = t.setSavepoint();
         try {
@@ -608,12 +638,9 @@ public class MVTable extends TableBase {
     }
 
     public void removeChildrenAndResources(Session session) {
-        if (containsLargeObject) {
-            // unfortunately, the data is gone on rollback
-            truncate(session);
-            database.getLobStorage().removeAllForTable(getId());
-            database.lockMeta(session);
-        }
+        // TableBase removes the large objects and the meta data of the table,
+        // and then invalidates it
+        Database database = this.database;
         super.removeChildrenAndResources(session);
         // go backwards because database.removeIndex will call table.removeIndex
         while (indexes.size() > 1) {
@@ -631,10 +658,8 @@ public class MVTable extends TableBase {
             }
         }
         primaryIndex.remove(session);
-        database.removeMeta(session, getId());
         primaryIndex = null;
         close(session);
-        invalidate();
     }
 
     @Override
@@ -188,7 +188,7 @@ public class TransactionStore {
      *
      * @param transactionId the transaction id
      */
-    void prepare(Transaction t) {
+    synchronized void prepare(Transaction t) {
         storeTransaction(t);
         Object[] old = openTransactions.get(t.getId());
         Object[] v = { Transaction.STATUS_PREPARED, old[1] };
@@ -206,7 +206,7 @@ public class TransactionStore {
      * @param key the key
      * @param oldValue the old value
      */
-    void log(Transaction t, long logId, int opType, int mapId,
+    synchronized void log(Transaction t, long logId, int opType, int mapId,
             Object key, Object oldValue) {
         storeTransaction(t);
         long[] undoKey = { t.getId(), logId };
@@ -220,7 +220,7 @@ public class TransactionStore {
      * @param t the transaction
      * @param name the new name
      */
-    void setTransactionName(Transaction t, String name) {
+    synchronized void setTransactionName(Transaction t, String name) {
         storeTransaction(t);
         Object[] old = openTransactions.get(t.getId());
         Object[] v = { old[0], name };
@@ -233,7 +233,7 @@ public class TransactionStore {
      * @param t the transaction
      * @param maxLogId the last log id
      */
-    void commit(Transaction t, long maxLogId) {
+    synchronized void commit(Transaction t, long maxLogId) {
         if (store.isClosed()) {
             return;
         }
@@ -268,7 +268,7 @@ public class TransactionStore {
      * @param t the transaction
      * @param maxLogId the last log id
      */
-    void rollback(Transaction t, long maxLogId) {
+    synchronized void rollback(Transaction t, long maxLogId) {
         rollbackTo(t, maxLogId, 0);
         endTransaction(t);
     }
@@ -285,7 +285,7 @@ public class TransactionStore {
      * @param maxLogId the last log id
      * @param toLogId the log id to roll back to
      */
-    void rollbackTo(Transaction t, long maxLogId, long toLogId) {
+    synchronized void rollbackTo(Transaction t, long maxLogId, long toLogId) {
         for (long logId = maxLogId - 1; logId >= toLogId; logId--) {
             Object[] op = undoLog.get(new long[] {
                     t.getId(), logId });
@@ -0,0 +1,56 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.mvstore.engine;
+
+import com.codefollower.lealone.constant.ErrorCode;
+import com.codefollower.lealone.dbobject.User;
+import com.codefollower.lealone.engine.DatabaseEngine;
+import com.codefollower.lealone.engine.RegularDatabase;
+import com.codefollower.lealone.message.DbException;
+
+/**
+ * A database whose sessions support MVStore tables. The tables are created
+ * with ENGINE MVSTORE; the meta data is stored in the page store.
+ */
+public class MVDatabase extends RegularDatabase {
+    public MVDatabase(DatabaseEngine dbEngine) {
+        super(dbEngine);
+    }
+
+    @Override
+    protected MVSession createSystemSession(User user, int id) {
+        return new MVSession(this, user, id);
+    }
+
+    @Override
+    public synchronized MVSession createSession(User user) {
+        if (exclusiveSession != null) {
+            throw DbException.get(ErrorCode.DATABASE_IS_IN_EXCLUSIVE_MODE);
+        }
+        MVSession session = new MVSession(this, user, ++nextSessionId);
+        userSessions.add(session);
+        trace.info("connecting session #{0} to {1}", session.getId(), databaseName);
+        if (delayedCloser != null) {
+            delayedCloser.reset();
+            delayedCloser = null;
+        }
+        return session;
+    }
+}
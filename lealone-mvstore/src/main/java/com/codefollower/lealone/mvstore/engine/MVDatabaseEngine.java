@@ -0,0 +1,49 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.mvstore.engine;
+
+import com.codefollower.lealone.engine.DatabaseEngineManager;
+import com.codefollower.lealone.engine.RegularDatabaseEngine;
+
+/**
+ * A database engine whose sessions are {@link MVSession}s, which MVStore
+ * tables require.
+ */
+public class MVDatabaseEngine extends RegularDatabaseEngine {
+    public static final String NAME = "MVSTORE";
+    private static final MVDatabaseEngine INSTANCE = new MVDatabaseEngine();
+    static {
+        DatabaseEngineManager.registerDatabaseEngine(INSTANCE);
+    }
+
+    public static MVDatabaseEngine getInstance() {
+        return INSTANCE;
+    }
+
+    @Override
+    public MVDatabase createDatabase() {
+        return new MVDatabase(this);
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+}
@@ -19,18 +19,24 @@
  */
 package com.codefollower.lealone.mvstore.engine;
 
+import java.util.HashSet;
+
+import com.codefollower.lealone.command.Command;
 import com.codefollower.lealone.dbobject.User;
 import com.codefollower.lealone.dbobject.table.Table;
 import com.codefollower.lealone.engine.Database;
 import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.mvstore.dbobject.MVTable;
 import com.codefollower.lealone.mvstore.dbobject.TransactionStore;
 import com.codefollower.lealone.mvstore.dbobject.TransactionStore.Transaction;
 import com.codefollower.lealone.result.Row;
+import com.codefollower.lealone.util.New;
 
 public class MVSession extends Session {
 
     private Transaction transaction;
     private long startStatement = -1;
+    private final HashSet<MVTable> changedTables = New.hashSet();
 
     public MVSession(Database database, User user, int id) {
         super(database, user, id);
@@ -44,6 +50,15 @@ public class MVSession extends Session {
         super.log(table, operation, row);
     }
 
+    @Override
+    public void setCurrentCommand(Command command) {
+        super.setCurrentCommand(command);
+        if (command == null) {
+            // the next statement sees the changes of this statement
+            startStatement = -1;
+        }
+    }
+
     @Override
     public void begin() {
         super.begin();
@@ -55,6 +70,7 @@ public class MVSession extends Session {
         if (transaction != null) {
             transaction.commit();
             transaction = null;
+            endTransaction();
         }
         super.commit(ddl);
     }
@@ -64,10 +80,27 @@ public class MVSession extends Session {
         if (transaction != null) {
             transaction.rollback();
             transaction = null;
+            endTransaction();
         }
         super.rollback();
     }
 
+    private void endTransaction() {
+        for (MVTable table : changedTables) {
+            table.transactionEnded();
+        }
+        changedTables.clear();
+    }
+
+    /**
+     * Remember that the current transaction changed the table.
+     *
+     * @param table the table
+     */
+    public void addChangedTable(MVTable table) {
+        changedTables.add(table);
+    }
+
     /**
      * Get the transaction to use for this session.
      *
@@ -25,6 +25,7 @@ import java.io.OutputStream;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.Map;
 import java.util.Properties;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
@@ -61,6 +62,7 @@ import com.codefollower.lealone.store.fs.FileUtils;
 import com.codefollower.lealone.tools.DeleteDbFiles;
 import com.codefollower.lealone.tools.Server;
 import com.codefollower.lealone.util.BitField;
+import com.codefollower.lealone.util.Cache;
 import com.codefollower.lealone.util.IOUtils;
 import com.codefollower.lealone.util.MathUtils;
 import com.codefollower.lealone.util.NetUtils;
@@ -109,6 +111,28 @@ public class RegularDatabase extends Database {
         mt.add(rows, "info.CACHE_SIZE", "" + pageStore.getCache().getMemory());
     }
 
+    @Override
+    protected void addMetrics(Map<String, Object> metrics) {
+        super.addMetrics(metrics);
+        PageStore store = pageStore;
+        if (store == null) {
+            return;
+        }
+        metrics.put("file.reads", store.getReadCount());
+        metrics.put("file.writes", store.getWriteCount());
+        Cache cache = store.getCache();
+        long hits = cache.getHits(), misses = cache.getMisses();
+        metrics.put("cache.hits", hits);
+        metrics.put("cache.misses", misses);
+        metrics.put("cache.hitRatio", hits + misses == 0 ? 0d : (double) hits / (hits + misses));
+        metrics.put("cache.evictions", cache.getEvictions());
+        metrics.put("cache.sizeKB", cache.getMemory());
+        metrics.put("cache.maxSizeKB", cache.getMaxMemory());
+        metrics.put("checkpoint.count", store.getCheckpointCount());
+        metrics.put("checkpoint.totalMillis", store.getCheckpointNanos() / 1000000);
+        metrics.put("checkpoint.lastMillis", store.getLastCheckpointNanos() / 1000000);
+    }
+
     public void statisticsStart() {
         pageStore.statisticsStart();
     }
@@ -379,11 +403,19 @@ public class RegularDatabase extends Database {
             return;
         }
         if (pageStore != null) {
-            pageStore.commit(session);
+            session.setCommitSyncId(pageStore.commit(session));
         }
         session.setAllCommitted();
     }
 
+    @Override
+    public void waitForCommitSync(long commitId) {
+        PageStore store = pageStore;
+        if (store != null) {
+            store.waitForCommitSync(commitId);
+        }
+    }
+
     /**
      * Flush all pending changes to the transaction log.
      */
@@ -418,6 +450,8 @@ public class RegularDatabase extends Database {
         }
         traceSystem.setLevelFile(traceLevelFile);
         traceSystem.setLevelSystemOut(traceLevelSystemOut);
+        traceSystem.setRotateInterval(getSettings().traceRotateInterval * 1000L);
+        traceSystem.setBufferSize(getSettings().traceBufferSize);
         trace = traceSystem.getTrace(Trace.DATABASE);
         trace.info("opening {0} (build {1})", databaseName, Constants.BUILD_ID);
         if (autoServerMode) {
@@ -21,7 +21,10 @@ import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.dbobject.table.Table;
 import com.codefollower.lealone.engine.ConnectionInfo;
 import com.codefollower.lealone.engine.Database;
+import com.codefollower.lealone.engine.QueryStatisticsData;
 import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.message.QueryTrace;
+import com.codefollower.lealone.result.ResultCache;
 import com.codefollower.lealone.util.New;
 
 /**
@@ -157,6 +160,71 @@ public class DatabaseInfo implements DatabaseInfoMBean {
         return database.getCacheSize();
     }
 
+    public long getCacheHitCount() {
+        return getMetric("cache.hits");
+    }
+
+    public long getCacheMissCount() {
+        return getMetric("cache.misses");
+    }
+
+    public long getCacheEvictionCount() {
+        return getMetric("cache.evictions");
+    }
+
+    public long getCheckpointCount() {
+        return getMetric("checkpoint.count");
+    }
+
+    private long getMetric(String name) {
+        Object value = database.getMetrics().get(name);
+        return value instanceof Number ? ((Number) value).longValue() : 0;
+    }
+
+    public int getResultCacheSize() {
+        ResultCache cache = database.getResultCache();
+        return cache == null ? 0 : cache.getMemoryKB();
+    }
+
+    public int getResultCacheSizeMax() {
+        ResultCache cache = database.getResultCache();
+        return cache == null ? 0 : cache.getMaxMemoryKB();
+    }
+
+    public void setResultCacheSizeMax(int kb) {
+        ResultCache cache = database.getResultCache();
+        if (cache != null) {
+            cache.setMaxMemoryKB(kb);
+        }
+    }
+
+    public int getResultCacheEntryCount() {
+        ResultCache cache = database.getResultCache();
+        return cache == null ? 0 : cache.getEntryCount();
+    }
+
+    public long getResultCacheHitCount() {
+        ResultCache cache = database.getResultCache();
+        return cache == null ? 0 : cache.getHits();
+    }
+
+    public long getResultCacheMissCount() {
+        ResultCache cache = database.getResultCache();
+        return cache == null ? 0 : cache.getMisses();
+    }
+
+    public long getResultCacheEvictionCount() {
+        ResultCache cache = database.getResultCache();
+        return cache == null ? 0 : cache.getEvictions();
+    }
+
+    public void clearResultCache() {
+        ResultCache cache = database.getResultCache();
+        if (cache != null) {
+            cache.clear();
+        }
+    }
+
     public String getVersion() {
         return Constants.getFullVersion();
     }
@@ -169,6 +237,91 @@ public class DatabaseInfo implements DatabaseInfoMBean {
         return buff.toString();
     }
 
+    public String listMetrics() {
+        StringBuilder buff = new StringBuilder();
+        for (Map.Entry<String, Object> e : database.getMetrics().entrySet()) {
+            buff.append(e.getKey()).append(" = ").append(e.getValue()).append('\n');
+        }
+        return buff.toString();
+    }
+
+    public boolean isQueryStatistics() {
+        return database.getQueryStatisticsData() != null;
+    }
+
+    public void setQueryStatistics(boolean b) {
+        database.setQueryStatistics(b);
+    }
+
+    public String listQueryStatistics() {
+        StringBuilder buff = new StringBuilder();
+        QueryStatisticsData statistics = database.getQueryStatisticsData();
+        if (statistics != null) {
+            for (QueryStatisticsData.QueryEntry e : statistics.getEntries()) {
+                long count = e.getExecutionCount();
+                buff.append("count: ").append(count).
+                    append(" total ms: ").append(e.getCumulativeExecutionNanos() / 1000000).
+                    append(" avg ms: ").append(count == 0 ? 0 : e.getCumulativeExecutionNanos() / count / 1000000d).
+                    append(" p99 ms: ").append(e.getExecutionNanos(0.99) / 1000000d).
+                    append(" rows read: ").append(e.getRowsRead()).
+                    append(" rows: ").append(e.getRows());
+                if (e.getRegions() > 0) {
+                    buff.append(" regions: ").append(e.getRegions()).
+                        append(" remote calls: ").append(e.getRemoteCalls());
+                }
+                buff.append('\n').append(e.getSQL()).append("\n\n");
+            }
+        }
+        return buff.toString();
+    }
+
+    public void resetQueryStatistics() {
+        QueryStatisticsData statistics = database.getQueryStatisticsData();
+        if (statistics != null) {
+            statistics.reset();
+        }
+    }
+
+    public int getQueryTraceSampling() {
+        return database.getQueryTraceSampling();
+    }
+
+    public void setQueryTraceSampling(int sampling) {
+        database.setQueryTraceSampling(sampling);
+    }
+
+    public String listQueryTraces() {
+        StringBuilder buff = new StringBuilder();
+        for (QueryTrace trace : database.getQueryTraces()) {
+            buff.append(trace).append('\n');
+        }
+        return buff.toString();
+    }
+
+    public int getProfilerInterval() {
+        return database.getProfiler().getInterval();
+    }
+
+    public void setProfilerInterval(int interval) {
+        database.getProfiler().setInterval(interval);
+    }
+
+    public int getProfilerThreshold() {
+        return database.getProfiler().getThreshold();
+    }
+
+    public void setProfilerThreshold(int threshold) {
+        database.getProfiler().setThreshold(threshold);
+    }
+
+    public String listProfilerStacks() {
+        return database.getProfiler().getFoldedStacks();
+    }
+
+    public void resetProfiler() {
+        database.getProfiler().reset();
+    }
+
     public String listSessions() {
         StringBuilder buff = new StringBuilder();
         for (Session session : database.getSessions(false)) {
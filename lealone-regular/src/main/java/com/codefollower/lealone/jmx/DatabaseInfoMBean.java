@@ -126,6 +126,99 @@ public interface DatabaseInfoMBean {
      */
     int getCacheSize();
 
+    /**
+     * The number of page cache hits since the database was opened.
+     * @h2.resource
+     *
+     * @return the number of hits
+     */
+    long getCacheHitCount();
+
+    /**
+     * The number of page cache misses since the database was opened.
+     * @h2.resource
+     *
+     * @return the number of misses
+     */
+    long getCacheMissCount();
+
+    /**
+     * The number of pages removed from the cache to free memory.
+     * @h2.resource
+     *
+     * @return the number of evicted pages
+     */
+    long getCacheEvictionCount();
+
+    /**
+     * The number of checkpoints since the database was opened.
+     * @h2.resource
+     *
+     * @return the number of checkpoints
+     */
+    long getCheckpointCount();
+
+    /**
+     * The memory used by the result cache in KB (0 if the cache is disabled).
+     * @h2.resource
+     *
+     * @return the current size
+     */
+    int getResultCacheSize();
+
+    /**
+     * The maximum memory used by the result cache in KB (0 if the cache is
+     * disabled).
+     * @h2.resource
+     *
+     * @return the maximum size
+     */
+    int getResultCacheSizeMax();
+
+    /**
+     * Change the maximum memory used by the result cache.
+     *
+     * @param kb the cache size in KB.
+     */
+    void setResultCacheSizeMax(int kb);
+
+    /**
+     * The number of results in the result cache.
+     * @h2.resource
+     *
+     * @return the number of cached results
+     */
+    int getResultCacheEntryCount();
+
+    /**
+     * The number of queries that were answered from the result cache.
+     * @h2.resource
+     *
+     * @return the hit count
+     */
+    long getResultCacheHitCount();
+
+    /**
+     * The number of cacheable queries that had to be executed.
+     * @h2.resource
+     *
+     * @return the miss count
+     */
+    long getResultCacheMissCount();
+
+    /**
+     * The number of results removed from the result cache to free memory.
+     * @h2.resource
+     *
+     * @return the eviction count
+     */
+    long getResultCacheEvictionCount();
+
+    /**
+     * Remove all results from the result cache.
+     */
+    void clearResultCache();
+
     /**
      * The database version.
      * @h2.resource
@@ -157,6 +250,116 @@ public interface DatabaseInfoMBean {
      */
     String listSettings();
 
+    /**
+     * List all metrics of the database: caches, file operations,
+     * checkpoints, TCP servers and distributed transactions.
+     * @h2.resource
+     *
+     * @return the metrics
+     */
+    String listMetrics();
+
+    /**
+     * Are statistics of the executed statements collected?
+     * @h2.resource
+     *
+     * @return true if they are collected
+     */
+    boolean isQueryStatistics();
+
+    /**
+     * Start or stop collecting statistics of the executed statements.
+     *
+     * @param b true to collect statistics
+     */
+    void setQueryStatistics(boolean b);
+
+    /**
+     * List the statistics of the executed statements, the statements with the
+     * highest cumulative execution time first.
+     * @h2.resource
+     *
+     * @return the statistics
+     */
+    String listQueryStatistics();
+
+    /**
+     * Remove the collected statistics of the executed statements.
+     */
+    void resetQueryStatistics();
+
+    /**
+     * One out of this number of statements is traced, 0 if tracing is
+     * disabled.
+     * @h2.resource
+     *
+     * @return the sampling rate
+     */
+    int getQueryTraceSampling();
+
+    /**
+     * Set how often statements are traced.
+     *
+     * @param sampling 0 to disable tracing, n to trace one out of n statements
+     */
+    void setQueryTraceSampling(int sampling);
+
+    /**
+     * List the spans of the most recent traced statements.
+     * @h2.resource
+     *
+     * @return the traces
+     */
+    String listQueryTraces();
+
+    /**
+     * The interval in milliseconds of the continuous statement sampling, 0 if
+     * disabled.
+     * @h2.resource
+     *
+     * @return the interval
+     */
+    int getProfilerInterval();
+
+    /**
+     * Set the interval of the continuous statement sampling.
+     *
+     * @param interval the interval in milliseconds, 0 to disable
+     */
+    void setProfilerInterval(int interval);
+
+    /**
+     * The execution time in milliseconds after which a statement is sampled
+     * at a high rate, 0 if disabled.
+     * @h2.resource
+     *
+     * @return the threshold
+     */
+    int getProfilerThreshold();
+
+    /**
+     * Set the execution time after which a statement is sampled at a high
+     * rate.
+     *
+     * @param threshold the time in milliseconds, 0 to disable
+     */
+    void setProfilerThreshold(int threshold);
+
+    /**
+     * List the sampled statement stacks in the folded format of flame graph
+     * tools.
+     * @h2.resource
+     *
+     * @return the stacks
+     */
+    String listProfilerStacks();
+
+    /**
+     * Remove the sampled statement stacks.
+     * @h2.resource
+     */
+    void resetProfiler();
+
     /**
      * List sessions, including the queries that are in
      * progress, and locked tables.
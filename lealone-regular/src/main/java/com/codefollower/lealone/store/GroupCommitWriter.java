@@ -0,0 +1,172 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.store;
+
+import com.codefollower.lealone.Driver;
+import com.codefollower.lealone.message.DbException;
+
+/**
+ * The background thread that syncs the transaction log for group commit.
+ * Committing sessions append their commit record to the log and then wait
+ * until a sync covers it. The thread flushes the log and syncs the file for
+ * all commit records written so far, so that commits that arrive while a
+ * sync is running are made durable together by the next sync. If a sync
+ * fails, the commits it covers get the exception, and the thread keeps
+ * running for the commits that follow.
+ */
+class GroupCommitWriter implements Runnable {
+
+    private final PageStore store;
+    private Thread thread;
+
+    /**
+     * The highest commit id a session is waiting for.
+     */
+    private long requested;
+
+    /**
+     * All commits up to this id are synced.
+     */
+    private long synced;
+
+    /**
+     * The highest commit id that was covered by a failed sync, and the
+     * exception of that sync. Commits up to this id that are not synced fail.
+     */
+    private long failed;
+    private DbException error;
+
+    private boolean syncing;
+    private boolean stop;
+
+    private GroupCommitWriter(PageStore store) {
+        this.store = store;
+    }
+
+    /**
+     * Create and start a new group commit thread for the given page store.
+     *
+     * @param store the page store
+     * @param name the database name
+     * @return the writer
+     */
+    static GroupCommitWriter start(PageStore store, String name) {
+        GroupCommitWriter writer = new GroupCommitWriter(store);
+        writer.thread = new Thread(writer, "H2 Group Commit " + name);
+        Driver.setThreadContextClassLoader(writer.thread);
+        writer.thread.setDaemon(true);
+        writer.thread.start();
+        return writer;
+    }
+
+    /**
+     * Wait until the transaction log is synced up to the given commit.
+     *
+     * @param commitId the commit id
+     */
+    synchronized void waitForSync(long commitId) {
+        if (commitId > requested) {
+            requested = commitId;
+            notifyAll();
+        }
+        while (synced < commitId && failed < commitId && !stop) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+        if (synced < commitId && failed >= commitId) {
+            throw error;
+        }
+    }
+
+    /**
+     * Stop the thread. If a sync is running, wait until it is finished, so
+     * that the file can be closed afterwards. Must be called while
+     * synchronized on the page store.
+     */
+    synchronized void stopThread() {
+        stop = true;
+        notifyAll();
+        while (syncing) {
+            try {
+                wait();
+            } catch (InterruptedException e) {
+                // ignore
+            }
+        }
+    }
+
+    public void run() {
+        while (true) {
+            synchronized (this) {
+                while (!stop && requested <= Math.max(synced, failed)) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        // ignore
+                    }
+                }
+                if (stop) {
+                    break;
+                }
+            }
+            long target = 0;
+            try {
+                FileStore file;
+                synchronized (store) {
+                    target = store.getLastCommitId();
+                    file = store.flushLogForSync();
+                    synchronized (this) {
+                        if (stop || file == null) {
+                            break;
+                        }
+                        // from now on, closing the store waits for the sync
+                        syncing = true;
+                    }
+                }
+                try {
+                    file.sync();
+                    synchronized (this) {
+                        if (target > synced) {
+                            synced = target;
+                        }
+                    }
+                } finally {
+                    synchronized (this) {
+                        syncing = false;
+                        notifyAll();
+                    }
+                }
+            } catch (Throwable e) {
+                DbException d = DbException.convert(e);
+                store.getTrace().error(d, "group commit");
+                synchronized (this) {
+                    // only the commits of this sync fail
+                    failed = Math.max(failed, target);
+                    error = d;
+                    notifyAll();
+                }
+            }
+        }
+    }
+
+}
@@ -141,6 +141,7 @@ public class PageStore implements CacheWriter {
     private int pageSize = Constants.DEFAULT_PAGE_SIZE;
     private int pageSizeShift;
     private long writeCountBase, writeCount, readCount;
+    private long checkpointCount, checkpointNanos, lastCheckpointNanos;
     private int logKey, logFirstTrunkPage, logFirstDataPage;
     private final Cache cache;
     private int freeListPagesPerList;
@@ -203,6 +204,8 @@ public class PageStore implements CacheWriter {
     private long logSizeBase;
     private HashMap<String, Integer> statistics;
     private int logMode = LOG_MODE_SYNC;
+    private GroupCommitWriter groupCommit;
+    private long lastCommitId;
     private boolean lockFile;
     private boolean readMode;
     private int backupLevel;
@@ -428,6 +431,7 @@ public class PageStore implements CacheWriter {
             return;
         }
         database.checkPowerOff();
+        long start = System.nanoTime();
         writeIndexRowCounts();
 
         log.checkpoint();
@@ -465,6 +469,9 @@ public class PageStore implements CacheWriter {
                 freed.set(i);
             }
         }
+        lastCheckpointNanos = System.nanoTime() - start;
+        checkpointNanos += lastCheckpointNanos;
+        checkpointCount++;
     }
 
     /**
@@ -971,6 +978,10 @@ public class PageStore implements CacheWriter {
      */
     public synchronized void close() {
         trace.debug("close");
+        if (groupCommit != null) {
+            groupCommit.stopThread();
+            groupCommit = null;
+        }
         if (log != null) {
             log.close();
             log = null;
@@ -1431,33 +1442,79 @@ public class PageStore implements CacheWriter {
      * Mark a committed transaction.
      *
      * @param session the session
+     * @return the commit id to wait for until the commit is durable (see
+     *         {@link #waitForCommitSync(long)}), or 0 if group commit is
+     *         not used
      */
-    public synchronized void commit(Session session) {
+    public synchronized long commit(Session session) {
         checkOpen();
         openForWriting();
         log.commit(session.getId());
+        long commitId = 0;
+        if (logMode != LOG_MODE_OFF && database.getSettings().groupCommit) {
+            if (groupCommit == null) {
+                groupCommit = GroupCommitWriter.start(this, database.getShortName());
+            }
+            commitId = ++lastCommitId;
+        }
         long size = log.getSize();
         if (size - logSizeBase > maxLogSize) {
             int firstSection = log.getLogFirstSectionId();
             checkpoint();
             if (ignoreBigLog) {
-                return;
+                return commitId;
             }
             int newSection = log.getLogSectionId();
             if (newSection - firstSection <= 2) {
                 // one section is always kept, and checkpoint
                 // advances two sections each time it is called
-                return;
+                return commitId;
             }
             long newSize = log.getSize();
             if (newSize < size || size < maxLogSize) {
                 ignoreBigLog = false;
-                return;
+                return commitId;
             }
             ignoreBigLog = true;
             trace.error(null, "Transaction log could not be truncated; size: " + (newSize / 1024 / 1024) + " MB");
             logSizeBase = log.getSize();
         }
+        return commitId;
+    }
+
+    /**
+     * Wait until the transaction log is synced up to the given commit. This
+     * method must be called without holding any lock, so that the commits of
+     * other sessions can be synced together with this one.
+     *
+     * @param commitId the commit id returned by {@link #commit(Session)}
+     */
+    public void waitForCommitSync(long commitId) {
+        GroupCommitWriter writer;
+        synchronized (this) {
+            writer = groupCommit;
+        }
+        if (writer != null) {
+            writer.waitForSync(commitId);
+        }
+    }
+
+    /**
+     * Flush the transaction log, so that the file can be synced outside of
+     * the lock on this object.
+     *
+     * @return the file, or null if the store is closed
+     */
+    synchronized FileStore flushLogForSync() {
+        if (file == null || log == null) {
+            return null;
+        }
+        log.flush();
+        return file;
+    }
+
+    synchronized long getLastCommitId() {
+        return lastCommitId;
     }
 
     /**
@@ -1878,6 +1935,33 @@ public class PageStore implements CacheWriter {
         return readCount;
     }
 
+    /**
+     * Get the number of checkpoints since the database was opened.
+     *
+     * @return the checkpoint count
+     */
+    public long getCheckpointCount() {
+        return checkpointCount;
+    }
+
+    /**
+     * Get the time spent in checkpoints since the database was opened.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getCheckpointNanos() {
+        return checkpointNanos;
+    }
+
+    /**
+     * Get the time the last checkpoint took.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getLastCheckpointNanos() {
+        return lastCheckpointNanos;
+    }
+
     /**
      * A table is truncated.
      *
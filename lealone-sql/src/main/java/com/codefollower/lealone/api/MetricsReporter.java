@@ -0,0 +1,40 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.api;
+
+import java.util.SortedMap;
+
+/**
+ * A class that implements this interface receives the metrics of a database
+ * periodically, for example to forward them to a monitoring system. The class
+ * is registered with the database setting METRICS_REPORTER, the interval is
+ * set with METRICS_REPORT_INTERVAL.
+ */
+public interface MetricsReporter {
+
+    /**
+     * Report the current metrics. This method is called from a background
+     * thread.
+     *
+     * @param databaseName the database name
+     * @param metrics the metrics, sorted by name
+     */
+    void report(String databaseName, SortedMap<String, Object> metrics);
+}
@@ -12,9 +12,11 @@ import com.codefollower.lealone.command.CommandInterface;
 import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.constant.ErrorCode;
 import com.codefollower.lealone.engine.Database;
+import com.codefollower.lealone.engine.QueryStatisticsData;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.expression.ParameterInterface;
 import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.message.QueryTrace;
 import com.codefollower.lealone.message.Trace;
 import com.codefollower.lealone.result.ResultInterface;
 import com.codefollower.lealone.transaction.Transaction;
@@ -28,7 +30,7 @@ public abstract class Command implements CommandInterface {
     /**
      * The session.
      */
-    protected final Session session;
+    protected Session session;
 
     /**
      * The last start time.
@@ -51,6 +53,25 @@ public abstract class Command implements CommandInterface {
     protected int fetchSize;
     private Transaction transaction;
 
+    /**
+     * The key in the shared command cache, or null if this command is not shared.
+     */
+    String sharedCacheKey;
+
+    /**
+     * Whether this command is currently idle in the shared command cache.
+     */
+    boolean sharedCacheIdle;
+
+    /**
+     * The time used to parse and to prepare this command, in nanoseconds. It
+     * is added to the query statistics with the first execution.
+     */
+    private long parseTime, prepareTime;
+
+    private String statisticsKey;
+    private boolean recordStatistics = true;
+
     protected Command(Session session, String sql) {
         this.session = session;
         this.sql = sql;
@@ -179,10 +200,37 @@ public abstract class Command implements CommandInterface {
      * @return the result set
      */
     public ResultInterface executeQuery(int maxrows, boolean scrollable) {
+        QueryTrace queryTrace = startQueryTrace();
+        try {
+            QueryStatisticsData statistics = session.getDatabase().getQueryStatisticsData();
+            long start = 0, rowsRead = 0;
+            if (statistics != null && recordStatistics) {
+                start = System.nanoTime();
+                rowsRead = session.getRowsRead();
+            }
+            ResultInterface result;
+            try {
+                result = executeQueryLocked(maxrows, scrollable);
+            } finally {
+                // the auto commit of a query may have committed changes, for
+                // example of a function, that need to be durable as well
+                waitForCommitSync();
+            }
+            if (statistics != null && recordStatistics) {
+                recordStatistics(statistics, start, session.getRowsRead() - rowsRead,
+                        Math.max(0, result.getRowCount()), 0, 0);
+            }
+            return result;
+        } finally {
+            endQueryTrace(queryTrace);
+        }
+    }
+
+    private ResultInterface executeQueryLocked(int maxrows, boolean scrollable) {
         startTime = 0;
         long start = 0;
         Database database = session.getDatabase();
-        Object sync = database.isMultiThreaded() ? (Object) session : (Object) database;
+        Object sync = getSync(database);
         session.waitIfExclusiveModeEnabled();
         boolean writing = !isReadOnly();
         if (writing) {
@@ -198,7 +246,7 @@ public abstract class Command implements CommandInterface {
                     try {
                         return query(maxrows);
                     } catch (DbException e) {
-                        start = filterConcurrentUpdate(e, start);
+                        start = filterConcurrentUpdate(e, start, sync);
                     } catch (Throwable e) {
                         throw DbException.convert(e);
                     }
@@ -217,9 +265,127 @@ public abstract class Command implements CommandInterface {
     }
 
     public int executeUpdate() {
+        QueryTrace queryTrace = startQueryTrace();
+        try {
+            QueryStatisticsData statistics = recordStatistics ? session.getDatabase().getQueryStatisticsData() : null;
+            long start = 0, rowsRead = 0;
+            if (statistics != null) {
+                start = System.nanoTime();
+                rowsRead = session.getRowsRead();
+            }
+            int updateCount;
+            try {
+                updateCount = executeUpdateLocked();
+            } finally {
+                // wait outside of the lock, so that the commits of other sessions
+                // can be synced together with the commit of this session
+                waitForCommitSync();
+            }
+            if (statistics != null) {
+                recordStatistics(statistics, start, session.getRowsRead() - rowsRead, updateCount, 0, 0);
+            }
+            return updateCount;
+        } finally {
+            endQueryTrace(queryTrace);
+        }
+    }
+
+    private void waitForCommitSync() {
+        QueryTrace queryTrace = session.getQueryTrace();
+        if (queryTrace == null) {
+            session.waitForCommitSync();
+            return;
+        }
+        long start = System.nanoTime();
+        session.waitForCommitSync();
+        queryTrace.addSpan(session.getQueryTraceSpan(), "commit sync", start, System.nanoTime() - start);
+    }
+
+    /**
+     * Start tracing this execution if it is a top level statement that is
+     * sampled. Statements executed by a remote server for a traced statement
+     * already have a trace.
+     *
+     * @return the new trace, or null if this execution is not traced by this
+     *         command
+     */
+    protected QueryTrace startQueryTrace() {
+        if (!recordStatistics || session.getQueryTrace() != null || !session.getDatabase().isQueryTraceSampled()) {
+            return null;
+        }
+        QueryTrace queryTrace = new QueryTrace(QueryTrace.nextId(), sql, isQuery() ? "query" : "update");
+        session.setQueryTrace(queryTrace, queryTrace.getRoot());
+        return queryTrace;
+    }
+
+    /**
+     * End the trace started by {@link #startQueryTrace()} and keep it in the
+     * database.
+     *
+     * @param queryTrace the trace, or null
+     */
+    protected void endQueryTrace(QueryTrace queryTrace) {
+        if (queryTrace != null) {
+            queryTrace.end();
+            session.setQueryTrace(null, null);
+            session.getDatabase().addQueryTrace(queryTrace);
+        }
+    }
+
+    /**
+     * Add an execution of this command to the query statistics.
+     *
+     * @param statistics the statistics
+     * @param start the start time of the execution (System.nanoTime)
+     * @param rowsRead the number of rows read from tables
+     * @param rows the number of rows returned or updated
+     * @param regions the number of regions the command was sent to
+     * @param remoteCalls the number of calls to other servers
+     */
+    protected void recordStatistics(QueryStatisticsData statistics, long start, long rowsRead, long rows,
+            int regions, int remoteCalls) {
+        long time = System.nanoTime() - start;
+        if (statisticsKey == null) {
+            statisticsKey = QueryStatisticsData.normalize(sql);
+        }
+        statistics.record(statisticsKey, parseTime, prepareTime, time, rowsRead, rows, regions, remoteCalls);
+        parseTime = prepareTime = 0;
+    }
+
+    /**
+     * Set the time used to parse and to prepare this command.
+     *
+     * @param parseTime the parse time in nanoseconds
+     * @param prepareTime the prepare time in nanoseconds
+     */
+    public void setPrepareTime(long parseTime, long prepareTime) {
+        this.parseTime = parseTime;
+        this.prepareTime = prepareTime;
+    }
+
+    public long getParseTime() {
+        return parseTime;
+    }
+
+    public long getPrepareTime() {
+        return prepareTime;
+    }
+
+    /**
+     * Set whether executions of this command are added to the query
+     * statistics. This is disabled for commands that are part of the execution
+     * of another command.
+     *
+     * @param b the new value
+     */
+    public void setRecordStatistics(boolean b) {
+        recordStatistics = b;
+    }
+
+    private int executeUpdateLocked() {
         long start = 0;
         Database database = session.getDatabase();
-        Object sync = database.isMultiThreaded() ? (Object) session : (Object) database;
+        Object sync = getSync(database);
         session.waitIfExclusiveModeEnabled();
         boolean callStop = true;
         boolean writing = !isReadOnly();
@@ -237,7 +403,7 @@ public abstract class Command implements CommandInterface {
                     try {
                         return update();
                     } catch (DbException e) {
-                        start = filterConcurrentUpdate(e, start);
+                        start = filterConcurrentUpdate(e, start, sync);
                     } catch (Throwable e) {
                         throw DbException.convert(e);
                     }
@@ -275,7 +441,34 @@ public abstract class Command implements CommandInterface {
         }
     }
 
-    private long filterConcurrentUpdate(DbException e, long start) {
+    /**
+     * Get the object to synchronize on while this command is executed. In
+     * multi-threaded mode, and for queries that only read tables that support
+     * concurrent reads if the setting CONCURRENT_READS is enabled, this is the
+     * session, so that such statements of different sessions run in parallel.
+     * Otherwise it is the database.
+     *
+     * @param database the database
+     * @return the object to synchronize on
+     */
+    private Object getSync(Database database) {
+        if (database.isMultiThreaded() || database.getSettings().concurrentReads && isConcurrentReadable()) {
+            return session;
+        }
+        return database;
+    }
+
+    /**
+     * Check if this command only reads tables that can be read concurrently
+     * with statements of other sessions.
+     *
+     * @return true if it does
+     */
+    protected boolean isConcurrentReadable() {
+        return false;
+    }
+
+    private long filterConcurrentUpdate(DbException e, long start, Object sync) {
         if (e.getErrorCode() != ErrorCode.CONCURRENT_UPDATE_1) {
             throw e;
         }
@@ -287,7 +480,7 @@ public abstract class Command implements CommandInterface {
         int sleep = 1 + MathUtils.randomInt(10);
         while (true) {
             try {
-                if (database.isMultiThreaded()) {
+                if (sync != database) {
                     Thread.sleep(sleep);
                 } else {
                     database.wait(sleep);
@@ -305,6 +498,23 @@ public abstract class Command implements CommandInterface {
 
     public void close() {
         canReuse = true;
+        if (sharedCacheKey != null && !session.isClosed()) {
+            SharedCommandCache cache = session.getDatabase().getSharedCommandCache();
+            if (cache != null) {
+                cache.release(this);
+            }
+        }
+    }
+
+    /**
+     * Bind this idle command to another session.
+     *
+     * @param session the new session
+     */
+    void setSession(Session session) {
+        this.session = session;
+        cancel = false;
+        transaction = null;
     }
 
     public void cancel() {
@@ -9,6 +9,7 @@ package com.codefollower.lealone.command;
 import java.util.ArrayList;
 
 import com.codefollower.lealone.api.DatabaseEventListener;
+import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.expression.Parameter;
 import com.codefollower.lealone.expression.ParameterInterface;
 import com.codefollower.lealone.result.ResultInterface;
@@ -24,6 +25,8 @@ class CommandContainer extends Command {
     private Prepared prepared;
     private boolean readOnlyKnown;
     private boolean readOnly;
+    private Prepared concurrentReadableChecked;
+    private boolean concurrentReadable;
 
     CommandContainer(Parser parser, String sql, Prepared prepared) {
         super(parser, sql);
@@ -43,6 +46,12 @@ class CommandContainer extends Command {
         return prepared.isQuery();
     }
 
+    @Override
+    void setSession(Session session) {
+        super.setSession(session);
+        prepared.setSession(session);
+    }
+
     private void recompileIfRequired() {
         if (prepared.needRecompile()) {
             // TODO test with 'always recompile'
@@ -98,6 +107,18 @@ class CommandContainer extends Command {
         return readOnly;
     }
 
+    @Override
+    protected boolean isConcurrentReadable() {
+        if (prepared.needRecompile()) {
+            return false;
+        }
+        if (concurrentReadableChecked != prepared) {
+            concurrentReadable = prepared.isConcurrentReadable();
+            concurrentReadableChecked = prepared;
+        }
+        return concurrentReadable;
+    }
+
     public ResultInterface queryMeta() {
         return prepared.queryMeta();
     }
@@ -58,6 +58,7 @@ import com.codefollower.lealone.command.ddl.DropUserDataType;
 import com.codefollower.lealone.command.ddl.DropView;
 import com.codefollower.lealone.command.ddl.GrantRevoke;
 import com.codefollower.lealone.command.ddl.PrepareProcedure;
+import com.codefollower.lealone.command.ddl.RefreshMaterializedView;
 import com.codefollower.lealone.command.ddl.SetComment;
 import com.codefollower.lealone.command.ddl.TruncateTable;
 import com.codefollower.lealone.command.dml.BackupCommand;
@@ -94,6 +95,7 @@ import com.codefollower.lealone.dbobject.index.Index;
 import com.codefollower.lealone.dbobject.table.Column;
 import com.codefollower.lealone.dbobject.table.FunctionTable;
 import com.codefollower.lealone.dbobject.table.IndexColumn;
+import com.codefollower.lealone.dbobject.table.MaterializedView;
 import com.codefollower.lealone.dbobject.table.RangeTable;
 import com.codefollower.lealone.dbobject.table.Table;
 import com.codefollower.lealone.dbobject.table.TableFilter;
@@ -185,6 +187,7 @@ public class Parser {
     private ArrayList<String> expectedList;
     private boolean rightsChecked;
     private boolean recompileAlways;
+    private boolean hasSubqueries;
     private ArrayList<Parameter> indexedParameterList;
     private final boolean identifiersToUpper;
 
@@ -221,9 +224,12 @@ public class Parser {
 
     public Command prepareCommand(String sql, boolean isLocal) { //子类可根据需要确定如何使用isLocal参数
         try {
+            long start = System.nanoTime();
             Prepared p = parse(sql);
+            long parsed = System.nanoTime();
             p.prepare();
             Command c = new CommandContainer(this, sql, p);
+            c.setPrepareTime(parsed - start, System.nanoTime() - parsed);
             if (isToken(";")) {
                 String remaining = originalSQL.substring(parseIndex);
                 if (remaining.trim().length() != 0) {
@@ -264,6 +270,7 @@ public class Parser {
             }
         }
         p.setPrepareAlways(recompileAlways);
+        p.setHasSubqueries(hasSubqueries);
         p.setParameterList(parameters);
         return p;
     }
@@ -280,6 +287,7 @@ public class Parser {
         currentPrepared = null;
         createView = null;
         recompileAlways = false;
+        hasSubqueries = false;
         indexedParameterList = null;
         read();
         return parsePrepared();
@@ -410,6 +418,8 @@ public class Parser {
                     c = parseRunScript();
                 } else if (readIf("RELEASE")) {
                     c = parseReleaseSavepoint();
+                } else if (readIf("REFRESH")) {
+                    c = parseRefresh();
                 }
                 break;
             case 's':
@@ -1217,6 +1227,20 @@ public class Parser {
         return command;
     }
 
+    private DropView parseDropView() {
+        boolean ifExists = readIfExists(false);
+        String viewName = readIdentifierWithSchema();
+        DropView command = new DropView(session, getSchema());
+        command.setViewName(viewName);
+        ifExists = readIfExists(ifExists);
+        command.setIfExists(ifExists);
+        Integer dropAction = parseCascadeOrRestrict();
+        if (dropAction != null) {
+            command.setDropAction(dropAction);
+        }
+        return command;
+    }
+
     private Prepared parseDrop() {
         if (readIf("TABLE")) {
             boolean ifExists = readIfExists(false);
@@ -1281,17 +1305,10 @@ public class Parser {
             command.setIfExists(ifExists);
             return command;
         } else if (readIf("VIEW")) {
-            boolean ifExists = readIfExists(false);
-            String viewName = readIdentifierWithSchema();
-            DropView command = new DropView(session, getSchema());
-            command.setViewName(viewName);
-            ifExists = readIfExists(ifExists);
-            command.setIfExists(ifExists);
-            Integer dropAction = parseCascadeOrRestrict();
-            if (dropAction != null) {
-                command.setDropAction(dropAction);
-            }
-            return command;
+            return parseDropView();
+        } else if (readIf("MATERIALIZED")) {
+            read("VIEW");
+            return parseDropView();
         } else if (readIf("ROLE")) {
             boolean ifExists = readIfExists(false);
             DropRole command = new DropRole(session);
@@ -1552,6 +1569,14 @@ public class Parser {
         return command;
     }
 
+    /**
+     * Parse a query that is used as an expression or condition.
+     */
+    private Query parseSubquery() {
+        hasSubqueries = true;
+        return parseSelect();
+    }
+
     private Query parseSelectUnion() {
         int start = lastParseIndex;
         Query command = parseSelectSub();
@@ -1892,7 +1917,7 @@ public class Parser {
         }
         if (readIf("EXISTS")) {
             read("(");
-            Query query = parseSelect();
+            Query query = parseSubquery();
             // can not reduce expression because it might be a union except
             // query with distinct
             read(")");
@@ -1948,7 +1973,7 @@ public class Parser {
                     r = ValueExpression.get(ValueBoolean.get(false));
                 } else {
                     if (isSelect()) {
-                        Query query = parseSelect();
+                        Query query = parseSubquery();
                         r = new ConditionInSelect(database, r, query, false, Comparison.EQUAL);
                     } else {
                         ArrayList<Expression> v = New.arrayList();
@@ -1982,12 +2007,12 @@ public class Parser {
                 read();
                 if (readIf("ALL")) {
                     read("(");
-                    Query query = parseSelect();
+                    Query query = parseSubquery();
                     r = new ConditionInSelect(database, r, query, true, compareType);
                     read(")");
                 } else if (readIf("ANY") || readIf("SOME")) {
                     read("(");
-                    Query query = parseSelect();
+                    Query query = parseSubquery();
                     r = new ConditionInSelect(database, r, query, false, compareType);
                     read(")");
                 } else {
@@ -2117,6 +2142,18 @@ public class Parser {
                 agg.setSeparator(readExpression());
             }
             r = agg;
+        } else if (aggregateType == Aggregate.APPROX_PERCENTILE) {
+            Aggregate agg = new Aggregate(Aggregate.APPROX_PERCENTILE, readExpression(), currentSelect, false);
+            read(",");
+            agg.setPercentile(readExpression());
+            r = agg;
+        } else if (aggregateType == Aggregate.APPROX_COUNT_DISTINCT
+                || aggregateType == Aggregate.APPROX_COUNT_DISTINCT_SKETCH) {
+            // the sketch counts each value only once, DISTINCT is not needed
+            readIf("DISTINCT");
+            r = new Aggregate(aggregateType, readExpression(), currentSelect, false);
+        } else if (aggregateType == Aggregate.APPROX_PERCENTILE_SKETCH) {
+            r = new Aggregate(aggregateType, readExpression(), currentSelect, false);
         } else {
             boolean distinct = readIf("DISTINCT");
             r = new Aggregate(aggregateType, readExpression(), currentSelect, distinct);
@@ -2492,7 +2529,7 @@ public class Parser {
             break;
         case KEYWORD:
             if (isToken("SELECT") || isToken("FROM")) {
-                Query query = parseSelect();
+                Query query = parseSubquery();
                 r = new Subquery(query);
             } else {
                 throw getSyntaxError();
@@ -3825,7 +3862,10 @@ public class Parser {
         }
         boolean force = readIf("FORCE");
         if (readIf("VIEW")) {
-            return parseCreateView(force, orReplace);
+            return parseCreateView(force, orReplace, false);
+        } else if (!orReplace && readIf("MATERIALIZED")) {
+            read("VIEW");
+            return parseCreateView(force, orReplace, true);
         } else if (readIf("ALIAS")) {
             return parseCreateFunctionAlias(force);
         } else if (readIf("SEQUENCE")) {
@@ -3929,6 +3969,10 @@ public class Parser {
             command.setComment(readCommentIf());
             read("(");
             command.setIndexColumns(parseIndexColumnList());
+            if (readIf("INCLUDE")) {
+                read("(");
+                command.setIncludeColumns(parseColumnList());
+            }
             return command;
         }
     }
@@ -4346,7 +4390,7 @@ public class Parser {
         return q;
     }
 
-    private CreateView parseCreateView(boolean force, boolean orReplace) {
+    private CreateView parseCreateView(boolean force, boolean orReplace, boolean materialized) {
         boolean ifNotExists = readIfNoExists();
         String viewName = readIdentifierWithSchema();
         CreateView command = new CreateView(session, getSchema());
@@ -4360,6 +4404,17 @@ public class Parser {
             String[] cols = parseColumnList();
             command.setColumnNames(cols);
         }
+        if (materialized) {
+            command.setMaterialized(true);
+            if (readIf("REFRESH")) {
+                if (readIf("INCREMENTAL")) {
+                    command.setIncremental(true);
+                } else {
+                    read("ON");
+                    read("DEMAND");
+                }
+            }
+        }
         String select = StringUtils.fromCacheOrNew(sqlCommand.substring(parseIndex));
         read("AS");
         try {
@@ -4438,6 +4493,19 @@ public class Parser {
         return command;
     }
 
+    private RefreshMaterializedView parseRefresh() {
+        read("MATERIALIZED");
+        read("VIEW");
+        RefreshMaterializedView command = new RefreshMaterializedView(session);
+        String viewName = readIdentifierWithSchema();
+        Table table = getSchema().findTableOrView(session, viewName);
+        if (!(table instanceof MaterializedView)) {
+            throw DbException.get(ErrorCode.VIEW_NOT_FOUND_1, viewName);
+        }
+        command.setView((MaterializedView) table);
+        return command;
+    }
+
     private AlterSchemaRename parseAlterSchema() {
         String schemaName = readIdentifierWithSchema();
         Schema old = getSchema();
@@ -5174,6 +5242,10 @@ public class Parser {
                 read("(");
             }
             command.setIndexColumns(parseIndexColumnList());
+            if (readIf("INCLUDE")) {
+                read("(");
+                command.setIncludeColumns(parseColumnList());
+            }
             return command;
         }
         AlterTableAddConstraint command;
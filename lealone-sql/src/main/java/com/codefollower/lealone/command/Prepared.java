@@ -52,6 +52,12 @@ public abstract class Prepared {
      */
     protected boolean prepareAlways;
 
+    /**
+     * If the statement contains a query that is used as an expression or
+     * condition.
+     */
+    private boolean hasSubqueries;
+
     private long modificationMetaId;
     private Command command;
     private int objectId;
@@ -100,6 +106,17 @@ public abstract class Prepared {
         return false;
     }
 
+    /**
+     * Check if this statement only reads tables that can be read
+     * concurrently with statements of other sessions, without synchronizing
+     * on the database.
+     *
+     * @return true if it does
+     */
+    public boolean isConcurrentReadable() {
+        return false;
+    }
+
     /**
      * Check if the statement needs to be re-compiled.
      *
@@ -323,6 +340,37 @@ public abstract class Prepared {
         this.prepareAlways = prepareAlways;
     }
 
+    /**
+     * Set whether the statement contains a query that is used as an
+     * expression or condition.
+     *
+     * @param hasSubqueries the new value
+     */
+    public void setHasSubqueries(boolean hasSubqueries) {
+        this.hasSubqueries = hasSubqueries;
+    }
+
+    /**
+     * Check if the statement contains a query that is used as an expression
+     * or condition.
+     *
+     * @return true if it does
+     */
+    public boolean hasSubqueries() {
+        return hasSubqueries;
+    }
+
+    /**
+     * Check if the statement depends on objects that stay bound to the
+     * session that prepared it when {@link #setSession} is called: the
+     * queries of subqueries and the indexes of views keep their session.
+     *
+     * @return true if the statement can't be used by another session
+     */
+    public boolean isBoundToSession() {
+        return hasSubqueries;
+    }
+
     /**
      * Set the current row number.
      *
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.command;
+
+import java.util.LinkedList;
+
+import com.codefollower.lealone.command.dml.Delete;
+import com.codefollower.lealone.command.dml.Insert;
+import com.codefollower.lealone.command.dml.Select;
+import com.codefollower.lealone.command.dml.SelectUnion;
+import com.codefollower.lealone.command.dml.Update;
+import com.codefollower.lealone.engine.Database;
+import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.util.SmallLRUCache;
+
+/**
+ * A database wide cache of prepared commands.
+ * Commands are keyed by the SQL text together with everything of the session
+ * that influences parsing (user, current schema and schema search path).
+ * An idle command is handed to exactly one session at a time and re-bound to it;
+ * when the command is closed it goes back to the cache.
+ * The whole cache is cleared when the database meta data is modified.
+ * Sessions with local temporary tables do not take part, because the same
+ * table name may resolve to a different table in each of them. Statements with
+ * subqueries or views are not shared, because the subqueries and view indexes
+ * stay bound to the session that prepared them.
+ */
+public class SharedCommandCache {
+
+    /**
+     * The maximum number of idle commands kept for the same key.
+     */
+    private static final int MAX_IDLE_PER_KEY = 8;
+
+    private final Database database;
+    private final SmallLRUCache<String, LinkedList<Command>> cache;
+    private long modificationMetaId;
+
+    public SharedCommandCache(Database database, int size) {
+        this.database = database;
+        this.cache = SmallLRUCache.newInstance(size);
+        this.modificationMetaId = database.getModificationMetaId();
+    }
+
+    /**
+     * Take an idle command for the given SQL statement and bind it to the session.
+     *
+     * @param session the session
+     * @param sql the SQL statement
+     * @return the command, or null if there is no idle command
+     */
+    public synchronized Command take(Session session, String sql) {
+        if (session.hasLocalTempTables()) {
+            return null;
+        }
+        checkModificationMetaId();
+        LinkedList<Command> idle = cache.get(getKey(session, sql));
+        if (idle == null || idle.isEmpty()) {
+            return null;
+        }
+        Command command = idle.removeFirst();
+        command.sharedCacheIdle = false;
+        command.setSession(session);
+        command.reuse();
+        return command;
+    }
+
+    /**
+     * Register a newly prepared command, so that it is returned to the cache
+     * when it is closed.
+     *
+     * @param session the session that prepared the command
+     * @param sql the SQL statement
+     * @param command the command
+     * @return true if the command can be shared
+     */
+    public synchronized boolean register(Session session, String sql, Command command) {
+        if (session.hasLocalTempTables() || !isShareable(command)) {
+            return false;
+        }
+        checkModificationMetaId();
+        command.sharedCacheKey = getKey(session, sql);
+        return true;
+    }
+
+    /**
+     * Return a closed command to the cache.
+     *
+     * @param command the command
+     */
+    synchronized void release(Command command) {
+        if (command.sharedCacheIdle || !command.canReuse()) {
+            return;
+        }
+        checkModificationMetaId();
+        if (command.getPrepared().needRecompile()) {
+            return;
+        }
+        LinkedList<Command> idle = cache.get(command.sharedCacheKey);
+        if (idle == null) {
+            idle = new LinkedList<Command>();
+            cache.put(command.sharedCacheKey, idle);
+        } else if (idle.size() >= MAX_IDLE_PER_KEY) {
+            return;
+        }
+        command.sharedCacheIdle = true;
+        idle.addFirst(command);
+    }
+
+    /**
+     * Remove all cached commands.
+     */
+    public synchronized void clear() {
+        cache.clear();
+    }
+
+    private void checkModificationMetaId() {
+        long id = database.getModificationMetaId();
+        if (id != modificationMetaId) {
+            cache.clear();
+            modificationMetaId = id;
+        }
+    }
+
+    private static boolean isShareable(Command command) {
+        if (command.getClass() != CommandContainer.class || !command.isCacheable()) {
+            return false;
+        }
+        // only statements that know how to re-bind all their table filters
+        Prepared p = command.getPrepared();
+        Class<?> c = p.getClass();
+        if (c != Select.class && c != SelectUnion.class && c != Insert.class && c != Update.class
+                && c != Delete.class) {
+            return false;
+        }
+        return !p.isBoundToSession();
+    }
+
+    private static String getKey(Session session, String sql) {
+        StringBuilder buff = new StringBuilder(sql.length() + 32);
+        buff.append(session.getUser().getName()).append('\0');
+        buff.append(session.getCurrentSchemaName()).append('\0');
+        String[] path = session.getSchemaSearchPath();
+        if (path != null) {
+            for (String s : path) {
+                buff.append(s).append(',');
+            }
+        }
+        return buff.append('\0').append(sql).toString();
+    }
+}
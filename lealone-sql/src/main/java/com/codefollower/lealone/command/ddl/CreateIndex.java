@@ -27,6 +27,7 @@ public class CreateIndex extends SchemaCommand {
     private String tableName;
     private String indexName;
     private IndexColumn[] indexColumns;
+    private String[] includeColumnNames;
     private boolean primaryKey, unique, hash;
     private boolean ifNotExists;
     private String comment;
@@ -51,6 +52,17 @@ public class CreateIndex extends SchemaCommand {
         this.indexColumns = columns;
     }
 
+    /**
+     * Set the columns that are stored in the index in addition to the key
+     * columns, so that queries that only need these columns do not have to
+     * read the table.
+     *
+     * @param columnNames the column names
+     */
+    public void setIncludeColumns(String[] columnNames) {
+        this.includeColumnNames = columnNames;
+    }
+
     public int update() {
         if (!transactional) {
             session.commit(true);
@@ -89,7 +101,30 @@ public class CreateIndex extends SchemaCommand {
             indexType = IndexType.createNonUnique(persistent, hash);
         }
         IndexColumn.mapColumns(indexColumns, table);
-        table.addIndex(session, indexName, id, indexColumns, indexType, create, comment);
+        IndexColumn[] cols = indexColumns;
+        if (includeColumnNames != null) {
+            if (primaryKey || unique || hash) {
+                throw DbException.getUnsupportedException("INCLUDE with PRIMARY KEY, UNIQUE or HASH");
+            }
+            int keyCount = indexColumns.length;
+            cols = new IndexColumn[keyCount + includeColumnNames.length];
+            System.arraycopy(indexColumns, 0, cols, 0, keyCount);
+            for (int i = 0; i < includeColumnNames.length; i++) {
+                IndexColumn c = new IndexColumn();
+                c.columnName = includeColumnNames[i];
+                cols[keyCount + i] = c;
+            }
+            IndexColumn.mapColumns(cols, table);
+            for (int i = keyCount; i < cols.length; i++) {
+                for (int j = 0; j < i; j++) {
+                    if (cols[j].column == cols[i].column) {
+                        throw DbException.get(ErrorCode.DUPLICATE_COLUMN_NAME_1, cols[i].columnName);
+                    }
+                }
+            }
+            indexType.setIncludeColumnCount(includeColumnNames.length);
+        }
+        table.addIndex(session, indexName, id, cols, indexType, create, comment);
         return 0;
     }
 
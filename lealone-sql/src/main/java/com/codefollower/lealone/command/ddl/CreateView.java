@@ -13,6 +13,7 @@ import com.codefollower.lealone.command.dml.Query;
 import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.constant.ErrorCode;
 import com.codefollower.lealone.dbobject.Schema;
+import com.codefollower.lealone.dbobject.table.MaterializedView;
 import com.codefollower.lealone.dbobject.table.Table;
 import com.codefollower.lealone.dbobject.table.TableView;
 import com.codefollower.lealone.engine.Database;
@@ -34,6 +35,8 @@ public class CreateView extends SchemaCommand {
     private String comment;
     private boolean orReplace;
     private boolean force;
+    private boolean materialized;
+    private boolean incremental;
 
     public CreateView(Session session, Schema schema) {
         super(session, schema);
@@ -71,6 +74,14 @@ public class CreateView extends SchemaCommand {
         this.force = force;
     }
 
+    public void setMaterialized(boolean materialized) {
+        this.materialized = materialized;
+    }
+
+    public void setIncremental(boolean incremental) {
+        this.incremental = incremental;
+    }
+
     public int update() {
         session.commit(true);
         Database db = session.getDatabase();
@@ -80,11 +91,14 @@ public class CreateView extends SchemaCommand {
             if (ifNotExists) {
                 return 0;
             }
-            if (!orReplace || !Table.VIEW.equals(old.getTableType())) {
+            if (!orReplace || !Table.VIEW.equals(old.getTableType()) || old instanceof MaterializedView) {
                 throw DbException.get(ErrorCode.VIEW_ALREADY_EXISTS_1, viewName);
             }
             view = (TableView) old;
         }
+        if (materialized) {
+            return createMaterializedView();
+        }
         int id = getObjectId();
         String querySQL;
         if (select == null) {
@@ -119,6 +133,68 @@ public class CreateView extends SchemaCommand {
         return 0;
     }
 
+    private int createMaterializedView() {
+        Database db = session.getDatabase();
+        String storageName = MaterializedView.getStorageName(viewName);
+        Table storage = getSchema().findTableOrView(session, storageName);
+        if (storage != null && !db.isStarting()) {
+            throw DbException.get(ErrorCode.TABLE_OR_VIEW_ALREADY_EXISTS_1, storageName);
+        }
+        // the storage table is created first, so that it has a lower id
+        // and is opened before the view when opening the database
+        int storageId = storage == null && !db.isStarting() ? db.allocateObjectId() : 0;
+        int id = getObjectId();
+        String querySQL;
+        if (select == null) {
+            querySQL = selectSQL;
+        } else {
+            ArrayList<Parameter> params = select.getParameters();
+            if (params != null && params.size() > 0) {
+                throw DbException.get(ErrorCode.FEATURE_NOT_SUPPORTED_1, "parameters in views");
+            }
+            querySQL = select.getPlanSQL();
+        }
+        MaterializedView view;
+        Session sysSession = db.getSystemSession();
+        try {
+            Schema schema = session.getDatabase().getSchema(session.getCurrentSchemaName());
+            sysSession.setCurrentSchema(schema);
+            view = new MaterializedView(getSchema(), id, viewName, querySQL, columnNames, sysSession, incremental);
+        } finally {
+            sysSession.setCurrentSchema(db.getSchema(Constants.SCHEMA_MAIN));
+        }
+        if (comment != null) {
+            view.setComment(comment);
+        }
+        // when opening the database, the storage table of a view that was
+        // created with FORCE and refreshed later is opened after the view
+        if (storage != null) {
+            view.setStorage(storage);
+        } else if (!db.isStarting()) {
+            if (view.isInvalid()) {
+                if (!force) {
+                    throw DbException.get(ErrorCode.VIEW_IS_INVALID_2, viewName, querySQL);
+                }
+                // the storage table is created by the first refresh
+                db.addSchemaObject(session, view);
+                return 0;
+            }
+            view.createStorage(session, storageId);
+        }
+        db.addSchemaObject(session, view);
+        if (!db.isStarting()) {
+            try {
+                view.refresh(session);
+            } catch (DbException e) {
+                db.checkPowerOff();
+                db.removeSchemaObject(session, view);
+                session.commit(true);
+                throw e;
+            }
+        }
+        return 0;
+    }
+
     public int getType() {
         return CommandInterface.CREATE_VIEW;
     }
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.command.ddl;
+
+import com.codefollower.lealone.command.CommandInterface;
+import com.codefollower.lealone.dbobject.Right;
+import com.codefollower.lealone.dbobject.table.MaterializedView;
+import com.codefollower.lealone.engine.Session;
+
+/**
+ * This class represents the statement
+ * REFRESH MATERIALIZED VIEW
+ */
+public class RefreshMaterializedView extends DefineCommand {
+
+    private MaterializedView view;
+
+    public RefreshMaterializedView(Session session) {
+        super(session);
+    }
+
+    public void setView(MaterializedView view) {
+        this.view = view;
+    }
+
+    public int update() {
+        session.commit(true);
+        session.getUser().checkRight(view, Right.ALL);
+        view.refresh(session);
+        return 0;
+    }
+
+    public int getType() {
+        return CommandInterface.REFRESH_MATERIALIZED_VIEW;
+    }
+
+}
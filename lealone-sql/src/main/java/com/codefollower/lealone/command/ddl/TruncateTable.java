@@ -37,6 +37,7 @@ public class TruncateTable extends DefineCommand {
         session.getUser().checkRight(table, Right.DELETE);
         table.lock(session, true, true);
         table.truncate(session);
+        table.refreshMaterializedViews(session);
         return 0;
     }
 
@@ -13,6 +13,7 @@ import com.codefollower.lealone.dbobject.Right;
 import com.codefollower.lealone.dbobject.table.PlanItem;
 import com.codefollower.lealone.dbobject.table.Table;
 import com.codefollower.lealone.dbobject.table.TableFilter;
+import com.codefollower.lealone.dbobject.table.TableView;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.engine.UndoLogRecord;
 import com.codefollower.lealone.expression.Expression;
@@ -45,6 +46,14 @@ public class Delete extends Prepared {
         this.tableFilter = tableFilter;
     }
 
+    @Override
+    public void setSession(Session currentSession) {
+        if (tableFilter != null) {
+            tableFilter.setSession(currentSession);
+        }
+        super.setSession(currentSession);
+    }
+
     public void setCondition(Expression condition) {
         this.condition = condition;
     }
@@ -90,7 +99,9 @@ public class Delete extends Prepared {
                     checkCanceled();
                 }
                 Row row = rows.next();
-                row.setTransactionId(getCommand().getTransaction().getTransactionId());
+                if (getCommand() != null && getCommand().getTransaction() != null) {
+                    row.setTransactionId(getCommand().getTransaction().getTransactionId());
+                }
                 table.removeRow(session, row);
                 session.log(table, UndoLogRecord.DELETE, row);
             }
@@ -151,4 +162,9 @@ public class Delete extends Prepared {
         return true;
     }
 
+    @Override
+    public boolean isBoundToSession() {
+        return super.isBoundToSession() || tableFilter.getTable() instanceof TableView;
+    }
+
 }
@@ -6,10 +6,12 @@
  */
 package com.codefollower.lealone.command.dml;
 
+import java.util.ArrayList;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.Map.Entry;
 
+import com.codefollower.lealone.command.Command;
 import com.codefollower.lealone.command.CommandInterface;
 import com.codefollower.lealone.command.Prepared;
 import com.codefollower.lealone.dbobject.table.Column;
@@ -17,8 +19,11 @@ import com.codefollower.lealone.engine.Database;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.expression.Expression;
 import com.codefollower.lealone.expression.ExpressionColumn;
+import com.codefollower.lealone.expression.ParameterInterface;
+import com.codefollower.lealone.message.QueryTrace;
 import com.codefollower.lealone.result.LocalResult;
 import com.codefollower.lealone.result.ResultInterface;
+import com.codefollower.lealone.util.StringUtils;
 import com.codefollower.lealone.value.Value;
 import com.codefollower.lealone.value.ValueString;
 
@@ -61,13 +66,35 @@ public class Explain extends Prepared {
         if (maxrows >= 0) {
             String plan;
             if (executeCommand) {
+                boolean oldAnalyze = session.isExplainAnalyze();
+                QueryTrace oldTrace = session.getQueryTrace();
+                QueryTrace.Span oldSpan = session.getQueryTraceSpan();
+                QueryTrace trace = null;
+                long rows;
                 db.statisticsStart();
-                if (command.isQuery()) {
-                    command.query(maxrows);
-                } else {
-                    command.update();
+                session.setExplainAnalyze(true);
+                try {
+                    if (command.isDistributedSQL() && command.getSQL() != null) {
+                        // the statement is executed by the servers of the
+                        // regions it reads, measure it with a trace
+                        trace = new QueryTrace(QueryTrace.nextId(), command.getSQL(), "execute");
+                        session.setQueryTrace(trace, trace.getRoot());
+                        rows = executeDistributed(maxrows);
+                        trace.end();
+                    } else if (command.isQuery()) {
+                        rows = command.query(maxrows).getRowCount();
+                    } else {
+                        rows = command.update();
+                    }
+                    plan = command.getPlanSQL();
+                } finally {
+                    session.setExplainAnalyze(oldAnalyze);
+                    session.setQueryTrace(oldTrace, oldSpan);
+                }
+                plan += "\n/* rows: " + rows + " */";
+                if (trace != null) {
+                    plan += "\n/*\n" + getSpans(trace) + "*/";
                 }
-                plan = command.getPlanSQL();
                 Map<String, Integer> statistics = db.statisticsEnd();
                 if (statistics != null) {
                     int total = 0;
@@ -95,6 +122,47 @@ public class Explain extends Prepared {
         return result;
     }
 
+    private long executeDistributed(int maxrows) {
+        Command c = session.prepareCommand(command.getSQL());
+        try {
+            c.setRecordStatistics(false);
+            ArrayList<? extends ParameterInterface> params = command.getParameters();
+            if (params != null) {
+                ArrayList<? extends ParameterInterface> newParams = c.getParameters();
+                for (int i = 0, size = params.size(); i < size; i++) {
+                    newParams.get(i).setValue(params.get(i).getParamValue(), true);
+                }
+            }
+            if (command.isQuery()) {
+                ResultInterface r = c.executeQuery(maxrows, false);
+                int rows = 0;
+                while (r.next()) {
+                    rows++;
+                }
+                r.close();
+                return rows;
+            }
+            return c.executeUpdate();
+        } finally {
+            c.close();
+        }
+    }
+
+    private static String getSpans(QueryTrace trace) {
+        StringBuilder buff = new StringBuilder();
+        for (QueryTrace.Span s : trace.getSpans()) {
+            for (int i = 0; i < s.getDepth(); i++) {
+                buff.append("  ");
+            }
+            buff.append(StringUtils.quoteRemarkSQL(s.getName()));
+            if (s.getCount() > 1) {
+                buff.append(" (").append(s.getCount()).append("x)");
+            }
+            buff.append(": ").append(s.getDuration() / 1000 / 1000d).append(" ms\n");
+        }
+        return buff.toString();
+    }
+
     private void add(String text) {
         Value[] row = { ValueString.get(text) };
         result.addRow(row);
@@ -17,6 +17,7 @@ import com.codefollower.lealone.dbobject.Right;
 import com.codefollower.lealone.dbobject.index.Index;
 import com.codefollower.lealone.dbobject.table.Column;
 import com.codefollower.lealone.dbobject.table.Table;
+import com.codefollower.lealone.dbobject.table.TableView;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.engine.UndoLogRecord;
 import com.codefollower.lealone.expression.Expression;
@@ -43,6 +44,13 @@ public class Insert extends Prepared implements ResultTarget {
 	protected int rowNumber;
 	protected boolean insertFromSelect;
 
+	/**
+	 * The scan index that is in sorted insert mode while the rows of a direct
+	 * insert arrive in key order.
+	 */
+	private Index sortedScanIndex;
+	private long lastRowKey;
+
 	public Insert(Session session) {
 		super(session);
 	}
@@ -66,6 +74,14 @@ public class Insert extends Prepared implements ResultTarget {
 		this.query = query;
 	}
 
+	@Override
+	public void setSession(Session currentSession) {
+		if (query != null) {
+			query.setSession(currentSession);
+		}
+		super.setSession(currentSession);
+	}
+
 	/**
 	 * Add a row to this merge statement.
 	 *
@@ -80,6 +96,13 @@ public class Insert extends Prepared implements ResultTarget {
 		if (sortedInsertMode) {
 			index = table.getScanIndex(session);
 			index.setSortedInsertMode(true);
+		} else if (insertFromSelect && list.isEmpty()) {
+			// bulk loads are usually in key order (or the keys are generated),
+			// pages only need to be split at the end then
+			index = table.getScanIndex(session);
+			index.setSortedInsertMode(true);
+			sortedScanIndex = index;
+			lastRowKey = Long.MIN_VALUE;
 		}
 		try {
 			return insertRows();
@@ -87,6 +110,7 @@ public class Insert extends Prepared implements ResultTarget {
 			if (index != null) {
 				index.setSortedInsertMode(false);
 			}
+			sortedScanIndex = null;
 		}
 	}
 
@@ -123,7 +147,9 @@ public class Insert extends Prepared implements ResultTarget {
                 setCurrentRowNumber(x + 1);
                 Expression[] expr = list.get(x);
                 Row newRow = createRow(columnLen, expr, x);
-                newRow.setTransactionId(getCommand().getTransaction().getTransactionId());
+                if (getCommand() != null && getCommand().getTransaction() != null) {
+                    newRow.setTransactionId(getCommand().getTransaction().getTransactionId());
+                }
 				rowNumber++;
 				table.validateConvertUpdateSequence(session, newRow);
 				boolean done = table.fireBeforeRow(session, null, newRow);
@@ -153,7 +179,9 @@ public class Insert extends Prepared implements ResultTarget {
 
 	public void addRow(Value[] values) { //TODO 增加rowKey到getCommand()
 		Row newRow = table.getTemplateRow();
-		newRow.setTransactionId(getCommand().getTransaction().getTransactionId());
+		if (getCommand() != null && getCommand().getTransaction() != null) {
+			newRow.setTransactionId(getCommand().getTransaction().getTransactionId());
+		}
 		setCurrentRowNumber(++rowNumber);
 		for (int j = 0, len = columns.length; j < len; j++) {
 			Column c = columns[j];
@@ -171,6 +199,15 @@ public class Insert extends Prepared implements ResultTarget {
 			table.addRow(session, newRow);
 			session.log(table, UndoLogRecord.INSERT, newRow);
 			table.fireAfterRow(session, null, newRow, false);
+			if (sortedScanIndex != null) {
+				if (newRow.getKey() > lastRowKey) {
+					lastRowKey = newRow.getKey();
+				} else {
+					// not in key order
+					sortedScanIndex.setSortedInsertMode(false);
+					sortedScanIndex = null;
+				}
+			}
 		}
 	}
 
@@ -278,4 +315,9 @@ public class Insert extends Prepared implements ResultTarget {
 		return true;
 	}
 
+	@Override
+	public boolean isBoundToSession() {
+		return super.isBoundToSession() || table instanceof TableView || query != null && query.isBoundToSession();
+	}
+
 }
@@ -12,6 +12,7 @@ import java.util.List;
 
 import com.codefollower.lealone.command.Prepared;
 import com.codefollower.lealone.constant.ErrorCode;
+import com.codefollower.lealone.dbobject.DbObject;
 import com.codefollower.lealone.dbobject.table.ColumnResolver;
 import com.codefollower.lealone.dbobject.table.Table;
 import com.codefollower.lealone.dbobject.table.TableFilter;
@@ -25,6 +26,7 @@ import com.codefollower.lealone.expression.Parameter;
 import com.codefollower.lealone.expression.ValueExpression;
 import com.codefollower.lealone.message.DbException;
 import com.codefollower.lealone.result.LocalResult;
+import com.codefollower.lealone.result.ResultCache;
 import com.codefollower.lealone.result.ResultTarget;
 import com.codefollower.lealone.result.SortOrder;
 import com.codefollower.lealone.util.New;
@@ -68,6 +70,8 @@ public abstract class Query extends Prepared {
     private LocalResult lastResult;
     private Value[] lastParameters;
     private boolean cacheableChecked;
+    private boolean sharedCacheChecked;
+    private String sharedCacheSQL;
 
     Query(Session session) {
         super(session);
@@ -138,6 +142,13 @@ public abstract class Query extends Prepared {
      */
     public abstract void setForUpdate(boolean forUpdate);
 
+    /**
+     * Check if this is a 'for update' query.
+     *
+     * @return true if it is
+     */
+    public abstract boolean isForUpdate();
+
     /**
      * Get the column count of this query.
      *
@@ -292,7 +303,7 @@ public abstract class Query extends Prepared {
      */
     LocalResult query(int limit, ResultTarget target) {
         fireBeforeSelectTriggers();
-        if (noCache || !session.getDatabase().getOptimizeReuseResults()) {
+        if (noCache || !session.getDatabase().getOptimizeReuseResults() || session.isExplainAnalyze()) {
             return queryWithoutCache(limit, target);
         }
         Value[] params = getParameterValues();
@@ -308,15 +319,82 @@ public abstract class Query extends Prepared {
                 }
             }
         }
+        ResultCache resultCache = target == null ? getResultCache() : null;
+        ResultCache.Key key = null;
+        if (resultCache != null) {
+            key = new ResultCache.Key(sharedCacheSQL, params, limit);
+            LocalResult r = resultCache.get(session, key, getMaxDataModificationId());
+            if (r != null) {
+                r.reset();
+                return r;
+            }
+        }
         lastParameters = params;
         closeLastResult();
         LocalResult r = queryWithoutCache(limit, target);
         lastResult = r;
         this.lastEvaluated = now;
         lastLimit = limit;
+        if (key != null) {
+            resultCache.put(key, r, now);
+        }
         return r;
     }
 
+    /**
+     * Get the database wide result cache, if the result of this query may be
+     * shared with other sessions. That is the case if the query is
+     * deterministic, does not lock rows, only reads tables that track their
+     * modifications and are visible to all sessions, and the session does not
+     * have uncommitted changes.
+     * <p>
+     * MVStore tables are not cached: their modification id changes when a row
+     * is changed, but not when the transaction commits, so a result computed
+     * in between would be returned after the commit. Uncommitted changes to
+     * them are also not in the undo log of the session.
+     *
+     * @return the cache, or null
+     */
+    private ResultCache getResultCache() {
+        ResultCache resultCache = session.getDatabase().getResultCache();
+        if (resultCache == null || session.getUndoLogPos() > 0) {
+            return null;
+        }
+        if (!sharedCacheChecked) {
+            if (!isForUpdate() && isEverything(ExpressionVisitor.DETERMINISTIC_VISITOR)
+                    && isEverything(ExpressionVisitor.INDEPENDENT_VISITOR)
+                    && getMaxDataModificationId() != Long.MAX_VALUE && !readsUnsharedTable()) {
+                sharedCacheSQL = getPlanSQL();
+            }
+            sharedCacheChecked = true;
+        }
+        return sharedCacheSQL == null ? null : resultCache;
+    }
+
+    private boolean readsUnsharedTable() {
+        HashSet<DbObject> dependencies = New.hashSet();
+        isEverything(ExpressionVisitor.getDependenciesVisitor(dependencies));
+        for (DbObject obj : dependencies) {
+            if (obj instanceof Table) {
+                Table t = (Table) obj;
+                if (t.isMVStore() || t.isTemporary() && !t.isGlobalTemporary()) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void setSession(Session currentSession) {
+        if (currentSession != session) {
+            // the cached result belongs to the old session
+            closeLastResult();
+            lastResult = null;
+        }
+        super.setSession(currentSession);
+    }
+
     private void closeLastResult() {
         if (lastResult != null) {
             lastResult.close();
@@ -513,6 +591,23 @@ public abstract class Query extends Prepared {
         this.sampleSize = sampleSize;
     }
 
+    @Override
+    public boolean isConcurrentReadable() {
+        // FOR UPDATE queries are not cacheable
+        if (!isCacheable() || !isReadOnly()) {
+            return false;
+        }
+        HashSet<DbObject> dependencies = New.hashSet();
+        isEverything(ExpressionVisitor.getDependenciesVisitor(dependencies));
+        for (DbObject obj : dependencies) {
+            // functions, sequences and views are not known to be safe
+            if (!(obj instanceof Table) || !((Table) obj).isMVStore()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public final long getMaxDataModificationId() {
         ExpressionVisitor visitor = ExpressionVisitor.getMaxModificationIdVisitor();
         isEverything(visitor);
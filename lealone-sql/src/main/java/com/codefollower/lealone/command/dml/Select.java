@@ -25,8 +25,10 @@ import com.codefollower.lealone.dbobject.table.ColumnResolver;
 import com.codefollower.lealone.dbobject.table.IndexColumn;
 import com.codefollower.lealone.dbobject.table.Table;
 import com.codefollower.lealone.dbobject.table.TableFilter;
+import com.codefollower.lealone.dbobject.table.TableView;
 import com.codefollower.lealone.engine.Database;
 import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.expression.Aggregate;
 import com.codefollower.lealone.expression.Calculator;
 import com.codefollower.lealone.expression.Comparison;
 import com.codefollower.lealone.expression.ConditionAndOr;
@@ -34,10 +36,12 @@ import com.codefollower.lealone.expression.Expression;
 import com.codefollower.lealone.expression.ExpressionColumn;
 import com.codefollower.lealone.expression.ExpressionVisitor;
 import com.codefollower.lealone.expression.Parameter;
+import com.codefollower.lealone.expression.VectorExpression;
 import com.codefollower.lealone.expression.Wildcard;
 import com.codefollower.lealone.message.DbException;
 import com.codefollower.lealone.result.LocalResult;
 import com.codefollower.lealone.result.ResultInterface;
+import com.codefollower.lealone.result.ResultPartitions;
 import com.codefollower.lealone.result.ResultTarget;
 import com.codefollower.lealone.result.Row;
 import com.codefollower.lealone.result.SearchRow;
@@ -48,6 +52,7 @@ import com.codefollower.lealone.util.StringUtils;
 import com.codefollower.lealone.util.ValueHashMap;
 import com.codefollower.lealone.value.Value;
 import com.codefollower.lealone.value.ValueArray;
+import com.codefollower.lealone.value.ValueLong;
 import com.codefollower.lealone.value.ValueNull;
 
 /**
@@ -64,6 +69,19 @@ import com.codefollower.lealone.value.ValueNull;
  * @author Joel Turkel (Group sorted query)
  */
 public class Select extends Query {
+
+    /**
+     * The estimated memory of one group, per expression (hash map entry and
+     * aggregate data).
+     */
+    private static final int GROUP_MEMORY_PER_EXPRESSION = 64;
+
+    /**
+     * How many times a GROUP BY partition that does not fit in memory is split
+     * again.
+     */
+    private static final int MAX_GROUP_SPILL_LEVEL = 4;
+
     protected TableFilter topTableFilter;
     protected final ArrayList<TableFilter> filters = New.arrayList();
     protected final ArrayList<TableFilter> topFilters = New.arrayList();
@@ -86,6 +104,16 @@ public class Select extends Query {
     private boolean sortUsingIndex;
     private SortOrder sort;
     private int currentGroupRowId;
+    private long groupMemoryGrowth;
+    private HashSet<Column> allColumnsSet;
+
+    /**
+     * The time used to read and evaluate the rows and to finish the result
+     * (sort, distinct, limit), and the rows of the result, of the last
+     * execution measured by EXPLAIN ANALYZE.
+     */
+    private long analyzeQueryNanos, analyzeResultNanos;
+    private int analyzeRows, analyzeSpilledRows;
 
     private Map<String, ArrayList<Column>> columnsMap = New.hashMap();
 
@@ -134,6 +162,23 @@ public class Select extends Query {
         }
     }
 
+    @Override
+    public void setSession(Session currentSession) {
+        if (currentSession != session) {
+            for (TableFilter f : filters) {
+                setSession(f, currentSession);
+            }
+        }
+        super.setSession(currentSession);
+    }
+
+    private static void setSession(TableFilter f, Session currentSession) {
+        for (; f != null; f = f.getJoin()) {
+            f.setSession(currentSession);
+            setSession(f.getNestedJoin(), currentSession);
+        }
+    }
+
     @Override
     public ArrayList<TableFilter> getTopFilters() {
         return topFilters;
@@ -166,6 +211,16 @@ public class Select extends Query {
         return currentGroupRowId;
     }
 
+    /**
+     * Add the memory that an aggregate of the current group allocated while
+     * adding a value (sketches grow with the number of values).
+     *
+     * @param memory the additional memory in bytes
+     */
+    public void addGroupMemory(long memory) {
+        groupMemoryGrowth += memory;
+    }
+
     public void setOrder(ArrayList<SelectOrderBy> order) {
         orderList = order;
     }
@@ -187,9 +242,10 @@ public class Select extends Query {
         int rowNumber = 0;
         setCurrentRowNumber(0);
         Value[] previousKeyValues = null;
-        while (topTableFilter.next()) {
+        VectorScan scan = getVectorScan();
+        while (scan != null ? scan.next() : topTableFilter.next()) {
             setCurrentRowNumber(rowNumber + 1);
-            if (condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
+            if (scan != null || condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
                 rowNumber++;
                 Value[] keyValues = new Value[groupIndex.length];
                 // update group
@@ -333,9 +389,29 @@ public class Select extends Query {
         return count;
     }
 
+    /**
+     * Check if the merged result of the given distributed select has to be
+     * calculated again, because aggregates like AVG were split, or the regions
+     * returned sketches that are turned into the final value.
+     *
+     * @param select the select that was sent to the regions
+     * @return true if calculate needs to be called
+     */
+    public boolean isCalculationRequired(Select select) {
+        if (select.expressions.size() != expressions.size()) {
+            return true;
+        }
+        for (Expression e : expressions) {
+            if (e instanceof Aggregate && ((Aggregate) e).isCalculationRequired()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public ResultInterface calculate(ResultInterface result, Select select) {
         int columnCount = expressions.size();
-        if (select.expressions.size() == columnCount)
+        if (!isCalculationRequired(select))
             return result;
         LocalResult lr = new LocalResult(session, expressionArray, columnCount);
 
@@ -360,9 +436,94 @@ public class Select extends Query {
     }
 
     public ResultInterface queryGroupMerge() {
+        return queryGroupMerge(false);
+    }
+
+    /**
+     * Check if the results of the regions of this select, that is not a group
+     * query, need to be merged: if the rows are sorted, distinct, or limited.
+     *
+     * @return true if they need to be merged
+     */
+    public boolean isMergeRequired() {
+        return sort != null || distinct || limitExpr != null || offsetExpr != null;
+    }
+
+    /**
+     * Merge the results of the regions of a select that is not a group query.
+     * The ORDER BY, DISTINCT, OFFSET and LIMIT of this select are applied, and
+     * if the rows are sorted and limited, only the top rows are kept while
+     * merging.
+     *
+     * @param rows the rows of all regions, with all expressions of this select
+     * @param maxRows the maximum number of rows to return (0 for no limit)
+     * @return the merged result
+     */
+    public ResultInterface queryMerge(ResultInterface rows, int maxRows) {
+        int limitRows = maxRows == 0 ? -1 : maxRows;
+        if (limitExpr != null) {
+            Value v = limitExpr.getValue(session);
+            int l = v == ValueNull.INSTANCE ? -1 : v.getInt();
+            if (limitRows < 0) {
+                limitRows = l;
+            } else if (l >= 0) {
+                limitRows = Math.min(l, limitRows);
+            }
+        }
+        int offset = offsetExpr == null ? 0 : offsetExpr.getValue(session).getInt();
+        LocalResult result = new LocalResult(session, expressionArray, visibleColumnCount);
+        if (sort != null) {
+            result.setSortOrder(sort);
+        }
+        if (distinct) {
+            result.setDistinct();
+        }
+        if (limitRows > 0 && (long) limitRows + Math.max(offset, 0) <= Integer.MAX_VALUE) {
+            result.setTopN(limitRows + Math.max(offset, 0));
+        }
+        if (limitRows != 0) {
+            while (rows.next()) {
+                result.addRow(rows.currentRow());
+            }
+        }
+        if (offsetExpr != null) {
+            result.setOffset(offset);
+        }
+        if (limitRows >= 0) {
+            result.setLimit(limitRows);
+        }
+        result.done();
+        return result;
+    }
+
+    /**
+     * Merge the grouped results of the regions.
+     *
+     * @param last if this is the last merge step; if yes, the ORDER BY, OFFSET and LIMIT
+     *            of this select are applied, and only the top rows are kept while merging
+     * @return the merged result
+     */
+    public ResultInterface queryGroupMerge(boolean last) {
         //columnCount = visibleColumnCount;
         int columnCount = expressions.size();
         LocalResult result = new LocalResult(session, expressionArray, visibleColumnCount);
+        int limitRows = -1;
+        int offset = 0;
+        if (last) {
+            if (limitExpr != null) {
+                Value v = limitExpr.getValue(session);
+                limitRows = v == ValueNull.INSTANCE ? -1 : v.getInt();
+            }
+            if (offsetExpr != null) {
+                offset = offsetExpr.getValue(session).getInt();
+            }
+            if (sort != null) {
+                result.setSortOrder(sort);
+                if (limitRows > 0 && (long) limitRows + Math.max(offset, 0) <= Integer.MAX_VALUE) {
+                    result.setTopN(limitRows + Math.max(offset, 0));
+                }
+            }
+        }
         ValueHashMap<HashMap<Expression, Object>> groups = ValueHashMap.newInstance();
         int rowNumber = 0;
         setCurrentRowNumber(0);
@@ -432,44 +593,60 @@ public class Select extends Query {
             row = keepOnlyDistinct(row, columnCount);
             result.addRow(row);
         }
-
+        if (last) {
+            if (offsetExpr != null) {
+                result.setOffset(offset);
+            }
+            if (limitRows >= 0) {
+                result.setLimit(limitRows);
+            }
+            result.done();
+        }
         return result;
     }
 
     private void queryGroup(int columnCount, LocalResult result) {
         ValueHashMap<HashMap<Expression, Object>> groups = ValueHashMap.newInstance();
+        long maxMemory = session.getDatabase().getSettings().maxMemoryGroupBy;
+        long memory = 0;
+        ArrayList<TableFilter> spillFilters = null;
+        ResultPartitions partitions = null;
         int rowNumber = 0;
         setCurrentRowNumber(0);
+        groupMemoryGrowth = 0;
         ValueArray defaultGroup = ValueArray.get(new Value[0]);
-        while (topTableFilter.next()) {
+        VectorScan scan = getVectorScan();
+        while (scan != null ? scan.next() : topTableFilter.next()) {
             setCurrentRowNumber(rowNumber + 1);
-            if (condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
-                Value key;
+            if (scan != null || condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
                 rowNumber++;
-                if (groupIndex == null) {
-                    key = defaultGroup;
-                } else {
-                    Value[] keyValues = new Value[groupIndex.length];
-                    // update group
-                    for (int i = 0; i < groupIndex.length; i++) {
-                        int idx = groupIndex[i];
-                        Expression expr = expressions.get(idx);
-                        keyValues[i] = expr.getValue(session);
-                    }
-                    key = ValueArray.get(keyValues);
-                }
+                Value key = getGroupKey(defaultGroup);
                 HashMap<Expression, Object> values = groups.get(key);
+                boolean newGroup = false;
                 if (values == null) {
-                    values = new HashMap<Expression, Object>();
-                    groups.put(key, values);
+                    if (partitions != null) {
+                        // out of memory: the rows of new groups are processed later
+                        partitions.addRow(key.hashCode(), getSpillRow(spillFilters));
+                        values = null;
+                    } else {
+                        values = new HashMap<Expression, Object>();
+                        groups.put(key, values);
+                        memory += key.getMemory() + expressions.size() * GROUP_MEMORY_PER_EXPRESSION;
+                        newGroup = true;
+                    }
                 }
-                currentGroup = values;
-                currentGroupRowId++;
-                int len = columnCount;
-                for (int i = 0; i < len; i++) {
-                    if (groupByExpression == null || !groupByExpression[i]) {
-                        Expression expr = expressions.get(i);
-                        expr.updateAggregate(session);
+                if (values != null) {
+                    updateGroup(values, columnCount);
+                    if (newGroup || groupMemoryGrowth > 0) {
+                        memory += groupMemoryGrowth;
+                        groupMemoryGrowth = 0;
+                        if (partitions == null && maxMemory > 0 && memory > maxMemory && groupIndex != null
+                                && session.getDatabase().getSpillManager().isEnabled()) {
+                            spillFilters = getSpillFilters();
+                            if (spillFilters != null) {
+                                partitions = new ResultPartitions(session, spillFilters.size() * 2, 0);
+                            }
+                        }
                     }
                 }
                 if (sampleSize > 0 && rowNumber >= sampleSize) {
@@ -480,6 +657,91 @@ public class Select extends Query {
         if (groupIndex == null && groups.size() == 0) {
             groups.put(defaultGroup, new HashMap<Expression, Object>());
         }
+        addGroupRows(groups, columnCount, result);
+        if (partitions != null) {
+            queryGroupPartitions(partitions, spillFilters, columnCount, result, 1);
+        }
+    }
+
+    /**
+     * Aggregate the rows of each partition on its own. The groups of
+     * different partitions are disjoint, so each partition only needs the
+     * memory for its own groups. A partition that again does not fit in
+     * memory is split once more.
+     */
+    private void queryGroupPartitions(ResultPartitions partitions, ArrayList<TableFilter> filters, int columnCount,
+            LocalResult result, int level) {
+        long maxMemory = session.getDatabase().getSettings().maxMemoryGroupBy;
+        ValueArray defaultGroup = ValueArray.get(new Value[0]);
+        try {
+            for (int p = 0; p < ResultPartitions.PARTITION_COUNT; p++) {
+                int rowCount = partitions.getRowCount(p);
+                if (rowCount == 0) {
+                    continue;
+                }
+                partitions.done(p);
+                ValueHashMap<HashMap<Expression, Object>> groups = ValueHashMap.newInstance();
+                long memory = 0;
+                ResultPartitions next = null;
+                for (int i = 0; i < rowCount; i++) {
+                    Value[] row = partitions.next(p);
+                    setSpillRow(filters, row);
+                    Value key = getGroupKey(defaultGroup);
+                    HashMap<Expression, Object> values = groups.get(key);
+                    if (values == null) {
+                        if (next != null) {
+                            next.addRow(key.hashCode(), row);
+                            continue;
+                        }
+                        values = new HashMap<Expression, Object>();
+                        groups.put(key, values);
+                        memory += key.getMemory() + expressions.size() * GROUP_MEMORY_PER_EXPRESSION;
+                    }
+                    updateGroup(values, columnCount);
+                    memory += groupMemoryGrowth;
+                    groupMemoryGrowth = 0;
+                    if (next == null && memory > maxMemory && level < MAX_GROUP_SPILL_LEVEL
+                            && session.getDatabase().getSpillManager().isEnabled()) {
+                        next = new ResultPartitions(session, filters.size() * 2, level);
+                    }
+                }
+                partitions.close(p);
+                addGroupRows(groups, columnCount, result);
+                if (next != null) {
+                    queryGroupPartitions(next, filters, columnCount, result, level + 1);
+                }
+            }
+        } finally {
+            partitions.close();
+        }
+    }
+
+    private Value getGroupKey(ValueArray defaultGroup) {
+        if (groupIndex == null) {
+            return defaultGroup;
+        }
+        Value[] keyValues = new Value[groupIndex.length];
+        // update group
+        for (int i = 0; i < groupIndex.length; i++) {
+            int idx = groupIndex[i];
+            Expression expr = expressions.get(idx);
+            keyValues[i] = expr.getValue(session);
+        }
+        return ValueArray.get(keyValues);
+    }
+
+    private void updateGroup(HashMap<Expression, Object> values, int columnCount) {
+        currentGroup = values;
+        currentGroupRowId++;
+        for (int i = 0; i < columnCount; i++) {
+            if (groupByExpression == null || !groupByExpression[i]) {
+                Expression expr = expressions.get(i);
+                expr.updateAggregate(session);
+            }
+        }
+    }
+
+    private void addGroupRows(ValueHashMap<HashMap<Expression, Object>> groups, int columnCount, LocalResult result) {
         ArrayList<Value> keys = groups.keys();
         for (Value v : keys) {
             ValueArray key = (ValueArray) v;
@@ -504,6 +766,58 @@ public class Select extends Query {
         }
     }
 
+    /**
+     * Get all table filters if the current rows can be written to disk and
+     * restored later.
+     *
+     * @return the table filters, or null if spilling is not possible
+     */
+    private ArrayList<TableFilter> getSpillFilters() {
+        final ArrayList<TableFilter> list = New.arrayList();
+        topTableFilter.visit(new TableFilter.TableFilterVisitor() {
+            public void accept(TableFilter f) {
+                list.add(f);
+            }
+        });
+        for (TableFilter f : list) {
+            if (f.getTable().isDistributed()) {
+                return null;
+            }
+        }
+        return list;
+    }
+
+    private static Value[] getSpillRow(ArrayList<TableFilter> filters) {
+        Value[] row = new Value[filters.size() * 2];
+        for (int i = 0, size = filters.size(); i < size; i++) {
+            Row r = filters.get(i).get();
+            if (r == null) {
+                row[i * 2] = row[i * 2 + 1] = ValueNull.INSTANCE;
+                continue;
+            }
+            Value[] data = new Value[r.getColumnCount()];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = r.getValue(j);
+            }
+            row[i * 2] = ValueArray.get(data);
+            row[i * 2 + 1] = ValueLong.get(r.getKey());
+        }
+        return row;
+    }
+
+    private static void setSpillRow(ArrayList<TableFilter> filters, Value[] row) {
+        for (int i = 0, size = filters.size(); i < size; i++) {
+            if (row[i * 2] == ValueNull.INSTANCE) {
+                filters.get(i).set(null);
+                continue;
+            }
+            Value[] data = ((ValueArray) row[i * 2]).getList();
+            Row r = new Row(data, Row.MEMORY_CALCULATE);
+            r.setKey(row[i * 2 + 1].getLong());
+            filters.get(i).set(r);
+        }
+    }
+
     /**
      * Get the index that matches the ORDER BY list, if one exists. This is to
      * avoid running a separate ORDER BY if an index can be used. This is
@@ -643,9 +957,10 @@ public class Select extends Query {
         if (isForUpdateMvcc) {
             forUpdateRows = New.arrayList();
         }
-        while (topTableFilter.next()) {
+        VectorScan scan = getVectorScan();
+        while (scan != null ? scan.next() : topTableFilter.next()) {
             setCurrentRowNumber(rowNumber + 1);
-            if (condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
+            if (scan != null || condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
                 Value[] row = new Value[columnCount];
                 for (int i = 0; i < columnCount; i++) {
                     Expression expr = expressions.get(i);
@@ -669,6 +984,35 @@ public class Select extends Query {
         }
     }
 
+    /**
+     * Get the batch reader for the top table filter, if the condition can be
+     * evaluated for a batch of rows at once.
+     *
+     * @return the batch reader, or null
+     */
+    private VectorScan getVectorScan() {
+        if (condition == null || isForUpdate || !session.getDatabase().getSettings().vectorizedExecution) {
+            return null;
+        }
+        if (topTableFilter.getJoin() != null || topTableFilter.getNestedJoin() != null
+                || topTableFilter.getTable().isDistributed()) {
+            return null;
+        }
+        VectorExpression v = condition.createVectorExpression(session, topTableFilter, Value.BOOLEAN);
+        if (v == null) {
+            return null;
+        }
+        // if the index contains all columns of the condition, the rows are
+        // only read from the table for the rows that match
+        boolean searchRows = false;
+        if (topTableFilter.canSetSearchRow()) {
+            HashSet<Column> columns = New.hashSet();
+            condition.isEverything(ExpressionVisitor.getColumnsVisitor(columns));
+            searchRows = topTableFilter.getIndex().isCovering(columns);
+        }
+        return new VectorScan(session, topTableFilter, condition, v, searchRows);
+    }
+
     private void queryQuick(int columnCount, ResultTarget result) {
         Value[] row = new Value[columnCount];
         for (int i = 0; i < columnCount; i++) {
@@ -718,6 +1062,16 @@ public class Select extends Query {
         if (limitRows >= 0 || offsetExpr != null) {
             result = createLocalResult(result);
         }
+        int offset = offsetExpr == null ? 0 : offsetExpr.getValue(session).getInt();
+        if (result != null && limitRows > 0) {
+            // sorted results only need to keep the first offset + limit rows
+            long topN = (long) limitRows + Math.max(offset, 0);
+            if (topN <= Integer.MAX_VALUE) {
+                result.setTopN((int) topN);
+            }
+        }
+        boolean analyze = session.isExplainAnalyze();
+        long start = analyze ? System.nanoTime() : 0;
         topTableFilter.startQuery(session);
         topTableFilter.reset();
         boolean exclusive = isForUpdate && !isForUpdateMvcc;
@@ -736,29 +1090,43 @@ public class Select extends Query {
         }
         topTableFilter.lock(session, exclusive, exclusive);
         ResultTarget to = result != null ? result : target;
-        if (limitRows != 0) {
-            if (isQuickAggregateQuery) {
-                queryQuick(columnCount, to);
-            } else if (isGroupQuery) {
-                if (isGroupSortedQuery) {
-                    queryGroupSorted(columnCount, to);
+        try {
+            if (limitRows != 0) {
+                if (isQuickAggregateQuery) {
+                    queryQuick(columnCount, to);
+                } else if (isGroupQuery) {
+                    if (isGroupSortedQuery) {
+                        queryGroupSorted(columnCount, to);
+                    } else {
+                        queryGroup(columnCount, result);
+                    }
+                } else if (isDistinctQuery) {
+                    queryDistinct(to, limitRows);
                 } else {
-                    queryGroup(columnCount, result);
+                    queryFlat(columnCount, to, limitRows);
                 }
-            } else if (isDistinctQuery) {
-                queryDistinct(to, limitRows);
-            } else {
-                queryFlat(columnCount, to, limitRows);
             }
+        } finally {
+            topTableFilter.endQuery();
         }
         if (offsetExpr != null) {
-            result.setOffset(offsetExpr.getValue(session).getInt());
+            result.setOffset(offset);
         }
         if (limitRows >= 0) {
             result.setLimit(limitRows);
         }
+        if (analyze) {
+            long now = System.nanoTime();
+            analyzeQueryNanos = now - start;
+            start = now;
+        }
         if (result != null) {
             result.done();
+            if (analyze) {
+                analyzeResultNanos = System.nanoTime() - start;
+                analyzeRows = result.getRowCount();
+                analyzeSpilledRows = result.getSpilledRowCount();
+            }
             if (target != null) {
                 while (result.next()) {
                     target.addRow(result.currentRow());
@@ -1057,9 +1425,11 @@ public class Select extends Query {
         for (TableFilter t : topArray) {
             t.setFullCondition(condition);
         }
+        allColumnsSet = getAllColumns();
 
         Optimizer optimizer = new Optimizer(topArray, condition, session);
         optimizer.optimize();
+        allColumnsSet = null;
         topTableFilter = optimizer.getTopFilter();
         double planCost = optimizer.getCost();
 
@@ -1069,6 +1439,42 @@ public class Select extends Query {
         return planCost;
     }
 
+    /**
+     * Get all columns that are used by this query, so that the optimizer can
+     * find indexes that contain all of them.
+     *
+     * @return the set of columns
+     */
+    private HashSet<Column> getAllColumns() {
+        HashSet<Column> columns = New.hashSet();
+        ExpressionVisitor visitor = ExpressionVisitor.getColumnsVisitor(columns);
+        for (Expression e : expressions) {
+            e.isEverything(visitor);
+        }
+        if (condition != null) {
+            condition.isEverything(visitor);
+        }
+        for (TableFilter f : filters) {
+            if (f.getJoinCondition() != null) {
+                f.getJoinCondition().isEverything(visitor);
+            }
+            if (f.getFilterCondition() != null) {
+                f.getFilterCondition().isEverything(visitor);
+            }
+        }
+        return columns;
+    }
+
+    /**
+     * Get the columns that are used by this query. This is only set while the
+     * query plan is created.
+     *
+     * @return the set of columns, or null
+     */
+    public HashSet<Column> getAllColumnsSet() {
+        return allColumnsSet;
+    }
+
     private void setEvaluatableRecursive(TableFilter f) {
         for (; f != null; f = f.getJoin()) {
             f.setEvaluatable(f, true);
@@ -1123,6 +1529,20 @@ public class Select extends Query {
     }
 
     public String getPlanSQL(boolean isDistributed) {
+        return getPlanSQL(isDistributed, true);
+    }
+
+    /**
+     * Get the plan SQL of this select.
+     *
+     * @param isDistributed if all expressions are listed, so that the results
+     *            of the regions can be merged
+     * @param withLimit if LIMIT and OFFSET are included; the regions of a
+     *            merged query need to return all their rows, because LIMIT
+     *            and OFFSET can only be applied after the merge
+     * @return the SQL statement
+     */
+    public String getPlanSQL(boolean isDistributed, boolean withLimit) {
         // can not use the field sqlStatement because the parameter
         // indexes may be incorrect: ? may be in fact ?2 for a subquery
         // but indexes may be set manually as well
@@ -1203,7 +1623,7 @@ public class Select extends Query {
                 buff.append(StringUtils.unEnclose(o.getSQL()));
             }
         }
-        if (limitExpr != null) {
+        if (withLimit && limitExpr != null) {
             buff.append("\nLIMIT ").append(StringUtils.unEnclose(limitExpr.getSQL(isDistributed)));
             if (offsetExpr != null) {
                 buff.append(" OFFSET ").append(StringUtils.unEnclose(offsetExpr.getSQL(isDistributed)));
@@ -1230,6 +1650,17 @@ public class Select extends Query {
             }
         }
         // buff.append("\n/* cost: " + cost + " */");
+        if (analyzeQueryNanos > 0 && session.isExplainAnalyze()) {
+            buff.append("\n/* query time: " + analyzeQueryNanos / 1000 / 1000d + " ms");
+            if (analyzeResultNanos > 0) {
+                buff.append(", result time: " + analyzeResultNanos / 1000 / 1000d + " ms, result rows: ").
+                    append(analyzeRows);
+                if (analyzeSpilledRows > 0) {
+                    buff.append(", spilled rows: ").append(analyzeSpilledRows);
+                }
+            }
+            buff.append(" */");
+        }
         return buff.toString();
     }
 
@@ -1260,6 +1691,10 @@ public class Select extends Query {
         }
     }
 
+    public boolean isForUpdate() {
+        return isForUpdate;
+    }
+
     public void mapColumns(ColumnResolver resolver, int level) {
         for (Expression e : expressions) {
             e.mapColumns(resolver, level);
@@ -1408,6 +1843,19 @@ public class Select extends Query {
         return !isForUpdate;
     }
 
+    @Override
+    public boolean isBoundToSession() {
+        if (super.isBoundToSession()) {
+            return true;
+        }
+        for (int i = 0, size = filters.size(); i < size; i++) {
+            if (filters.get(i).getTable() instanceof TableView) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     public int getType() {
         return CommandInterface.SELECT;
     }
@@ -98,6 +98,13 @@ public class SelectUnion extends Query {
         this.sqlStatement = sql;
     }
 
+    @Override
+    public void setSession(Session currentSession) {
+        left.setSession(currentSession);
+        right.setSession(currentSession);
+        super.setSession(currentSession);
+    }
+
     public void setOrder(ArrayList<SelectOrderBy> order) {
         orderList = order;
     }
@@ -317,6 +324,10 @@ public class SelectUnion extends Query {
         isForUpdate = forUpdate;
     }
 
+    public boolean isForUpdate() {
+        return isForUpdate;
+    }
+
     public int getColumnCount() {
         return left.getColumnCount();
     }
@@ -398,6 +409,11 @@ public class SelectUnion extends Query {
         return left.isEverything(visitor) && right.isEverything(visitor);
     }
 
+    @Override
+    public boolean isBoundToSession() {
+        return super.isBoundToSession() || left.isBoundToSession() || right.isBoundToSession();
+    }
+
     public boolean isReadOnly() {
         return left.isReadOnly() && right.isReadOnly();
     }
@@ -314,6 +314,26 @@ public class Set extends Prepared {
             database.setOptimizeReuseResults(getIntValue() != 0);
             break;
         }
+        case SetTypes.PROFILER_INTERVAL: {
+            session.getUser().checkAdmin();
+            int value = getIntValue();
+            if (value < 0) {
+                throw DbException.getInvalidValueException("PROFILER_INTERVAL", value);
+            }
+            database.getProfiler().setInterval(value);
+            addOrUpdateSetting(name, null, value);
+            break;
+        }
+        case SetTypes.PROFILER_THRESHOLD: {
+            session.getUser().checkAdmin();
+            int value = getIntValue();
+            if (value < 0) {
+                throw DbException.getInvalidValueException("PROFILER_THRESHOLD", value);
+            }
+            database.getProfiler().setThreshold(value);
+            addOrUpdateSetting(name, null, value);
+            break;
+        }
         case SetTypes.QUERY_TIMEOUT: {
             if (getIntValue() < 0) {
                 throw DbException.getInvalidValueException("QUERY_TIMEOUT", getIntValue());
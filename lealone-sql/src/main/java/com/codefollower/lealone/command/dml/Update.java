@@ -18,6 +18,7 @@ import com.codefollower.lealone.dbobject.table.Column;
 import com.codefollower.lealone.dbobject.table.PlanItem;
 import com.codefollower.lealone.dbobject.table.Table;
 import com.codefollower.lealone.dbobject.table.TableFilter;
+import com.codefollower.lealone.dbobject.table.TableView;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.expression.Expression;
 import com.codefollower.lealone.expression.Parameter;
@@ -55,6 +56,14 @@ public class Update extends Prepared {
         this.tableFilter = tableFilter;
     }
 
+    @Override
+    public void setSession(Session currentSession) {
+        if (tableFilter != null) {
+            tableFilter.setSession(currentSession);
+        }
+        super.setSession(currentSession);
+    }
+
     public void setCondition(Expression condition) {
         this.condition = condition;
     }
@@ -107,7 +116,9 @@ public class Update extends Prepared {
                 if (condition == null || Boolean.TRUE.equals(condition.getBooleanValue(session))) {
                     Row oldRow = tableFilter.get();
                     Row newRow = table.getTemplateRow();
-                    newRow.setTransactionId(getCommand().getTransaction().getTransactionId());
+                    if (getCommand() != null && getCommand().getTransaction() != null) {
+                        newRow.setTransactionId(getCommand().getTransaction().getTransactionId());
+                    }
                     for (int i = 0; i < columnCount; i++) {
                         Expression newExpr = expressionMap.get(columns[i]);
                         Value newValue;
@@ -214,4 +225,9 @@ public class Update extends Prepared {
         return true;
     }
 
+    @Override
+    public boolean isBoundToSession() {
+        return super.isBoundToSession() || tableFilter.getTable() instanceof TableView;
+    }
+
 }
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.command.dml;
+
+import com.codefollower.lealone.dbobject.table.TableFilter;
+import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.expression.Expression;
+import com.codefollower.lealone.expression.VectorExpression;
+import com.codefollower.lealone.result.Row;
+import com.codefollower.lealone.result.SearchRow;
+
+/**
+ * Reads the rows of a table filter in batches, and evaluates the condition
+ * of the query for each batch at once. Only the rows that match are set as
+ * the current row of the table filter. If the index contains all columns of
+ * the condition, the batch is evaluated from the search rows of the index,
+ * and a row is only read from the table if it matches and a column is needed
+ * that is not in the index.
+ */
+class VectorScan {
+
+    /**
+     * The size of the first batch, so that queries with a small limit do not
+     * read too many rows.
+     */
+    private static final int FIRST_BATCH_SIZE = 64;
+
+    private final Session session;
+    private final TableFilter filter;
+    private final Expression condition;
+    private final VectorExpression vectorCondition;
+    private final boolean searchRows;
+    private final SearchRow[] rows = new SearchRow[VectorExpression.BATCH_SIZE];
+    private final int[] selection = new int[VectorExpression.BATCH_SIZE];
+    private int batchSize = FIRST_BATCH_SIZE;
+    private int selected;
+    private int index;
+    private boolean end;
+
+    VectorScan(Session session, TableFilter filter, Expression condition, VectorExpression vectorCondition,
+            boolean searchRows) {
+        this.session = session;
+        this.filter = filter;
+        this.condition = condition;
+        this.vectorCondition = vectorCondition;
+        this.searchRows = searchRows;
+    }
+
+    /**
+     * Go to the next row for which the condition is true.
+     *
+     * @return true if there is such a row
+     */
+    boolean next() {
+        while (index >= selected) {
+            if (end) {
+                return false;
+            }
+            readBatch();
+        }
+        setCurrent(rows[selection[index++]]);
+        return true;
+    }
+
+    private void readBatch() {
+        int count = 0;
+        while (count < batchSize) {
+            if (!filter.next()) {
+                end = true;
+                break;
+            }
+            rows[count++] = searchRows ? filter.getSearchRow() : filter.get();
+        }
+        batchSize = Math.min(batchSize * 2, rows.length);
+        index = 0;
+        try {
+            selected = vectorCondition.filter(rows, count, selection);
+        } catch (VectorExpression.OverflowException e) {
+            // a DECIMAL value does not fit in a long
+            selected = 0;
+            for (int i = 0; i < count; i++) {
+                setCurrent(rows[i]);
+                if (Boolean.TRUE.equals(condition.getBooleanValue(session))) {
+                    selection[selected++] = i;
+                }
+            }
+        }
+    }
+
+    private void setCurrent(SearchRow row) {
+        if (searchRows) {
+            filter.setSearchRow(row);
+        } else {
+            filter.set((Row) row);
+        }
+    }
+
+}
@@ -6,6 +6,8 @@
  */
 package com.codefollower.lealone.dbobject.index;
 
+import java.util.HashSet;
+
 import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.constant.ErrorCode;
 import com.codefollower.lealone.dbobject.DbObject;
@@ -293,15 +295,29 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
     }
 
     /**
-     * Get the list of columns as a string.
+     * Get the list of key columns as a string.
      *
      * @return the list of columns
      */
     private String getColumnListSQL() {
         StatementBuilder buff = new StatementBuilder();
-        for (IndexColumn c : indexColumns) {
+        for (int i = 0, len = indexColumns.length - indexType.getIncludeColumnCount(); i < len; i++) {
             buff.appendExceptFirst(", ");
-            buff.append(c.getSQL());
+            buff.append(indexColumns[i].getSQL());
+        }
+        return buff.toString();
+    }
+
+    /**
+     * Get the list of included (non-key) columns as a string.
+     *
+     * @return the list of columns
+     */
+    private String getIncludeColumnListSQL() {
+        StatementBuilder buff = new StatementBuilder();
+        for (int i = indexColumns.length - indexType.getIncludeColumnCount(); i < indexColumns.length; i++) {
+            buff.appendExceptFirst(", ");
+            buff.append(indexColumns[i].column.getSQL());
         }
         return buff.toString();
     }
@@ -319,6 +335,9 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
             buff.append(" COMMENT ").append(StringUtils.quoteStringSQL(comment));
         }
         buff.append('(').append(getColumnListSQL()).append(')');
+        if (indexType.getIncludeColumnCount() > 0) {
+            buff.append(" INCLUDE(").append(getIncludeColumnListSQL()).append(')');
+        }
         return buff.toString();
     }
 
@@ -366,6 +385,18 @@ public abstract class BaseIndex extends SchemaObjectBase implements Index {
         return false;
     }
 
+    public boolean isCovering(HashSet<Column> columns) {
+        if (indexType.isScan()) {
+            return false;
+        }
+        for (Column c : columns) {
+            if (c.getTable() == table && c.getColumnId() >= 0 && getColumnIndex(c) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     public boolean canScan() {
         return true;
     }
@@ -25,6 +25,7 @@ public class FunctionCursorResultSet implements Cursor {
     private final Session session;
     private final ResultSet result;
     private final ResultSetMetaData meta;
+    private int[] types;
     private Value[] values;
     private Row row;
 
@@ -56,11 +57,15 @@ public class FunctionCursorResultSet implements Cursor {
         row = null;
         try {
             if (result != null && result.next()) {
-                int columnCount = meta.getColumnCount();
-                values = new Value[columnCount];
-                for (int i = 0; i < columnCount; i++) {
-                    int type = DataType.convertSQLTypeToValueType(meta.getColumnType(i + 1));
-                    values[i] = DataType.readValue(session, result, i+1, type);
+                if (types == null) {
+                    types = new int[meta.getColumnCount()];
+                    for (int i = 0; i < types.length; i++) {
+                        types[i] = DataType.convertSQLTypeToValueType(meta.getColumnType(i + 1));
+                    }
+                }
+                values = new Value[types.length];
+                for (int i = 0; i < types.length; i++) {
+                    values[i] = DataType.readValue(session, result, i + 1, types[i]);
                 }
             } else {
                 values = null;
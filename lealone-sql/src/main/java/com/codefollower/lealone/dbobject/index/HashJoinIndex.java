@@ -0,0 +1,268 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.dbobject.index;
+
+import java.util.ArrayList;
+
+import com.codefollower.lealone.dbobject.table.Column;
+import com.codefollower.lealone.dbobject.table.IndexColumn;
+import com.codefollower.lealone.dbobject.table.Table;
+import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.result.Row;
+import com.codefollower.lealone.result.SearchRow;
+import com.codefollower.lealone.result.SortOrder;
+import com.codefollower.lealone.util.New;
+import com.codefollower.lealone.util.StatementBuilder;
+import com.codefollower.lealone.util.ValueHashMap;
+import com.codefollower.lealone.value.Value;
+import com.codefollower.lealone.value.ValueArray;
+import com.codefollower.lealone.value.ValueNull;
+
+/**
+ * A temporary hash index used to join a table on equality conditions
+ * when the table has no usable index.
+ * The hash table is built on the first lookup of a query, using one scan over the table,
+ * so that each row of the outer table only needs one hash lookup
+ * instead of a complete scan of the inner table.
+ * If the table has more rows than MAX_MEMORY_ROWS, the hash table is dropped
+ * and every lookup falls back to a table scan
+ * (the join conditions are always checked again by the table filter).
+ */
+public class HashJoinIndex extends BaseIndex {
+
+    private final int maxMemoryRows;
+    private ValueHashMap<ArrayList<Row>> rows;
+    private boolean built;
+    private boolean overflow;
+
+    public HashJoinIndex(Table table, Column[] columns) {
+        initBaseIndex(table, 0, null, IndexColumn.wrap(columns), IndexType.createNonUnique(false, true));
+        maxMemoryRows = database.getMaxMemoryRows();
+    }
+
+    /**
+     * Check if a hash join can be used for the given column.
+     *
+     * @param column the column of the inner table
+     * @param type the data type of the value it is compared with
+     * @return true if values of this type can be looked up in a hash table
+     */
+    public static boolean isHashable(Column column, int type) {
+        if (column.getType() != type) {
+            // the comparison would need a conversion
+            return false;
+        }
+        switch (type) {
+        case Value.BOOLEAN:
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.DATE:
+        case Value.TIME:
+        case Value.TIMESTAMP:
+        case Value.STRING:
+        case Value.STRING_IGNORECASE:
+        case Value.UUID:
+            return true;
+        default:
+            // DECIMAL, DOUBLE and so on: equal values may have a different hash code
+            return false;
+        }
+    }
+
+    /**
+     * Forget the hash table. It is built again on the next lookup.
+     */
+    public void reset() {
+        rows = null;
+        built = false;
+        overflow = false;
+    }
+
+    private void build(Session session) {
+        built = true;
+        rows = ValueHashMap.newInstance();
+        Cursor cursor = table.getScanIndex(session).find(session, null, null);
+        int count = 0;
+        while (cursor.next()) {
+            if (++count > maxMemoryRows) {
+                rows = null;
+                overflow = true;
+                return;
+            }
+            Row row = cursor.get();
+            Value key = getKey(row);
+            if (key == null) {
+                // NULL never matches
+                continue;
+            }
+            ArrayList<Row> list = rows.get(key);
+            if (list == null) {
+                list = New.arrayList();
+                rows.put(key, list);
+            }
+            list.add(row);
+        }
+    }
+
+    private Value getKey(SearchRow row) {
+        int len = columnIds.length;
+        if (len == 1) {
+            Value v = row.getValue(columnIds[0]);
+            return v == null || v == ValueNull.INSTANCE ? null : v;
+        }
+        Value[] values = new Value[len];
+        for (int i = 0; i < len; i++) {
+            Value v = row.getValue(columnIds[i]);
+            if (v == null || v == ValueNull.INSTANCE) {
+                return null;
+            }
+            values[i] = v;
+        }
+        return ValueArray.get(values);
+    }
+
+    public Cursor find(Session session, SearchRow first, SearchRow last) {
+        if (!built) {
+            build(session);
+        }
+        if (overflow) {
+            return table.getScanIndex(session).find(session, null, null);
+        }
+        if (first == null) {
+            throw DbException.throwInternalError();
+        }
+        Value key = getKey(first);
+        return new HashJoinCursor(key == null ? null : rows.get(key));
+    }
+
+    public double getCost(Session session, int[] masks, SortOrder sortOrder) {
+        for (Column column : columns) {
+            if ((masks[column.getColumnId()] & IndexCondition.EQUALITY) != IndexCondition.EQUALITY) {
+                return Long.MAX_VALUE;
+            }
+        }
+        long rowCount = table.getRowCountApproximation();
+        if (rowCount > maxMemoryRows) {
+            // the hash table would not be built, every lookup is a table scan
+            return table.getScanIndex(session).getCost(session, masks, sortOrder);
+        }
+        // one lookup per outer row, plus the matching rows;
+        // the single scan to build the hash table is shared by all lookups
+        return getCostRangeIndex(masks, rowCount, null) + 1;
+    }
+
+    public String getPlanSQL() {
+        StatementBuilder buff = new StatementBuilder(table.getSQL());
+        buff.append(".hashJoin(");
+        for (Column column : columns) {
+            buff.appendExceptFirst(", ");
+            buff.append(column.getSQL());
+        }
+        return buff.append(')').toString();
+    }
+
+    public void close(Session session) {
+        reset();
+    }
+
+    public void add(Session session, Row row) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    public void remove(Session session, Row row) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    public void remove(Session session) {
+        reset();
+    }
+
+    public void truncate(Session session) {
+        reset();
+    }
+
+    public void checkRename() {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    public boolean needRebuild() {
+        return false;
+    }
+
+    public boolean canGetFirstOrLast() {
+        return false;
+    }
+
+    public Cursor findFirstOrLast(Session session, boolean first) {
+        throw DbException.getUnsupportedException("HASH JOIN");
+    }
+
+    public boolean canScan() {
+        return false;
+    }
+
+    public long getRowCount(Session session) {
+        return table.getRowCount(session);
+    }
+
+    public long getRowCountApproximation() {
+        return table.getRowCountApproximation();
+    }
+
+    public long getDiskSpaceUsed() {
+        return 0;
+    }
+
+    /**
+     * The cursor over the rows of one hash bucket.
+     */
+    private static class HashJoinCursor implements Cursor {
+
+        private final ArrayList<Row> list;
+        private int index = -1;
+
+        HashJoinCursor(ArrayList<Row> list) {
+            this.list = list;
+        }
+
+        public Row get() {
+            if (index < 0 || index >= list.size()) {
+                return null;
+            }
+            return list.get(index);
+        }
+
+        public SearchRow getSearchRow() {
+            return get();
+        }
+
+        public boolean next() {
+            return list != null && ++index < list.size();
+        }
+
+        public boolean previous() {
+            return list != null && --index >= 0;
+        }
+    }
+
+}
@@ -6,6 +6,8 @@
  */
 package com.codefollower.lealone.dbobject.index;
 
+import java.util.HashSet;
+
 import com.codefollower.lealone.dbobject.SchemaObject;
 import com.codefollower.lealone.dbobject.table.Column;
 import com.codefollower.lealone.dbobject.table.IndexColumn;
@@ -236,6 +238,15 @@ public interface Index extends SchemaObject {
      */
     boolean isRowIdIndex();
 
+    /**
+     * Check if this index contains all the given columns of its table, so that
+     * the rows do not need to be read from the table.
+     *
+     * @param columns the columns that are used (of any table)
+     * @return true if the index covers the columns
+     */
+    boolean isCovering(HashSet<Column> columns);
+
     /**
      * Can this index iterate over all rows?
      *
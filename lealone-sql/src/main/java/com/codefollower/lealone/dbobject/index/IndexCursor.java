@@ -71,6 +71,7 @@ public class IndexCursor implements Cursor {
      * @param indexConditions the index conditions
      */
     public void find(Session s, ArrayList<IndexCondition> indexConditions) {
+        close();
         parseIndexConditions(s, indexConditions);
         if (inColumn != null) {
             return;
@@ -289,6 +290,17 @@ public class IndexCursor implements Cursor {
         throw DbException.throwInternalError();
     }
 
+    /**
+     * Close the current cursor if not all rows were read. Only the cursor of a
+     * linked table holds resources that need to be released.
+     */
+    public void close() {
+        if (cursor instanceof LinkedCursor) {
+            ((LinkedCursor) cursor).close();
+        }
+        cursor = null;
+    }
+
     public SearchRow getStartSearchRow() {
         return start;
     }
@@ -13,6 +13,7 @@ public class IndexType {
 
     private boolean primaryKey, persistent, unique, hash, scan;
     private boolean belongsToConstraint;
+    private int includeColumnCount;
 
     /**
      * Create a primary key index.
@@ -101,6 +102,25 @@ public class IndexType {
         return belongsToConstraint;
     }
 
+    /**
+     * Set the number of columns at the end of the column list that are only
+     * stored in the index (the INCLUDE columns), but are not part of the key.
+     *
+     * @param includeColumnCount the number of included columns
+     */
+    public void setIncludeColumnCount(int includeColumnCount) {
+        this.includeColumnCount = includeColumnCount;
+    }
+
+    /**
+     * Get the number of included (non-key) columns.
+     *
+     * @return the number of included columns
+     */
+    public int getIncludeColumnCount() {
+        return includeColumnCount;
+    }
+
     /**
      * Is this a hash index?
      *
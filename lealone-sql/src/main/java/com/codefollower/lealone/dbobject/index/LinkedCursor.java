@@ -9,6 +9,9 @@ package com.codefollower.lealone.dbobject.index;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import com.codefollower.lealone.dbobject.table.Column;
 import com.codefollower.lealone.dbobject.table.TableLink;
@@ -25,18 +28,42 @@ import com.codefollower.lealone.value.Value;
 public class LinkedCursor implements Cursor {
 
     private final TableLink tableLink;
-    private final PreparedStatement prep;
-    private final String sql;
+    private PreparedStatement prep;
+    private String sql;
     private final Session session;
-    private final ResultSet rs;
+    private ResultSet rs;
     private Row current;
 
+    /**
+     * The statements of the remaining key ranges of a parallel scan.
+     */
+    private final String[] sqls;
+    private final ArrayList<Future<PreparedStatement>> futures;
+    private int part;
+
     LinkedCursor(TableLink tableLink, ResultSet rs, Session session, String sql, PreparedStatement prep) {
         this.session = session;
         this.tableLink = tableLink;
         this.rs = rs;
         this.sql = sql;
         this.prep = prep;
+        this.sqls = null;
+        this.futures = null;
+    }
+
+    LinkedCursor(TableLink tableLink, Session session, String[] sqls, PreparedStatement prep,
+            ArrayList<Future<PreparedStatement>> futures) {
+        this.session = session;
+        this.tableLink = tableLink;
+        this.sqls = sqls;
+        this.futures = futures;
+        this.sql = sqls[0];
+        this.prep = prep;
+        try {
+            this.rs = prep.getResultSet();
+        } catch (SQLException e) {
+            throw DbException.convert(e);
+        }
     }
 
     public Row get() {
@@ -48,16 +75,27 @@ public class LinkedCursor implements Cursor {
     }
 
     public boolean next() {
+        if (rs == null) {
+            return false;
+        }
         try {
-            boolean result = rs.next();
-            if (!result) {
-                rs.close();
-                tableLink.reusePreparedStatement(prep, sql);
-                current = null;
-                return false;
+            while (!rs.next()) {
+                closeResult();
+                if (futures == null || part >= futures.size()) {
+                    current = null;
+                    return false;
+                }
+                // continue with the next key range
+                sql = sqls[++part];
+                prep = futures.get(part - 1).get();
+                rs = prep.getResultSet();
             }
         } catch (SQLException e) {
             throw DbException.convert(e);
+        } catch (InterruptedException e) {
+            throw DbException.convert(e);
+        } catch (ExecutionException e) {
+            throw DbException.convert(e.getCause());
         }
         current = tableLink.getTemplateRow();
         for (int i = 0; i < current.getColumnCount(); i++) {
@@ -72,4 +110,50 @@ public class LinkedCursor implements Cursor {
         throw DbException.throwInternalError();
     }
 
+    private void closeResult() throws SQLException {
+        ResultSet r = rs;
+        rs = null;
+        r.close();
+        tableLink.reusePreparedStatement(prep, sql);
+    }
+
+    /**
+     * Close the cursor before all rows are read. The queries of the remaining
+     * key ranges of a parallel scan are cancelled if they did not start yet,
+     * otherwise their results are closed.
+     */
+    public void close() {
+        current = null;
+        SQLException error = null;
+        try {
+            if (rs != null) {
+                closeResult();
+            }
+        } catch (SQLException e) {
+            error = e;
+        }
+        if (futures != null) {
+            for (; part < futures.size(); part++) {
+                Future<PreparedStatement> f = futures.get(part);
+                if (f.cancel(false)) {
+                    continue;
+                }
+                try {
+                    PreparedStatement p = f.get();
+                    p.getResultSet().close();
+                    tableLink.reusePreparedStatement(p, sqls[part + 1]);
+                } catch (SQLException e) {
+                    error = e;
+                } catch (InterruptedException e) {
+                    throw DbException.convert(e);
+                } catch (ExecutionException e) {
+                    // the query failed, there is nothing to close
+                }
+            }
+        }
+        if (error != null) {
+            throw DbException.convert(error);
+        }
+    }
+
 }
@@ -9,6 +9,12 @@ package com.codefollower.lealone.dbobject.index;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.dbobject.table.Column;
@@ -22,6 +28,7 @@ import com.codefollower.lealone.result.SortOrder;
 import com.codefollower.lealone.util.New;
 import com.codefollower.lealone.util.StatementBuilder;
 import com.codefollower.lealone.value.Value;
+import com.codefollower.lealone.value.ValueLong;
 import com.codefollower.lealone.value.ValueNull;
 
 /**
@@ -30,6 +37,13 @@ import com.codefollower.lealone.value.ValueNull;
  */
 public class LinkedIndex extends BaseIndex {
 
+    /**
+     * The minimum number of keys per query of a parallel scan.
+     */
+    private static final long MIN_KEYS_PER_QUERY = 1000;
+
+    private static ThreadPoolExecutor pool;
+
     private final TableLink link;
     private final String targetTableName;
     private long rowCount;
@@ -53,6 +67,11 @@ public class LinkedIndex extends BaseIndex {
     }
 
     public void add(Session session, Row row) {
+        if (link.restoreFromBatch(session, row)) {
+            // the update of this row was rolled back before it was sent
+            rowCount++;
+            return;
+        }
         ArrayList<Value> params = New.arrayList();
         StatementBuilder buff = new StatementBuilder("INSERT INTO ");
         buff.append(targetTableName).append(" VALUES(");
@@ -71,7 +90,7 @@ public class LinkedIndex extends BaseIndex {
         buff.append(')');
         String sql = buff.toString();
         try {
-            link.execute(sql, params, true);
+            link.addBatch(session, sql, params, row, null);
             rowCount++;
         } catch (Exception e) {
             throw TableLink.wrapException(sql, e);
@@ -79,6 +98,16 @@ public class LinkedIndex extends BaseIndex {
     }
 
     public Cursor find(Session session, SearchRow first, SearchRow last) {
+        link.flushBatch(session);
+        if (first == null && last == null) {
+            int parts = database.getSettings().linkParallelScan;
+            if (parts > 1) {
+                Cursor cursor = findParallel(session, parts);
+                if (cursor != null) {
+                    return cursor;
+                }
+            }
+        }
         ArrayList<Value> params = New.arrayList();
         StatementBuilder buff = new StatementBuilder("SELECT * FROM ");
         buff.append(targetTableName).append(" T");
@@ -124,6 +153,118 @@ public class LinkedIndex extends BaseIndex {
         }
     }
 
+    /**
+     * Scan the table with one query per key range. The queries are run in
+     * parallel.
+     *
+     * @param session the session
+     * @param parts the number of key ranges
+     * @return the cursor, or null if the table can not be split
+     */
+    private Cursor findParallel(Session session, int parts) {
+        Column key = getIntegerKeyColumn();
+        if (key == null) {
+            return null;
+        }
+        String sql = "SELECT MIN(" + key.getSQL() + "), MAX(" + key.getSQL() + ") FROM " + targetTableName;
+        long min, max;
+        try {
+            PreparedStatement prep = link.execute(sql, null, false);
+            ResultSet rs = prep.getResultSet();
+            rs.next();
+            min = rs.getLong(1);
+            max = rs.getLong(2);
+            rs.close();
+            link.reusePreparedStatement(prep, sql);
+        } catch (Exception e) {
+            throw TableLink.wrapException(sql, e);
+        }
+        long range = max - min;
+        if (range < 0 || range / parts < MIN_KEYS_PER_QUERY) {
+            // empty, small or overflow
+            return null;
+        }
+        String[] sqls = new String[parts];
+        ArrayList<ArrayList<Value>> paramList = New.arrayList();
+        for (int i = 0; i < parts; i++) {
+            ArrayList<Value> params = New.arrayList();
+            StatementBuilder buff = new StatementBuilder("SELECT * FROM ");
+            buff.append(targetTableName).append(" T WHERE ");
+            // the first and the last range are open,
+            // to include rows that were added in the meantime
+            if (i > 0) {
+                buff.append(key.getSQL()).append(">=?");
+                params.add(ValueLong.get(min + range / parts * i).convertTo(key.getType()));
+            }
+            if (i < parts - 1) {
+                if (i > 0) {
+                    buff.append(" AND ");
+                }
+                buff.append(key.getSQL()).append("<?");
+                params.add(ValueLong.get(min + range / parts * (i + 1)).convertTo(key.getType()));
+            }
+            sqls[i] = buff.toString();
+            paramList.add(params);
+        }
+        ArrayList<Future<PreparedStatement>> futures = New.arrayList();
+        ThreadPoolExecutor p = getPool();
+        for (int i = 1; i < parts; i++) {
+            final String partSQL = sqls[i];
+            final ArrayList<Value> params = paramList.get(i);
+            futures.add(p.submit(new Callable<PreparedStatement>() {
+                public PreparedStatement call() {
+                    return link.execute(partSQL, params, false);
+                }
+            }));
+        }
+        // the first range is queried by this thread
+        PreparedStatement prep = link.execute(sqls[0], paramList.get(0), false);
+        return new LinkedCursor(link, session, sqls, prep, futures);
+    }
+
+    /**
+     * Get the primary key column if the primary key of the target table is a
+     * single integer column.
+     *
+     * @return the column or null
+     */
+    private Column getIntegerKeyColumn() {
+        for (Index idx : link.getIndexes()) {
+            if (idx.getIndexType().isPrimaryKey()) {
+                Column[] cols = idx.getColumns();
+                if (cols.length != 1 || cols[0] == null) {
+                    return null;
+                }
+                switch (cols[0].getType()) {
+                case Value.BYTE:
+                case Value.SHORT:
+                case Value.INT:
+                case Value.LONG:
+                    return cols[0];
+                default:
+                    return null;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static synchronized ThreadPoolExecutor getPool() {
+        if (pool == null) {
+            pool = new ThreadPoolExecutor(0, Integer.MAX_VALUE, 5, TimeUnit.SECONDS, new SynchronousQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private int threadNumber;
+
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "H2 Linked Scan " + threadNumber++);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+        }
+        return pool;
+    }
+
     private void addParameter(StatementBuilder buff, Column col) {
         if (col.getType() == Value.STRING_FIXED && link.isOracle()) {
             // workaround for Oracle
@@ -167,6 +308,12 @@ public class LinkedIndex extends BaseIndex {
     }
 
     public void remove(Session session, Row row) {
+        if (link.removeFromBatch(session, row)) {
+            // rolled back before it was sent
+            rowCount--;
+            return;
+        }
+        link.flushBatch(session);
         ArrayList<Value> params = New.arrayList();
         StatementBuilder buff = new StatementBuilder("DELETE FROM ");
         buff.append(targetTableName).append(" WHERE ");
@@ -197,12 +344,14 @@ public class LinkedIndex extends BaseIndex {
 
     /**
      * Update a row using a UPDATE statement. This method is to be called if the
-     * emit updates option is enabled.
+     * emit updates option is enabled. The statement is added to the batch of
+     * the session.
      *
+     * @param session the session
      * @param oldRow the old data
      * @param newRow the new data
      */
-    public void update(Row oldRow, Row newRow) {
+    public void update(Session session, Row oldRow, Row newRow) {
         ArrayList<Value> params = New.arrayList();
         StatementBuilder buff = new StatementBuilder("UPDATE ");
         buff.append(targetTableName).append(" SET ");
@@ -234,7 +383,7 @@ public class LinkedIndex extends BaseIndex {
         }
         String sql = buff.toString();
         try {
-            link.execute(sql, params, true);
+            link.addBatch(session, sql, params, newRow, oldRow);
         } catch (Exception e) {
             throw TableLink.wrapException(sql, e);
         }
@@ -7,6 +7,7 @@
 package com.codefollower.lealone.dbobject.index;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 
 import com.codefollower.lealone.dbobject.DbObject;
 import com.codefollower.lealone.dbobject.Schema;
@@ -324,6 +325,10 @@ public class MultiVersionIndex implements Index {
         return base.isRowIdIndex() && delta.isRowIdIndex();
     }
 
+    public boolean isCovering(HashSet<Column> columns) {
+        return base.isCovering(columns);
+    }
+
     public boolean canScan() {
         return base.canScan();
     }
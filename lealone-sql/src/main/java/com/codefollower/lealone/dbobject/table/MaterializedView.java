@@ -0,0 +1,526 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.dbobject.table;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+
+import com.codefollower.lealone.command.ddl.CreateTableData;
+import com.codefollower.lealone.command.dml.Query;
+import com.codefollower.lealone.command.dml.Select;
+import com.codefollower.lealone.constant.Constants;
+import com.codefollower.lealone.constant.ErrorCode;
+import com.codefollower.lealone.dbobject.DbObject;
+import com.codefollower.lealone.dbobject.Schema;
+import com.codefollower.lealone.dbobject.index.Cursor;
+import com.codefollower.lealone.dbobject.index.Index;
+import com.codefollower.lealone.dbobject.index.IndexType;
+import com.codefollower.lealone.engine.Database;
+import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.engine.UndoLogRecord;
+import com.codefollower.lealone.expression.Comparison;
+import com.codefollower.lealone.expression.Expression;
+import com.codefollower.lealone.expression.ExpressionColumn;
+import com.codefollower.lealone.expression.ExpressionVisitor;
+import com.codefollower.lealone.expression.Parameter;
+import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.result.LocalResult;
+import com.codefollower.lealone.result.Row;
+import com.codefollower.lealone.result.SearchRow;
+import com.codefollower.lealone.result.SortOrder;
+import com.codefollower.lealone.util.New;
+import com.codefollower.lealone.value.Value;
+import com.codefollower.lealone.value.ValueNull;
+
+/**
+ * A view whose result is stored in a hidden table. Reading the view reads the
+ * stored rows, the view query is only executed when the view is refreshed.
+ * <p>
+ * A view that is refreshed incrementally records the rows that are changed in
+ * the base tables, and at the end of each statement only re-computes the part
+ * of the result that is affected. For each base table, the first result column
+ * that is a plain column of this table (for example a GROUP BY column, or a
+ * column of a joined table) is used as the key: all result rows that depend on
+ * a changed row have the key value of the old or new row, so only the result
+ * rows with these key values are replaced. Tables on the inner side of an
+ * outer join don't get a key, because a changed row there may also affect
+ * result rows where the columns of this table are NULL. If no key column
+ * exists, or the statement changed too many keys, the whole result is
+ * re-computed.
+ * </p>
+ */
+public class MaterializedView extends TableView {
+
+    /**
+     * The maximum number of key values that are re-computed one by one at the
+     * end of a statement. If more keys are affected, the whole view is
+     * re-computed.
+     */
+    private static final int MAX_KEYS_PER_STATEMENT = 1000;
+
+    private final boolean incremental;
+    private final HashMap<Session, Delta> deltas = New.hashMap();
+    private Table storage;
+    private Query keyQuery;
+    private HashMap<Table, int[]> keys;
+
+    public MaterializedView(Schema schema, int id, String name, String querySQL, String[] columnNames,
+            Session session, boolean incremental) {
+        super(schema, id, name, querySQL, null, columnNames, session, false);
+        this.incremental = incremental;
+    }
+
+    /**
+     * Get the name of the table that stores the rows of a materialized view.
+     *
+     * @param viewName the name of the view
+     * @return the table name
+     */
+    public static String getStorageName(String viewName) {
+        return Constants.PREFIX_MATERIALIZED_VIEW + viewName;
+    }
+
+    public boolean isIncremental() {
+        return incremental;
+    }
+
+    /**
+     * Get the table that stores the rows of this view. A view that was created
+     * with FORCE while its query was invalid only gets this table when it is
+     * refreshed. Such a table is opened after the view when opening the
+     * database, so it is looked up here.
+     *
+     * @return the table, or null if the view was not refreshed yet
+     */
+    public Table getStorage() {
+        if (storage == null) {
+            storage = getSchema().findTableOrView(null, getStorageName(getName()));
+        }
+        return storage;
+    }
+
+    private Table checkStorage(Session session) {
+        Table table = getStorage();
+        if (table == null) {
+            if (isInvalid()) {
+                // throws the exception of the view query
+                super.getScanIndex(session);
+            }
+            throw DbException.get(ErrorCode.VIEW_IS_INVALID_2, getSQL(), "not refreshed");
+        }
+        return table;
+    }
+
+    public void setStorage(Table storage) {
+        this.storage = storage;
+    }
+
+    /**
+     * Create the hidden table that stores the rows of this view, and an index
+     * for each key column.
+     *
+     * @param session the session
+     * @param storageId the object id of the table
+     * @return the table
+     */
+    public Table createStorage(Session session, int storageId) {
+        Database db = session.getDatabase();
+        boolean persistent = db.isPersistent();
+        CreateTableData data = new CreateTableData();
+        for (Column c : getColumns()) {
+            data.columns.add(new Column(c.getName(), c.getType(), c.getPrecision(), c.getScale(), c.getDisplaySize()));
+        }
+        data.tableName = getStorageName(getName());
+        data.id = storageId;
+        data.persistData = persistent;
+        data.persistIndexes = persistent;
+        data.create = true;
+        data.isHidden = true;
+        data.session = session;
+        Table table = getSchema().createTable(data);
+        db.addSchemaObject(session, table);
+        try {
+            HashSet<Integer> indexed = New.hashSet();
+            for (int[] key : getKeys().values()) {
+                if (!indexed.add(key[1])) {
+                    continue;
+                }
+                Column[] cols = { table.getColumn(key[1]) };
+                String indexName = getSchema().getUniqueIndexName(session, table, Constants.PREFIX_INDEX);
+                table.addIndex(session, indexName, db.allocateObjectId(), IndexColumn.wrap(cols),
+                        IndexType.createNonUnique(persistent), true, null);
+            }
+        } catch (DbException e) {
+            db.removeSchemaObject(session, table);
+            throw e;
+        }
+        storage = table;
+        return table;
+    }
+
+    /**
+     * Re-compute the whole result of this view. If the view doesn't have a
+     * table for its rows yet, the view query is re-compiled and the table is
+     * created.
+     *
+     * @param session the session
+     */
+    public void refresh(Session session) {
+        synchronized (deltas) {
+            deltas.remove(session);
+        }
+        if (getStorage() == null) {
+            DbException e = recompile(session, false);
+            if (e != null) {
+                throw e;
+            }
+            createStorage(session, database.allocateObjectId());
+        }
+        storage.lock(session, true, false);
+        refresh(session, -1, null);
+        flushMaterializedViews(session);
+    }
+
+    /**
+     * Record a changed row of a base table.
+     *
+     * @param session the session
+     * @param table the base table
+     * @param oldRow the old data or null for an insert
+     * @param newRow the new data or null for a delete
+     */
+    void addDelta(Session session, Table table, Row oldRow, Row newRow) {
+        if (!incremental || getStorage() == null) {
+            return;
+        }
+        int[] key = getKeys().get(table);
+        synchronized (deltas) {
+            Delta delta = deltas.get(session);
+            if (delta == null) {
+                delta = new Delta();
+                deltas.put(session, delta);
+            }
+            if (delta.all) {
+                return;
+            }
+            if (key == null) {
+                delta.setAll();
+                return;
+            }
+            if (oldRow != null) {
+                delta.add(key[1], oldRow.getValue(key[0]));
+            }
+            if (newRow != null) {
+                delta.add(key[1], newRow.getValue(key[0]));
+            }
+            if (delta.size > MAX_KEYS_PER_STATEMENT) {
+                delta.setAll();
+            }
+        }
+    }
+
+    /**
+     * Re-compute the part of the result that is affected by the rows changed
+     * in the current statement of this session.
+     *
+     * @param session the session
+     */
+    void flushDelta(Session session) {
+        Delta delta;
+        synchronized (deltas) {
+            delta = deltas.remove(session);
+        }
+        if (delta == null || getStorage() == null) {
+            return;
+        }
+        storage.lock(session, true, false);
+        if (delta.all) {
+            refresh(session, -1, null);
+        } else {
+            Column[] cols = storage.getColumns();
+            for (Map.Entry<Integer, HashSet<Value>> e : delta.keys.entrySet()) {
+                int column = e.getKey();
+                for (Value v : e.getValue()) {
+                    refresh(session, column, cols[column].convert(v));
+                }
+            }
+        }
+        flushMaterializedViews(session);
+    }
+
+    /**
+     * Replace the stored rows that have the given key value with the current
+     * result of the view query.
+     *
+     * @param session the session
+     * @param column the key column, or -1 to replace all rows
+     * @param value the key value
+     */
+    private void refresh(Session session, int column, Value value) {
+        ArrayList<Row> rows = New.arrayList();
+        Cursor cursor = find(session, column, value);
+        while (cursor.next()) {
+            Row row = cursor.get();
+            if (column < 0 || row.getValue(column).equals(value)) {
+                rows.add(row);
+            }
+        }
+        for (Row row : rows) {
+            storage.removeRow(session, row);
+            session.log(storage, UndoLogRecord.DELETE, row);
+            fireMaterializedViews(session, row, null);
+        }
+        Query query = (Query) session.prepare(getQuery(), true);
+        if (column >= 0) {
+            query.addGlobalCondition(new Parameter(0), column, Comparison.EQUAL_NULL_SAFE);
+            query = (Query) session.prepare(query.getPlanSQL(), true);
+            query.getParameters().get(0).setValue(value);
+        }
+        Column[] cols = storage.getColumns();
+        LocalResult result = query.query(0);
+        try {
+            while (result.next()) {
+                Value[] values = result.currentRow();
+                Row row = storage.getTemplateRow();
+                for (int i = 0; i < cols.length; i++) {
+                    row.setValue(i, cols[i].convert(values[i]));
+                }
+                storage.addRow(session, row);
+                session.log(storage, UndoLogRecord.INSERT, row);
+                fireMaterializedViews(session, null, row);
+            }
+        } finally {
+            result.close();
+        }
+    }
+
+    private Cursor find(Session session, int column, Value value) {
+        if (column >= 0 && value != ValueNull.INSTANCE) {
+            ArrayList<Index> indexes = storage.getIndexes();
+            // the first index is the scan index
+            for (int i = 1, size = indexes.size(); i < size; i++) {
+                Index index = indexes.get(i);
+                if (index.getColumns()[0].getColumnId() == column) {
+                    SearchRow key = storage.getTemplateSimpleRow(false);
+                    key.setValue(column, value);
+                    return index.find(session, key, key);
+                }
+            }
+        }
+        return storage.getScanIndex(session).find(session, null, null);
+    }
+
+    protected ArrayList<Table> getTables(Query query) {
+        ArrayList<Table> list = super.getTables(query);
+        // the storage must be refreshed when a table read by a subquery changes
+        HashSet<DbObject> dependencies = New.hashSet();
+        query.isEverything(ExpressionVisitor.getDependenciesVisitor(dependencies));
+        for (DbObject obj : dependencies) {
+            if (obj instanceof Table && obj != this && !list.contains(obj)) {
+                list.add((Table) obj);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * Get the key columns of the base tables. The map contains the column id
+     * in the base table and the column index in the view for each base table
+     * that has a key column.
+     *
+     * @return the key columns
+     */
+    private synchronized HashMap<Table, int[]> getKeys() {
+        Query query = getViewQuery();
+        if (keys == null || query != keyQuery) {
+            keys = getKeys(query);
+            keyQuery = query;
+        }
+        return keys;
+    }
+
+    private static HashMap<Table, int[]> getKeys(Query query) {
+        HashMap<Table, int[]> map = New.hashMap();
+        // a changed row of a table that is read by a subquery may affect
+        // result rows with any key value
+        if (!(query instanceof Select) || !query.allowGlobalConditions() || query.hasSubqueries()) {
+            return map;
+        }
+        Select select = (Select) query;
+        HashMap<Table, Integer> tableCounts = New.hashMap();
+        HashSet<Table> outerTables = New.hashSet();
+        for (TableFilter f : select.getTopFilters()) {
+            countTables(f, false, tableCounts, outerTables);
+        }
+        // all tables the query reads must be top filters
+        HashSet<DbObject> dependencies = New.hashSet();
+        query.isEverything(ExpressionVisitor.getDependenciesVisitor(dependencies));
+        for (DbObject obj : dependencies) {
+            if (obj instanceof Table && !tableCounts.containsKey(obj)) {
+                return map;
+            }
+        }
+        ArrayList<Expression> expressions = select.getExpressions();
+        for (int i = 0, count = select.getColumnCount(); i < count; i++) {
+            Expression expr = expressions.get(i).getNonAliasExpression();
+            if (!(expr instanceof ExpressionColumn)) {
+                continue;
+            }
+            Column column = ((ExpressionColumn) expr).getColumn();
+            Table table = column.getTable();
+            // if a table is used more than once, a changed row may affect
+            // result rows with any key value
+            Integer tableCount = tableCounts.get(table);
+            if (tableCount != null && tableCount == 1 && !outerTables.contains(table) && !map.containsKey(table)) {
+                map.put(table, new int[] { column.getColumnId(), i });
+            }
+        }
+        return map;
+    }
+
+    private static void countTables(TableFilter f, boolean outer, HashMap<Table, Integer> tableCounts,
+            HashSet<Table> outerTables) {
+        for (; f != null; f = f.getJoin()) {
+            Table table = f.getTable();
+            Integer count = tableCounts.get(table);
+            tableCounts.put(table, count == null ? 1 : count + 1);
+            // all tables of a nested join on the inner side of an outer join
+            // may be NULL as well
+            boolean nullable = outer || f.isJoinOuter();
+            if (nullable) {
+                outerTables.add(table);
+            }
+            countTables(f.getNestedJoin(), nullable, tableCounts, outerTables);
+        }
+    }
+
+    public PlanItem getBestPlanItem(Session session, int[] masks, SortOrder sortOrder,
+            HashSet<Column> allColumnsSet) {
+        return checkStorage(session).getBestPlanItem(session, masks, sortOrder, allColumnsSet);
+    }
+
+    public Index getScanIndex(Session session) {
+        return checkStorage(session).getScanIndex(session);
+    }
+
+    public ArrayList<Index> getIndexes() {
+        Table table = getStorage();
+        return table == null ? null : table.getIndexes();
+    }
+
+    public void lock(Session session, boolean exclusive, boolean force) {
+        Table table = getStorage();
+        if (table != null) {
+            table.lock(session, exclusive, force);
+        }
+    }
+
+    public long getRowCount(Session session) {
+        return checkStorage(session).getRowCount(session);
+    }
+
+    public boolean canGetRowCount() {
+        Table table = getStorage();
+        return table != null && table.canGetRowCount();
+    }
+
+    public long getRowCountApproximation() {
+        Table table = getStorage();
+        return table == null ? 0 : table.getRowCountApproximation();
+    }
+
+    public long getDiskSpaceUsed() {
+        Table table = getStorage();
+        return table == null ? 0 : table.getDiskSpaceUsed();
+    }
+
+    public long getMaxDataModificationId() {
+        Table table = getStorage();
+        return table == null ? Long.MAX_VALUE : table.getMaxDataModificationId();
+    }
+
+    public void checkRename() {
+        throw DbException.getUnsupportedException("MATERIALIZED VIEW");
+    }
+
+    public String getDropSQL() {
+        return "DROP MATERIALIZED VIEW IF EXISTS " + getSQL() + " CASCADE";
+    }
+
+    protected String getViewType() {
+        return "MATERIALIZED VIEW";
+    }
+
+    protected String getViewOptions() {
+        return incremental ? " REFRESH INCREMENTAL" : " REFRESH ON DEMAND";
+    }
+
+    public void removeChildrenAndResources(Session session) {
+        synchronized (deltas) {
+            deltas.clear();
+        }
+        if (getStorage() != null) {
+            database.removeSchemaObject(session, storage);
+            storage = null;
+        }
+        super.removeChildrenAndResources(session);
+    }
+
+    /**
+     * The key values changed by the current statement of a session.
+     */
+    private static class Delta {
+
+        /**
+         * The changed key values per key column.
+         */
+        final HashMap<Integer, HashSet<Value>> keys = New.hashMap();
+
+        /**
+         * The number of changed key values.
+         */
+        int size;
+
+        /**
+         * Whether the whole result needs to be re-computed.
+         */
+        boolean all;
+
+        void add(int column, Value value) {
+            HashSet<Value> set = keys.get(column);
+            if (set == null) {
+                set = New.hashSet();
+                keys.put(column, set);
+            }
+            if (set.add(value)) {
+                size++;
+            }
+        }
+
+        void setAll() {
+            all = true;
+            keys.clear();
+        }
+
+    }
+
+}
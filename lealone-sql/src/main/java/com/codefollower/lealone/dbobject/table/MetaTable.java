@@ -17,6 +17,7 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Locale;
+import java.util.Map;
 
 import com.codefollower.lealone.command.Command;
 import com.codefollower.lealone.constant.Constants;
@@ -44,11 +45,14 @@ import com.codefollower.lealone.dbobject.index.MultiVersionIndex;
 import com.codefollower.lealone.engine.Csv;
 import com.codefollower.lealone.engine.Database;
 import com.codefollower.lealone.engine.InDoubtTransaction;
+import com.codefollower.lealone.engine.QueryStatisticsData;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.expression.ValueExpression;
 import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.message.QueryTrace;
 import com.codefollower.lealone.result.Row;
 import com.codefollower.lealone.result.SearchRow;
+import com.codefollower.lealone.result.SpillManager;
 import com.codefollower.lealone.result.SortOrder;
 import com.codefollower.lealone.util.MathUtils;
 import com.codefollower.lealone.util.New;
@@ -102,7 +106,10 @@ public class MetaTable extends Table {
     private static final int SESSIONS = 25;
     private static final int LOCKS = 26;
     private static final int SESSION_STATE = 27;
-    private static final int META_TABLE_TYPE_COUNT = SESSION_STATE + 1;
+    private static final int QUERY_STATISTICS = 28;
+    private static final int QUERY_TRACES = 29;
+    private static final int PROFILER_STACKS = 30;
+    private static final int META_TABLE_TYPE_COUNT = PROFILER_STACKS + 1;
 
     private final int type;
     private final int indexColumn;
@@ -508,6 +515,52 @@ public class MetaTable extends Table {
             );
             break;
         }
+        case QUERY_STATISTICS: {
+            setObjectName("QUERY_STATISTICS");
+            cols = createColumns(
+                    "SQL_STATEMENT",
+                    "EXECUTION_COUNT BIGINT",
+                    "MIN_EXECUTION_TIME DOUBLE",
+                    "MAX_EXECUTION_TIME DOUBLE",
+                    "CUMULATIVE_EXECUTION_TIME DOUBLE",
+                    "AVERAGE_EXECUTION_TIME DOUBLE",
+                    "MEDIAN_EXECUTION_TIME DOUBLE",
+                    "P90_EXECUTION_TIME DOUBLE",
+                    "P99_EXECUTION_TIME DOUBLE",
+                    "CUMULATIVE_PARSE_TIME DOUBLE",
+                    "CUMULATIVE_PREPARE_TIME DOUBLE",
+                    "ROWS_READ BIGINT",
+                    "ROWS_RETURNED BIGINT",
+                    "REGIONS BIGINT",
+                    "REMOTE_CALLS BIGINT",
+                    "LAST_EXECUTED TIMESTAMP"
+            );
+            break;
+        }
+        case QUERY_TRACES: {
+            setObjectName("QUERY_TRACES");
+            cols = createColumns(
+                    "TRACE_ID",
+                    "SQL_STATEMENT",
+                    "TRACE_START TIMESTAMP",
+                    "SPAN_ID INT",
+                    "PARENT_SPAN_ID INT",
+                    "SPAN_NAME",
+                    "START_TIME DOUBLE",
+                    "DURATION DOUBLE",
+                    "SPAN_COUNT INT"
+            );
+            break;
+        }
+        case PROFILER_STACKS: {
+            setObjectName("PROFILER_STACKS");
+            cols = createColumns(
+                    "STATEMENT_TYPE",
+                    "STACK",
+                    "SAMPLES INT"
+            );
+            break;
+        }
         default:
             throw DbException.throwInternalError("type="+type);
         }
@@ -603,6 +656,10 @@ public class MetaTable extends Table {
         return s == null ? "" : s;
     }
 
+    private static double toMillis(long nanos) {
+        return nanos / 1000000d;
+    }
+
     private boolean hideTable(Table table, Session session) {
         return table.isHidden() && session != database.getSystemSession();
     }
@@ -858,6 +915,12 @@ public class MetaTable extends Table {
             add(rows, "info.VERSION_MAJOR", "" + Constants.VERSION_MAJOR);
             add(rows, "info.VERSION_MINOR", "" + Constants.VERSION_MINOR);
             add(rows, "info.VERSION", "" + Constants.getFullVersion());
+            SpillManager spill = database.getSpillManager();
+            add(rows, "info.SPILL_FILE_COUNT", "" + spill.getFileCount());
+            add(rows, "info.SPILL_FILE_COUNT_TOTAL", "" + spill.getFileCountTotal());
+            add(rows, "info.SPILL_SIZE", "" + spill.getSize());
+            add(rows, "info.SPILL_SIZE_MAX", "" + spill.getMaxSizeUsed());
+            add(rows, "info.SPILL_WRITE_TOTAL", "" + spill.getWriteTotal());
             if (admin) {
                 String[] settings = {
                         "java.runtime.version",
@@ -1601,6 +1664,97 @@ public class MetaTable extends Table {
             }
             break;
         }
+        case QUERY_STATISTICS: {
+            QueryStatisticsData statistics = database.getQueryStatisticsData();
+            if (admin && statistics != null) {
+                for (QueryStatisticsData.QueryEntry entry : statistics.getEntries()) {
+                    long count = entry.getExecutionCount();
+                    add(rows,
+                            // SQL_STATEMENT
+                            entry.getSQL(),
+                            // EXECUTION_COUNT
+                            "" + count,
+                            // MIN_EXECUTION_TIME
+                            "" + toMillis(entry.getMinExecutionNanos()),
+                            // MAX_EXECUTION_TIME
+                            "" + toMillis(entry.getMaxExecutionNanos()),
+                            // CUMULATIVE_EXECUTION_TIME
+                            "" + toMillis(entry.getCumulativeExecutionNanos()),
+                            // AVERAGE_EXECUTION_TIME
+                            "" + toMillis(count == 0 ? 0 : entry.getCumulativeExecutionNanos() / count),
+                            // MEDIAN_EXECUTION_TIME
+                            "" + toMillis(entry.getExecutionNanos(0.5)),
+                            // P90_EXECUTION_TIME
+                            "" + toMillis(entry.getExecutionNanos(0.9)),
+                            // P99_EXECUTION_TIME
+                            "" + toMillis(entry.getExecutionNanos(0.99)),
+                            // CUMULATIVE_PARSE_TIME
+                            "" + toMillis(entry.getCumulativeParseNanos()),
+                            // CUMULATIVE_PREPARE_TIME
+                            "" + toMillis(entry.getCumulativePrepareNanos()),
+                            // ROWS_READ
+                            "" + entry.getRowsRead(),
+                            // ROWS_RETURNED
+                            "" + entry.getRows(),
+                            // REGIONS
+                            "" + entry.getRegions(),
+                            // REMOTE_CALLS
+                            "" + entry.getRemoteCalls(),
+                            // LAST_EXECUTED
+                            new Timestamp(entry.getLastExecuted()).toString()
+                    );
+                }
+            }
+            break;
+        }
+        case QUERY_TRACES: {
+            if (admin) {
+                for (QueryTrace trace : database.getQueryTraces()) {
+                    String traceId = Long.toHexString(trace.getId());
+                    String start = new Timestamp(trace.getStartTime()).toString();
+                    for (QueryTrace.Span span : trace.getSpans()) {
+                        add(rows,
+                                // TRACE_ID
+                                traceId,
+                                // SQL_STATEMENT
+                                trace.getSQL(),
+                                // TRACE_START
+                                start,
+                                // SPAN_ID
+                                "" + span.getId(),
+                                // PARENT_SPAN_ID
+                                "" + span.getParentId(),
+                                // SPAN_NAME
+                                span.getName(),
+                                // START_TIME
+                                "" + toMillis(span.getStart()),
+                                // DURATION
+                                "" + toMillis(span.getDuration()),
+                                // SPAN_COUNT
+                                "" + span.getCount()
+                        );
+                    }
+                }
+            }
+            break;
+        }
+        case PROFILER_STACKS: {
+            if (admin) {
+                for (Map.Entry<String, Integer> e : database.getProfiler().getStacks()) {
+                    String stack = e.getKey();
+                    int idx = stack.indexOf(';');
+                    add(rows,
+                            // STATEMENT_TYPE
+                            idx < 0 ? stack : stack.substring(0, idx),
+                            // STACK
+                            idx < 0 ? "" : stack.substring(idx + 1),
+                            // SAMPLES
+                            "" + e.getValue()
+                    );
+                }
+            }
+            break;
+        }
         default:
             DbException.throwInternalError("type="+type);
         }
@@ -1771,6 +1925,9 @@ public class MetaTable extends Table {
         case SESSIONS:
         case LOCKS:
         case SESSION_STATE:
+        case QUERY_STATISTICS:
+        case QUERY_TRACES:
+        case PROFILER_STACKS:
             return Long.MAX_VALUE;
         }
         return database.getModificationDataId();
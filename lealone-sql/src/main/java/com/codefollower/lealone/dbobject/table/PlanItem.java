@@ -19,6 +19,12 @@ public class PlanItem {
      */
     double cost;
 
+    /**
+     * The estimated cost of one lookup in this table, without the cost of the
+     * joined tables.
+     */
+    double lookupCost;
+
     private Index index;
     private PlanItem joinPlan;
     private PlanItem nestedJoinPlan;
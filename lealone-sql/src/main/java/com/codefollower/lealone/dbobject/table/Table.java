@@ -109,6 +109,7 @@ public abstract class Table extends SchemaObjectBase {
     private ArrayList<Constraint> constraints;
     private ArrayList<Sequence> sequences;
     private ArrayList<TableView> views;
+    private ArrayList<MaterializedView> materializedViews;
     private boolean checkForeignKeyConstraints = true;
     private boolean onCommitDrop, onCommitTruncate;
     private Row nullRow;
@@ -644,6 +645,23 @@ public abstract class Table extends SchemaObjectBase {
      * @return the plan item
      */
     public PlanItem getBestPlanItem(Session session, int[] masks, SortOrder sortOrder) {
+        return getBestPlanItem(session, masks, sortOrder, null);
+    }
+
+    /**
+     * Get the best plan for the given search mask. An index that contains all
+     * columns the query uses is cheaper, because the rows do not need to be
+     * read from the table.
+     *
+     * @param session the session
+     * @param masks per-column comparison bit masks, null means 'always false',
+     *              see constants in IndexCondition
+     * @param sortOrder the sort order
+     * @param allColumnsSet the columns that are used by the query, or null if
+     *            unknown
+     * @return the plan item
+     */
+    public PlanItem getBestPlanItem(Session session, int[] masks, SortOrder sortOrder, HashSet<Column> allColumnsSet) {
         PlanItem item = new PlanItem();
         item.setIndex(getScanIndex(session));
         item.cost = item.getIndex().getCost(session, null, null);
@@ -652,6 +670,9 @@ public abstract class Table extends SchemaObjectBase {
             for (int i = 1, size = indexes.size(); i < size; i++) {
                 Index index = indexes.get(i);
                 double cost = index.getCost(session, masks, sortOrder);
+                if (allColumnsSet != null && index.isCovering(allColumnsSet)) {
+                    cost /= 2;
+                }
                 if (cost < item.cost) {
                     item.cost = cost;
                     item.setIndex(index);
@@ -745,6 +766,7 @@ public abstract class Table extends SchemaObjectBase {
      */
     public void removeView(TableView view) {
         remove(views, view);
+        remove(materializedViews, view);
     }
 
     /**
@@ -782,6 +804,9 @@ public abstract class Table extends SchemaObjectBase {
      */
     public void addView(TableView view) {
         views = add(views, view);
+        if (view instanceof MaterializedView) {
+            materializedViews = add(materializedViews, (MaterializedView) view);
+        }
     }
 
     /**
@@ -839,6 +864,9 @@ public abstract class Table extends SchemaObjectBase {
                 trigger.fire(session, type, beforeAction);
             }
         }
+        if (!beforeAction) {
+            flushMaterializedViews(session);
+        }
     }
 
     /**
@@ -864,7 +892,8 @@ public abstract class Table extends SchemaObjectBase {
      *  @return if there are any triggers or rows defined
      */
     public boolean fireRow() {
-        return (constraints != null && constraints.size() > 0) || (triggers != null && triggers.size() > 0);
+        return (constraints != null && constraints.size() > 0) || (triggers != null && triggers.size() > 0)
+                || (materializedViews != null && materializedViews.size() > 0);
     }
 
     /**
@@ -905,6 +934,57 @@ public abstract class Table extends SchemaObjectBase {
         fireRow(session, oldRow, newRow, false, rollback);
         if (!rollback) {
             fireConstraints(session, oldRow, newRow, false);
+            fireMaterializedViews(session, oldRow, newRow);
+        }
+    }
+
+    /**
+     * Record a changed row for the incrementally refreshed materialized views
+     * that depend on this table. Changes that are undone by a rollback don't
+     * need to be recorded, because the rollback also undoes the changes of the
+     * materialized views.
+     *
+     * @param session the session
+     * @param oldRow the old data or null for an insert
+     * @param newRow the new data or null for a delete
+     */
+    void fireMaterializedViews(Session session, Row oldRow, Row newRow) {
+        if (materializedViews != null) {
+            for (int i = 0, size = materializedViews.size(); i < size; i++) {
+                materializedViews.get(i).addDelta(session, this, oldRow, newRow);
+            }
+        }
+    }
+
+    /**
+     * Re-compute the incrementally refreshed materialized views that depend
+     * on this table. This is needed if rows were removed without recording
+     * them, for example by TRUNCATE TABLE.
+     *
+     * @param session the session
+     */
+    public void refreshMaterializedViews(Session session) {
+        if (materializedViews != null) {
+            for (int i = 0, size = materializedViews.size(); i < size; i++) {
+                MaterializedView view = materializedViews.get(i);
+                if (view.isIncremental()) {
+                    view.refresh(session);
+                }
+            }
+        }
+    }
+
+    /**
+     * Apply the changes recorded by the current statement to the materialized
+     * views that depend on this table.
+     *
+     * @param session the session
+     */
+    void flushMaterializedViews(Session session) {
+        if (materializedViews != null) {
+            for (int i = 0, size = materializedViews.size(); i < size; i++) {
+                materializedViews.get(i).flushDelta(session);
+            }
         }
     }
 
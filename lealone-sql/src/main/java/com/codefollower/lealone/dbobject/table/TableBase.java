@@ -9,8 +9,8 @@ package com.codefollower.lealone.dbobject.table;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
-import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.codefollower.lealone.api.DatabaseEventListener;
 import com.codefollower.lealone.command.ddl.Analyze;
@@ -54,7 +54,8 @@ public abstract class TableBase extends Table {
     protected final ArrayList<Index> indexes = New.arrayList();
 
     private volatile Session lockExclusive;
-    private HashSet<Session> lockShared;
+    private final Set<Session> lockShared = Collections.newSetFromMap(new ConcurrentHashMap<Session, Boolean>());
+    private final Object lockSync = new Object();
     private Trace traceLock;
     protected long lastModificationId;
     private int changesSinceAnalyze;
@@ -94,7 +95,6 @@ public abstract class TableBase extends Table {
         }
 
         traceLock = database.getTrace(Trace.LOCK);
-        lockShared = New.hashSet();
     }
 
     public boolean getContainsLargeObject() {
@@ -382,16 +382,29 @@ public abstract class TableBase extends Table {
         if (lockExclusive == session) {
             return;
         }
-        synchronized (database) {
+        Object sync = getLockSync();
+        synchronized (sync) {
             try {
-                doLock(session, lockMode, exclusive);
+                doLock(session, lockMode, exclusive, sync);
             } finally {
                 session.setWaitForLock(null);
             }
         }
     }
 
-    private void doLock(Session session, int lockMode, boolean exclusive) {
+    /**
+     * Get the object to synchronize on when locking this table. In
+     * multi-threaded mode, commands synchronize on their session, so each
+     * table can use its own lock object. Otherwise it is the database, because
+     * a waiting session must release the database while it waits.
+     *
+     * @return the lock object
+     */
+    private Object getLockSync() {
+        return database.isMultiThreaded() ? lockSync : database;
+    }
+
+    private void doLock(Session session, int lockMode, boolean exclusive, Object sync) {
         traceLock(session, exclusive, "requesting for");
         // don't get the current time unless necessary
         long max = 0;
@@ -470,7 +483,7 @@ public abstract class TableBase extends Table {
                     sleep = 1;
                 }
                 waitForLock = true;
-                database.wait(sleep);
+                sync.wait(sleep);
             } catch (InterruptedException e) {
                 // ignore
             }
@@ -563,17 +576,18 @@ public abstract class TableBase extends Table {
     public void unlock(Session s) {
         if (database != null) {
             traceLock(s, lockExclusive == s, "unlock");
-            if (lockExclusive == s) {
-                lockExclusive = null;
-            }
-            if (lockShared.size() > 0) {
-                lockShared.remove(s);
-            }
+            Object sync = getLockSync();
             // TODO lock: maybe we need we fifo-queue to make sure nobody
             // starves. check what other databases do
-            synchronized (database) {
+            synchronized (sync) {
+                if (lockExclusive == s) {
+                    lockExclusive = null;
+                }
+                if (lockShared.size() > 0) {
+                    lockShared.remove(s);
+                }
                 if (database.getSessionCount() > 1 && waitForLock) {
-                    database.notifyAll();
+                    sync.notifyAll();
                 }
             }
         }
@@ -617,7 +631,7 @@ public abstract class TableBase extends Table {
             scanIndex.remove(session);
         scanIndex = null;
         lockExclusive = null;
-        lockShared = null;
+        lockShared.clear();
         invalidate();
     }
 
@@ -7,15 +7,18 @@
 package com.codefollower.lealone.dbobject.table;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 
 import com.codefollower.lealone.command.Parser;
 import com.codefollower.lealone.command.Prepared;
 import com.codefollower.lealone.command.dml.Select;
 import com.codefollower.lealone.constant.SysProperties;
 import com.codefollower.lealone.dbobject.Right;
+import com.codefollower.lealone.dbobject.index.HashJoinIndex;
 import com.codefollower.lealone.dbobject.index.Index;
 import com.codefollower.lealone.dbobject.index.IndexCondition;
 import com.codefollower.lealone.dbobject.index.IndexCursor;
+import com.codefollower.lealone.engine.Database;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.engine.UndoLogRecord;
 import com.codefollower.lealone.expression.Comparison;
@@ -29,6 +32,7 @@ import com.codefollower.lealone.result.SortOrder;
 import com.codefollower.lealone.util.New;
 import com.codefollower.lealone.util.StatementBuilder;
 import com.codefollower.lealone.util.StringUtils;
+import com.codefollower.lealone.value.CompareMode;
 import com.codefollower.lealone.value.Value;
 import com.codefollower.lealone.value.ValueLong;
 import com.codefollower.lealone.value.ValueNull;
@@ -56,6 +60,21 @@ public class TableFilter implements ColumnResolver {
     private int scanCount;
     private boolean evaluatable;
 
+    /**
+     * The number of index lookups, the number of rows returned, the time used
+     * (only measured by EXPLAIN ANALYZE), and the estimated cost of one
+     * lookup.
+     */
+    private int lookupCount, rowCount;
+    private long nanos;
+
+    /**
+     * The number of rows that were read from the table because a column was
+     * needed that is not in the search row of the index.
+     */
+    private int fetchCount;
+    private double lookupCost;
+
     /**
      * Indicates that this filter is used in the plan.
      */
@@ -86,6 +105,12 @@ public class TableFilter implements ColumnResolver {
     private Row current;
     private int state;
 
+    /**
+     * If the current search row was set after the cursor moved on, so that
+     * the row needs to be read from the table by its key.
+     */
+    private boolean readByKey;
+
     /**
      * The joined table (if there is one).
      */
@@ -181,15 +206,29 @@ public class TableFilter implements ColumnResolver {
                 }
             }
             SortOrder sortOrder = null;
+            HashSet<Column> allColumnsSet = null;
             if (select != null) {
                 sortOrder = select.getSortOrder();
+                allColumnsSet = select.getAllColumnsSet();
+            }
+            item = table.getBestPlanItem(s, masks, sortOrder, allColumnsSet);
+            if (level > 1 && masks != null && item.getIndex().getIndexType().isScan()) {
+                // no usable index for the join: try to use a hash join
+                HashJoinIndex hashIndex = getHashJoinIndex(s);
+                if (hashIndex != null) {
+                    double cost = hashIndex.getCost(s, masks, sortOrder);
+                    if (cost < item.cost) {
+                        item.cost = cost;
+                        item.setIndex(hashIndex);
+                    }
+                }
             }
-            item = table.getBestPlanItem(s, masks, sortOrder);
             // The more index conditions, the earlier the table.
             // This is to ensure joins without indexes run quickly:
             // x (x.a=10); y (x.b=y.b) - see issue 113
             item.cost -= item.cost * indexConditions.size() / 100 / level;
         }
+        item.lookupCost = item.cost;
         if (nestedJoin != null) {
             setEvaluatable(nestedJoin);
             item.setNestedJoinPlan(nestedJoin.getBestPlanItem(s, level));
@@ -207,6 +246,43 @@ public class TableFilter implements ColumnResolver {
         return item;
     }
 
+    /**
+     * Create a hash join index on all columns that are only compared with
+     * evaluatable expressions using '='.
+     *
+     * @param s the session
+     * @return the index, or null if a hash join is not possible
+     */
+    private HashJoinIndex getHashJoinIndex(Session s) {
+        Database db = s.getDatabase();
+        if (!db.getSettings().hashJoin || !Table.TABLE.equals(table.getTableType())
+                || !CompareMode.OFF.equals(db.getCompareMode().getName())) {
+            return null;
+        }
+        ArrayList<Column> columns = New.arrayList();
+        ArrayList<Column> excluded = New.arrayList();
+        for (IndexCondition condition : indexConditions) {
+            Column column = condition.getColumn();
+            if (column.getColumnId() < 0 || excluded.contains(column)) {
+                continue;
+            }
+            Expression e = condition.getExpression();
+            if (condition.getCompareType() == Comparison.EQUAL && condition.isEvaluatable()
+                    && HashJoinIndex.isHashable(column, e.getType())) {
+                if (!columns.contains(column)) {
+                    columns.add(column);
+                }
+            } else {
+                columns.remove(column);
+                excluded.add(column);
+            }
+        }
+        if (columns.isEmpty()) {
+            return null;
+        }
+        return new HashJoinIndex(table, columns.toArray(new Column[columns.size()]));
+    }
+
     private void setEvaluatable(TableFilter join) {
         if (session.getDatabase().getSettings().nestedJoins) {
             setEvaluatable(true);
@@ -238,6 +314,7 @@ public class TableFilter implements ColumnResolver {
             return;
         }
         setIndex(item.getIndex());
+        lookupCost = item.lookupCost;
         if (nestedJoin != null) {
             if (item.getNestedJoinPlan() != null) {
                 nestedJoin.setPlanItem(item.getNestedJoinPlan());
@@ -297,6 +374,13 @@ public class TableFilter implements ColumnResolver {
     public void startQuery(Session s) {
         this.session = s;
         scanCount = 0;
+        lookupCount = 0;
+        rowCount = 0;
+        nanos = 0;
+        fetchCount = 0;
+        if (index instanceof HashJoinIndex) {
+            ((HashJoinIndex) index).reset();
+        }
         if (nestedJoin != null) {
             nestedJoin.startQuery(s);
         }
@@ -305,6 +389,24 @@ public class TableFilter implements ColumnResolver {
         }
     }
 
+    /**
+     * Release the resources used by the last query, such as hash join tables
+     * and cursors that were not read to the end. This will also end the query
+     * for joined tables.
+     */
+    public void endQuery() {
+        if (index instanceof HashJoinIndex) {
+            ((HashJoinIndex) index).reset();
+        }
+        cursor.close();
+        if (nestedJoin != null) {
+            nestedJoin.endQuery();
+        }
+        if (join != null) {
+            join.endQuery();
+        }
+    }
+
     /**
      * Reset to the current position.
      */
@@ -325,9 +427,23 @@ public class TableFilter implements ColumnResolver {
      * @return true if there are
      */
     public boolean next() {
+        if (!session.isExplainAnalyze()) {
+            return nextRow();
+        }
+        long start = System.nanoTime();
+        boolean result = nextRow();
+        nanos += System.nanoTime() - start;
+        if (result) {
+            rowCount++;
+        }
+        return result;
+    }
+
+    private boolean nextRow() {
         if (state == AFTER_LAST) {
             return false;
         } else if (state == BEFORE_FIRST) {
+            lookupCount++;
             cursor.find(session, indexConditions);
             if (!cursor.isAlwaysFalse()) {
                 if (nestedJoin != null) {
@@ -360,8 +476,10 @@ public class TableFilter implements ColumnResolver {
                     checkTimeout();
                 }
                 if (cursor.next()) {
+                    session.addRowRead();
                     currentSearchRow = cursor.getSearchRow();
                     current = null;
+                    readByKey = false;
                     state = FOUND;
                 } else {
                     state = AFTER_LAST;
@@ -447,11 +565,21 @@ public class TableFilter implements ColumnResolver {
      */
     public Row get() {
         if (current == null && currentSearchRow != null) {
-            current = cursor.get();
+            current = readRow();
         }
         return current;
     }
 
+    private Row readRow() {
+        if (!(currentSearchRow instanceof Row)) {
+            fetchCount++;
+        }
+        if (readByKey) {
+            return ((TableBase) table).getRow(session, currentSearchRow.getKey());
+        }
+        return cursor.get();
+    }
+
     /**
      * Set the current row.
      *
@@ -462,6 +590,40 @@ public class TableFilter implements ColumnResolver {
         // the current (new) row
         this.current = current;
         this.currentSearchRow = current;
+        readByKey = false;
+    }
+
+    /**
+     * Get the current search row. Unlike get(), this does not read the row
+     * from the table if the index does not contain all columns.
+     *
+     * @return the current search row, or null
+     */
+    public SearchRow getSearchRow() {
+        return currentSearchRow;
+    }
+
+    /**
+     * Check if a search row can be set after the cursor moved on, because
+     * the table can read the row by its key.
+     *
+     * @return true if it can
+     */
+    public boolean canSetSearchRow() {
+        return table instanceof TableBase;
+    }
+
+    /**
+     * Set a search row that was read before the cursor moved on. The row is
+     * only read from the table (by its key) if a column is needed that is
+     * not in the search row.
+     *
+     * @param row the search row
+     */
+    public void setSearchRow(SearchRow row) {
+        currentSearchRow = row;
+        current = row instanceof Row ? (Row) row : null;
+        readByKey = true;
     }
 
     /**
@@ -701,7 +863,23 @@ public class TableFilter implements ColumnResolver {
             condition = "/* WHERE " + StringUtils.quoteRemarkSQL(condition) + "\n*/";
             buff.append(StringUtils.indent(condition, 4, false));
         }
-        if (scanCount > 0) {
+        if (lookupCount > 0 && session.isExplainAnalyze()) {
+            // the time of the joined tables is measured by their own filters
+            long time = nanos;
+            if (join != null) {
+                time -= join.nanos;
+            }
+            if (nestedJoin != null) {
+                time -= nestedJoin.nanos;
+            }
+            buff.append("\n    /* lookups: ").append(lookupCount).
+                append(", scanCount: ").append(scanCount).
+                append(", rows: ").append(rowCount).
+                append(", estimated cost per lookup: ").append((long) lookupCost).
+                append(", actual rows per lookup: ").append(scanCount / lookupCount).
+                append(", rows fetched: ").append(fetchCount).
+                append(", time: ").append(time / 1000 / 1000d).append(" ms */");
+        } else if (scanCount > 0) {
             buff.append("\n    /* scanCount: ").append(scanCount).append(" */");
         }
         return buff.toString();
@@ -742,7 +920,7 @@ public class TableFilter implements ColumnResolver {
      *
      * @param session the new session
      */
-    void setSession(Session session) {
+    public void setSession(Session session) {
         this.session = session;
     }
 
@@ -887,7 +1065,7 @@ public class TableFilter implements ColumnResolver {
             if (v != null) {
                 return v;
             }
-            current = cursor.get();
+            current = readRow();
             if (current == null) {
                 return ValueNull.INSTANCE;
             }
@@ -908,7 +1086,7 @@ public class TableFilter implements ColumnResolver {
             if (v != null) {
                 return v;
             }
-            current = cursor.get();
+            current = readRow();
             if (current == null) {
                 return ValueNull.INSTANCE;
             }
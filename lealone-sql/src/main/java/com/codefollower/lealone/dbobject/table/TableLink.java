@@ -6,6 +6,8 @@
  */
 package com.codefollower.lealone.dbobject.table;
 
+import java.sql.BatchUpdateException;
+import java.sql.Connection;
 import java.sql.DatabaseMetaData;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
@@ -52,7 +54,15 @@ public class TableLink extends Table {
     private final String originalSchema;
     private String driver, url, user, password, originalTable, qualifiedTableName;
     private TableLinkConnection conn;
-    private HashMap<String, PreparedStatement> preparedMap = New.hashMap();
+    private final HashMap<Connection, HashMap<String, PreparedStatement>> preparedMap = New.hashMap();
+    private final HashMap<Session, ArrayList<BatchEntry>> batches = New.hashMap();
+
+    /**
+     * The statements of a batch that the target database did not apply, per
+     * session. They are kept until the statement is rolled back, so that the
+     * rollback doesn't delete rows of the target that are equal to them.
+     */
+    private final HashMap<Session, ArrayList<BatchEntry>> failedBatches = New.hashMap();
     private final ArrayList<Index> indexes = New.arrayList();
     private final boolean emitUpdates;
     private LinkedIndex linkedIndex;
@@ -64,6 +74,37 @@ public class TableLink extends Table {
     private boolean globalTemporary;
     private boolean readOnly;
 
+    /**
+     * A statement that is not yet sent to the target database.
+     */
+    private static class BatchEntry {
+        final String sql;
+        final ArrayList<Value> params;
+
+        /**
+         * The inserted row, or the new row of an update.
+         */
+        final Row row;
+
+        /**
+         * The old row of an update, or null for an insert.
+         */
+        final Row oldRow;
+
+        /**
+         * Whether the new row of this update was rolled back, and the old row
+         * is not yet restored.
+         */
+        boolean undone;
+
+        BatchEntry(String sql, ArrayList<Value> params, Row row, Row oldRow) {
+            this.sql = sql;
+            this.params = params;
+            this.row = row;
+            this.oldRow = oldRow;
+        }
+    }
+
     public TableLink(Schema schema, int id, String name, String driver, String url, String user, String password,
             String originalSchema, String originalTable, boolean emitUpdates, boolean force) {
         super(schema, id, name, false, true);
@@ -92,16 +133,17 @@ public class TableLink extends Table {
         for (int retry = 0;; retry++) {
             try {
                 conn = database.getLinkConnection(driver, url, user, password);
-                synchronized (conn) {
-                    try {
-                        readMetaData();
-                        return;
-                    } catch (Exception e) {
-                        // could be SQLException or RuntimeException
-                        conn.close(true);
-                        conn = null;
-                        throw DbException.convert(e);
-                    }
+                Connection c = conn.acquire();
+                try {
+                    readMetaData(c);
+                    conn.release(c);
+                    return;
+                } catch (Exception e) {
+                    // could be SQLException or RuntimeException
+                    conn.release(c);
+                    conn.close(true);
+                    conn = null;
+                    throw DbException.convert(e);
                 }
             } catch (DbException e) {
                 if (retry >= MAX_RETRY) {
@@ -112,8 +154,8 @@ public class TableLink extends Table {
         }
     }
 
-    private void readMetaData() throws SQLException {
-        DatabaseMetaData meta = conn.getConnection().getMetaData();
+    private void readMetaData(Connection c) throws SQLException {
+        DatabaseMetaData meta = c.getMetaData();
         storesLowerCase = meta.storesLowerCaseIdentifiers();
         storesMixedCase = meta.storesMixedCaseIdentifiers();
         storesMixedCaseQuoted = meta.storesMixedCaseQuotedIdentifiers();
@@ -167,7 +209,7 @@ public class TableLink extends Table {
         // check if the table is accessible
         Statement stat = null;
         try {
-            stat = conn.getConnection().createStatement();
+            stat = c.createStatement();
             rs = stat.executeQuery("SELECT * FROM " + qualifiedTableName + " T WHERE 1=0");
             if (columnList.size() == 0) {
                 // alternative solution
@@ -408,6 +450,10 @@ public class TableLink extends Table {
     }
 
     public void close(Session session) {
+        synchronized (batches) {
+            batches.clear();
+            failedBatches.clear();
+        }
         if (conn != null) {
             try {
                 conn.close(false);
@@ -418,6 +464,7 @@ public class TableLink extends Table {
     }
 
     public synchronized long getRowCount(Session session) {
+        flushBatch(session);
         String sql = "SELECT COUNT(*) FROM " + qualifiedTableName;
         try {
             PreparedStatement prep = execute(sql, null, false);
@@ -462,50 +509,319 @@ public class TableLink extends Table {
             throw connectException;
         }
         for (int retry = 0;; retry++) {
+            TableLinkConnection link = conn;
+            Connection c = link.acquire();
             try {
-                synchronized (conn) {
-                    PreparedStatement prep = preparedMap.remove(sql);
-                    if (prep == null) {
-                        prep = conn.getConnection().prepareStatement(sql);
-                    }
-                    if (trace.isDebugEnabled()) {
-                        StatementBuilder buff = new StatementBuilder();
-                        buff.append(getName()).append(":\n").append(sql);
-                        if (params != null && params.size() > 0) {
-                            buff.append(" {");
-                            int i = 1;
-                            for (Value v : params) {
-                                buff.appendExceptFirst(", ");
-                                buff.append(i++).append(": ").append(v.getSQL());
-                            }
-                            buff.append('}');
-                        }
-                        buff.append(';');
-                        trace.debug(buff.toString());
-                    }
-                    if (params != null) {
-                        for (int i = 0, size = params.size(); i < size; i++) {
-                            Value v = params.get(i);
-                            v.set(prep, i + 1);
+                PreparedStatement prep = getPreparedStatement(c, sql);
+                if (trace.isDebugEnabled()) {
+                    StatementBuilder buff = new StatementBuilder();
+                    buff.append(getName()).append(":\n").append(sql);
+                    if (params != null && params.size() > 0) {
+                        buff.append(" {");
+                        int i = 1;
+                        for (Value v : params) {
+                            buff.appendExceptFirst(", ");
+                            buff.append(i++).append(": ").append(v.getSQL());
                         }
+                        buff.append('}');
                     }
-                    prep.execute();
-                    if (reusePrepared) {
-                        reusePreparedStatement(prep, sql);
-                        return null;
+                    buff.append(';');
+                    trace.debug(buff.toString());
+                }
+                if (params != null) {
+                    for (int i = 0, size = params.size(); i < size; i++) {
+                        Value v = params.get(i);
+                        v.set(prep, i + 1);
                     }
-                    return prep;
                 }
+                prep.execute();
+                if (reusePrepared) {
+                    reusePreparedStatement(c, prep, sql);
+                    return null;
+                }
+                return prep;
             } catch (SQLException e) {
                 if (retry >= MAX_RETRY) {
                     throw DbException.convert(e);
                 }
-                conn.close(true);
+                link.close(true);
+                synchronized (preparedMap) {
+                    preparedMap.clear();
+                }
                 connect();
+            } finally {
+                link.release(c);
             }
         }
     }
 
+    /**
+     * Add a statement to the batch of the given session. The batch is sent to
+     * the target database when it is full, and at the latest when the current
+     * statement of the session completes.
+     *
+     * @param session the session
+     * @param sql the SQL statement
+     * @param params the parameters
+     * @param row the inserted row, or the new row of an update
+     * @param oldRow the old row of an update, or null
+     */
+    public void addBatch(Session session, String sql, ArrayList<Value> params, Row row, Row oldRow) {
+        int batchSize = database.getSettings().linkBatchSize;
+        if (batchSize <= 1) {
+            execute(sql, params, true);
+            return;
+        }
+        ArrayList<BatchEntry> list;
+        synchronized (batches) {
+            list = batches.get(session);
+            if (list == null) {
+                list = New.arrayList();
+                batches.put(session, list);
+                session.addLinkBatch(this);
+            }
+            list.add(new BatchEntry(sql, params, row, oldRow));
+            if (list.size() < batchSize) {
+                return;
+            }
+            batches.remove(session);
+            if (!failedBatches.containsKey(session)) {
+                session.removeLinkBatch(this);
+            }
+        }
+        executeBatch(session, list);
+    }
+
+    /**
+     * Remove a row that is rolled back from the batch of the given session, if
+     * it was not sent yet or the target database did not apply it, instead of
+     * deleting it from the target. An insert is removed, while an update is
+     * removed when its old row is restored (see {@link #restoreFromBatch}).
+     *
+     * @param session the session
+     * @param row the row that is removed
+     * @return true if the row was not applied by the target database
+     */
+    public boolean removeFromBatch(Session session, Row row) {
+        synchronized (batches) {
+            return removeFromBatch(batches.get(session), row) || removeFromBatch(failedBatches.get(session), row);
+        }
+    }
+
+    private static boolean removeFromBatch(ArrayList<BatchEntry> list, Row row) {
+        if (list != null) {
+            for (int i = list.size() - 1; i >= 0; i--) {
+                BatchEntry e = list.get(i);
+                if (!e.undone && sameValues(e.row, row)) {
+                    if (e.oldRow == null) {
+                        list.remove(i);
+                    } else {
+                        e.undone = true;
+                    }
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Remove an update from the batch of the given session when its old row is
+     * restored, after its new row was removed.
+     *
+     * @param session the session
+     * @param row the row that is added back
+     * @return true if the update was not yet sent to the target database
+     */
+    public boolean restoreFromBatch(Session session, Row row) {
+        synchronized (batches) {
+            return restoreFromBatch(batches.get(session), row) || restoreFromBatch(failedBatches.get(session), row);
+        }
+    }
+
+    private static boolean restoreFromBatch(ArrayList<BatchEntry> list, Row row) {
+        if (list != null) {
+            for (int i = list.size() - 1; i >= 0; i--) {
+                BatchEntry e = list.get(i);
+                if (e.undone && sameValues(e.oldRow, row)) {
+                    list.remove(i);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Compare the values of two rows. Rows are compared by value and not by
+     * identity, because the undo log may read the rows back from disk.
+     * Removing any pending statement with the same values has the same effect.
+     */
+    private static boolean sameValues(Row a, Row b) {
+        int len = a.getColumnCount();
+        if (len != b.getColumnCount()) {
+            return false;
+        }
+        for (int i = 0; i < len; i++) {
+            Value v = a.getValue(i), w = b.getValue(i);
+            if (v == null ? w != null : !v.equals(w)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Discard the batched statements of the given session without sending
+     * them, because the statement was rolled back or the session is closed.
+     *
+     * @param session the session
+     */
+    public void discardBatch(Session session) {
+        synchronized (batches) {
+            batches.remove(session);
+            failedBatches.remove(session);
+        }
+    }
+
+    /**
+     * Finish a rollback of the given session. The statements that were rolled
+     * back are already removed from the batch, so the remaining statements
+     * restore rows of the target database and are sent now. The statements
+     * that the target database did not apply are forgotten.
+     *
+     * @param session the session
+     */
+    public void endRollback(Session session) {
+        ArrayList<BatchEntry> list;
+        synchronized (batches) {
+            failedBatches.remove(session);
+            list = batches.remove(session);
+        }
+        if (list != null) {
+            executeBatch(session, list);
+        }
+    }
+
+    /**
+     * Send the batched statements of the given session to the target
+     * database.
+     *
+     * @param session the session
+     */
+    public void flushBatch(Session session) {
+        ArrayList<BatchEntry> list;
+        synchronized (batches) {
+            if (batches.isEmpty()) {
+                return;
+            }
+            list = batches.remove(session);
+            if (list != null && !failedBatches.containsKey(session)) {
+                session.removeLinkBatch(this);
+            }
+        }
+        if (list != null) {
+            executeBatch(session, list);
+        }
+    }
+
+    private void executeBatch(Session session, ArrayList<BatchEntry> list) {
+        if (conn == null) {
+            throw connectException;
+        }
+        TableLinkConnection link = conn;
+        Connection c = link.acquire();
+        String sql = null;
+        ArrayList<BatchEntry> sent = New.arrayList();
+        int i = 0;
+        try {
+            for (int size = list.size(); i < size;) {
+                if (list.get(i).undone) {
+                    i++;
+                    continue;
+                }
+                // consecutive rows with the same statement are sent together
+                sql = list.get(i).sql;
+                PreparedStatement prep = getPreparedStatement(c, sql);
+                sent.clear();
+                for (; i < size && list.get(i).sql.equals(sql); i++) {
+                    BatchEntry e = list.get(i);
+                    if (e.undone) {
+                        continue;
+                    }
+                    ArrayList<Value> params = e.params;
+                    for (int j = 0, len = params.size(); j < len; j++) {
+                        params.get(j).set(prep, j + 1);
+                    }
+                    prep.addBatch();
+                    sent.add(e);
+                }
+                if (trace.isDebugEnabled()) {
+                    trace.debug(getName() + ":\n" + sql + " {batch: " + sent.size() + "};");
+                }
+                prep.executeBatch();
+                sent.clear();
+                reusePreparedStatement(c, prep, sql);
+            }
+        } catch (SQLException e) {
+            addFailedBatch(session, e, sent, list, i);
+            throw wrapException(sql, e);
+        } finally {
+            link.release(c);
+        }
+    }
+
+    /**
+     * Remember the statements that the target database did not apply because
+     * sending a batch failed: the statements of the batch that failed, and all
+     * statements that were not sent yet. If the driver doesn't report which
+     * statements of the batch failed, they are all assumed to have failed.
+     *
+     * @param session the session
+     * @param e the exception
+     * @param sent the statements of the batch that failed
+     * @param list all statements
+     * @param next the index of the first statement that was not sent
+     */
+    private void addFailedBatch(Session session, SQLException e, ArrayList<BatchEntry> sent,
+            ArrayList<BatchEntry> list, int next) {
+        int[] counts = null;
+        if (e instanceof BatchUpdateException) {
+            counts = ((BatchUpdateException) e).getUpdateCounts();
+        }
+        ArrayList<BatchEntry> failed = New.arrayList();
+        for (int i = 0, size = sent.size(); i < size; i++) {
+            if (counts == null || i >= counts.length || counts[i] == Statement.EXECUTE_FAILED) {
+                failed.add(sent.get(i));
+            }
+        }
+        for (int i = next, size = list.size(); i < size; i++) {
+            failed.add(list.get(i));
+        }
+        if (failed.isEmpty()) {
+            return;
+        }
+        synchronized (batches) {
+            ArrayList<BatchEntry> old = failedBatches.get(session);
+            if (old == null) {
+                failedBatches.put(session, failed);
+            } else {
+                old.addAll(failed);
+            }
+        }
+        session.addLinkBatch(this);
+    }
+
+    /**
+     * Send the batched statements of the session when a statement completes.
+     */
+    public void fire(Session session, int type, boolean beforeAction) {
+        if (!beforeAction) {
+            flushBatch(session);
+        }
+        super.fire(session, type, beforeAction);
+    }
+
     public void unlock(Session s) {
         // nothing to do
     }
@@ -540,7 +856,9 @@ public class TableLink extends Table {
         database.removeMeta(session, getId());
         driver = null;
         url = user = password = originalTable = null;
-        preparedMap = null;
+        synchronized (preparedMap) {
+            preparedMap.clear();
+        }
         invalidate();
     }
 
@@ -574,7 +892,7 @@ public class TableLink extends Table {
                 prepared.checkCanceled();
                 Row oldRow = rows.next();
                 Row newRow = rows.next();
-                linkedIndex.update(oldRow, newRow);
+                linkedIndex.update(session, oldRow, newRow);
                 session.log(this, UndoLogRecord.DELETE, oldRow);
                 session.log(this, UndoLogRecord.INSERT, newRow);
             }
@@ -583,6 +901,7 @@ public class TableLink extends Table {
             deleteInsert = true;
         }
         if (deleteInsert) {
+            flushBatch(session);
             super.updateRows(prepared, session, rows);
         }
     }
@@ -603,6 +922,20 @@ public class TableLink extends Table {
         return 0;
     }
 
+    private PreparedStatement getPreparedStatement(Connection c, String sql) throws SQLException {
+        PreparedStatement prep = null;
+        synchronized (preparedMap) {
+            HashMap<String, PreparedStatement> map = preparedMap.get(c);
+            if (map != null) {
+                prep = map.remove(sql);
+            }
+        }
+        if (prep == null) {
+            prep = c.prepareStatement(sql);
+        }
+        return prep;
+    }
+
     /**
      * Add this prepared statement to the list of cached statements.
      *
@@ -610,8 +943,23 @@ public class TableLink extends Table {
      * @param sql the SQL statement
      */
     public void reusePreparedStatement(PreparedStatement prep, String sql) {
-        synchronized (conn) {
-            preparedMap.put(sql, prep);
+        Connection c;
+        try {
+            c = prep.getConnection();
+        } catch (SQLException e) {
+            return;
+        }
+        reusePreparedStatement(c, prep, sql);
+    }
+
+    private void reusePreparedStatement(Connection c, PreparedStatement prep, String sql) {
+        synchronized (preparedMap) {
+            HashMap<String, PreparedStatement> map = preparedMap.get(c);
+            if (map == null) {
+                map = New.hashMap();
+                preparedMap.put(c, map);
+            }
+            map.put(sql, prep);
         }
     }
 
@@ -8,16 +8,21 @@ package com.codefollower.lealone.dbobject.table;
 
 import java.sql.Connection;
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.HashMap;
 
+import com.codefollower.lealone.constant.ErrorCode;
 import com.codefollower.lealone.message.DbException;
 import com.codefollower.lealone.util.JdbcUtils;
+import com.codefollower.lealone.util.New;
 import com.codefollower.lealone.util.StringUtils;
 import com.codefollower.lealone.util.Utils;
 
 /**
  * A connection for a linked table. The same connection may be used for multiple
- * tables, that means a connection may be shared.
+ * tables, that means a connection may be shared. Up to a maximum number of
+ * physical connections are opened to the target database, so that statements
+ * of different sessions can run at the same time.
  */
 public class TableLinkConnection {
 
@@ -32,15 +37,35 @@ public class TableLinkConnection {
     private final String driver, url, user, password;
 
     /**
-     * The database connection.
+     * All open database connections.
      */
-    private Connection conn;
+    private final ArrayList<Connection> connections = New.arrayList();
+
+    /**
+     * The connections that are currently not used.
+     */
+    private final ArrayList<Connection> idle = New.arrayList();
+
+    /**
+     * The maximum number of database connections.
+     */
+    private int maxConnections;
+
+    /**
+     * The number of connections that are currently being opened.
+     */
+    private int opening;
 
     /**
      * How many times the connection is used.
      */
     private int useCounter;
 
+    /**
+     * Whether all connections were closed.
+     */
+    private volatile boolean closed;
+
     private TableLinkConnection(
             HashMap<TableLinkConnection, TableLinkConnection> map,
             String driver, String url, String user, String password) {
@@ -61,12 +86,15 @@ public class TableLinkConnection {
      * @param user the user name
      * @param password the password
      * @param shareLinkedConnections if connections should be shared
+     * @param maxConnections the maximum number of database connections
      * @return a connection
      */
     public static TableLinkConnection open(
             HashMap<TableLinkConnection, TableLinkConnection> map,
-            String driver, String url, String user, String password, boolean shareLinkedConnections) {
+            String driver, String url, String user, String password, boolean shareLinkedConnections,
+            int maxConnections) {
         TableLinkConnection t = new TableLinkConnection(map, driver, url, user, password);
+        t.maxConnections = Math.max(1, maxConnections);
         if (!shareLinkedConnections) {
             t.open();
             return t;
@@ -86,8 +114,14 @@ public class TableLinkConnection {
     }
 
     private void open() {
+        Connection c = openConnection();
+        connections.add(c);
+        idle.add(c);
+    }
+
+    private Connection openConnection() {
         try {
-            conn = JdbcUtils.getConnection(driver, url, user, password);
+            return JdbcUtils.getConnection(driver, url, user, password);
         } catch (SQLException e) {
             throw DbException.convert(e);
         }
@@ -112,14 +146,68 @@ public class TableLinkConnection {
     }
 
     /**
-     * Get the connection.
-     * This method and methods on the statement must be
-     * synchronized on this object.
+     * Get a connection that is not used by another statement. If all
+     * connections are in use and the maximum is reached, this method waits
+     * until a connection is released. The connection must be returned using
+     * release.
      *
      * @return the connection
      */
-    Connection getConnection() {
-        return conn;
+    Connection acquire() {
+        synchronized (this) {
+            while (idle.isEmpty()) {
+                if (closed) {
+                    throw DbException.get(ErrorCode.OBJECT_CLOSED);
+                }
+                if (connections.size() + opening < maxConnections) {
+                    opening++;
+                    break;
+                }
+                try {
+                    wait();
+                } catch (InterruptedException e) {
+                    throw DbException.convert(e);
+                }
+            }
+            if (!idle.isEmpty()) {
+                return idle.remove(idle.size() - 1);
+            }
+        }
+        // open the new connection without blocking the other statements
+        Connection c = null;
+        try {
+            c = openConnection();
+        } finally {
+            synchronized (this) {
+                opening--;
+                if (c != null && !closed) {
+                    connections.add(c);
+                }
+                notifyAll();
+            }
+        }
+        if (closed) {
+            JdbcUtils.closeSilently(c);
+            throw DbException.get(ErrorCode.OBJECT_CLOSED);
+        }
+        return c;
+    }
+
+    /**
+     * Return a connection that was acquired.
+     *
+     * @param c the connection
+     */
+    void release(Connection c) {
+        synchronized (this) {
+            if (connections.contains(c)) {
+                idle.add(c);
+                notifyAll();
+                return;
+            }
+        }
+        // the link was closed in the meantime
+        JdbcUtils.closeSilently(c);
     }
 
     /**
@@ -137,7 +225,17 @@ public class TableLinkConnection {
             }
         }
         if (actuallyClose) {
-            JdbcUtils.closeSilently(conn);
+            ArrayList<Connection> list;
+            synchronized (this) {
+                closed = true;
+                list = New.arrayList(idle);
+                connections.clear();
+                idle.clear();
+                notifyAll();
+            }
+            for (Connection c : list) {
+                JdbcUtils.closeSilently(c);
+            }
         }
     }
 
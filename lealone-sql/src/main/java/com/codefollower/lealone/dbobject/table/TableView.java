@@ -7,6 +7,7 @@
 package com.codefollower.lealone.dbobject.table;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 
 import com.codefollower.lealone.command.Prepared;
 import com.codefollower.lealone.command.dml.Query;
@@ -145,7 +146,7 @@ public class TableView extends Table {
         try {
             Query query = compileViewQuery(session, querySQL);
             this.querySQL = query.getPlanSQL();
-            tables = New.arrayList(query.getTables());
+            tables = getTables(query);
             ArrayList<Expression> expressions = query.getExpressions();
             ArrayList<Column> list = New.arrayList();
             for (int i = 0, count = query.getColumnCount(); i < count; i++) {
@@ -201,7 +202,8 @@ public class TableView extends Table {
         return createException != null;
     }
 
-    public synchronized PlanItem getBestPlanItem(Session session, int[] masks, SortOrder sortOrder) {
+    public synchronized PlanItem getBestPlanItem(Session session, int[] masks, SortOrder sortOrder,
+            HashSet<Column> allColumnsSet) {
         PlanItem item = new PlanItem();
         item.cost = index.getCost(session, masks, sortOrder);
         IntArray masksArray = new IntArray(masks == null ? Utils.EMPTY_INT_ARRAY : masks);
@@ -247,7 +249,7 @@ public class TableView extends Table {
         if (force) {
             buff.append("FORCE ");
         }
-        buff.append("VIEW ");
+        buff.append(getViewType()).append(' ');
         buff.append(quotedName);
         if (comment != null) {
             buff.append(" COMMENT ").append(StringUtils.quoteStringSQL(comment));
@@ -267,9 +269,28 @@ public class TableView extends Table {
             }
             buff.append(')');
         }
+        buff.append(getViewOptions());
         return buff.append(" AS\n").append(querySQL).toString();
     }
 
+    /**
+     * Get the kind of view, as used in the CREATE statement.
+     *
+     * @return the keyword
+     */
+    protected String getViewType() {
+        return "VIEW";
+    }
+
+    /**
+     * Get the options that follow the column list in the CREATE statement.
+     *
+     * @return the options, or an empty string
+     */
+    protected String getViewOptions() {
+        return "";
+    }
+
     public void checkRename() {
         // ok
     }
@@ -348,6 +369,15 @@ public class TableView extends Table {
         return querySQL;
     }
 
+    /**
+     * Get the compiled view query.
+     *
+     * @return the query, or null if the view is invalid
+     */
+    protected Query getViewQuery() {
+        return viewQuery;
+    }
+
     public Index getScanIndex(Session session) {
         if (createException != null) {
             String msg = createException.getMessage();
@@ -383,6 +413,17 @@ public class TableView extends Table {
         return null;
     }
 
+    /**
+     * Get the tables this view is added to. A changed row of one of these
+     * tables invalidates the view.
+     *
+     * @param query the view query
+     * @return the tables
+     */
+    protected ArrayList<Table> getTables(Query query) {
+        return New.arrayList(query.getTables());
+    }
+
     private void removeViewFromTables() {
         if (tables != null) {
             for (Table t : tables) {
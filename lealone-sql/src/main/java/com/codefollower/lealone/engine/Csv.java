@@ -24,6 +24,14 @@ import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Types;
 import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.constant.ErrorCode;
@@ -41,11 +49,26 @@ import com.codefollower.lealone.util.StringUtils;
  * A facility to read from and write to CSV (comma separated values) files. When
  * reading, the BOM (the byte-order-mark) character 0xfeff at the beginning of
  * the file is ignored.
+ * <p>
+ * Files are parsed in parallel if there are multiple processors: the reading
+ * thread cuts the file into chunks that end at a row boundary, and the chunks
+ * are parsed on a thread pool. The rows are still returned in file order.
+ * </p>
  *
  * @author Thomas Mueller, Sylvain Cuaz
  */
 public class Csv implements SimpleRowSource {
 
+    /**
+     * The approximate number of characters in a chunk that is parsed in
+     * parallel.
+     */
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static ThreadPoolExecutor pool;
+
     private String[] columnNames;
 
     private String characterSet = SysProperties.FILE_ENCODING;
@@ -69,6 +92,27 @@ public class Csv implements SimpleRowSource {
     private int inputBufferEnd;
     private Writer output;
     private boolean endOfLine, endOfFile;
+    private int parallelChunkSize = THREADS > 1 ? CHUNK_SIZE : 0;
+
+    /**
+     * The chunks that are being parsed, in file order (null if the file is
+     * parsed sequentially).
+     */
+    private LinkedList<Future<ArrayList<String[]>>> chunks;
+    private ArrayList<String[]> chunkRows;
+    private int chunkRowPos;
+
+    /**
+     * The characters after the last row boundary of the previous chunk.
+     */
+    private char[] chunkRest;
+    private int chunkRestLen;
+
+    /**
+     * Whether the input buffer contains all remaining characters (for a
+     * chunk that is parsed in parallel).
+     */
+    private boolean lastBuffer;
 
     /**
      * Get a new object of this class.
@@ -238,9 +282,173 @@ public class Csv implements SimpleRowSource {
         for (String columnName : columnNames) {
             result.addColumn(columnName, Types.VARCHAR, Integer.MAX_VALUE, 0);
         }
+        if (fileName != null && parallelChunkSize > 0 && lineComment == 0 && !endOfFile) {
+            // the characters that were read after the header
+            chunkRestLen = Math.max(0, inputBufferEnd - inputBufferPos);
+            chunkRest = new char[chunkRestLen];
+            System.arraycopy(inputBuffer, inputBufferPos, chunkRest, 0, chunkRestLen);
+            inputBuffer = null;
+            chunks = new LinkedList<Future<ArrayList<String[]>>>();
+            submitChunks();
+        }
         return result;
     }
 
+    private static synchronized ThreadPoolExecutor getPool() {
+        if (pool == null) {
+            pool = new ThreadPoolExecutor(THREADS, THREADS, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private int threadNumber;
+
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "H2 CSV Parser " + threadNumber++);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+
+    /**
+     * Read chunks from the file and submit them to the thread pool, until
+     * enough chunks are in progress or the end of the file is reached.
+     */
+    private void submitChunks() throws IOException {
+        while (!endOfFile && chunks.size() < THREADS * 2) {
+            char[] buff = new char[Math.max(parallelChunkSize, chunkRestLen * 2)];
+            System.arraycopy(chunkRest, 0, buff, 0, chunkRestLen);
+            int len = chunkRestLen;
+            int end;
+            while (true) {
+                while (len < buff.length) {
+                    int l = input.read(buff, len, buff.length - len);
+                    if (l < 0) {
+                        endOfFile = true;
+                        break;
+                    }
+                    len += l;
+                }
+                end = endOfFile ? len : findRowEnd(buff, len);
+                if (end > 0 || endOfFile) {
+                    break;
+                }
+                // a row that is larger than the buffer
+                char[] b = new char[buff.length * 2];
+                System.arraycopy(buff, 0, b, 0, len);
+                buff = b;
+            }
+            chunkRestLen = len - end;
+            chunkRest = new char[chunkRestLen];
+            System.arraycopy(buff, end, chunkRest, 0, chunkRestLen);
+            if (end > 0) {
+                chunks.add(getPool().submit(newChunkParser(buff, end)));
+            }
+        }
+    }
+
+    private Callable<ArrayList<String[]>> newChunkParser(char[] buff, int len) {
+        final Csv csv = new Csv();
+        csv.columnNames = columnNames;
+        csv.escapeCharacter = escapeCharacter;
+        csv.fieldDelimiter = fieldDelimiter;
+        csv.fieldSeparatorRead = fieldSeparatorRead;
+        csv.preserveWhitespace = preserveWhitespace;
+        csv.nullString = nullString;
+        csv.inputBuffer = buff;
+        csv.inputBufferEnd = len;
+        csv.lastBuffer = true;
+        return new Callable<ArrayList<String[]>>() {
+            public ArrayList<String[]> call() throws IOException {
+                ArrayList<String[]> rows = New.arrayList();
+                while (true) {
+                    String[] row = csv.readRowValues();
+                    if (row == null) {
+                        return rows;
+                    }
+                    rows.add(row);
+                }
+            }
+        };
+    }
+
+    /**
+     * Find the position after the last row in the buffer. The buffer must
+     * start at the beginning of a row. This follows the rules of readValue:
+     * only a field delimiter at the start of a value starts a delimited value.
+     *
+     * @param buff the buffer
+     * @param len the number of characters in the buffer
+     * @return the end of the last complete row, or 0 if there is none
+     */
+    private int findRowEnd(char[] buff, int len) {
+        // 0: start of a value, 1: un-delimited value,
+        // 2: delimited value, 3: after a delimited value
+        int state = 0;
+        int end = 0;
+        for (int i = 0; i < len;) {
+            char ch = buff[i++];
+            if (state == 2) {
+                if (ch == fieldDelimiter) {
+                    if (i == len) {
+                        // can't say whether the delimiter is escaped
+                        break;
+                    }
+                    if (buff[i] == fieldDelimiter) {
+                        i++;
+                    } else {
+                        state = 3;
+                    }
+                } else if (ch == escapeCharacter) {
+                    i++;
+                }
+                continue;
+            }
+            if (ch == fieldSeparatorRead) {
+                state = 0;
+            } else if (ch == '\n' || ch == '\r') {
+                state = 0;
+                end = i;
+            } else if (state == 3) {
+                if (ch != ' ' && ch != '\t') {
+                    // the next value starts here
+                    state = 0;
+                    i--;
+                }
+            } else if (state == 0) {
+                if (ch == fieldDelimiter) {
+                    state = 2;
+                } else if (ch > ' ') {
+                    state = 1;
+                }
+            }
+        }
+        return end;
+    }
+
+    private Object[] readChunkRow() throws IOException, SQLException {
+        while (chunkRows == null || chunkRowPos >= chunkRows.size()) {
+            chunkRows = null;
+            if (chunks.isEmpty()) {
+                return null;
+            }
+            Future<ArrayList<String[]>> f = chunks.removeFirst();
+            submitChunks();
+            try {
+                chunkRows = f.get();
+            } catch (InterruptedException e) {
+                throw DbException.convert(e).getSQLException();
+            } catch (ExecutionException e) {
+                throw DbException.convert(e.getCause()).getSQLException();
+            }
+            chunkRowPos = 0;
+        }
+        String[] row = chunkRows.get(chunkRowPos);
+        chunkRows.set(chunkRowPos++, null);
+        return row;
+    }
+
     private void makeColumnNamesUnique() {
         for (int i = 0; i < columnNames.length; i++) {
             StringBuilder buff = new StringBuilder();
@@ -419,6 +627,12 @@ public class Csv implements SimpleRowSource {
         if (endOfFile) {
             return -1;
         }
+        if (lastBuffer) {
+            inputBufferEnd = -1024;
+            endOfFile = true;
+            inputBufferPos++;
+            return -1;
+        }
         int keep;
         if (inputBufferStart >= 0) {
             keep = inputBufferPos - inputBufferStart;
@@ -580,32 +794,39 @@ public class Csv implements SimpleRowSource {
         if (input == null) {
             return null;
         }
-        String[] row = new String[columnNames.length];
         try {
-            int i = 0;
-            while (true) {
-                String v = readValue();
-                if (v == null) {
-                    if (endOfLine) {
-                        if (i == 0) {
-                            if (endOfFile) {
-                                return null;
-                            }
-                            // empty line
-                            continue;
+            if (chunks != null) {
+                return readChunkRow();
+            }
+            return readRowValues();
+        } catch (IOException e) {
+            throw convertException("IOException reading from " + fileName, e);
+        }
+    }
+
+    private String[] readRowValues() throws IOException {
+        String[] row = new String[columnNames.length];
+        int i = 0;
+        while (true) {
+            String v = readValue();
+            if (v == null) {
+                if (endOfLine) {
+                    if (i == 0) {
+                        if (endOfFile) {
+                            return null;
                         }
-                        break;
+                        // empty line
+                        continue;
                     }
-                }
-                if (i < row.length) {
-                    row[i++] = v;
-                }
-                if (endOfLine) {
                     break;
                 }
             }
-        } catch (IOException e) {
-            throw convertException("IOException reading from " + fileName, e);
+            if (i < row.length) {
+                row[i++] = v;
+            }
+            if (endOfLine) {
+                break;
+            }
         }
         return row;
     }
@@ -618,12 +839,41 @@ public class Csv implements SimpleRowSource {
      * INTERNAL
      */
     public void close() {
+        if (chunks != null) {
+            for (Future<ArrayList<String[]>> f : chunks) {
+                f.cancel(false);
+            }
+            chunks = null;
+            chunkRows = null;
+        }
         IOUtils.closeSilently(input);
         input = null;
         IOUtils.closeSilently(output);
         output = null;
     }
 
+    /**
+     * Set the approximate number of characters in a chunk of a file that is
+     * parsed in parallel. The default is 256K characters if there are multiple
+     * processors, and 0 otherwise.
+     *
+     * @param parallelChunkSize the chunk size, or 0 to parse files
+     *          sequentially
+     */
+    public void setParallelChunkSize(int parallelChunkSize) {
+        this.parallelChunkSize = parallelChunkSize;
+    }
+
+    /**
+     * Get the approximate number of characters in a chunk of a file that is
+     * parsed in parallel.
+     *
+     * @return the chunk size, or 0 if files are parsed sequentially
+     */
+    public int getParallelChunkSize() {
+        return parallelChunkSize;
+    }
+
     /**
      * INTERNAL
      */
@@ -13,11 +13,17 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedList;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.SortedMap;
 import java.util.StringTokenizer;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.codefollower.lealone.api.DatabaseEventListener;
+import com.codefollower.lealone.command.SharedCommandCache;
 import com.codefollower.lealone.command.ddl.CreateTableData;
 import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.constant.DbSettings;
@@ -51,10 +57,14 @@ import com.codefollower.lealone.dbobject.table.TableView;
 import com.codefollower.lealone.engine.ConnectionInfo;
 import com.codefollower.lealone.jdbc.JdbcConnection;
 import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.message.QueryTrace;
 import com.codefollower.lealone.message.Trace;
 import com.codefollower.lealone.message.TraceSystem;
+import com.codefollower.lealone.result.ResultCache;
 import com.codefollower.lealone.result.Row;
 import com.codefollower.lealone.result.SearchRow;
+import com.codefollower.lealone.result.SpillManager;
+import com.codefollower.lealone.server.TcpServer;
 import com.codefollower.lealone.store.DataHandler;
 import com.codefollower.lealone.store.FileStore;
 import com.codefollower.lealone.store.LobStorage;
@@ -180,6 +190,15 @@ public abstract class Database implements DataHandler {
     private int defaultTableType = Table.TYPE_CACHED;
     private DbSettings dbSettings;
     protected int logMode;
+    private SharedCommandCache sharedCommandCache;
+    private ResultCache resultCache;
+    private volatile QueryStatisticsData queryStatisticsData;
+    private volatile int queryTraceSampling;
+    private final AtomicLong queryTraceCounter = new AtomicLong();
+    private final LinkedList<QueryTrace> queryTraces = new LinkedList<QueryTrace>();
+    private SpillManager spillManager;
+    private MetricsReporterThread metricsReporter;
+    private StatementProfiler profiler;
 
     protected final DatabaseEngine dbEngine;
 
@@ -197,6 +216,17 @@ public abstract class Database implements DataHandler {
     public void init(ConnectionInfo ci, String cipher) {
         String name = ci.getName();
         this.dbSettings = ci.getDbSettings();
+        if (dbSettings.sharedCommandCacheSize > 0) {
+            sharedCommandCache = new SharedCommandCache(this, dbSettings.sharedCommandCacheSize);
+        }
+        if (dbSettings.resultCacheSize > 0) {
+            resultCache = new ResultCache(this, dbSettings.resultCacheSize);
+        }
+        if (dbSettings.queryStatistics) {
+            queryStatisticsData = new QueryStatisticsData(dbSettings.queryStatisticsMaxEntries);
+        }
+        queryTraceSampling = dbSettings.queryTraceSampling;
+        spillManager = new SpillManager(this, dbSettings);
         this.compareMode = CompareMode.getInstance(null, 0, false);
         //this.persistent = ci.isPersistent();
         this.filePasswordHash = ci.getFilePasswordHash();
@@ -233,7 +263,12 @@ public abstract class Database implements DataHandler {
 
     private void openDatabase(int traceLevelFile, int traceLevelSystemOut, boolean closeAtVmShutdown) {
         try {
+            profiler = new StatementProfiler(this);
             open(traceLevelFile, traceLevelSystemOut);
+            if (dbSettings.metricsReportInterval > 0) {
+                metricsReporter = MetricsReporterThread.start(this, dbSettings.metricsReporter,
+                        dbSettings.metricsReportInterval);
+            }
             if (closeAtVmShutdown) {
                 try {
                     closeOnExit = new DatabaseCloser(this, 0, true);
@@ -938,6 +973,13 @@ public abstract class Database implements DataHandler {
             }
             closing = true;
         }
+        if (metricsReporter != null) {
+            metricsReporter.stopThread();
+            metricsReporter = null;
+        }
+        if (profiler != null) {
+            profiler.stopThread();
+        }
         // remove all session variables
         if (persistent) {
             boolean lobStorageIsUsed = infoSchema.findTableOrView(systemSession, LobStorage.LOB_DATA_TABLE) != null;
@@ -1533,6 +1575,16 @@ public abstract class Database implements DataHandler {
     public synchronized void flush() {
     }
 
+    /**
+     * Wait until the transaction log is synced up to the given commit. This
+     * method is called without holding the lock on the database.
+     *
+     * @param commitId the commit id
+     */
+    public void waitForCommitSync(long commitId) {
+        // nothing to do
+    }
+
     public void setEventListener(DatabaseEventListener eventListener) {
         this.eventListener = eventListener;
     }
@@ -1831,7 +1883,8 @@ public abstract class Database implements DataHandler {
         if (linkConnections == null) {
             linkConnections = New.hashMap();
         }
-        return TableLinkConnection.open(linkConnections, driver, url, user, password, dbSettings.shareLinkedConnections);
+        return TableLinkConnection.open(linkConnections, driver, url, user, password, dbSettings.shareLinkedConnections,
+                dbSettings.linkConnections);
     }
 
     public String toString() {
@@ -1983,6 +2036,171 @@ public abstract class Database implements DataHandler {
         return dbSettings;
     }
 
+    /**
+     * Get the database wide command cache.
+     *
+     * @return the cache, or null if disabled
+     */
+    public SharedCommandCache getSharedCommandCache() {
+        return sharedCommandCache;
+    }
+
+    /**
+     * Get the database wide result cache.
+     *
+     * @return the cache, or null if disabled
+     */
+    public ResultCache getResultCache() {
+        return resultCache;
+    }
+
+    /**
+     * Get the statistics of the executed statements.
+     *
+     * @return the statistics, or null if they are not collected
+     */
+    public QueryStatisticsData getQueryStatisticsData() {
+        return queryStatisticsData;
+    }
+
+    /**
+     * Start or stop collecting statistics of the executed statements. Stopping
+     * removes the collected statistics.
+     *
+     * @param b true to collect statistics
+     */
+    public void setQueryStatistics(boolean b) {
+        if (!b) {
+            queryStatisticsData = null;
+        } else if (queryStatisticsData == null) {
+            queryStatisticsData = new QueryStatisticsData(dbSettings.queryStatisticsMaxEntries);
+        }
+    }
+
+    /**
+     * Get how often statements are traced.
+     *
+     * @return 0 if statements are not traced, otherwise one out of this
+     *         number of statements is traced
+     */
+    public int getQueryTraceSampling() {
+        return queryTraceSampling;
+    }
+
+    /**
+     * Set how often statements are traced.
+     *
+     * @param sampling 0 to disable tracing, 1 to trace each statement, n to
+     *            trace one out of n statements
+     */
+    public void setQueryTraceSampling(int sampling) {
+        queryTraceSampling = Math.max(0, sampling);
+    }
+
+    /**
+     * Check whether the next statement should be traced.
+     *
+     * @return true if it should be traced
+     */
+    public boolean isQueryTraceSampled() {
+        int sampling = queryTraceSampling;
+        if (sampling <= 0) {
+            return false;
+        }
+        return sampling == 1 || queryTraceCounter.incrementAndGet() % sampling == 0;
+    }
+
+    /**
+     * Add the trace of an executed statement. Only the most recent traces are
+     * kept.
+     *
+     * @param trace the trace
+     */
+    public void addQueryTrace(QueryTrace trace) {
+        synchronized (queryTraces) {
+            queryTraces.add(trace);
+            while (queryTraces.size() > dbSettings.queryTraceMaxEntries) {
+                queryTraces.removeFirst();
+            }
+        }
+    }
+
+    /**
+     * Get the most recent traces, the oldest first.
+     *
+     * @return the traces
+     */
+    public ArrayList<QueryTrace> getQueryTraces() {
+        synchronized (queryTraces) {
+            return New.arrayList(queryTraces);
+        }
+    }
+
+    /**
+     * Get the sampling profiler of the statements.
+     *
+     * @return the profiler
+     */
+    public StatementProfiler getProfiler() {
+        return profiler;
+    }
+
+    /**
+     * Get the current metrics of this database, sorted by name.
+     *
+     * @return the metrics
+     */
+    public SortedMap<String, Object> getMetrics() {
+        TreeMap<String, Object> metrics = new TreeMap<String, Object>();
+        addMetrics(metrics);
+        return metrics;
+    }
+
+    /**
+     * Add the metrics of this database to the map. Database engines that
+     * keep their own statistics override this method.
+     *
+     * @param metrics the map
+     */
+    protected void addMetrics(Map<String, Object> metrics) {
+        metrics.put("sessions", getSessions(false).length);
+        ResultCache rc = resultCache;
+        if (rc != null) {
+            metrics.put("resultCache.hits", rc.getHits());
+            metrics.put("resultCache.misses", rc.getMisses());
+            metrics.put("resultCache.evictions", rc.getEvictions());
+            metrics.put("resultCache.entries", rc.getEntryCount());
+            metrics.put("resultCache.sizeKB", rc.getMemoryKB());
+        }
+        QueryStatisticsData statistics = queryStatisticsData;
+        if (statistics != null) {
+            metrics.put("queryStatistics.statements", statistics.getEntries().size());
+        }
+        StatementProfiler p = profiler;
+        if (p != null) {
+            metrics.put("profiler.samples", p.getSampleCount());
+        }
+        if (traceSystem != null) {
+            metrics.put("trace.dropped", traceSystem.getDroppedCount());
+            metrics.put("trace.written", traceSystem.getWrittenCount());
+        }
+        for (TcpServer server : TcpServer.getServers()) {
+            String prefix = "tcp." + server.getPort() + ".";
+            metrics.put(prefix + "connections", server.getConnectionCount());
+            metrics.put(prefix + "openConnections", server.getOpenConnectionCount());
+            metrics.put(prefix + "requests", server.getRequestCount());
+        }
+    }
+
+    /**
+     * Get the manager of the temporary files of large results.
+     *
+     * @return the spill manager
+     */
+    public SpillManager getSpillManager() {
+        return spillManager;
+    }
+
     /**
      * Create a new hash map. Depending on the configuration, the key is case
      * sensitive or case insensitive.
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.engine;
+
+import java.lang.ref.WeakReference;
+import java.util.SortedMap;
+
+import com.codefollower.lealone.Driver;
+import com.codefollower.lealone.api.MetricsReporter;
+import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.message.Trace;
+import com.codefollower.lealone.util.Utils;
+
+/**
+ * The background thread that periodically reports the metrics of a database,
+ * either to a user defined reporter or to the trace file.
+ */
+class MetricsReporterThread implements Runnable {
+
+    private final WeakReference<Database> databaseRef;
+    private final String databaseName;
+    private final Trace trace;
+    private final MetricsReporter reporter;
+    private final int interval;
+    private volatile boolean stop;
+
+    private MetricsReporterThread(Database database, MetricsReporter reporter, int interval) {
+        this.databaseRef = new WeakReference<Database>(database);
+        this.databaseName = database.getShortName();
+        this.trace = database.getTrace(Trace.DATABASE);
+        this.reporter = reporter;
+        this.interval = interval;
+    }
+
+    /**
+     * Create and start a new reporter thread for the given database.
+     *
+     * @param database the database
+     * @param className the name of the reporter class, or null to write the
+     *            metrics to the trace file
+     * @param interval the interval in milliseconds
+     * @return the thread
+     */
+    static MetricsReporterThread start(Database database, String className, int interval) {
+        MetricsReporter reporter = null;
+        if (className != null && className.length() > 0) {
+            try {
+                reporter = (MetricsReporter) Utils.loadUserClass(className).newInstance();
+            } catch (Throwable e) {
+                throw DbException.convert(e);
+            }
+        }
+        MetricsReporterThread t = new MetricsReporterThread(database, reporter, interval);
+        Thread thread = new Thread(t, "H2 Metrics Reporter " + t.databaseName);
+        Driver.setThreadContextClassLoader(thread);
+        thread.setDaemon(true);
+        thread.start();
+        return t;
+    }
+
+    /**
+     * Stop the thread. This method is called when closing the database.
+     */
+    synchronized void stopThread() {
+        stop = true;
+        notifyAll();
+    }
+
+    public void run() {
+        while (!stop) {
+            synchronized (this) {
+                try {
+                    wait(interval);
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+            }
+            if (stop) {
+                break;
+            }
+            Database database = databaseRef.get();
+            if (database == null) {
+                break;
+            }
+            try {
+                SortedMap<String, Object> metrics = database.getMetrics();
+                if (reporter != null) {
+                    reporter.report(databaseName, metrics);
+                } else {
+                    trace.info("metrics {0}", metrics);
+                }
+            } catch (Throwable e) {
+                trace.error(e, "metrics reporter");
+            }
+        }
+    }
+
+}
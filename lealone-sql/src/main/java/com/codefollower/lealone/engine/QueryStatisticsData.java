@@ -0,0 +1,307 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.engine;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codefollower.lealone.util.LatencyHistogram;
+
+/**
+ * Statistics about the executed statements of a database, grouped by the
+ * normalized SQL statement (literals are replaced by '?'). Recording an
+ * execution of a known statement is lock-free.
+ */
+public class QueryStatisticsData {
+
+    private final ConcurrentHashMap<String, QueryEntry> map = new ConcurrentHashMap<String, QueryEntry>();
+    private final int maxEntries;
+
+    public QueryStatisticsData(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Record an execution of a statement.
+     *
+     * @param sql the normalized SQL statement
+     * @param parseNanos the time used to parse the statement
+     * @param prepareNanos the time used to prepare (optimize) the statement
+     * @param executeNanos the execution time
+     * @param rowsRead the number of rows read from tables
+     * @param rows the number of rows returned or updated
+     * @param regions the number of regions the statement was sent to
+     * @param remoteCalls the number of calls to other servers
+     */
+    public void record(String sql, long parseNanos, long prepareNanos, long executeNanos, long rowsRead, long rows,
+            int regions, int remoteCalls) {
+        QueryEntry entry = map.get(sql);
+        if (entry == null) {
+            entry = new QueryEntry(sql);
+            QueryEntry old = map.putIfAbsent(sql, entry);
+            if (old != null) {
+                entry = old;
+            } else if (map.size() > maxEntries) {
+                removeOldEntries();
+            }
+        }
+        entry.add(parseNanos, prepareNanos, executeNanos, rowsRead, rows, regions, remoteCalls);
+    }
+
+    /**
+     * Get all entries, the statements with the highest cumulative execution
+     * time first.
+     *
+     * @return the entries
+     */
+    public ArrayList<QueryEntry> getEntries() {
+        ArrayList<QueryEntry> list = new ArrayList<QueryEntry>(map.values());
+        Collections.sort(list, new Comparator<QueryEntry>() {
+            public int compare(QueryEntry a, QueryEntry b) {
+                long x = a.getCumulativeExecutionNanos(), y = b.getCumulativeExecutionNanos();
+                return x > y ? -1 : x < y ? 1 : a.sql.compareTo(b.sql);
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Remove all entries.
+     */
+    public void reset() {
+        map.clear();
+    }
+
+    /**
+     * Remove the third of the entries that were not executed for the longest
+     * time.
+     */
+    private synchronized void removeOldEntries() {
+        if (map.size() <= maxEntries) {
+            return;
+        }
+        ArrayList<QueryEntry> list = new ArrayList<QueryEntry>(map.values());
+        Collections.sort(list, new Comparator<QueryEntry>() {
+            public int compare(QueryEntry a, QueryEntry b) {
+                long x = a.lastExecuted, y = b.lastExecuted;
+                return x < y ? -1 : x > y ? 1 : 0;
+            }
+        });
+        int remove = Math.max(1, list.size() - maxEntries * 2 / 3);
+        for (int i = 0; i < remove; i++) {
+            map.remove(list.get(i).sql);
+        }
+    }
+
+    /**
+     * Normalize a SQL statement: literals are replaced by '?', comments are
+     * removed, and white space is collapsed, so that statements that only
+     * differ in their constants share the same entry.
+     *
+     * @param sql the SQL statement
+     * @return the normalized statement
+     */
+    public static String normalize(String sql) {
+        int len = sql.length();
+        StringBuilder buff = new StringBuilder(len);
+        boolean space = false;
+        for (int i = 0; i < len;) {
+            char c = sql.charAt(i);
+            if (Character.isWhitespace(c)) {
+                space = buff.length() > 0;
+                i++;
+                continue;
+            }
+            if (c == '-' && i + 1 < len && sql.charAt(i + 1) == '-') {
+                while (i < len && sql.charAt(i) != '\n') {
+                    i++;
+                }
+                space = buff.length() > 0;
+                continue;
+            } else if (c == '/' && i + 1 < len && sql.charAt(i + 1) == '*') {
+                int end = sql.indexOf("*/", i + 2);
+                i = end < 0 ? len : end + 2;
+                space = buff.length() > 0;
+                continue;
+            }
+            if (space) {
+                buff.append(' ');
+                space = false;
+            }
+            if (c == '\'') {
+                // string literal, '' is an escaped quote
+                for (i++; i < len; i++) {
+                    if (sql.charAt(i) == '\'') {
+                        if (i + 1 < len && sql.charAt(i + 1) == '\'') {
+                            i++;
+                        } else {
+                            break;
+                        }
+                    }
+                }
+                i++;
+                buff.append('?');
+            } else if (c == '"') {
+                int end = sql.indexOf('"', i + 1);
+                end = end < 0 ? len : end + 1;
+                buff.append(sql, i, end);
+                i = end;
+            } else if (c == '$' && i + 1 < len && sql.charAt(i + 1) == '$') {
+                int end = sql.indexOf("$$", i + 2);
+                i = end < 0 ? len : end + 2;
+                buff.append('?');
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < len && Character.isDigit(sql.charAt(i + 1)))) {
+                for (i++; i < len; i++) {
+                    char d = sql.charAt(i);
+                    if (!Character.isLetterOrDigit(d) && d != '.') {
+                        if ((d == '+' || d == '-') && (sql.charAt(i - 1) == 'E' || sql.charAt(i - 1) == 'e')) {
+                            continue;
+                        }
+                        break;
+                    }
+                }
+                buff.append('?');
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                for (i++; i < len; i++) {
+                    char d = sql.charAt(i);
+                    if (!Character.isLetterOrDigit(d) && d != '_' && d != '$') {
+                        break;
+                    }
+                }
+                buff.append(sql, start, i);
+            } else {
+                buff.append(c);
+                i++;
+            }
+        }
+        return buff.toString();
+    }
+
+    /**
+     * The statistics of one statement.
+     */
+    public static class QueryEntry {
+
+        private final String sql;
+        private final AtomicLong count = new AtomicLong();
+        private final AtomicLong executionNanos = new AtomicLong();
+        private final AtomicLong minNanos = new AtomicLong(Long.MAX_VALUE);
+        private final AtomicLong maxNanos = new AtomicLong();
+        private final AtomicLong parseNanos = new AtomicLong();
+        private final AtomicLong prepareNanos = new AtomicLong();
+        private final AtomicLong rowsRead = new AtomicLong();
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong regions = new AtomicLong();
+        private final AtomicLong remoteCalls = new AtomicLong();
+        private final LatencyHistogram histogram = new LatencyHistogram();
+        private volatile long lastExecuted;
+
+        QueryEntry(String sql) {
+            this.sql = sql;
+        }
+
+        void add(long parse, long prepare, long execute, long read, long returned, int regionCount, int calls) {
+            count.incrementAndGet();
+            executionNanos.addAndGet(execute);
+            for (long m = minNanos.get(); execute < m && !minNanos.compareAndSet(m, execute); m = minNanos.get()) {
+                // retry
+            }
+            for (long m = maxNanos.get(); execute > m && !maxNanos.compareAndSet(m, execute); m = maxNanos.get()) {
+                // retry
+            }
+            histogram.add(execute / 1000);
+            if (parse != 0 || prepare != 0) {
+                parseNanos.addAndGet(parse);
+                prepareNanos.addAndGet(prepare);
+            }
+            rowsRead.addAndGet(read);
+            rows.addAndGet(returned);
+            if (regionCount != 0 || calls != 0) {
+                regions.addAndGet(regionCount);
+                remoteCalls.addAndGet(calls);
+            }
+            lastExecuted = System.currentTimeMillis();
+        }
+
+        public String getSQL() {
+            return sql;
+        }
+
+        public long getExecutionCount() {
+            return count.get();
+        }
+
+        public long getCumulativeExecutionNanos() {
+            return executionNanos.get();
+        }
+
+        public long getMinExecutionNanos() {
+            long m = minNanos.get();
+            return m == Long.MAX_VALUE ? 0 : m;
+        }
+
+        public long getMaxExecutionNanos() {
+            return maxNanos.get();
+        }
+
+        /**
+         * Get the execution time at the given percentile.
+         *
+         * @param percentile the percentile, between 0 and 1
+         * @return the time in nanoseconds
+         */
+        public long getExecutionNanos(double percentile) {
+            return histogram.getPercentile(percentile) * 1000;
+        }
+
+        public long getCumulativeParseNanos() {
+            return parseNanos.get();
+        }
+
+        public long getCumulativePrepareNanos() {
+            return prepareNanos.get();
+        }
+
+        public long getRowsRead() {
+            return rowsRead.get();
+        }
+
+        public long getRows() {
+            return rows.get();
+        }
+
+        public long getRegions() {
+            return regions.get();
+        }
+
+        public long getRemoteCalls() {
+            return remoteCalls.get();
+        }
+
+        public long getLastExecuted() {
+            return lastExecuted;
+        }
+    }
+
+}
@@ -14,6 +14,7 @@ import java.util.Random;
 import com.codefollower.lealone.command.Command;
 import com.codefollower.lealone.command.Parser;
 import com.codefollower.lealone.command.Prepared;
+import com.codefollower.lealone.command.SharedCommandCache;
 import com.codefollower.lealone.command.dml.Query;
 import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.constant.ErrorCode;
@@ -27,11 +28,13 @@ import com.codefollower.lealone.dbobject.User;
 import com.codefollower.lealone.dbobject.constraint.Constraint;
 import com.codefollower.lealone.dbobject.index.Index;
 import com.codefollower.lealone.dbobject.table.Table;
+import com.codefollower.lealone.dbobject.table.TableLink;
 import com.codefollower.lealone.engine.ConnectionInfo;
 import com.codefollower.lealone.engine.SessionInterface;
 import com.codefollower.lealone.engine.SessionWithState;
 import com.codefollower.lealone.jdbc.JdbcConnection;
 import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.message.QueryTrace;
 import com.codefollower.lealone.message.Trace;
 import com.codefollower.lealone.message.TraceSystem;
 import com.codefollower.lealone.result.ResultInterface;
@@ -103,11 +106,19 @@ public class Session extends SessionWithState {
     protected boolean closed;
     private final long sessionStart = System.currentTimeMillis();
     private long transactionStart;
-    private long currentCommandStart;
+    private volatile long currentCommandStart;
+    private volatile Thread currentCommandThread;
+    private long executionId;
     private HashMap<String, Value> variables;
     private HashSet<ResultInterface> temporaryResults;
+    private HashSet<TableLink> linkBatches;
     private int queryTimeout;
     private boolean commitOrRollbackDisabled;
+    private long commitSyncId;
+    private long rowsRead;
+    private QueryTrace queryTrace;
+    private QueryTrace.Span queryTraceSpan;
+    private boolean explainAnalyze;
     private Table waitForLock;
     private int modificationId;
     private int objectId;
@@ -206,6 +217,15 @@ public class Session extends SessionWithState {
         return localTempTables.get(name);
     }
 
+    /**
+     * Check if this session has local temporary tables.
+     *
+     * @return true if it has
+     */
+    public boolean hasLocalTempTables() {
+        return localTempTables != null && !localTempTables.isEmpty();
+    }
+
     public ArrayList<Table> getLocalTempTables() {
         if (localTempTables == null) {
             return New.arrayList();
@@ -421,6 +441,13 @@ public class Session extends SessionWithState {
             throw DbException.get(ErrorCode.CONNECTION_BROKEN_1, "session closed");
         }
         Command command;
+        SharedCommandCache sharedCache = database.getSharedCommandCache();
+        if (sharedCache != null) {
+            command = sharedCache.take(this, sql);
+            if (command != null) {
+                return command;
+            }
+        }
         if (queryCacheSize > 0) {
             if (queryCache == null) {
                 queryCache = SmallLRUCache.newInstance(queryCacheSize);
@@ -434,6 +461,9 @@ public class Session extends SessionWithState {
         }
         Parser parser = createParser();
         command = parser.prepareCommand(sql, isLocal);
+        if (sharedCache != null && sharedCache.register(this, sql, command)) {
+            return command;
+        }
         if (queryCache != null) {
             if (command.isCacheable()) {
                 queryCache.put(sql, command);
@@ -511,6 +541,91 @@ public class Session extends SessionWithState {
         unlockAll();
     }
 
+    /**
+     * Count a row read from a table.
+     */
+    public void addRowRead() {
+        rowsRead++;
+    }
+
+    /**
+     * Get the number of rows read from tables by this session.
+     *
+     * @return the number of rows
+     */
+    public long getRowsRead() {
+        return rowsRead;
+    }
+
+    /**
+     * Set whether the statement that is currently executed is measured by
+     * EXPLAIN ANALYZE. If set, table filters and results count rows and
+     * measure their time, and results are not taken from a cache.
+     *
+     * @param b the new value
+     */
+    public void setExplainAnalyze(boolean b) {
+        explainAnalyze = b;
+    }
+
+    public boolean isExplainAnalyze() {
+        return explainAnalyze;
+    }
+
+    /**
+     * Set the trace of the statement that is currently executed.
+     *
+     * @param trace the trace, or null if the statement is not traced
+     * @param span the span new spans are added below
+     */
+    public void setQueryTrace(QueryTrace trace, QueryTrace.Span span) {
+        queryTrace = trace;
+        queryTraceSpan = span;
+    }
+
+    /**
+     * Get the trace of the statement that is currently executed.
+     *
+     * @return the trace, or null if the statement is not traced
+     */
+    public QueryTrace getQueryTrace() {
+        return queryTrace;
+    }
+
+    /**
+     * Get the span new spans of the current statement are added below.
+     *
+     * @return the span, or null if the statement is not traced
+     */
+    public QueryTrace.Span getQueryTraceSpan() {
+        return queryTraceSpan;
+    }
+
+    /**
+     * Set the commit id the transaction log needs to be synced up to before the
+     * last commit of this session is durable.
+     *
+     * @param commitId the commit id, or 0 if the commit is durable already
+     */
+    public void setCommitSyncId(long commitId) {
+        if (commitId != 0) {
+            commitSyncId = commitId;
+        }
+    }
+
+    /**
+     * Wait until the last commit of this session is durable. This must be called
+     * without holding the lock on the database, so that the commits of other
+     * sessions can be synced together with this one.
+     */
+    public void waitForCommitSync() {
+        long id = commitSyncId;
+        if (id != 0) {
+            commitSyncId = 0;
+            database.waitForCommitSync(id);
+        }
+    }
+
     private void checkCommitRollback() {
         if (commitOrRollbackDisabled && locks.size() > 0) {
             throw DbException.get(ErrorCode.COMMIT_ROLLBACK_NOT_ALLOWED);
@@ -551,6 +666,7 @@ public class Session extends SessionWithState {
             entry.undo(this);
             undoLog.removeLast(trimToSize);
         }
+        endLinkRollback();
         if (savepoints != null) {
             String[] names = new String[savepoints.size()];
             savepoints.keySet().toArray(names);
@@ -579,6 +695,7 @@ public class Session extends SessionWithState {
         if (!closed) {
             try {
                 database.checkPowerOff();
+                discardLinkBatches();
                 cleanTempTables(true);
                 undoLog.clear();
                 database.removeSession(this);
@@ -894,10 +1011,16 @@ public class Session extends SessionWithState {
      */
     public void setCurrentCommand(Command command) {
         this.currentCommand = command;
-        if (queryTimeout > 0 && command != null) {
+        if (command != null) {
+            executionId++;
             long now = System.currentTimeMillis();
             currentCommandStart = now;
-            cancelAt = now + queryTimeout;
+            currentCommandThread = Thread.currentThread();
+            if (queryTimeout > 0) {
+                cancelAt = now + queryTimeout;
+            }
+        } else {
+            currentCommandThread = null;
         }
     }
 
@@ -936,6 +1059,26 @@ public class Session extends SessionWithState {
         return currentCommandStart;
     }
 
+    /**
+     * Get the thread that executes the current command.
+     *
+     * @return the thread, or null if no command is running
+     */
+    public Thread getCurrentCommandThread() {
+        return currentCommandThread;
+    }
+
+    /**
+     * Get the number of the current command execution. It changes each time a
+     * command is started, so that values computed from the parameters can be
+     * cached for the duration of one execution.
+     *
+     * @return the execution number
+     */
+    public long getExecutionId() {
+        return executionId;
+    }
+
     public boolean getAllowLiterals() {
         return allowLiterals;
     }
@@ -1159,6 +1302,51 @@ public class Session extends SessionWithState {
         }
     }
 
+    /**
+     * Remember a linked table that has rows of this session that are not yet
+     * sent to the target database, or that the target database did not apply.
+     * They are discarded if the statement is rolled back or the session is
+     * closed, except the rows that the rollback restores.
+     *
+     * @param table the linked table
+     */
+    public void addLinkBatch(TableLink table) {
+        if (linkBatches == null) {
+            linkBatches = New.hashSet();
+        }
+        linkBatches.add(table);
+    }
+
+    /**
+     * Forget a linked table after its rows of this session were sent.
+     *
+     * @param table the linked table
+     */
+    public void removeLinkBatch(TableLink table) {
+        if (linkBatches != null) {
+            linkBatches.remove(table);
+        }
+    }
+
+    private void endLinkRollback() {
+        if (linkBatches != null) {
+            HashSet<TableLink> tables = linkBatches;
+            linkBatches = null;
+            for (TableLink table : tables) {
+                table.endRollback(this);
+            }
+        }
+    }
+
+    private void discardLinkBatches() {
+        if (linkBatches != null) {
+            for (TableLink table : linkBatches) {
+                table.discardBatch(this);
+            }
+            linkBatches = null;
+        }
+    }
+
     /**
      * Close all temporary result set. This also deletes all temporary files
      * held by the result sets.
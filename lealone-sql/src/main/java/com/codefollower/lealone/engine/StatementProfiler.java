@@ -0,0 +1,278 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.engine;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+
+import com.codefollower.lealone.Driver;
+import com.codefollower.lealone.command.Command;
+import com.codefollower.lealone.command.Prepared;
+import com.codefollower.lealone.message.Trace;
+import com.codefollower.lealone.util.New;
+import com.codefollower.lealone.util.StringUtils;
+
+/**
+ * A sampling profiler for the statements of a database. The stack traces of
+ * the threads that execute statements are sampled at a low rate, and at a
+ * high rate for statements that run longer than a threshold. The samples are
+ * aggregated per statement type in the folded format used by flame graph
+ * tools: the frames from the root to the leaf, separated by a semicolon.
+ */
+public class StatementProfiler implements Runnable {
+
+    /**
+     * The interval in milliseconds in which statements that exceed the
+     * threshold are sampled.
+     */
+    private static final int SLOW_INTERVAL = 10;
+
+    private static final int MAX_ELEMENTS = 1000;
+    private static final int MAX_DEPTH = 64;
+
+    private final WeakReference<Database> databaseRef;
+    private final String databaseName;
+    private final HashMap<String, Integer> counts = new HashMap<String, Integer>();
+    private int minCount = 1;
+    private long sampleCount;
+    private volatile int interval;
+    private volatile int threshold;
+    private volatile boolean stop = true;
+    private Thread thread;
+
+    StatementProfiler(Database database) {
+        this.databaseRef = new WeakReference<Database>(database);
+        this.databaseName = database.getShortName();
+    }
+
+    /**
+     * Set the interval of the continuous sampling.
+     *
+     * @param interval the interval in milliseconds, 0 to disable
+     */
+    public synchronized void setInterval(int interval) {
+        this.interval = Math.max(0, interval);
+        update();
+    }
+
+    public int getInterval() {
+        return interval;
+    }
+
+    /**
+     * Set the execution time after which a statement is sampled at a high
+     * rate.
+     *
+     * @param threshold the time in milliseconds, 0 to disable
+     */
+    public synchronized void setThreshold(int threshold) {
+        this.threshold = Math.max(0, threshold);
+        update();
+    }
+
+    public int getThreshold() {
+        return threshold;
+    }
+
+    /**
+     * Stop the thread. This method is called when closing the database.
+     */
+    public synchronized void stopThread() {
+        stop = true;
+        thread = null;
+        notifyAll();
+    }
+
+    private void update() {
+        if (interval == 0 && threshold == 0) {
+            stopThread();
+        } else if (thread == null) {
+            stop = false;
+            thread = new Thread(this, "H2 Statement Profiler " + databaseName);
+            Driver.setThreadContextClassLoader(thread);
+            thread.setDaemon(true);
+            thread.start();
+        } else {
+            // apply the new sampling period
+            notifyAll();
+        }
+    }
+
+    public void run() {
+        long nextSample = 0;
+        while (true) {
+            synchronized (this) {
+                if (stop || Thread.currentThread() != thread) {
+                    break;
+                }
+                try {
+                    wait(getPeriod());
+                } catch (InterruptedException e) {
+                    // ignore
+                }
+                if (stop || Thread.currentThread() != thread) {
+                    break;
+                }
+            }
+            Database database = databaseRef.get();
+            if (database == null) {
+                break;
+            }
+            long now = System.currentTimeMillis();
+            boolean sample = false;
+            int i = interval;
+            if (i > 0 && now >= nextSample) {
+                sample = true;
+                nextSample = now + i;
+            }
+            try {
+                tick(database, now, sample);
+            } catch (Throwable e) {
+                database.getTrace(Trace.DATABASE).error(e, "statement profiler");
+            }
+        }
+    }
+
+    private int getPeriod() {
+        int i = interval, t = threshold;
+        if (t == 0) {
+            return i;
+        }
+        return i == 0 ? SLOW_INTERVAL : Math.min(i, SLOW_INTERVAL);
+    }
+
+    private void tick(Database database, long now, boolean sample) {
+        int t = threshold;
+        for (Session s : database.getSessions(false)) {
+            Command command = s.getCurrentCommand();
+            Thread commandThread = s.getCurrentCommandThread();
+            if (command == null || commandThread == null) {
+                continue;
+            }
+            boolean slow = t > 0 && now - s.getCurrentCommandStart() >= t;
+            if (!sample && !slow) {
+                continue;
+            }
+            if (commandThread.getState() != Thread.State.RUNNABLE) {
+                continue;
+            }
+            StackTraceElement[] stack = commandThread.getStackTrace();
+            if (stack.length == 0 || s.getCurrentCommandThread() != commandThread) {
+                // the statement completed in the meantime
+                continue;
+            }
+            StringBuilder buff = new StringBuilder(getStatementType(command));
+            if (slow) {
+                buff.append("(slow)");
+            }
+            for (int j = Math.min(stack.length, MAX_DEPTH) - 1; j >= 0; j--) {
+                StackTraceElement e = stack[j];
+                buff.append(';').append(e.getClassName()).append('.').append(e.getMethodName());
+            }
+            increment(buff.toString());
+        }
+    }
+
+    private static String getStatementType(Command command) {
+        Prepared prepared = command.getPrepared();
+        Class<?> c = prepared == null ? command.getClass() : prepared.getClass();
+        return StringUtils.toUpperEnglish(c.getSimpleName());
+    }
+
+    private synchronized void increment(String stack) {
+        sampleCount++;
+        Integer oldCount = counts.get(stack);
+        if (oldCount == null) {
+            counts.put(stack, 1);
+        } else {
+            counts.put(stack, oldCount + 1);
+        }
+        while (counts.size() > MAX_ELEMENTS) {
+            for (Iterator<Map.Entry<String, Integer>> ei = counts.entrySet().iterator(); ei.hasNext();) {
+                Map.Entry<String, Integer> e = ei.next();
+                if (e.getValue() <= minCount) {
+                    ei.remove();
+                }
+            }
+            if (counts.size() > MAX_ELEMENTS) {
+                minCount++;
+            }
+        }
+    }
+
+    /**
+     * Get the sampled stacks, the most frequent first. The key of each entry
+     * is the statement type followed by the frames from the root to the leaf,
+     * separated by a semicolon, and the value is the number of samples.
+     *
+     * @return the stacks
+     */
+    public synchronized ArrayList<Map.Entry<String, Integer>> getStacks() {
+        ArrayList<Map.Entry<String, Integer>> list = New.arrayList();
+        for (Map.Entry<String, Integer> e : counts.entrySet()) {
+            list.add(new AbstractMap.SimpleImmutableEntry<String, Integer>(e));
+        }
+        Collections.sort(list, new Comparator<Map.Entry<String, Integer>>() {
+            public int compare(Map.Entry<String, Integer> a, Map.Entry<String, Integer> b) {
+                return b.getValue().compareTo(a.getValue());
+            }
+        });
+        return list;
+    }
+
+    /**
+     * Get the sampled stacks in the folded format, one line per stack,
+     * followed by a space and the number of samples.
+     *
+     * @return the folded stacks
+     */
+    public String getFoldedStacks() {
+        StringBuilder buff = new StringBuilder();
+        for (Map.Entry<String, Integer> e : getStacks()) {
+            buff.append(e.getKey()).append(' ').append(e.getValue()).append('\n');
+        }
+        return buff.toString();
+    }
+
+    /**
+     * Get the total number of samples taken.
+     *
+     * @return the number of samples
+     */
+    public synchronized long getSampleCount() {
+        return sampleCount;
+    }
+
+    /**
+     * Remove all samples.
+     */
+    public synchronized void reset() {
+        counts.clear();
+        minCount = 1;
+        sampleCount = 0;
+    }
+
+}
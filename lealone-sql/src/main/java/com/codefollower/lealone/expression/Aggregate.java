@@ -24,9 +24,11 @@ import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.message.DbException;
 import com.codefollower.lealone.result.SearchRow;
 import com.codefollower.lealone.result.SortOrder;
+import com.codefollower.lealone.util.HyperLogLog;
 import com.codefollower.lealone.util.New;
 import com.codefollower.lealone.util.StatementBuilder;
 import com.codefollower.lealone.util.StringUtils;
+import com.codefollower.lealone.util.TDigest;
 import com.codefollower.lealone.value.DataType;
 import com.codefollower.lealone.value.Value;
 import com.codefollower.lealone.value.ValueArray;
@@ -117,6 +119,28 @@ public class Aggregate extends Expression {
      */
     static final int HISTOGRAM = 14;
 
+    /**
+     * The aggregate type for APPROX_COUNT_DISTINCT(expression).
+     */
+    public static final int APPROX_COUNT_DISTINCT = 15;
+
+    /**
+     * The aggregate type for APPROX_PERCENTILE(expression, percentile).
+     */
+    public static final int APPROX_PERCENTILE = 16;
+
+    /**
+     * The aggregate type for APPROX_COUNT_DISTINCT_SKETCH(expression), the
+     * serialized HyperLogLog sketch that is merged across regions.
+     */
+    public static final int APPROX_COUNT_DISTINCT_SKETCH = 17;
+
+    /**
+     * The aggregate type for APPROX_PERCENTILE_SKETCH(expression), the
+     * serialized t-digest that is merged across regions.
+     */
+    public static final int APPROX_PERCENTILE_SKETCH = 18;
+
     private static final HashMap<String, Integer> AGGREGATES = New.hashMap();
 
     private final int type;
@@ -125,6 +149,8 @@ public class Aggregate extends Expression {
 
     private Expression on;
     private Expression separator;
+    private Expression percentile;
+    private double percentileValue;
     private ArrayList<SelectOrderBy> orderList;
     private SortOrder sort;
     private int dataType, scale;
@@ -171,6 +197,10 @@ public class Aggregate extends Expression {
         addAggregate("EVERY", BOOL_AND);
         addAggregate("SELECTIVITY", SELECTIVITY);
         addAggregate("HISTOGRAM", HISTOGRAM);
+        addAggregate("APPROX_COUNT_DISTINCT", APPROX_COUNT_DISTINCT);
+        addAggregate("APPROX_PERCENTILE", APPROX_PERCENTILE);
+        addAggregate("APPROX_COUNT_DISTINCT_SKETCH", APPROX_COUNT_DISTINCT_SKETCH);
+        addAggregate("APPROX_PERCENTILE_SKETCH", APPROX_PERCENTILE_SKETCH);
     }
 
     private static void addAggregate(String name, int type) {
@@ -207,6 +237,37 @@ public class Aggregate extends Expression {
         this.separator = separator;
     }
 
+    /**
+     * Set the percentile for APPROX_PERCENTILE.
+     *
+     * @param percentile the percentile expression (a constant between 0 and 1)
+     */
+    public void setPercentile(Expression percentile) {
+        this.percentile = percentile;
+    }
+
+    /**
+     * Check if the merged value of this aggregate has to be calculated from
+     * the sketch that the regions return.
+     *
+     * @return true if calculate needs to be called
+     */
+    public boolean isCalculationRequired() {
+        return type == APPROX_COUNT_DISTINCT || type == APPROX_PERCENTILE;
+    }
+
+    private boolean isSketch() {
+        switch (type) {
+        case APPROX_COUNT_DISTINCT:
+        case APPROX_PERCENTILE:
+        case APPROX_COUNT_DISTINCT_SKETCH:
+        case APPROX_PERCENTILE_SKETCH:
+            return true;
+        default:
+            return false;
+        }
+    }
+
     private SortOrder initOrder(Session session) {
         int size = orderList.size();
         int[] index = new int[size];
@@ -259,7 +320,13 @@ public class Aggregate extends Expression {
                 }
             }
         }
-        data.add(session.getDatabase(), distinct, v);
+        if (isSketch()) {
+            int memory = data.getSketchMemory();
+            data.add(session.getDatabase(), distinct, v);
+            select.addGroupMemory(data.getSketchMemory() - memory);
+        } else {
+            data.add(session.getDatabase(), distinct, v);
+        }
     }
 
     public void mergeAggregate(Session session, Value v) {
@@ -296,7 +363,13 @@ public class Aggregate extends Expression {
                 }
             }
         }
-        data.merge(session.getDatabase(), distinct, v);
+        if (isSketch()) {
+            int memory = data.getSketchMemory();
+            data.merge(session.getDatabase(), distinct, v);
+            select.addGroupMemory(data.getSketchMemory() - memory);
+        } else {
+            data.merge(session.getDatabase(), distinct, v);
+        }
     }
 
     public Value getValue(Session session) {
@@ -336,6 +409,11 @@ public class Aggregate extends Expression {
             data = new AggregateData(type, dataType);
         }
         Value v = data.getValue(session.getDatabase(), distinct);
+        if (type == APPROX_PERCENTILE) {
+            TDigest digest = data.getDigest();
+            double x = digest == null ? Double.NaN : digest.getQuantile(percentileValue);
+            return Double.isNaN(x) ? ValueNull.INSTANCE : ValueDouble.get(x);
+        }
         if (type == GROUP_CONCAT) {
             ArrayList<Value> list = data.getList();
             if (list == null || list.size() == 0) {
@@ -505,9 +583,30 @@ public class Aggregate extends Expression {
             calculator.addIndex(3);
             break;
         }
+        case Aggregate.APPROX_COUNT_DISTINCT: {
+            Value v = calculator.getValue(calculator.getIndex());
+            if (v != ValueNull.INSTANCE) {
+                v = ValueLong.get(HyperLogLog.read(v.getBytesNoCopy()).getEstimate());
+            }
+            calculator.addResultValue(v);
+            calculator.addIndex();
+            break;
+        }
+        case Aggregate.APPROX_PERCENTILE: {
+            Value v = calculator.getValue(calculator.getIndex());
+            if (v != ValueNull.INSTANCE) {
+                double x = TDigest.read(v.getBytesNoCopy()).getQuantile(percentileValue);
+                v = Double.isNaN(x) ? ValueNull.INSTANCE : ValueDouble.get(x);
+            }
+            calculator.addResultValue(v);
+            calculator.addIndex();
+            break;
+        }
         case Aggregate.HISTOGRAM:
         case Aggregate.SELECTIVITY:
         case Aggregate.GROUP_CONCAT:
+        case Aggregate.APPROX_COUNT_DISTINCT_SKETCH:
+        case Aggregate.APPROX_PERCENTILE_SKETCH:
             break;
         default:
             DbException.throwInternalError("type=" + type);
@@ -530,6 +629,9 @@ public class Aggregate extends Expression {
         if (separator != null) {
             separator.mapColumns(resolver, level);
         }
+        if (percentile != null) {
+            percentile.mapColumns(resolver, level);
+        }
     }
 
     public Expression optimize(Session session) {
@@ -549,6 +651,17 @@ public class Aggregate extends Expression {
         if (separator != null) {
             separator = separator.optimize(session);
         }
+        if (percentile != null) {
+            percentile = percentile.optimize(session);
+            if (!percentile.isConstant()) {
+                throw DbException.get(ErrorCode.INVALID_VALUE_2, percentile.getSQL(), "percentile");
+            }
+            Value p = percentile.getValue(session);
+            percentileValue = p == ValueNull.INSTANCE ? -1 : p.getDouble();
+            if (!(percentileValue >= 0 && percentileValue <= 1)) {
+                throw DbException.get(ErrorCode.INVALID_VALUE_2, percentile.getSQL(), "percentile");
+            }
+        }
         switch (type) {
         case GROUP_CONCAT:
             dataType = Value.STRING;
@@ -607,6 +720,31 @@ public class Aggregate extends Expression {
             displaySize = ValueBoolean.DISPLAY_SIZE;
             scale = 0;
             break;
+        case APPROX_COUNT_DISTINCT:
+            dataType = Value.LONG;
+            scale = 0;
+            precision = ValueLong.PRECISION;
+            displaySize = ValueLong.DISPLAY_SIZE;
+            break;
+        case APPROX_PERCENTILE:
+            if (!DataType.supportsAdd(dataType)) {
+                throw DbException.get(ErrorCode.SUM_OR_AVG_ON_WRONG_DATATYPE_1, getSQL());
+            }
+            dataType = Value.DOUBLE;
+            precision = ValueDouble.PRECISION;
+            displaySize = ValueDouble.DISPLAY_SIZE;
+            scale = 0;
+            break;
+        case APPROX_PERCENTILE_SKETCH:
+            if (!DataType.supportsAdd(dataType)) {
+                throw DbException.get(ErrorCode.SUM_OR_AVG_ON_WRONG_DATATYPE_1, getSQL());
+            }
+            // fall through
+        case APPROX_COUNT_DISTINCT_SKETCH:
+            dataType = Value.BYTES;
+            scale = 0;
+            precision = displaySize = Integer.MAX_VALUE;
+            break;
         default:
             DbException.throwInternalError("type=" + type);
         }
@@ -625,6 +763,9 @@ public class Aggregate extends Expression {
         if (separator != null) {
             separator.setEvaluatable(tableFilter, b);
         }
+        if (percentile != null) {
+            percentile.setEvaluatable(tableFilter, b);
+        }
     }
 
     public int getScale() {
@@ -722,6 +863,23 @@ public class Aggregate extends Expression {
         case BOOL_OR:
             text = "BOOL_OR";
             break;
+        case APPROX_COUNT_DISTINCT:
+            if (isDistributed) {
+                return "APPROX_COUNT_DISTINCT_SKETCH(" + on.getSQL(isDistributed) + ")";
+            }
+            text = "APPROX_COUNT_DISTINCT";
+            break;
+        case APPROX_PERCENTILE:
+            if (isDistributed) {
+                return "APPROX_PERCENTILE_SKETCH(" + on.getSQL(isDistributed) + ")";
+            }
+            return "APPROX_PERCENTILE(" + on.getSQL(isDistributed) + ", " + percentile.getSQL(isDistributed) + ")";
+        case APPROX_COUNT_DISTINCT_SKETCH:
+            text = "APPROX_COUNT_DISTINCT_SKETCH";
+            break;
+        case APPROX_PERCENTILE_SKETCH:
+            text = "APPROX_PERCENTILE_SKETCH";
+            break;
         default:
             throw DbException.throwInternalError("type=" + type);
         }
@@ -778,6 +936,9 @@ public class Aggregate extends Expression {
         if (separator != null && !separator.isEverything(visitor)) {
             return false;
         }
+        if (percentile != null && !percentile.isEverything(visitor)) {
+            return false;
+        }
         if (orderList != null) {
             for (int i = 0, size = orderList.size(); i < size; i++) {
                 SelectOrderBy o = orderList.get(i);
@@ -13,14 +13,17 @@ import java.util.Comparator;
 import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.engine.Database;
 import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.util.HyperLogLog;
 import com.codefollower.lealone.util.IntIntHashMap;
 import com.codefollower.lealone.util.New;
+import com.codefollower.lealone.util.TDigest;
 import com.codefollower.lealone.util.ValueHashMap;
 import com.codefollower.lealone.value.CompareMode;
 import com.codefollower.lealone.value.DataType;
 import com.codefollower.lealone.value.Value;
 import com.codefollower.lealone.value.ValueArray;
 import com.codefollower.lealone.value.ValueBoolean;
+import com.codefollower.lealone.value.ValueBytes;
 import com.codefollower.lealone.value.ValueDouble;
 import com.codefollower.lealone.value.ValueInt;
 import com.codefollower.lealone.value.ValueLong;
@@ -38,6 +41,8 @@ class AggregateData {
     private Value value;
     private double m2, mean;
     private ArrayList<Value> list;
+    private HyperLogLog hyperLogLog;
+    private TDigest digest;
 
     AggregateData(int aggregateType, int dataType) {
         this.aggregateType = aggregateType;
@@ -151,6 +156,20 @@ class AggregateData {
             }
             break;
         }
+        case Aggregate.APPROX_COUNT_DISTINCT:
+        case Aggregate.APPROX_COUNT_DISTINCT_SKETCH:
+            if (hyperLogLog == null) {
+                hyperLogLog = new HyperLogLog();
+            }
+            hyperLogLog.add(v);
+            break;
+        case Aggregate.APPROX_PERCENTILE:
+        case Aggregate.APPROX_PERCENTILE_SKETCH:
+            if (digest == null) {
+                digest = new TDigest();
+            }
+            digest.add(v.getDouble());
+            break;
         case Aggregate.BOOL_AND:
             v = v.convertTo(Value.BOOLEAN);
             if (value == null) {
@@ -254,6 +273,33 @@ class AggregateData {
             }
             break;
         }
+        case Aggregate.APPROX_COUNT_DISTINCT:
+        case Aggregate.APPROX_PERCENTILE:
+            if (value == null) {
+                value = v.convertTo(dataType);
+            } else {
+                // the sketches were already merged, so this happens only once
+                DbException.throwInternalError("type=" + aggregateType);
+            }
+            break;
+        case Aggregate.APPROX_COUNT_DISTINCT_SKETCH: {
+            HyperLogLog other = HyperLogLog.read(v.getBytesNoCopy());
+            if (hyperLogLog == null) {
+                hyperLogLog = other;
+            } else {
+                hyperLogLog.merge(other);
+            }
+            break;
+        }
+        case Aggregate.APPROX_PERCENTILE_SKETCH: {
+            TDigest other = TDigest.read(v.getBytesNoCopy());
+            if (digest == null) {
+                digest = other;
+            } else {
+                digest.merge(other);
+            }
+            break;
+        }
         case Aggregate.BOOL_AND:
             v = v.convertTo(Value.BOOLEAN);
             if (value == null) {
@@ -279,6 +325,25 @@ class AggregateData {
         return list;
     }
 
+    TDigest getDigest() {
+        return digest;
+    }
+
+    /**
+     * Get the memory used by the sketch of this aggregate, if any. Sketches
+     * grow while values are added, unlike the other aggregate data.
+     *
+     * @return the memory in bytes, or 0
+     */
+    int getSketchMemory() {
+        if (hyperLogLog != null) {
+            return hyperLogLog.getMemory();
+        } else if (digest != null) {
+            return digest.getMemory();
+        }
+        return 0;
+    }
+
     /**
      * Get the aggregate result.
      *
@@ -323,7 +388,15 @@ class AggregateData {
             }
             break;
         case Aggregate.GROUP_CONCAT:
+        case Aggregate.APPROX_PERCENTILE:
             return null;
+        case Aggregate.APPROX_COUNT_DISTINCT:
+            v = ValueLong.get(hyperLogLog == null ? 0 : hyperLogLog.getEstimate());
+            break;
+        case Aggregate.APPROX_COUNT_DISTINCT_SKETCH:
+        case Aggregate.APPROX_PERCENTILE_SKETCH:
+            v = getSketch();
+            break;
         case Aggregate.STDDEV_POP: {
             if (count < 1) {
                 return ValueNull.INSTANCE;
@@ -399,7 +472,13 @@ class AggregateData {
         case Aggregate.STDDEV_SAMP:
         case Aggregate.VAR_POP:
         case Aggregate.VAR_SAMP:
+        case Aggregate.APPROX_COUNT_DISTINCT:
+        case Aggregate.APPROX_PERCENTILE:
             return value == null ? ValueNull.INSTANCE : value;
+        case Aggregate.APPROX_COUNT_DISTINCT_SKETCH:
+        case Aggregate.APPROX_PERCENTILE_SKETCH:
+            v = getSketch();
+            break;
 
         case Aggregate.SELECTIVITY:
 
@@ -434,6 +513,16 @@ class AggregateData {
         return v == null ? ValueNull.INSTANCE : v.convertTo(dataType);
     }
 
+    private Value getSketch() {
+        byte[] bytes;
+        if (aggregateType == Aggregate.APPROX_COUNT_DISTINCT_SKETCH) {
+            bytes = (hyperLogLog == null ? new HyperLogLog() : hyperLogLog).getBytes();
+        } else {
+            bytes = (digest == null ? new TDigest() : digest).getBytes();
+        }
+        return ValueBytes.getNoCopy(bytes);
+    }
+
     private static Value divide(Value a, long by) {
         if (by == 0) {
             return ValueNull.INSTANCE;
@@ -29,6 +29,8 @@ public class CompareLike extends Condition {
 
     private static final int MATCH = 0, ONE = 1, ANY = 2;
 
+    private static final int FAST_NONE = 0, FAST_EQUAL = 1, FAST_PREFIX = 2, FAST_SUFFIX = 3, FAST_CONTAINS = 4;
+
     private final CompareMode compareMode;
     private final String defaultEscape;
     private Expression left;
@@ -49,6 +51,20 @@ public class CompareLike extends Condition {
     private boolean fastCompare;
     private boolean invalidPattern;
 
+    /**
+     * The pattern and escape character the current state was built from, if
+     * they were evaluated at runtime (for example a parameter).
+     */
+    private String cachedPattern;
+    private Character cachedEscape;
+
+    /**
+     * How the pattern can be matched without the generic algorithm, and the
+     * literal text to match if it can.
+     */
+    private int fastMatch;
+    private String fastString;
+
     public CompareLike(Database db, Expression left, Expression right,
             Expression escape, boolean regexp) {
         this(db.getCompareMode(), db.getSettings().defaultEscape, left, right, escape, regexp);
@@ -235,7 +251,13 @@ public class CompareLike extends Condition {
             if (e == ValueNull.INSTANCE) {
                 return ValueNull.INSTANCE;
             }
-            initPattern(p, getEscapeChar(e));
+            Character esc = getEscapeChar(e);
+            if (cachedPattern == null || !cachedPattern.equals(p)
+                    || (cachedEscape == null ? esc != null : !cachedEscape.equals(esc))) {
+                initPattern(p, esc);
+                cachedPattern = p;
+                cachedEscape = esc;
+            }
         }
         if (invalidPattern) {
             return ValueNull.INSTANCE;
@@ -246,7 +268,22 @@ public class CompareLike extends Condition {
             // result = patternRegexp.matcher(value).matches();
             result = patternRegexp.matcher(value).find();
         } else {
-            result = compareAt(value, 0, 0, value.length(), patternChars, patternTypes);
+            switch (fastMatch) {
+            case FAST_EQUAL:
+                result = value.equals(fastString);
+                break;
+            case FAST_PREFIX:
+                result = value.startsWith(fastString);
+                break;
+            case FAST_SUFFIX:
+                result = value.endsWith(fastString);
+                break;
+            case FAST_CONTAINS:
+                result = value.indexOf(fastString) >= 0;
+                break;
+            default:
+                result = compareAt(value, 0, 0, value.length(), patternChars, patternTypes);
+            }
         }
         return ValueBoolean.get(result);
     }
@@ -303,6 +340,9 @@ public class CompareLike extends Condition {
     }
 
     private void initPattern(String p, Character escapeChar) {
+        cachedPattern = null;
+        invalidPattern = false;
+        fastMatch = FAST_NONE;
         if (compareMode.getName().equals(CompareMode.OFF) && !ignoreCase) {
             fastCompare = true;
         }
@@ -362,6 +402,38 @@ public class CompareLike extends Condition {
             }
         }
         patternString = new String(patternChars, 0, patternLength);
+        initFastMatch();
+    }
+
+    /**
+     * Check if the pattern is a literal text, optionally with a leading and a
+     * trailing '%', so that String.equals, startsWith, endsWith or indexOf can
+     * be used instead of the generic algorithm.
+     */
+    private void initFastMatch() {
+        if (!fastCompare) {
+            return;
+        }
+        int start = 0, end = patternLength;
+        boolean leadingAny = start < end && patternTypes[start] == ANY;
+        if (leadingAny) {
+            start++;
+        }
+        boolean trailingAny = start < end && patternTypes[end - 1] == ANY;
+        if (trailingAny) {
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            if (patternTypes[i] != MATCH) {
+                return;
+            }
+        }
+        fastString = new String(patternChars, start, end - start);
+        if (leadingAny) {
+            fastMatch = trailingAny ? FAST_CONTAINS : FAST_SUFFIX;
+        } else {
+            fastMatch = trailingAny ? FAST_PREFIX : FAST_EQUAL;
+        }
     }
 
     private boolean isFullMatch() {
@@ -241,6 +241,50 @@ public class Comparison extends Condition {
         return ValueBoolean.get(result);
     }
 
+    public VectorExpression createVectorExpression(Session session, TableFilter filter, int type) {
+        if (type != Value.BOOLEAN) {
+            return null;
+        }
+        if (right == null) {
+            int dataType = left.getType();
+            if (!VectorExpression.isSupportedType(dataType)) {
+                return null;
+            }
+            VectorExpression l = left.createVectorExpression(session, filter, dataType);
+            return l == null ? null : VectorExpression.isNull(l, compareType == IS_NOT_NULL);
+        }
+        switch (compareType) {
+        case EQUAL:
+        case EQUAL_NULL_SAFE:
+        case BIGGER_EQUAL:
+        case BIGGER:
+        case SMALLER_EQUAL:
+        case SMALLER:
+        case NOT_EQUAL:
+        case NOT_EQUAL_NULL_SAFE:
+            break;
+        default:
+            return null;
+        }
+        int l1 = left.getType(), r1 = right.getType();
+        if (l1 == Value.UNKNOWN || r1 == Value.UNKNOWN) {
+            return null;
+        }
+        int dataType = Value.getHigherOrder(l1, r1);
+        if (!VectorExpression.isSupportedType(dataType)) {
+            return null;
+        }
+        VectorExpression l = left.createVectorExpression(session, filter, dataType);
+        if (l == null) {
+            return null;
+        }
+        VectorExpression r = right.createVectorExpression(session, filter, dataType);
+        if (r == null) {
+            return null;
+        }
+        return VectorExpression.compare(compareType, l, r);
+    }
+
     /**
      * Compare two values, given the values are not NULL.
      *
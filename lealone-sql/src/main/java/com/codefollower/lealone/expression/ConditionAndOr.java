@@ -121,6 +121,21 @@ public class ConditionAndOr extends Condition {
         }
     }
 
+    public VectorExpression createVectorExpression(Session session, TableFilter filter, int type) {
+        if (type != Value.BOOLEAN) {
+            return null;
+        }
+        VectorExpression l = left.createVectorExpression(session, filter, Value.BOOLEAN);
+        if (l == null) {
+            return null;
+        }
+        VectorExpression r = right.createVectorExpression(session, filter, Value.BOOLEAN);
+        if (r == null) {
+            return null;
+        }
+        return VectorExpression.andOr(andOrType == AND, l, r);
+    }
+
     public Expression optimize(Session session) {
         // NULL handling: see wikipedia,
         // http://www-cs-students.stanford.edu/~wlam/compsci/sqlnulls
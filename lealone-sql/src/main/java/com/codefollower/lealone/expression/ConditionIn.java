@@ -7,6 +7,7 @@
 package com.codefollower.lealone.expression;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 
 import com.codefollower.lealone.dbobject.index.IndexCondition;
 import com.codefollower.lealone.dbobject.table.ColumnResolver;
@@ -14,6 +15,7 @@ import com.codefollower.lealone.dbobject.table.TableFilter;
 import com.codefollower.lealone.engine.Database;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.util.StatementBuilder;
+import com.codefollower.lealone.value.CompareMode;
 import com.codefollower.lealone.value.Value;
 import com.codefollower.lealone.value.ValueBoolean;
 import com.codefollower.lealone.value.ValueNull;
@@ -28,6 +30,16 @@ public class ConditionIn extends Condition {
     private final ArrayList<Expression> valueList;
     private int queryLevel;
 
+    /**
+     * The type the list is converted to when it only contains constants and
+     * parameters, or Value.UNKNOWN if the list is evaluated row by row.
+     */
+    private int valueSetType = Value.UNKNOWN;
+    private HashSet<Value> valueSet;
+    private boolean valueSetHasNull;
+    private int valueSetSessionId;
+    private long valueSetExecutionId;
+
     /**
      * Create a new IN(..) condition.
      *
@@ -46,6 +58,13 @@ public class ConditionIn extends Condition {
         if (l == ValueNull.INSTANCE) {
             return l;
         }
+        if (valueSetType != Value.UNKNOWN && l.getType() == valueSetType) {
+            boolean result = getValueSet(session).contains(l);
+            if (!result && valueSetHasNull) {
+                return ValueNull.INSTANCE;
+            }
+            return ValueBoolean.get(result);
+        }
         boolean result = false;
         boolean hasNull = false;
         for (Expression e : valueList) {
@@ -66,6 +85,63 @@ public class ConditionIn extends Condition {
         return ValueBoolean.get(result);
     }
 
+    /**
+     * Get the set of list values. The parameters do not change while a
+     * command is executed, so the set is only built once per execution.
+     *
+     * @param session the session
+     * @return the set of values, converted to the type of the left side
+     */
+    private HashSet<Value> getValueSet(Session session) {
+        if (valueSet == null || valueSetSessionId != session.getId()
+                || valueSetExecutionId != session.getExecutionId()) {
+            HashSet<Value> set = new HashSet<Value>(valueList.size() * 2);
+            boolean hasNull = false;
+            for (Expression e : valueList) {
+                Value r = e.getValue(session);
+                if (r == ValueNull.INSTANCE) {
+                    hasNull = true;
+                } else {
+                    set.add(r.convertTo(valueSetType));
+                }
+            }
+            valueSet = set;
+            valueSetHasNull = hasNull;
+            valueSetSessionId = session.getId();
+            valueSetExecutionId = session.getExecutionId();
+        }
+        return valueSet;
+    }
+
+    /**
+     * Check whether values of this type are equal exactly if their hash set
+     * entries are equal. Decimal values with a different scale, floating
+     * point zeros, and strings compared with a collator are not.
+     *
+     * @param type the value type
+     * @return true if a hash set can be used
+     */
+    private boolean isHashable(int type) {
+        switch (type) {
+        case Value.BOOLEAN:
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+        case Value.DATE:
+        case Value.TIME:
+        case Value.TIMESTAMP:
+        case Value.UUID:
+            return true;
+        case Value.STRING:
+        case Value.STRING_FIXED:
+        case Value.STRING_IGNORECASE:
+            return database.getCompareMode().getName().equals(CompareMode.OFF);
+        default:
+            return false;
+        }
+    }
+
     public void mapColumns(ColumnResolver resolver, int level) {
         left.mapColumns(resolver, level);
         for (Expression e : valueList) {
@@ -81,6 +157,7 @@ public class ConditionIn extends Condition {
             return left;
         }
         boolean allValuesConstant = true;
+        boolean allValuesInvariant = true;
         boolean allValuesNull = true;
         int size = valueList.size();
         for (int i = 0; i < size; i++) {
@@ -92,6 +169,9 @@ public class ConditionIn extends Condition {
             if (allValuesConstant && !e.isConstant()) {
                 allValuesConstant = false;
             }
+            if (allValuesInvariant && !e.isConstant() && !(e instanceof Parameter)) {
+                allValuesInvariant = false;
+            }
             valueList.set(i, e);
         }
         if (constant && allValuesConstant) {
@@ -112,6 +192,8 @@ public class ConditionIn extends Condition {
             expr = expr.optimize(session);
             return expr;
         }
+        valueSetType = allValuesInvariant && isHashable(left.getType()) ? left.getType() : Value.UNKNOWN;
+        valueSet = null;
         return this;
     }
 
@@ -35,6 +35,14 @@ public class ConditionNot extends Condition {
         return v.convertTo(Value.BOOLEAN).negate();
     }
 
+    public VectorExpression createVectorExpression(Session session, TableFilter filter, int type) {
+        if (type != Value.BOOLEAN) {
+            return null;
+        }
+        VectorExpression v = condition.createVectorExpression(session, filter, Value.BOOLEAN);
+        return v == null ? null : VectorExpression.not(v);
+    }
+
     public void mapColumns(ColumnResolver resolver, int level) {
         condition.mapColumns(resolver, level);
     }
@@ -195,6 +195,19 @@ public abstract class Expression {
         // default is do nothing
     }
 
+    /**
+     * Create an expression that evaluates this expression for a batch of rows
+     * of the given table filter at once.
+     *
+     * @param session the session
+     * @param filter the table filter
+     * @param type the data type of the result
+     * @return the vector expression, or null if not supported
+     */
+    public VectorExpression createVectorExpression(Session session, TableFilter filter, int type) {
+        return null;
+    }
+
     /**
      * Get the column name or alias name of this expression.
      *
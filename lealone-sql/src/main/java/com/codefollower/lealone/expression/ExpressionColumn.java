@@ -247,6 +247,13 @@ public class ExpressionColumn extends Expression {
         return column.getType();
     }
 
+    public VectorExpression createVectorExpression(Session session, TableFilter filter, int type) {
+        if (columnResolver != filter) {
+            return null;
+        }
+        return VectorExpression.column(column.getColumnId(), column.getType(), type);
+    }
+
     public void setEvaluatable(TableFilter tableFilter, boolean b) {
         if (columnResolver != null && tableFilter == columnResolver.getTableFilter()) {
             evaluatable = b;
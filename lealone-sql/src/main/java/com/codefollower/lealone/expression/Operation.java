@@ -166,6 +166,24 @@ public class Operation extends Expression {
         }
     }
 
+    public VectorExpression createVectorExpression(Session session, TableFilter filter, int type) {
+        if (type != dataType || !convertRight) {
+            return null;
+        }
+        VectorExpression l = left.createVectorExpression(session, filter, dataType);
+        if (l == null) {
+            return null;
+        }
+        VectorExpression r = null;
+        if (right != null) {
+            r = right.createVectorExpression(session, filter, dataType);
+            if (r == null) {
+                return null;
+            }
+        }
+        return VectorExpression.operation(opType, dataType, l, r);
+    }
+
     public void mapColumns(ColumnResolver resolver, int level) {
         left.mapColumns(resolver, level);
         if (right != null) {
@@ -55,6 +55,10 @@ public class Parameter extends Expression implements ParameterInterface {
         return getParamValue();
     }
 
+    public VectorExpression createVectorExpression(Session session, TableFilter filter, int type) {
+        return VectorExpression.constant(getParamValue(), type);
+    }
+
     public int getType() {
         if (value != null) {
             return value.getType();
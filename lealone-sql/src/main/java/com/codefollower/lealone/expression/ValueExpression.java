@@ -77,6 +77,10 @@ public class ValueExpression extends Expression {
         return value.getType();
     }
 
+    public VectorExpression createVectorExpression(Session session, TableFilter filter, int type) {
+        return VectorExpression.constant(value, type);
+    }
+
     public void createIndexConditions(Session session, TableFilter filter) {
         if (value.getType() == Value.BOOLEAN) {
             boolean v = ((ValueBoolean) value).getBoolean().booleanValue();
@@ -0,0 +1,629 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.expression;
+
+import java.math.BigDecimal;
+import java.util.Arrays;
+
+import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.result.SearchRow;
+import com.codefollower.lealone.value.Value;
+import com.codefollower.lealone.value.ValueDate;
+import com.codefollower.lealone.value.ValueInt;
+import com.codefollower.lealone.value.ValueLong;
+import com.codefollower.lealone.value.ValueNull;
+
+/**
+ * An expression that is evaluated for a batch of rows at once. The values
+ * are kept in primitive arrays, indexed by the position of the row in the
+ * batch: integer, date and boolean values in a long array, floating point
+ * values in a double array. Only the rows listed in the selection are
+ * evaluated, so that AND and OR skip the same rows as the row by row
+ * evaluation does. DECIMAL values are supported if they are integers that
+ * fit in a long; if a calculation overflows, an OverflowException is thrown
+ * and the batch needs to be evaluated row by row.
+ */
+public abstract class VectorExpression {
+
+    /**
+     * The maximum number of rows in a batch.
+     */
+    public static final int BATCH_SIZE = 1024;
+
+    private static final BigDecimal MIN_LONG = BigDecimal.valueOf(Long.MIN_VALUE);
+    private static final BigDecimal MAX_LONG = BigDecimal.valueOf(Long.MAX_VALUE);
+
+    /**
+     * Thrown if a DECIMAL calculation does not fit in a long.
+     */
+    public static class OverflowException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        static final OverflowException INSTANCE = new OverflowException();
+
+        private OverflowException() {
+            super("overflow", null);
+        }
+
+        public synchronized Throwable fillInStackTrace() {
+            return this;
+        }
+    }
+
+    /**
+     * The value of each row (integer, date and boolean types).
+     */
+    final long[] longs;
+
+    /**
+     * The value of each row (floating point types).
+     */
+    final double[] doubles;
+
+    /**
+     * Whether the value of a row is NULL.
+     */
+    final boolean[] nulls = new boolean[BATCH_SIZE];
+
+    VectorExpression(int type) {
+        if (isDoubleType(type)) {
+            longs = null;
+            doubles = new double[BATCH_SIZE];
+        } else {
+            longs = new long[BATCH_SIZE];
+            doubles = null;
+        }
+    }
+
+    /**
+     * Evaluate this expression for the selected rows.
+     *
+     * @param rows the rows of the batch
+     * @param sel the positions of the rows to evaluate
+     * @param count the number of selected rows
+     */
+    abstract void evaluate(SearchRow[] rows, int[] sel, int count);
+
+    /**
+     * Evaluate this condition for a batch of rows, and get the rows for
+     * which it is true.
+     *
+     * @param rows the rows of the batch
+     * @param count the number of rows
+     * @param sel receives the positions of the rows for which the condition
+     *            is true
+     * @return the number of these rows
+     */
+    public int filter(SearchRow[] rows, int count, int[] sel) {
+        for (int i = 0; i < count; i++) {
+            sel[i] = i;
+        }
+        evaluate(rows, sel, count);
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            if (!nulls[i] && longs[i] != 0) {
+                sel[n++] = i;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Check if values of this data type can be evaluated in batches.
+     *
+     * @param type the data type
+     * @return true if they can
+     */
+    public static boolean isSupportedType(int type) {
+        return isLongType(type) || isDoubleType(type);
+    }
+
+    private static boolean isLongType(int type) {
+        return isIntegerType(type) || type == Value.DECIMAL || type == Value.BOOLEAN || type == Value.DATE;
+    }
+
+    private static boolean isIntegerType(int type) {
+        switch (type) {
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    private static boolean isDoubleType(int type) {
+        return type == Value.DOUBLE || type == Value.FLOAT;
+    }
+
+    /**
+     * Create an expression that reads a column.
+     *
+     * @param columnId the column id
+     * @param columnType the data type of the column
+     * @param type the data type of the result
+     * @return the expression, or null if the column can not be converted
+     */
+    static VectorExpression column(int columnId, int columnType, int type) {
+        if (columnId < 0) {
+            return null;
+        }
+        boolean ok;
+        if (columnType == type) {
+            ok = isSupportedType(type) && type != Value.DECIMAL;
+        } else if (isIntegerType(type) || type == Value.DECIMAL) {
+            ok = isIntegerType(columnType);
+        } else if (type == Value.DOUBLE) {
+            ok = isIntegerType(columnType) || columnType == Value.FLOAT;
+        } else if (type == Value.FLOAT) {
+            ok = isIntegerType(columnType);
+        } else {
+            ok = false;
+        }
+        return ok ? new ColumnRead(columnId, type) : null;
+    }
+
+    /**
+     * Create an expression for a value that does not change while the batch
+     * is evaluated.
+     *
+     * @param v the value
+     * @param type the data type of the result
+     * @return the expression, or null if the value can not be converted
+     */
+    static VectorExpression constant(Value v, int type) {
+        if (!isSupportedType(type)) {
+            return null;
+        }
+        try {
+            v = v.convertTo(type);
+        } catch (DbException e) {
+            // evaluate row by row, so that the error is thrown at the same time
+            return null;
+        }
+        if (type == Value.DECIMAL && v != ValueNull.INSTANCE) {
+            BigDecimal d = v.getBigDecimal();
+            if (d.signum() != 0 && d.stripTrailingZeros().scale() > 0 || d.compareTo(MIN_LONG) < 0
+                    || d.compareTo(MAX_LONG) > 0) {
+                return null;
+            }
+        }
+        return new Constant(v, type);
+    }
+
+    /**
+     * Create a comparison.
+     *
+     * @param compareType the compare type (see Comparison)
+     * @param left the left operand
+     * @param right the right operand
+     * @return the expression
+     */
+    static VectorExpression compare(int compareType, VectorExpression left, VectorExpression right) {
+        return new Compare(compareType, left, right);
+    }
+
+    /**
+     * Create an IS NULL or IS NOT NULL condition.
+     *
+     * @param operand the operand
+     * @param not true for IS NOT NULL
+     * @return the expression
+     */
+    static VectorExpression isNull(VectorExpression operand, boolean not) {
+        return new IsNull(operand, not);
+    }
+
+    /**
+     * Create an AND or OR condition.
+     *
+     * @param and true for AND, false for OR
+     * @param left the left operand
+     * @param right the right operand
+     * @return the expression
+     */
+    static VectorExpression andOr(boolean and, VectorExpression left, VectorExpression right) {
+        return new AndOr(and, left, right);
+    }
+
+    /**
+     * Create a NOT condition.
+     *
+     * @param operand the operand
+     * @return the expression
+     */
+    static VectorExpression not(VectorExpression operand) {
+        return new Not(operand);
+    }
+
+    /**
+     * Create an arithmetic operation.
+     *
+     * @param opType the operation type (see Operation)
+     * @param type the data type of the operands and the result
+     * @param left the left operand
+     * @param right the right operand, or null for NEGATE
+     * @return the expression, or null if not supported
+     */
+    static VectorExpression operation(int opType, int type, VectorExpression left, VectorExpression right) {
+        if (type != Value.INT && type != Value.LONG && type != Value.DECIMAL && type != Value.DOUBLE) {
+            return null;
+        }
+        switch (opType) {
+        case Operation.NEGATE:
+        case Operation.PLUS:
+        case Operation.MINUS:
+        case Operation.MULTIPLY:
+            return new Arithmetic(opType, type, left, right);
+        default:
+            return null;
+        }
+    }
+
+    /**
+     * Reads a column of the rows.
+     */
+    static class ColumnRead extends VectorExpression {
+
+        private final int columnId;
+        private final int type;
+
+        ColumnRead(int columnId, int type) {
+            super(type);
+            this.columnId = columnId;
+            this.type = type;
+        }
+
+        void evaluate(SearchRow[] rows, int[] sel, int count) {
+            for (int k = 0; k < count; k++) {
+                int i = sel[k];
+                Value v = rows[i].getValue(columnId);
+                if (v == ValueNull.INSTANCE) {
+                    nulls[i] = true;
+                    continue;
+                }
+                nulls[i] = false;
+                switch (type) {
+                case Value.DOUBLE:
+                    doubles[i] = v.getDouble();
+                    break;
+                case Value.FLOAT:
+                    doubles[i] = v.getFloat();
+                    break;
+                case Value.BOOLEAN:
+                    longs[i] = v.getBoolean().booleanValue() ? 1 : 0;
+                    break;
+                case Value.DATE:
+                    longs[i] = ((ValueDate) v.convertTo(Value.DATE)).getDateValue();
+                    break;
+                default:
+                    longs[i] = v.getLong();
+                }
+            }
+        }
+    }
+
+    /**
+     * A constant value (or the value of a parameter).
+     */
+    static class Constant extends VectorExpression {
+
+        Constant(Value v, int type) {
+            super(type);
+            if (v == ValueNull.INSTANCE) {
+                Arrays.fill(nulls, true);
+            } else if (doubles != null) {
+                Arrays.fill(doubles, type == Value.FLOAT ? v.getFloat() : v.getDouble());
+            } else if (type == Value.BOOLEAN) {
+                Arrays.fill(longs, v.getBoolean().booleanValue() ? 1 : 0);
+            } else if (type == Value.DATE) {
+                Arrays.fill(longs, ((ValueDate) v).getDateValue());
+            } else {
+                Arrays.fill(longs, v.getLong());
+            }
+        }
+
+        void evaluate(SearchRow[] rows, int[] sel, int count) {
+            // the values never change
+        }
+    }
+
+    /**
+     * A comparison of two values of the same type.
+     */
+    static class Compare extends VectorExpression {
+
+        private final int compareType;
+        private final boolean nullSafe;
+        private final VectorExpression left, right;
+        private final int[] notNull = new int[BATCH_SIZE];
+
+        Compare(int compareType, VectorExpression left, VectorExpression right) {
+            super(Value.BOOLEAN);
+            this.compareType = compareType & ~Comparison.NULL_SAFE;
+            this.nullSafe = (compareType & Comparison.NULL_SAFE) != 0;
+            this.left = left;
+            this.right = right;
+        }
+
+        void evaluate(SearchRow[] rows, int[] sel, int count) {
+            left.evaluate(rows, sel, count);
+            if (!nullSafe) {
+                // like Comparison.getValue, the right side is only evaluated
+                // if the left side is not NULL
+                int n = 0;
+                for (int k = 0; k < count; k++) {
+                    int i = sel[k];
+                    if (left.nulls[i]) {
+                        nulls[i] = true;
+                    } else {
+                        notNull[n++] = i;
+                    }
+                }
+                sel = notNull;
+                count = n;
+            }
+            right.evaluate(rows, sel, count);
+            boolean isDouble = left.doubles != null;
+            for (int k = 0; k < count; k++) {
+                int i = sel[k];
+                boolean ln = left.nulls[i], rn = right.nulls[i];
+                if (ln || rn) {
+                    if (nullSafe) {
+                        nulls[i] = false;
+                        boolean equal = ln && rn;
+                        longs[i] = (compareType == Comparison.EQUAL) == equal ? 1 : 0;
+                    } else {
+                        nulls[i] = true;
+                    }
+                    continue;
+                }
+                int c;
+                if (isDouble) {
+                    c = Double.compare(left.doubles[i], right.doubles[i]);
+                } else {
+                    long a = left.longs[i], b = right.longs[i];
+                    c = a < b ? -1 : a == b ? 0 : 1;
+                }
+                boolean result;
+                switch (compareType) {
+                case Comparison.EQUAL:
+                    result = c == 0;
+                    break;
+                case Comparison.NOT_EQUAL:
+                    result = c != 0;
+                    break;
+                case Comparison.BIGGER_EQUAL:
+                    result = c >= 0;
+                    break;
+                case Comparison.BIGGER:
+                    result = c > 0;
+                    break;
+                case Comparison.SMALLER_EQUAL:
+                    result = c <= 0;
+                    break;
+                case Comparison.SMALLER:
+                    result = c < 0;
+                    break;
+                default:
+                    throw DbException.throwInternalError("type=" + compareType);
+                }
+                nulls[i] = false;
+                longs[i] = result ? 1 : 0;
+            }
+        }
+    }
+
+    /**
+     * IS NULL or IS NOT NULL.
+     */
+    static class IsNull extends VectorExpression {
+
+        private final VectorExpression operand;
+        private final boolean not;
+
+        IsNull(VectorExpression operand, boolean not) {
+            super(Value.BOOLEAN);
+            this.operand = operand;
+            this.not = not;
+        }
+
+        void evaluate(SearchRow[] rows, int[] sel, int count) {
+            operand.evaluate(rows, sel, count);
+            for (int k = 0; k < count; k++) {
+                int i = sel[k];
+                nulls[i] = false;
+                longs[i] = operand.nulls[i] != not ? 1 : 0;
+            }
+        }
+    }
+
+    /**
+     * AND or OR. The right side is only evaluated for the rows where the
+     * left side does not already decide the result.
+     */
+    static class AndOr extends VectorExpression {
+
+        private final boolean and;
+        private final VectorExpression left, right;
+        private final int[] undecided = new int[BATCH_SIZE];
+
+        AndOr(boolean and, VectorExpression left, VectorExpression right) {
+            super(Value.BOOLEAN);
+            this.and = and;
+            this.left = left;
+            this.right = right;
+        }
+
+        void evaluate(SearchRow[] rows, int[] sel, int count) {
+            left.evaluate(rows, sel, count);
+            // the result if one side is FALSE (for AND) or TRUE (for OR)
+            long decided = and ? 0 : 1;
+            int n = 0;
+            for (int k = 0; k < count; k++) {
+                int i = sel[k];
+                if (!left.nulls[i] && left.longs[i] == decided) {
+                    nulls[i] = false;
+                    longs[i] = decided;
+                } else {
+                    undecided[n++] = i;
+                }
+            }
+            right.evaluate(rows, undecided, n);
+            for (int k = 0; k < n; k++) {
+                int i = undecided[k];
+                if (!right.nulls[i] && right.longs[i] == decided) {
+                    nulls[i] = false;
+                    longs[i] = decided;
+                } else if (left.nulls[i] || right.nulls[i]) {
+                    nulls[i] = true;
+                } else {
+                    nulls[i] = false;
+                    longs[i] = 1 - decided;
+                }
+            }
+        }
+    }
+
+    /**
+     * NOT.
+     */
+    static class Not extends VectorExpression {
+
+        private final VectorExpression operand;
+
+        Not(VectorExpression operand) {
+            super(Value.BOOLEAN);
+            this.operand = operand;
+        }
+
+        void evaluate(SearchRow[] rows, int[] sel, int count) {
+            operand.evaluate(rows, sel, count);
+            for (int k = 0; k < count; k++) {
+                int i = sel[k];
+                nulls[i] = operand.nulls[i];
+                longs[i] = 1 - operand.longs[i];
+            }
+        }
+    }
+
+    /**
+     * NEGATE, PLUS, MINUS and MULTIPLY for INT, LONG, DECIMAL and DOUBLE. On
+     * INT or LONG overflow, the operation is repeated with values, which
+     * throws the same exception as the row by row evaluation.
+     */
+    static class Arithmetic extends VectorExpression {
+
+        private final int opType;
+        private final int type;
+        private final VectorExpression left, right;
+
+        Arithmetic(int opType, int type, VectorExpression left, VectorExpression right) {
+            super(type);
+            this.opType = opType;
+            this.type = type;
+            this.left = left;
+            this.right = right;
+        }
+
+        void evaluate(SearchRow[] rows, int[] sel, int count) {
+            left.evaluate(rows, sel, count);
+            if (right != null) {
+                right.evaluate(rows, sel, count);
+            }
+            for (int k = 0; k < count; k++) {
+                int i = sel[k];
+                if (left.nulls[i] || right != null && right.nulls[i]) {
+                    nulls[i] = true;
+                    continue;
+                }
+                nulls[i] = false;
+                if (doubles != null) {
+                    doubles[i] = calculate(left.doubles[i], right == null ? 0 : right.doubles[i]);
+                } else {
+                    longs[i] = calculate(left.longs[i], right == null ? 0 : right.longs[i]);
+                }
+            }
+        }
+
+        private double calculate(double a, double b) {
+            switch (opType) {
+            case Operation.NEGATE:
+                return -a;
+            case Operation.PLUS:
+                return a + b;
+            case Operation.MINUS:
+                return a - b;
+            default:
+                return a * b;
+            }
+        }
+
+        private long calculate(long a, long b) {
+            long r;
+            boolean overflow;
+            switch (opType) {
+            case Operation.NEGATE:
+                r = -a;
+                overflow = a == Long.MIN_VALUE;
+                break;
+            case Operation.PLUS:
+                r = a + b;
+                overflow = ((a ^ r) & (b ^ r)) < 0;
+                break;
+            case Operation.MINUS:
+                r = a - b;
+                overflow = ((a ^ b) & (a ^ r)) < 0;
+                break;
+            default:
+                r = a * b;
+                overflow = (a != (int) a || b != (int) b) && a != 0 && b != 0 && (r / b != a || a == Long.MIN_VALUE
+                        || b == Long.MIN_VALUE);
+            }
+            if (!overflow && (type != Value.INT || r == (int) r)) {
+                return r;
+            } else if (type == Value.DECIMAL) {
+                throw OverflowException.INSTANCE;
+            }
+            Value l, v;
+            if (type == Value.INT) {
+                l = ValueInt.get((int) a);
+                v = ValueInt.get((int) b);
+            } else {
+                l = ValueLong.get(a);
+                v = ValueLong.get(b);
+            }
+            switch (opType) {
+            case Operation.NEGATE:
+                return l.negate().getLong();
+            case Operation.PLUS:
+                return l.add(v).getLong();
+            case Operation.MINUS:
+                return l.subtract(v).getLong();
+            default:
+                return l.multiply(v).getLong();
+            }
+        }
+    }
+
+}
@@ -9,7 +9,10 @@ package com.codefollower.lealone.result;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.PriorityQueue;
 
+import com.codefollower.lealone.constant.Constants;
 import com.codefollower.lealone.engine.Database;
 import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.expression.Expression;
@@ -42,9 +45,12 @@ public class LocalResult implements ResultInterface, ResultTarget {
     private int limit = -1;
     private ResultExternal external;
     private int diskOffset;
+    private int spilledRowCount;
     private boolean distinct;
     private boolean randomAccess;
     private boolean closed;
+    private int topN;
+    private PriorityQueue<Value[]> topRows;
 
     /**
      * Construct a local result object.
@@ -148,6 +154,19 @@ public class LocalResult implements ResultInterface, ResultTarget {
         this.sort = sort;
     }
 
+    /**
+     * Only keep the first rows (in sort order) while rows are added.
+     * The rows are kept in a bounded heap, so that a sorted query with a
+     * limit never needs more than the given number of rows in memory.
+     * This has no effect if there is no sort order, for DISTINCT results,
+     * or if the number of rows does not fit in memory anyway.
+     *
+     * @param topN the number of rows to keep (offset + limit)
+     */
+    public void setTopN(int topN) {
+        this.topN = topN;
+    }
+
     /**
      * Remove duplicate rows.
      */
@@ -257,32 +276,56 @@ public class LocalResult implements ResultInterface, ResultTarget {
                 Database db = session.getDatabase();
                 if (rowCount > db.getSettings().maxMemoryRowsDistinct && db.isPersistent() && !db.isReadOnly()) {
                     external = new ResultTempTable(session, sort);
+                    spilledRowCount += rowCount;
                     rowCount = external.addRows(distinctRows.values());
                     distinctRows = null;
                 }
             } else {
+                spilledRowCount++;
                 rowCount = external.addRow(values);
             }
             return;
         }
+        if (topN > 0 && sort != null && topN <= maxMemoryRows) {
+            addTopRow(values);
+            return;
+        }
         rows.add(values);
         rowCount++;
-        if (rows.size() > maxMemoryRows && session.getDatabase().isPersistent()) {
+        if (rows.size() > maxMemoryRows) {
             if (external == null) {
+                Database db = session.getDatabase();
                 if (randomAccess) {
-                    Database db = session.getDatabase();
-                    if (!db.isReadOnly()) {
+                    // temporary tables are only possible in persistent databases
+                    if (db.isPersistent() && !db.isReadOnly()) {
                         external = new ResultTempTable(session, sort);
                     }
-                } else {
+                } else if (db.getSpillManager().isEnabled()) {
                     external = new ResultDiskBuffer(session, sort, values.length);
                 }
             }
-            addRowsToDisk();
+            if (external != null) {
+                addRowsToDisk();
+            }
+        }
+    }
+
+    private void addTopRow(Value[] values) {
+        if (topRows == null) {
+            // the head of the queue is the last row in sort order
+            topRows = new PriorityQueue<Value[]>(Math.min(topN, 1024) + 1, Collections.reverseOrder(sort));
+        }
+        if (topRows.size() < topN) {
+            topRows.add(values);
+        } else if (sort.compare(values, topRows.peek()) < 0) {
+            topRows.poll();
+            topRows.add(values);
         }
+        rowCount = topRows.size();
     }
 
     private void addRowsToDisk() {
+        spilledRowCount += rows.size();
         rowCount = external.addRows(rows);
         rows.clear();
     }
@@ -295,6 +338,10 @@ public class LocalResult implements ResultInterface, ResultTarget {
      * This method is called after all rows have been added.
      */
     public void done() {
+        if (topRows != null) {
+            rows = New.arrayList(topRows);
+            topRows = null;
+        }
         if (distinct) {
             if (distinctRows != null) {
                 rows = distinctRows.values();
@@ -353,6 +400,35 @@ public class LocalResult implements ResultInterface, ResultTarget {
         return rowCount;
     }
 
+    /**
+     * Get the number of rows that were written to a temporary table or file
+     * because the result did not fit in memory.
+     *
+     * @return the number of rows
+     */
+    public int getSpilledRowCount() {
+        return spilledRowCount;
+    }
+
+    /**
+     * Get the approximate memory used by the rows of this result.
+     *
+     * @return the memory in bytes, or -1 if not all rows are kept in memory
+     */
+    public long getMemory() {
+        if (external != null || rows == null || rows.size() < rowCount) {
+            return -1;
+        }
+        long memory = 0;
+        for (Value[] row : rows) {
+            memory += Constants.MEMORY_ROW + row.length * Constants.MEMORY_POINTER;
+            for (Value v : row) {
+                memory += v.getMemory();
+            }
+        }
+        return memory;
+    }
+
     /**
      * Set the number of rows that this result will return at the maximum.
      *
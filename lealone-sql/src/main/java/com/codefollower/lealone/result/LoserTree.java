@@ -0,0 +1,101 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.result;
+
+import java.util.Arrays;
+
+import com.codefollower.lealone.value.Value;
+
+/**
+ * A loser tree (tournament tree) used for the k-way merge of sorted rows.
+ * Each source is represented by its current row, and null means the source
+ * is exhausted. Finding the next row needs about log2(k) comparisons.
+ */
+class LoserTree {
+
+    private final SortOrder sort;
+    private final Value[][] heads;
+
+    /**
+     * The winner at index 0, the loser of each match at the other indexes.
+     */
+    private final int[] tree;
+
+    /**
+     * Create a new loser tree.
+     *
+     * @param sort the sort order
+     * @param heads the current row of each source
+     */
+    LoserTree(SortOrder sort, Value[][] heads) {
+        this.sort = sort;
+        this.heads = heads;
+        tree = new int[heads.length];
+        // -1 wins against everything, so that each source takes its place
+        Arrays.fill(tree, -1);
+        for (int i = heads.length - 1; i >= 0; i--) {
+            update(i);
+        }
+    }
+
+    /**
+     * Get the source with the smallest current row.
+     *
+     * @return the source index (the current row is null if all sources are
+     *         exhausted)
+     */
+    int getWinner() {
+        return tree[0];
+    }
+
+    /**
+     * Replay the matches of a source after its current row was changed.
+     *
+     * @param source the source index
+     */
+    void update(int source) {
+        int s = source;
+        for (int t = (s + heads.length) / 2; t > 0; t /= 2) {
+            if (wins(tree[t], s)) {
+                int x = tree[t];
+                tree[t] = s;
+                s = x;
+            }
+        }
+        tree[0] = s;
+    }
+
+    private boolean wins(int a, int b) {
+        if (a < 0) {
+            return true;
+        } else if (b < 0) {
+            return false;
+        }
+        Value[] ra = heads[a];
+        Value[] rb = heads[b];
+        if (ra == null) {
+            return false;
+        } else if (rb == null) {
+            return true;
+        }
+        return sort.compare(ra, rb) < 0;
+    }
+
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.result;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.util.New;
+import com.codefollower.lealone.value.Value;
+
+/**
+ * Sorts large lists of rows on multiple threads: the list is split into one
+ * part per processor, the parts are sorted in parallel, and then merged.
+ */
+class ParallelSort {
+
+    /**
+     * The minimum number of rows a thread sorts. Smaller lists are sorted on
+     * the calling thread.
+     */
+    private static final int MIN_ROWS_PER_THREAD = 8 * 1024;
+
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    private static ThreadPoolExecutor pool;
+
+    private ParallelSort() {
+        // utility class
+    }
+
+    private static synchronized ThreadPoolExecutor getPool() {
+        if (pool == null) {
+            pool = new ThreadPoolExecutor(THREADS, THREADS, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private int threadNumber;
+
+                        public synchronized Thread newThread(Runnable r) {
+                            Thread t = new Thread(r, "H2 Parallel Sort " + threadNumber++);
+                            t.setDaemon(true);
+                            return t;
+                        }
+                    });
+            pool.allowCoreThreadTimeOut(true);
+        }
+        return pool;
+    }
+
+    /**
+     * Sort a list of rows.
+     *
+     * @param rows the list of rows
+     * @param sort the sort order
+     */
+    static void sort(ArrayList<Value[]> rows, final SortOrder sort) {
+        int size = rows.size();
+        int parts = Math.min(THREADS, size / MIN_ROWS_PER_THREAD);
+        if (parts < 2) {
+            sort.sort(rows);
+            return;
+        }
+        final Value[][] array = rows.toArray(new Value[size][]);
+        int[] start = new int[parts + 1];
+        for (int i = 0; i <= parts; i++) {
+            start[i] = (int) ((long) size * i / parts);
+        }
+        ThreadPoolExecutor p = getPool();
+        ArrayList<Future<?>> futures = New.arrayList();
+        for (int i = 1; i < parts; i++) {
+            final int from = start[i], to = start[i + 1];
+            futures.add(p.submit(new Runnable() {
+                public void run() {
+                    Arrays.sort(array, from, to, sort);
+                }
+            }));
+        }
+        Arrays.sort(array, 0, start[1], sort);
+        for (Future<?> f : futures) {
+            try {
+                f.get();
+            } catch (InterruptedException e) {
+                throw DbException.convert(e);
+            } catch (ExecutionException e) {
+                throw DbException.convert(e.getCause());
+            }
+        }
+        Value[][] heads = new Value[parts][];
+        int[] pos = new int[parts];
+        for (int i = 0; i < parts; i++) {
+            heads[i] = array[start[i]];
+            pos[i] = start[i] + 1;
+        }
+        LoserTree tree = new LoserTree(sort, heads);
+        for (int i = 0; i < size; i++) {
+            int w = tree.getWinner();
+            rows.set(i, heads[w]);
+            heads[w] = pos[w] < start[w + 1] ? array[pos[w]++] : null;
+            tree.update(w);
+        }
+    }
+
+}
@@ -0,0 +1,230 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.result;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import com.codefollower.lealone.engine.Database;
+import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.value.Value;
+
+/**
+ * A database wide cache of query results.
+ * Results are keyed by the plan SQL of the query, the parameter values and the
+ * row limit. An entry is only returned while none of the tables the query reads
+ * has been modified since the result was computed. The whole cache is cleared
+ * when the database meta data is modified. The memory used by the cached rows
+ * is bounded; the least recently used entries are evicted first.
+ */
+public class ResultCache {
+
+    private final Database database;
+    private final LinkedHashMap<Key, Entry> map = new LinkedHashMap<Key, Entry>(64, 0.75f, true);
+    private long maxMemory;
+    private long memory;
+    private long modificationMetaId;
+    private long hits, misses, evictions;
+
+    public ResultCache(Database database, int maxMemoryKB) {
+        this.database = database;
+        this.maxMemory = maxMemoryKB * 1024L;
+        this.modificationMetaId = database.getModificationMetaId();
+    }
+
+    /**
+     * Get a copy of the cached result of a query.
+     *
+     * @param session the session that executes the query
+     * @param key the key
+     * @param maxDataModificationId the maximum data modification id of the
+     *            tables the query reads
+     * @return the result, or null if there is no valid entry
+     */
+    public synchronized LocalResult get(Session session, Key key, long maxDataModificationId) {
+        checkModificationMetaId();
+        Entry e = map.get(key);
+        if (e != null) {
+            if (maxDataModificationId <= e.dataModificationId) {
+                LocalResult r = e.result.createShallowCopy(session);
+                if (r != null) {
+                    hits++;
+                    return r;
+                }
+            }
+            remove(key);
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Add the result of a query.
+     *
+     * @param key the key
+     * @param result the result
+     * @param dataModificationId the data modification id of the database
+     *            before the query was executed
+     */
+    public synchronized void put(Key key, LocalResult result, long dataModificationId) {
+        checkModificationMetaId();
+        long resultMemory = result.getMemory();
+        if (resultMemory < 0) {
+            return;
+        }
+        resultMemory += key.getMemory();
+        // a single entry may not push out most of the cache
+        if (resultMemory > maxMemory / 4) {
+            return;
+        }
+        remove(key);
+        Entry e = new Entry();
+        e.result = result;
+        e.dataModificationId = dataModificationId;
+        e.memory = resultMemory;
+        map.put(key, e);
+        memory += resultMemory;
+        trim();
+    }
+
+    /**
+     * Remove all cached results.
+     */
+    public synchronized void clear() {
+        map.clear();
+        memory = 0;
+    }
+
+    public synchronized void setMaxMemoryKB(int kb) {
+        maxMemory = kb * 1024L;
+        trim();
+    }
+
+    public synchronized int getMaxMemoryKB() {
+        return (int) (maxMemory / 1024);
+    }
+
+    public synchronized int getMemoryKB() {
+        return (int) (memory / 1024);
+    }
+
+    public synchronized int getEntryCount() {
+        return map.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    private void remove(Key key) {
+        Entry old = map.remove(key);
+        if (old != null) {
+            memory -= old.memory;
+        }
+    }
+
+    private void trim() {
+        Iterator<Entry> it = map.values().iterator();
+        while (memory > maxMemory && it.hasNext()) {
+            Entry e = it.next();
+            it.remove();
+            memory -= e.memory;
+            evictions++;
+        }
+    }
+
+    private void checkModificationMetaId() {
+        long id = database.getModificationMetaId();
+        if (id != modificationMetaId) {
+            clear();
+            modificationMetaId = id;
+        }
+    }
+
+    /**
+     * The key of a cached result.
+     */
+    public static class Key {
+
+        private final String sql;
+        private final Value[] params;
+        private final int limit;
+        private final int hash;
+
+        public Key(String sql, Value[] params, int limit) {
+            this.sql = sql;
+            this.params = params;
+            this.limit = limit;
+            this.hash = (sql.hashCode() * 31 + Arrays.hashCode(params)) * 31 + limit;
+        }
+
+        int getMemory() {
+            int m = 64 + sql.length() * 2;
+            for (Value v : params) {
+                m += v.getMemory();
+            }
+            return m;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key k = (Key) o;
+            if (hash != k.hash || limit != k.limit || !sql.equals(k.sql) || params.length != k.params.length) {
+                return false;
+            }
+            for (int i = 0; i < params.length; i++) {
+                Value a = params[i], b = k.params[i];
+                if (a.getType() != b.getType() || !a.equals(b)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * A cached result.
+     */
+    private static class Entry {
+        LocalResult result;
+        long dataModificationId;
+        long memory;
+    }
+}
@@ -6,7 +6,6 @@
  */
 package com.codefollower.lealone.result;
 
-import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 
 import com.codefollower.lealone.constant.Constants;
@@ -15,6 +14,7 @@ import com.codefollower.lealone.engine.Session;
 import com.codefollower.lealone.message.DbException;
 import com.codefollower.lealone.store.Data;
 import com.codefollower.lealone.store.FileStore;
+import com.codefollower.lealone.util.MathUtils;
 import com.codefollower.lealone.util.New;
 import com.codefollower.lealone.value.Value;
 
@@ -23,7 +23,10 @@ import com.codefollower.lealone.value.Value;
  */
 class ResultDiskBuffer implements ResultExternal {
 
-    private static final int READ_AHEAD = 128;
+    /**
+     * The number of bytes read from a tape at once.
+     */
+    private static final int READ_AHEAD = 64 * 1024;
 
     private final Data rowBuff;
     private final ArrayList<ResultDiskTape> tapes;
@@ -32,8 +35,15 @@ class ResultDiskBuffer implements ResultExternal {
     private final int columnCount;
     private final int maxBufferSize;
 
+    private final SpillManager spillManager;
     private FileStore file;
     private int rowCount;
+    private long fileSize;
+    private byte[] writeBuffer;
+    private byte[] readBuffer;
+    private Data readData;
+    private Value[][] heads;
+    private LoserTree tree;
 
     private final ResultDiskBuffer parent;
     private boolean closed;
@@ -64,6 +74,11 @@ class ResultDiskBuffer implements ResultExternal {
          * A list of rows in the buffer.
          */
         ArrayList<Value[]> buffer = New.arrayList();
+
+        /**
+         * The index of the next row in the buffer.
+         */
+        int index;
     }
 
     ResultDiskBuffer(Session session, SortOrder sort, int columnCount) {
@@ -72,8 +87,8 @@ class ResultDiskBuffer implements ResultExternal {
         this.columnCount = columnCount;
         Database db = session.getDatabase();
         rowBuff = Data.create(db, Constants.DEFAULT_PAGE_SIZE);
-        String fileName = db.createTempFile();
-        file = db.openFile(fileName, "rw", false);
+        spillManager = db.getSpillManager();
+        file = spillManager.openFile();
         file.setCheckedWriting(false);
         file.seek(FileStore.HEADER_LENGTH);
         if (sort != null) {
@@ -90,6 +105,7 @@ class ResultDiskBuffer implements ResultExternal {
     private ResultDiskBuffer(ResultDiskBuffer parent) {
         this.parent = parent;
         rowBuff = Data.create(parent.rowBuff.getHandler(), Constants.DEFAULT_PAGE_SIZE);
+        spillManager = parent.spillManager;
         file = parent.file;
         if (parent.tapes != null) {
             tapes = New.arrayList();
@@ -125,11 +141,13 @@ class ResultDiskBuffer implements ResultExternal {
 
     public int addRows(ArrayList<Value[]> rows) {
         if (sort != null) {
-            sort.sort(rows);
+            ParallelSort.sort(rows, sort);
         }
         Data buff = rowBuff;
         long start = file.getFilePointer();
-        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        if (writeBuffer == null && maxBufferSize > 0) {
+            writeBuffer = new byte[MathUtils.roundUpInt(maxBufferSize, Constants.FILE_BLOCK_SIZE)];
+        }
         int bufferLen = 0;
         for (Value[] row : rows) {
             buff.reset();
@@ -142,23 +160,27 @@ class ResultDiskBuffer implements ResultExternal {
             buff.fillAligned();
             int len = buff.length();
             buff.setInt(0, len);
-            if (maxBufferSize > 0) {
-                buffer.write(buff.getBytes(), 0, len);
-                bufferLen += len;
-                if (bufferLen > maxBufferSize) {
-                    byte[] data = buffer.toByteArray();
-                    buffer.reset();
-                    file.write(data, 0, data.length);
+            if (writeBuffer != null && len <= writeBuffer.length) {
+                if (bufferLen + len > writeBuffer.length) {
+                    file.write(writeBuffer, 0, bufferLen);
                     bufferLen = 0;
                 }
+                System.arraycopy(buff.getBytes(), 0, writeBuffer, bufferLen, len);
+                bufferLen += len;
             } else {
+                if (bufferLen > 0) {
+                    file.write(writeBuffer, 0, bufferLen);
+                    bufferLen = 0;
+                }
                 file.write(buff.getBytes(), 0, len);
             }
         }
         if (bufferLen > 0) {
-            byte[] data = buffer.toByteArray();
-            file.write(data, 0, data.length);
+            file.write(writeBuffer, 0, bufferLen);
         }
+        long length = file.getFilePointer() - start;
+        spillManager.reserve(length);
+        fileSize += length;
         if (sort != null) {
             ResultDiskTape tape = new ResultDiskTape();
             tape.start = start;
@@ -180,81 +202,108 @@ class ResultDiskBuffer implements ResultExternal {
         if (sort != null) {
             for (ResultDiskTape tape : tapes) {
                 tape.pos = tape.start;
-                tape.buffer = New.arrayList();
+                tape.buffer.clear();
+                tape.index = 0;
             }
+            tree = null;
         } else {
             mainTape.pos = FileStore.HEADER_LENGTH;
-            mainTape.buffer = New.arrayList();
+            mainTape.buffer.clear();
+            mainTape.index = 0;
         }
     }
 
-    private void readRow(ResultDiskTape tape) {
-        int min = Constants.FILE_BLOCK_SIZE;
-        Data buff = rowBuff;
-        buff.reset();
-        file.readFully(buff.getBytes(), 0, min);
-        int len = buff.readInt();
-        buff.checkCapacity(len);
-        if (len - min > 0) {
-            file.readFully(buff.getBytes(), min, len - min);
+    /**
+     * Read the next block of rows of a tape into its buffer.
+     *
+     * @param tape the tape
+     */
+    private void readAhead(ResultDiskTape tape) {
+        tape.buffer.clear();
+        tape.index = 0;
+        int len = (int) Math.min(tape.end - tape.pos, READ_AHEAD);
+        if (len <= 0) {
+            return;
+        }
+        if (readBuffer == null) {
+            readBuffer = new byte[READ_AHEAD];
+            readData = Data.create(rowBuff.getHandler(), readBuffer);
+        }
+        file.seek(tape.pos);
+        file.readFully(readBuffer, 0, len);
+        int pos = 0;
+        while (pos < len) {
+            readData.setPos(pos);
+            int rowLen = readData.readInt();
+            if (pos + rowLen > len) {
+                break;
+            }
+            tape.buffer.add(readValues(readData));
+            pos += rowLen;
+        }
+        if (pos == 0) {
+            // a row that is larger than the read ahead buffer
+            readData.setPos(0);
+            int rowLen = readData.readInt();
+            Data buff = rowBuff;
+            buff.reset();
+            buff.checkCapacity(rowLen);
+            System.arraycopy(readBuffer, 0, buff.getBytes(), 0, len);
+            file.readFully(buff.getBytes(), len, rowLen - len);
+            buff.setPos(4);
+            tape.buffer.add(readValues(buff));
+            pos = rowLen;
         }
-        tape.pos += len;
+        tape.pos += pos;
+    }
+
+    private Value[] readValues(Data buff) {
         Value[] row = new Value[columnCount];
         for (int k = 0; k < columnCount; k++) {
             row[k] = buff.readValue();
         }
-        tape.buffer.add(row);
-    }
-
-    public Value[] next() {
-        return sort != null ? nextSorted() : nextUnsorted();
+        return row;
     }
 
-    private Value[] nextUnsorted() {
-        file.seek(mainTape.pos);
-        if (mainTape.buffer.size() == 0) {
-            for (int j = 0; mainTape.pos < mainTape.end && j < READ_AHEAD; j++) {
-                readRow(mainTape);
+    /**
+     * Get the next row of a tape.
+     *
+     * @param tape the tape
+     * @return the row, or null if the tape is exhausted
+     */
+    private Value[] nextRow(ResultDiskTape tape) {
+        if (tape.index >= tape.buffer.size()) {
+            readAhead(tape);
+            if (tape.buffer.size() == 0) {
+                return null;
             }
         }
-        Value[] row = mainTape.buffer.get(0);
-        mainTape.buffer.remove(0);
-        return row;
+        return tape.buffer.get(tape.index++);
+    }
+
+    public Value[] next() {
+        return sort != null ? nextSorted() : nextRow(mainTape);
     }
 
     private Value[] nextSorted() {
-        int next = -1;
-        for (int i = 0, size = tapes.size(); i < size; i++) {
-            ResultDiskTape tape = tapes.get(i);
-            if (tape.buffer.size() == 0 && tape.pos < tape.end) {
-                file.seek(tape.pos);
-                for (int j = 0; tape.pos < tape.end && j < READ_AHEAD; j++) {
-                    readRow(tape);
-                }
-            }
-            if (tape.buffer.size() > 0) {
-                if (next == -1) {
-                    next = i;
-                } else if (compareTapes(tape, tapes.get(next)) < 0) {
-                    next = i;
-                }
+        if (tree == null) {
+            int size = tapes.size();
+            heads = new Value[size][];
+            for (int i = 0; i < size; i++) {
+                heads[i] = nextRow(tapes.get(i));
             }
+            tree = new LoserTree(sort, heads);
         }
-        ResultDiskTape t = tapes.get(next);
-        Value[] row = t.buffer.get(0);
-        t.buffer.remove(0);
+        int w = tree.getWinner();
+        Value[] row = heads[w];
+        heads[w] = nextRow(tapes.get(w));
+        tree.update(w);
         return row;
     }
 
-    private int compareTapes(ResultDiskTape a, ResultDiskTape b) {
-        Value[] va = a.buffer.get(0);
-        Value[] vb = b.buffer.get(0);
-        return sort.compare(va, vb);
-    }
-
     private synchronized void closeChild() {
         if (--childCount == 0 && closed) {
-            file.closeAndDeleteSilently();
+            spillManager.closeFile(file, fileSize);
             file = null;
         }
     }
@@ -272,7 +321,7 @@ class ResultDiskBuffer implements ResultExternal {
             parent.closeChild();
         } else if (file != null) {
             if (childCount == 0) {
-                file.closeAndDeleteSilently();
+                spillManager.closeFile(file, fileSize);
                 file = null;
             }
         }
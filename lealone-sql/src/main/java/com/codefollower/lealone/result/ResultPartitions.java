@@ -0,0 +1,166 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.result;
+
+import java.util.ArrayList;
+
+import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.util.New;
+import com.codefollower.lealone.value.Value;
+
+/**
+ * Rows that are split into a fixed number of partitions by a hash code,
+ * each partition written to its own temporary file.
+ * This is used by operators that run out of memory (for example GROUP BY),
+ * to process each partition on its own afterwards.
+ */
+public class ResultPartitions {
+
+    /**
+     * The number of bits of the hash code used per level.
+     */
+    private static final int BITS = 4;
+
+    /**
+     * The number of partitions.
+     */
+    public static final int PARTITION_COUNT = 1 << BITS;
+
+    /**
+     * The number of rows buffered per partition before they are written.
+     */
+    private static final int BUFFER_ROWS = 256;
+
+    private final Session session;
+    private final int columnCount;
+    private final int shift;
+    private final ResultDiskBuffer[] files = new ResultDiskBuffer[PARTITION_COUNT];
+    private final ArrayList<ArrayList<Value[]>> buffers = New.arrayList(PARTITION_COUNT);
+    private final int[] rowCounts = new int[PARTITION_COUNT];
+
+    /**
+     * Create a new set of partitions.
+     *
+     * @param session the session
+     * @param columnCount the number of values per row
+     * @param level the nesting level, so that a partition that still does not
+     *            fit in memory can be split again using other bits of the hash
+     */
+    public ResultPartitions(Session session, int columnCount, int level) {
+        this.session = session;
+        this.columnCount = columnCount;
+        this.shift = (level * BITS) % 32;
+        for (int i = 0; i < PARTITION_COUNT; i++) {
+            buffers.add(null);
+        }
+    }
+
+    /**
+     * Add a row to the partition of the given hash code.
+     *
+     * @param hash the hash code
+     * @param row the row
+     */
+    public void addRow(int hash, Value[] row) {
+        hash ^= hash >>> 16;
+        int p = (hash >>> shift) & (PARTITION_COUNT - 1);
+        ArrayList<Value[]> buff = buffers.get(p);
+        if (buff == null) {
+            buff = New.arrayList();
+            buffers.set(p, buff);
+        }
+        buff.add(row);
+        rowCounts[p]++;
+        if (buff.size() >= BUFFER_ROWS) {
+            flush(p);
+        }
+    }
+
+    private void flush(int p) {
+        ArrayList<Value[]> buff = buffers.get(p);
+        if (buff == null || buff.isEmpty()) {
+            return;
+        }
+        if (files[p] == null) {
+            files[p] = new ResultDiskBuffer(session, null, columnCount);
+        }
+        files[p].addRows(buff);
+        buff.clear();
+    }
+
+    /**
+     * Get the number of rows in the given partition.
+     *
+     * @param p the partition
+     * @return the row count
+     */
+    public int getRowCount(int p) {
+        return rowCounts[p];
+    }
+
+    /**
+     * Finish writing the given partition and prepare it for reading.
+     * The rows must be read with {@link #next(int)} exactly
+     * {@link #getRowCount(int)} times.
+     *
+     * @param p the partition
+     */
+    public void done(int p) {
+        flush(p);
+        buffers.set(p, null);
+        if (files[p] != null) {
+            files[p].done();
+            files[p].reset();
+        }
+    }
+
+    /**
+     * Read the next row of the given partition.
+     *
+     * @param p the partition
+     * @return the row
+     */
+    public Value[] next(int p) {
+        return files[p].next();
+    }
+
+    /**
+     * Close the given partition and delete its file.
+     *
+     * @param p the partition
+     */
+    public void close(int p) {
+        if (files[p] != null) {
+            files[p].close();
+            files[p] = null;
+        }
+        buffers.set(p, null);
+    }
+
+    /**
+     * Close all partitions and delete the files.
+     */
+    public void close() {
+        for (int i = 0; i < PARTITION_COUNT; i++) {
+            close(i);
+        }
+    }
+
+}
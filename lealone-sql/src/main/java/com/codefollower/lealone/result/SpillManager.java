@@ -0,0 +1,172 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.result;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.codefollower.lealone.constant.Constants;
+import com.codefollower.lealone.constant.DbSettings;
+import com.codefollower.lealone.constant.ErrorCode;
+import com.codefollower.lealone.engine.Database;
+import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.store.FileStore;
+import com.codefollower.lealone.store.fs.FileUtils;
+
+/**
+ * Creates the temporary files large results are written to, and keeps track
+ * of the disk space they use. Persistent databases keep these files next to
+ * the database files, in-memory databases (and the coordinator of
+ * distributed queries) use the spill directory.
+ */
+public class SpillManager {
+
+    private final Database database;
+    private final boolean spillToDisk;
+    private final String directory;
+    private final long maxSize;
+
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong maxSizeUsed = new AtomicLong();
+    private final AtomicLong writeTotal = new AtomicLong();
+    private final AtomicLong fileCount = new AtomicLong();
+    private final AtomicLong fileCountTotal = new AtomicLong();
+
+    public SpillManager(Database database, DbSettings settings) {
+        this.database = database;
+        this.spillToDisk = settings.spillToDisk;
+        this.directory = settings.spillDirectory;
+        this.maxSize = settings.maxSpillSize * 1024L * 1024L;
+    }
+
+    /**
+     * Check if results may be written to temporary files.
+     *
+     * @return true if they may
+     */
+    public boolean isEnabled() {
+        return spillToDisk || database.isPersistent();
+    }
+
+    /**
+     * Create and open a new temporary file.
+     *
+     * @return the file
+     */
+    FileStore openFile() {
+        String fileName;
+        if (database.isPersistent()) {
+            fileName = database.createTempFile();
+        } else {
+            boolean inTempDir = directory == null;
+            String prefix = inTempDir ? database.getShortName() : directory + "/" + database.getShortName();
+            try {
+                fileName = FileUtils.createTempFile(prefix, Constants.SUFFIX_TEMP_FILE, true, inTempDir);
+            } catch (IOException e) {
+                throw DbException.convertIOException(e, prefix);
+            }
+        }
+        FileStore file = database.openFile(fileName, "rw", false);
+        fileCount.incrementAndGet();
+        fileCountTotal.incrementAndGet();
+        return file;
+    }
+
+    /**
+     * Account for data written to a temporary file.
+     *
+     * @param length the number of bytes written
+     * @throws DbException if the limit is exceeded
+     */
+    void reserve(long length) {
+        long s = size.addAndGet(length);
+        writeTotal.addAndGet(length);
+        if (maxSize > 0 && s > maxSize) {
+            size.addAndGet(-length);
+            throw DbException.get(ErrorCode.GENERAL_ERROR_1, "Temporary result files are larger than MAX_SPILL_SIZE="
+                    + (maxSize / 1024 / 1024) + " MB");
+        }
+        while (true) {
+            long max = maxSizeUsed.get();
+            if (s <= max || maxSizeUsed.compareAndSet(max, s)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Close and delete a temporary file.
+     *
+     * @param file the file
+     * @param length the number of bytes reserved for this file
+     */
+    void closeFile(FileStore file, long length) {
+        size.addAndGet(-length);
+        fileCount.decrementAndGet();
+        file.closeAndDeleteSilently();
+    }
+
+    /**
+     * Get the number of bytes currently used by temporary files.
+     *
+     * @return the number of bytes
+     */
+    public long getSize() {
+        return size.get();
+    }
+
+    /**
+     * Get the largest number of bytes that was used at the same time.
+     *
+     * @return the number of bytes
+     */
+    public long getMaxSizeUsed() {
+        return maxSizeUsed.get();
+    }
+
+    /**
+     * Get the number of bytes written to temporary files since the database
+     * was opened.
+     *
+     * @return the number of bytes
+     */
+    public long getWriteTotal() {
+        return writeTotal.get();
+    }
+
+    /**
+     * Get the number of temporary files that are currently open.
+     *
+     * @return the number of files
+     */
+    public long getFileCount() {
+        return fileCount.get();
+    }
+
+    /**
+     * Get the number of temporary files created since the database was opened.
+     *
+     * @return the number of files
+     */
+    public long getFileCountTotal() {
+        return fileCountTotal.get();
+    }
+
+}
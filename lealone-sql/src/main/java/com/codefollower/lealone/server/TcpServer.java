@@ -16,11 +16,13 @@ import java.sql.PreparedStatement;
 import java.sql.SQLException;
 import java.sql.Statement;
 import java.util.Collections;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import com.codefollower.lealone.Driver;
 import com.codefollower.lealone.constant.Constants;
@@ -72,6 +74,8 @@ public class TcpServer implements Service {
     private String managementPassword = "";
     private Thread listenerThread;
     private int nextThreadId;
+    private final AtomicLong connectionCount = new AtomicLong();
+    private final AtomicLong requestCount = new AtomicLong();
     private String key, keyDatabase;
 
     /**
@@ -238,6 +242,7 @@ public class TcpServer implements Service {
         try {
             while (!stop) {
                 Socket s = serverSocket.accept();
+                connectionCount.incrementAndGet();
                 TcpServerThread c = createTcpServerThread(s, nextThreadId++);
                 running.add(c);
                 Thread thread = new Thread(c, threadName + " thread");
@@ -361,6 +366,51 @@ public class TcpServer implements Service {
         running.remove(t);
     }
 
+    /**
+     * Count a request that was received from a client.
+     */
+    void addRequest() {
+        requestCount.incrementAndGet();
+    }
+
+    /**
+     * Get the number of connections accepted since the server was started.
+     *
+     * @return the connection count
+     */
+    public long getConnectionCount() {
+        return connectionCount.get();
+    }
+
+    /**
+     * Get the number of currently open connections.
+     *
+     * @return the open connection count
+     */
+    public int getOpenConnectionCount() {
+        return running.size();
+    }
+
+    /**
+     * Get the number of requests received since the server was started.
+     *
+     * @return the request count
+     */
+    public long getRequestCount() {
+        return requestCount.get();
+    }
+
+    /**
+     * Get the TCP servers that are running in this JVM.
+     *
+     * @return the servers
+     */
+    public static ArrayList<TcpServer> getServers() {
+        synchronized (SERVERS) {
+            return New.arrayList(SERVERS.values());
+        }
+    }
+
     /**
      * Get the configured base directory.
      *
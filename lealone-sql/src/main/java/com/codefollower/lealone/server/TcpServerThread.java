@@ -28,6 +28,7 @@ import com.codefollower.lealone.expression.ParameterInterface;
 import com.codefollower.lealone.expression.ParameterRemote;
 import com.codefollower.lealone.jdbc.JdbcSQLException;
 import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.message.QueryTrace;
 import com.codefollower.lealone.result.ResultColumn;
 import com.codefollower.lealone.result.ResultInterface;
 import com.codefollower.lealone.store.LobStorage;
@@ -84,12 +85,12 @@ public class TcpServerThread implements Runnable {
                 int minClientVersion = transfer.readInt();
                 if (minClientVersion < Constants.TCP_PROTOCOL_VERSION_6) {
                     throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_6);
-                } else if (minClientVersion > Constants.TCP_PROTOCOL_VERSION_12) {
-                    throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_12);
+                } else if (minClientVersion > Constants.TCP_PROTOCOL_VERSION_13) {
+                    throw DbException.get(ErrorCode.DRIVER_VERSION_ERROR_2, "" + clientVersion, "" + Constants.TCP_PROTOCOL_VERSION_13);
                 }
                 int maxClientVersion = transfer.readInt();
-                if (maxClientVersion >= Constants.TCP_PROTOCOL_VERSION_12) {
-                    clientVersion = Constants.TCP_PROTOCOL_VERSION_12;
+                if (maxClientVersion >= Constants.TCP_PROTOCOL_VERSION_13) {
+                    clientVersion = Constants.TCP_PROTOCOL_VERSION_13;
                 } else {
                     clientVersion = minClientVersion;
                 }
@@ -255,8 +256,42 @@ public class TcpServerThread implements Runnable {
         }
     }
 
+    private QueryTrace readQueryTrace() throws IOException {
+        if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_13) {
+            long traceId = transfer.readLong();
+            if (traceId != 0) {
+                return new QueryTrace(traceId, null, "remote execute");
+            }
+        }
+        return null;
+    }
+
+    private void startQueryTrace(QueryTrace trace) {
+        if (trace != null) {
+            session.setQueryTrace(trace, trace.getRoot());
+        }
+    }
+
+    private void endQueryTrace(QueryTrace trace) {
+        if (trace != null) {
+            trace.end();
+            session.setQueryTrace(null, null);
+        }
+    }
+
+    private void writeQueryTrace(QueryTrace trace) throws IOException {
+        if (clientVersion >= Constants.TCP_PROTOCOL_VERSION_13) {
+            if (trace == null) {
+                transfer.writeInt(0);
+            } else {
+                trace.write(transfer);
+            }
+        }
+    }
+
     private void process() throws IOException {
         int operation = transfer.readInt();
+        server.addRequest();
         boolean isDistributedTransaction = false;
         switch (operation) {
         case SessionRemote.SESSION_PREPARE_READ_PARAMS:
@@ -312,11 +347,16 @@ public class TcpServerThread implements Runnable {
         case SessionRemote.COMMAND_EXECUTE_DISTRIBUTED_QUERY: {
             isDistributedTransaction = true;
         }
+        case SessionRemote.COMMAND_EXECUTE_QUERY_ASYNC:
         case SessionRemote.COMMAND_EXECUTE_QUERY: {
             int id = transfer.readInt();
             int objectId = transfer.readInt();
             int maxRows = transfer.readInt();
             int fetchSize = transfer.readInt();
+            QueryTrace trace = null;
+            if (operation != SessionRemote.COMMAND_EXECUTE_QUERY_ASYNC) {
+                trace = readQueryTrace();
+            }
             Command command = (Command) cache.getObject(id, false);
             if (isDistributedTransaction) {
                 session.setAutoCommit(false);
@@ -327,12 +367,24 @@ public class TcpServerThread implements Runnable {
             int old = session.getModificationId();
             ResultInterface result;
             synchronized (session) {
-                result = command.executeQuery(maxRows, false);
+                startQueryTrace(trace);
+                try {
+                    result = command.executeQuery(maxRows, false);
+                } finally {
+                    endQueryTrace(trace);
+                }
             }
             cache.addObject(objectId, result);
             int columnCount = result.getVisibleColumnCount();
             int state = getState(old);
-            transfer.writeInt(state).writeInt(columnCount);
+            transfer.writeInt(state);
+            if (operation == SessionRemote.COMMAND_EXECUTE_QUERY_ASYNC) {
+                // the object id is also the id of the request
+                transfer.writeInt(objectId);
+            } else {
+                writeQueryTrace(trace);
+            }
+            transfer.writeInt(columnCount);
             int rowCount = result.getRowCount();
             transfer.writeInt(rowCount);
             for (int i = 0; i < columnCount; i++) {
@@ -351,8 +403,17 @@ public class TcpServerThread implements Runnable {
         case SessionRemote.COMMAND_EXECUTE_DISTRIBUTED_UPDATE: {
             isDistributedTransaction = true;
         }
+        case SessionRemote.COMMAND_EXECUTE_UPDATE_ASYNC:
         case SessionRemote.COMMAND_EXECUTE_UPDATE: {
             int id = transfer.readInt();
+            int requestId = 0;
+            if (operation == SessionRemote.COMMAND_EXECUTE_UPDATE_ASYNC) {
+                requestId = transfer.readInt();
+            }
+            QueryTrace trace = null;
+            if (operation != SessionRemote.COMMAND_EXECUTE_UPDATE_ASYNC) {
+                trace = readQueryTrace();
+            }
             Command command = (Command) cache.getObject(id, false);
             if (isDistributedTransaction) {
                 session.setAutoCommit(false);
@@ -362,7 +423,12 @@ public class TcpServerThread implements Runnable {
             int old = session.getModificationId();
             int updateCount;
             synchronized (session) {
-                updateCount = command.executeUpdate();
+                startQueryTrace(trace);
+                try {
+                    updateCount = command.executeUpdate();
+                } finally {
+                    endQueryTrace(trace);
+                }
             }
             int status;
             if (session.isClosed()) {
@@ -370,7 +436,13 @@ public class TcpServerThread implements Runnable {
             } else {
                 status = getState(old);
             }
-            transfer.writeInt(status).writeInt(updateCount).writeBoolean(session.getAutoCommit());
+            transfer.writeInt(status);
+            if (operation == SessionRemote.COMMAND_EXECUTE_UPDATE_ASYNC) {
+                transfer.writeInt(requestId);
+            } else {
+                writeQueryTrace(trace);
+            }
+            transfer.writeInt(updateCount).writeBoolean(session.getAutoCommit());
             transfer.flush();
             break;
         }
@@ -90,4 +90,25 @@ public interface Cache {
      */
     int getMemory();
 
+    /**
+     * Get the number of times get found the element in the cache.
+     *
+     * @return the number of cache hits
+     */
+    long getHits();
+
+    /**
+     * Get the number of times get did not find the element in the cache.
+     *
+     * @return the number of cache misses
+     */
+    long getMisses();
+
+    /**
+     * Get the number of elements that were removed to free memory.
+     *
+     * @return the number of evicted elements
+     */
+    long getEvictions();
+
 }
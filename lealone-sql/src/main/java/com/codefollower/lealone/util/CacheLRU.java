@@ -51,6 +51,8 @@ public class CacheLRU implements Cache {
      */
     private int memory;
 
+    private long hits, misses, evictions;
+
     CacheLRU(CacheWriter writer, int maxMemoryKb, boolean fifo) {
         this.writer = writer;
         this.fifo = fifo;
@@ -187,6 +189,7 @@ public class CacheLRU implements Cache {
             }
             rc--;
             mem -= check.getMemory();
+            evictions++;
             if (check.isChanged()) {
                 changed.add(check);
             } else {
@@ -288,10 +291,13 @@ public class CacheLRU implements Cache {
     public CacheObject get(int pos) {
         CacheObject rec = find(pos);
         if (rec != null) {
+            hits++;
             if (!fifo) {
                 removeFromLinkedList(rec);
                 addToFront(rec);
             }
+        } else {
+            misses++;
         }
         return rec;
     }
@@ -362,4 +368,16 @@ public class CacheLRU implements Cache {
         return (int) (memory * 4L / 1024);
     }
 
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return evictions;
+    }
+
 }
@@ -17,6 +17,7 @@ class CacheSecondLevel implements Cache {
 
     private final Cache baseCache;
     private final Map<Integer, CacheObject> map;
+    private long hits, misses;
 
     CacheSecondLevel(Cache cache, Map<Integer, CacheObject> map) {
         this.baseCache = cache;
@@ -41,6 +42,11 @@ class CacheSecondLevel implements Cache {
         if (ret == null) {
             ret = map.get(pos);
         }
+        if (ret != null) {
+            hits++;
+        } else {
+            misses++;
+        }
         return ret;
     }
 
@@ -56,6 +62,18 @@ class CacheSecondLevel implements Cache {
         return baseCache.getMemory();
     }
 
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return baseCache.getEvictions();
+    }
+
     public void put(CacheObject r) {
         baseCache.put(r);
         map.put(r.getPos(), r);
@@ -29,6 +29,7 @@ public class CacheTQ implements Cache {
     private int lastUsed = -1;
 
     private int maxMemory;
+    private long hits, misses;
 
     CacheTQ(CacheWriter writer, int maxMemoryKb) {
         this.maxMemory = maxMemoryKb;
@@ -55,10 +56,16 @@ public class CacheTQ implements Cache {
     public CacheObject get(int pos) {
         CacheObject r = lru.find(pos);
         if (r != null) {
+            hits++;
             return r;
         }
         r = fifo.find(pos);
-        if (r != null && !r.isStream()) {
+        if (r == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        if (!r.isStream()) {
             if (recentlyUsed.get(pos) != null) {
                 if (lastUsed != pos) {
                     fifo.remove(pos);
@@ -87,6 +94,18 @@ public class CacheTQ implements Cache {
         return lru.getMemory() + fifo.getMemory();
     }
 
+    public long getHits() {
+        return hits;
+    }
+
+    public long getMisses() {
+        return misses;
+    }
+
+    public long getEvictions() {
+        return lru.getEvictions() + fifo.getEvictions();
+    }
+
     public void put(CacheObject r) {
         if (r.isStream()) {
             fifo.put(r);
@@ -0,0 +1,291 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.util;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+
+import com.codefollower.lealone.constant.ErrorCode;
+import com.codefollower.lealone.message.DbException;
+import com.codefollower.lealone.value.Value;
+
+/**
+ * A HyperLogLog sketch to estimate the number of distinct values. It uses
+ * 2^14 registers (a standard error of about 0.8%), but only keeps the
+ * registers that are set while there are few of them. Two sketches of the same
+ * column can be merged, so that each region can build its own sketch, and the
+ * sketches are combined when the results are merged.
+ */
+public class HyperLogLog {
+
+    private static final int P = 14;
+    private static final int M = 1 << P;
+
+    /**
+     * The number of sparse entries at which the registers are converted to
+     * the dense form.
+     */
+    private static final int MAX_SPARSE = M / 32;
+
+    private static final byte FORMAT_SPARSE = 0, FORMAT_DENSE = 1;
+
+    /**
+     * The dense registers, or null while the sparse form is used.
+     */
+    private byte[] registers;
+
+    /**
+     * The sparse registers, as an open addressing hash table. Each entry is
+     * (index << 8) | rank, and 0 is an empty entry.
+     */
+    private int[] sparse = new int[16];
+    private int sparseCount;
+
+    /**
+     * Add a value.
+     *
+     * @param v the value (not null)
+     */
+    public void add(Value v) {
+        long hash = hash(v);
+        int index = (int) (hash >>> (64 - P));
+        int rank = Long.numberOfLeadingZeros((hash << P) | (1L << (P - 1))) + 1;
+        update(index, rank);
+    }
+
+    private void update(int index, int rank) {
+        if (registers != null) {
+            if (registers[index] < rank) {
+                registers[index] = (byte) rank;
+            }
+            return;
+        }
+        int mask = sparse.length - 1;
+        int i = (index * 0x9e3779b9) >>> 8 & mask;
+        while (true) {
+            int e = sparse[i];
+            if (e == 0) {
+                sparse[i] = (index << 8) | rank;
+                if (++sparseCount > MAX_SPARSE) {
+                    toDense();
+                } else if (sparseCount * 2 > sparse.length) {
+                    resize();
+                }
+                return;
+            } else if (e >>> 8 == index) {
+                if ((e & 0xff) < rank) {
+                    sparse[i] = (index << 8) | rank;
+                }
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+    }
+
+    private void resize() {
+        int[] old = sparse;
+        sparse = new int[old.length * 2];
+        sparseCount = 0;
+        for (int e : old) {
+            if (e != 0) {
+                update(e >>> 8, e & 0xff);
+            }
+        }
+    }
+
+    private void toDense() {
+        registers = new byte[M];
+        for (int e : sparse) {
+            if (e != 0) {
+                update(e >>> 8, e & 0xff);
+            }
+        }
+        sparse = null;
+        sparseCount = 0;
+    }
+
+    /**
+     * Merge another sketch into this one.
+     *
+     * @param other the other sketch
+     */
+    public void merge(HyperLogLog other) {
+        if (other.registers != null) {
+            if (registers == null) {
+                toDense();
+            }
+            for (int i = 0; i < M; i++) {
+                if (registers[i] < other.registers[i]) {
+                    registers[i] = other.registers[i];
+                }
+            }
+        } else {
+            for (int e : other.sparse) {
+                if (e != 0) {
+                    update(e >>> 8, e & 0xff);
+                }
+            }
+        }
+    }
+
+    /**
+     * Get the estimated number of distinct values.
+     *
+     * @return the estimate
+     */
+    public long getEstimate() {
+        double sum = 0;
+        int zeros;
+        if (registers != null) {
+            zeros = 0;
+            for (int r : registers) {
+                if (r == 0) {
+                    zeros++;
+                }
+                sum += 1.0 / (1L << r);
+            }
+        } else {
+            zeros = M - sparseCount;
+            sum = zeros;
+            for (int e : sparse) {
+                if (e != 0) {
+                    sum += 1.0 / (1L << (e & 0xff));
+                }
+            }
+        }
+        double alpha = 0.7213 / (1 + 1.079 / M);
+        double estimate = alpha * M * M / sum;
+        if (estimate <= 2.5 * M && zeros > 0) {
+            // linear counting is more accurate for small cardinalities
+            estimate = M * Math.log((double) M / zeros);
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * Get the estimated memory used by this sketch, in bytes. The sparse form
+     * grows with the number of registers that are set, the dense form uses one
+     * byte per register.
+     *
+     * @return the memory
+     */
+    public int getMemory() {
+        return 32 + (registers != null ? registers.length : 4 * sparse.length);
+    }
+
+    /**
+     * Serialize the sketch.
+     *
+     * @return the serialized sketch
+     */
+    public byte[] getBytes() {
+        if (registers != null) {
+            ByteBuffer buff = ByteBuffer.allocate(1 + M);
+            buff.put(FORMAT_DENSE).put(registers);
+            return buff.array();
+        }
+        ByteBuffer buff = ByteBuffer.allocate(1 + 4 + 4 * sparseCount);
+        buff.put(FORMAT_SPARSE).putInt(sparseCount);
+        for (int e : sparse) {
+            if (e != 0) {
+                buff.putInt(e);
+            }
+        }
+        return buff.array();
+    }
+
+    /**
+     * Read a serialized sketch.
+     *
+     * @param data the serialized sketch
+     * @return the sketch
+     */
+    public static HyperLogLog read(byte[] data) {
+        HyperLogLog sketch = new HyperLogLog();
+        ByteBuffer buff = ByteBuffer.wrap(data);
+        byte format = buff.get();
+        if (format == FORMAT_DENSE && data.length == 1 + M) {
+            sketch.toDense();
+            buff.get(sketch.registers);
+        } else if (format == FORMAT_SPARSE) {
+            for (int i = 0, count = buff.getInt(); i < count; i++) {
+                int e = buff.getInt();
+                sketch.update(e >>> 8, e & 0xff);
+            }
+        } else {
+            throw DbException.get(ErrorCode.DATA_CONVERSION_ERROR_1, "HyperLogLog");
+        }
+        return sketch;
+    }
+
+    /**
+     * Calculate a 64 bit hash code of a value. Equal values of the same data
+     * type get the same hash code, no matter on which server it is computed.
+     *
+     * @param v the value
+     * @return the hash code
+     */
+    private static long hash(Value v) {
+        long h;
+        switch (v.getType()) {
+        case Value.BOOLEAN:
+        case Value.BYTE:
+        case Value.SHORT:
+        case Value.INT:
+        case Value.LONG:
+            h = v.getLong();
+            break;
+        case Value.DOUBLE:
+        case Value.FLOAT:
+            h = Double.doubleToLongBits(v.getDouble() + 0.0);
+            break;
+        case Value.DECIMAL: {
+            BigDecimal d = v.getBigDecimal();
+            h = hash(d.signum() == 0 ? "0" : d.stripTrailingZeros().toPlainString());
+            break;
+        }
+        case Value.BYTES: {
+            h = 0xcbf29ce484222325L;
+            for (byte b : v.getBytesNoCopy()) {
+                h = (h ^ (b & 0xff)) * 0x100000001b3L;
+            }
+            break;
+        }
+        default:
+            h = hash(v.getString());
+        }
+        // the finalizer of MurmurHash3
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static long hash(String s) {
+        long h = 0xcbf29ce484222325L;
+        for (int i = 0, len = s.length(); i < len; i++) {
+            h = (h ^ s.charAt(i)) * 0x100000001b3L;
+        }
+        return h;
+    }
+
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.util;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A histogram of latencies with logarithmic buckets. Each power of two is
+ * split into 8 linear sub-buckets, so that the relative error of a
+ * percentile is at most 12.5%. Recording a value is lock-free.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR = SUB_BUCKETS * 2;
+    private static final int MAX_EXPONENT = 40;
+    private static final int BUCKETS = LINEAR + (MAX_EXPONENT - SUB_BUCKET_BITS - 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    /**
+     * Record a value.
+     *
+     * @param value the value (negative values are recorded as 0)
+     */
+    public void add(long value) {
+        counts.incrementAndGet(getIndex(value));
+    }
+
+    /**
+     * Get the value at the given percentile. The result is the middle of the
+     * bucket that contains the percentile.
+     *
+     * @param percentile the percentile, between 0 and 1
+     * @return the value, or 0 if no value was recorded
+     */
+    public long getPercentile(double percentile) {
+        long total = 0;
+        long[] c = new long[BUCKETS];
+        for (int i = 0; i < BUCKETS; i++) {
+            c[i] = counts.get(i);
+            total += c[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(percentile * total));
+        long sum = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            sum += c[i];
+            if (sum >= rank) {
+                return getMiddle(i);
+            }
+        }
+        return getMiddle(BUCKETS - 1);
+    }
+
+    private static int getIndex(long value) {
+        if (value < LINEAR) {
+            return value < 0 ? 0 : (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        if (exponent >= MAX_EXPONENT) {
+            return BUCKETS - 1;
+        }
+        int sub = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return LINEAR + (exponent - SUB_BUCKET_BITS - 1) * SUB_BUCKETS + sub;
+    }
+
+    private static long getMiddle(int index) {
+        if (index < LINEAR) {
+            return index;
+        }
+        int i = index - LINEAR;
+        int exponent = i / SUB_BUCKETS + SUB_BUCKET_BITS + 1;
+        long width = 1L << (exponent - SUB_BUCKET_BITS);
+        long low = (SUB_BUCKETS + i % SUB_BUCKETS) * width;
+        return low + width / 2;
+    }
+
+}
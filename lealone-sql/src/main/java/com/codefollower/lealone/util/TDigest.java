@@ -0,0 +1,287 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.util;
+
+import java.nio.ByteBuffer;
+
+import com.codefollower.lealone.constant.ErrorCode;
+import com.codefollower.lealone.message.DbException;
+
+/**
+ * A t-digest to estimate percentiles (a merging digest, see "Computing
+ * Extremely Accurate Quantiles Using t-Digests" by Dunning and Ertl). Values
+ * are collected in a buffer, and when the buffer is full they are merged with
+ * the existing centroids. The number of centroids is bounded by the
+ * compression, and centroids near the tails are kept small, so that extreme
+ * percentiles are more accurate. Two digests can be merged.
+ */
+public class TDigest {
+
+    private static final double COMPRESSION = 100;
+    private static final int MAX_CENTROIDS = (int) (2 * COMPRESSION) + 10;
+    private static final int BUFFER_SIZE = 5 * MAX_CENTROIDS;
+
+    /**
+     * The initial size of the buffer. The buffer and the centroids grow when
+     * needed, so that the digests of many small groups stay small.
+     */
+    private static final int INITIAL_SIZE = 16;
+
+    private double[] means = new double[0];
+    private double[] weights = new double[0];
+    private int centroidCount;
+
+    private double[] bufferMeans = new double[INITIAL_SIZE];
+    private double[] bufferWeights = new double[INITIAL_SIZE];
+    private int bufferCount;
+
+    private double totalWeight;
+    private double min = Double.POSITIVE_INFINITY;
+    private double max = Double.NEGATIVE_INFINITY;
+
+    /**
+     * Add a value.
+     *
+     * @param x the value
+     */
+    public void add(double x) {
+        if (Double.isNaN(x)) {
+            return;
+        }
+        add(x, 1);
+    }
+
+    private void add(double mean, double weight) {
+        if (bufferCount == BUFFER_SIZE) {
+            compress();
+        } else if (bufferCount == bufferMeans.length) {
+            growBuffer(bufferCount + 1);
+        }
+        bufferMeans[bufferCount] = mean;
+        bufferWeights[bufferCount++] = weight;
+        totalWeight += weight;
+        min = Math.min(min, mean);
+        max = Math.max(max, mean);
+    }
+
+    /**
+     * Merge another digest into this one.
+     *
+     * @param other the other digest
+     */
+    public void merge(TDigest other) {
+        other.compress();
+        for (int i = 0; i < other.centroidCount; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    /**
+     * Merge the buffered values with the centroids.
+     */
+    private void compress() {
+        if (bufferCount == 0) {
+            return;
+        }
+        int n = bufferCount + centroidCount;
+        if (n > bufferMeans.length) {
+            growBuffer(n);
+        }
+        System.arraycopy(means, 0, bufferMeans, bufferCount, centroidCount);
+        System.arraycopy(weights, 0, bufferWeights, bufferCount, centroidCount);
+        sort(bufferMeans, bufferWeights, 0, n - 1);
+        double[] newMeans = new double[Math.min(n, MAX_CENTROIDS)];
+        double[] newWeights = new double[newMeans.length];
+        int count = 0;
+        double weightSoFar = 0;
+        double limit = totalWeight * getQuantileLimit(0);
+        double mean = bufferMeans[0];
+        double weight = bufferWeights[0];
+        for (int i = 1; i < n; i++) {
+            if (weightSoFar + weight + bufferWeights[i] <= limit || count == MAX_CENTROIDS - 1) {
+                weight += bufferWeights[i];
+                mean += (bufferMeans[i] - mean) * bufferWeights[i] / weight;
+            } else {
+                newMeans[count] = mean;
+                newWeights[count++] = weight;
+                weightSoFar += weight;
+                limit = totalWeight * getQuantileLimit(weightSoFar / totalWeight);
+                mean = bufferMeans[i];
+                weight = bufferWeights[i];
+            }
+        }
+        newMeans[count] = mean;
+        newWeights[count++] = weight;
+        means = newMeans;
+        weights = newWeights;
+        centroidCount = count;
+        bufferCount = 0;
+    }
+
+    private void growBuffer(int minSize) {
+        int size = Math.min(Math.max(minSize, bufferMeans.length * 2), BUFFER_SIZE + MAX_CENTROIDS);
+        double[] m = new double[size];
+        double[] w = new double[size];
+        System.arraycopy(bufferMeans, 0, m, 0, bufferCount);
+        System.arraycopy(bufferWeights, 0, w, 0, bufferCount);
+        bufferMeans = m;
+        bufferWeights = w;
+    }
+
+    /**
+     * Sort the values by mean, keeping the weights at the same position.
+     */
+    private static void sort(double[] m, double[] w, int lo, int hi) {
+        while (hi - lo > 16) {
+            double pivot = m[(lo + hi) >>> 1];
+            int i = lo, j = hi;
+            while (i <= j) {
+                while (m[i] < pivot) {
+                    i++;
+                }
+                while (m[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    double t = m[i];
+                    m[i] = m[j];
+                    m[j] = t;
+                    t = w[i];
+                    w[i++] = w[j];
+                    w[j--] = t;
+                }
+            }
+            if (j - lo < hi - i) {
+                sort(m, w, lo, j);
+                lo = i;
+            } else {
+                sort(m, w, i, hi);
+                hi = j;
+            }
+        }
+        for (int i = lo + 1; i <= hi; i++) {
+            double mean = m[i], weight = w[i];
+            int j = i - 1;
+            for (; j >= lo && m[j] > mean; j--) {
+                m[j + 1] = m[j];
+                w[j + 1] = w[j];
+            }
+            m[j + 1] = mean;
+            w[j + 1] = weight;
+        }
+    }
+
+    /**
+     * Get the largest quantile a centroid that starts at the given quantile
+     * may reach, using the scale function k(q) = d / (2 pi) * asin(2q - 1).
+     *
+     * @param q the quantile where the centroid starts
+     * @return the quantile limit
+     */
+    private static double getQuantileLimit(double q) {
+        double k = COMPRESSION / (2 * Math.PI) * Math.asin(2 * q - 1) + 1;
+        if (k >= COMPRESSION / 4) {
+            return 1;
+        }
+        return (Math.sin(k * 2 * Math.PI / COMPRESSION) + 1) / 2;
+    }
+
+    /**
+     * Get the estimated value at the given quantile.
+     *
+     * @param q the quantile, between 0 and 1
+     * @return the estimated value, or NaN if no values were added
+     */
+    public double getQuantile(double q) {
+        compress();
+        if (centroidCount == 0) {
+            return Double.NaN;
+        }
+        if (centroidCount == 1) {
+            return means[0];
+        }
+        double index = q * totalWeight;
+        if (index < weights[0] / 2) {
+            return min + (means[0] - min) * index / (weights[0] / 2);
+        }
+        double weightSoFar = weights[0] / 2;
+        for (int i = 0; i < centroidCount - 1; i++) {
+            double delta = (weights[i] + weights[i + 1]) / 2;
+            if (index < weightSoFar + delta) {
+                return means[i] + (means[i + 1] - means[i]) * (index - weightSoFar) / delta;
+            }
+            weightSoFar += delta;
+        }
+        int last = centroidCount - 1;
+        double lastHalf = weights[last] / 2;
+        return means[last] + (max - means[last]) * Math.min(1, (index - weightSoFar) / lastHalf);
+    }
+
+    /**
+     * Get the estimated memory used by this digest, in bytes.
+     *
+     * @return the memory
+     */
+    public int getMemory() {
+        return 64 + 16 * (means.length + bufferMeans.length);
+    }
+
+    /**
+     * Serialize the digest.
+     *
+     * @return the serialized digest
+     */
+    public byte[] getBytes() {
+        compress();
+        ByteBuffer buff = ByteBuffer.allocate(4 + 16 + 16 * centroidCount);
+        buff.putInt(centroidCount).putDouble(min).putDouble(max);
+        for (int i = 0; i < centroidCount; i++) {
+            buff.putDouble(means[i]).putDouble(weights[i]);
+        }
+        return buff.array();
+    }
+
+    /**
+     * Read a serialized digest.
+     *
+     * @param data the serialized digest
+     * @return the digest
+     */
+    public static TDigest read(byte[] data) {
+        ByteBuffer buff = ByteBuffer.wrap(data);
+        int count = data.length < 20 ? -1 : buff.getInt();
+        if (count < 0 || count > MAX_CENTROIDS || data.length != 4 + 16 + 16 * count) {
+            throw DbException.get(ErrorCode.DATA_CONVERSION_ERROR_1, "TDigest");
+        }
+        TDigest digest = new TDigest();
+        double min = buff.getDouble(), max = buff.getDouble();
+        for (int i = 0; i < count; i++) {
+            digest.add(buff.getDouble(), buff.getDouble());
+        }
+        if (count > 0) {
+            digest.min = min;
+            digest.max = max;
+        }
+        return digest;
+    }
+
+}
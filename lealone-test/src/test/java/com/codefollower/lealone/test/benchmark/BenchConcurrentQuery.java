@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+
+//测试1到32个并发session在MVStore表上执行只读查询时的伸缩性
+//MVStore表需要MVSession, 所以要用mvstore数据库引擎
+public class BenchConcurrentQuery {
+    public static void main(String[] args) throws Exception {
+        int rows = 100000;
+        int[] sessionCounts = { 1, 2, 4, 8, 16, 32 };
+        //对比查询在数据库上同步和在session上同步(CONCURRENT_READS)时的吞吐量
+        for (String concurrentReads : new String[] { "FALSE", "TRUE" }) {
+            String url = "jdbc:lealone:embedded:mvstore:BenchConcurrentQuery" + concurrentReads
+                    + ";MVCC=TRUE;CONCURRENT_READS=" + concurrentReads;
+            System.out.println("CONCURRENT_READS=" + concurrentReads);
+            init(url, rows);
+            for (int sessions : sessionCounts) {
+                run(url, sessions, 20000 / sessions, rows);
+            }
+        }
+    }
+
+    static void init(String url, int rows) throws Exception {
+        Connection conn = DriverManager.getConnection(url, "sa", "");
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("DROP TABLE IF EXISTS BenchConcurrentQuery");
+        stmt.executeUpdate("CREATE TABLE BenchConcurrentQuery(id int primary key, name varchar(100), age int) "
+                + "ENGINE MVSTORE");
+        conn.setAutoCommit(false);
+        PreparedStatement ps = conn.prepareStatement("INSERT INTO BenchConcurrentQuery VALUES(?, ?, ?)");
+        for (int i = 0; i < rows; i++) {
+            ps.setInt(1, i);
+            ps.setString(2, "name" + i);
+            ps.setInt(3, i % 100);
+            ps.executeUpdate();
+        }
+        conn.commit();
+        ps.close();
+        stmt.close();
+        //不关闭连接，避免数据库被关闭
+    }
+
+    static void run(final String url, int sessions, final int loop, final int rows) throws Exception {
+        final CountDownLatch latch = new CountDownLatch(sessions);
+        long start = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        Connection conn = DriverManager.getConnection(url, "sa", "");
+                        PreparedStatement ps = conn
+                                .prepareStatement("SELECT name, age FROM BenchConcurrentQuery WHERE id = ?");
+                        for (int j = 0; j < loop; j++) {
+                            ps.setInt(1, j % rows);
+                            ResultSet rs = ps.executeQuery();
+                            rs.next();
+                            rs.close();
+                        }
+                        ps.close();
+                        conn.close();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }.start();
+        }
+        latch.await();
+        long end = System.nanoTime();
+        long queries = (long) sessions * loop;
+        System.out.println("sessions: " + sessions + ", queries: " + queries + ", queries/s: "
+                + (queries * 1000000000L / (end - start)));
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.benchmark;
+
+import java.sql.Connection;
+import java.util.concurrent.CountDownLatch;
+
+import com.codefollower.lealone.jdbcx.JdbcConnectionPool;
+
+//测试在不同线程数下从连接池中借出和归还连接的吞吐量与延迟
+public class BenchConnectionPool {
+    public static void main(String[] args) throws Exception {
+        int[] threadCounts = { 1, 2, 4, 8, 16, 32, 64 };
+        for (int threads : threadCounts) {
+            new BenchConnectionPool(threads, 200000 / threads).run();
+        }
+    }
+
+    int threads;
+    int loop;
+
+    public BenchConnectionPool(int threads, int loop) {
+        this.threads = threads;
+        this.loop = loop;
+    }
+
+    public void run() throws Exception {
+        final JdbcConnectionPool cp = JdbcConnectionPool.create("jdbc:lealone:embedded:memory:BenchConnectionPool", "sa",
+                "");
+        cp.setMaxConnections(Math.max(1, threads / 2));
+
+        //预热
+        borrowAndReturn(cp, 1000);
+
+        final CountDownLatch latch = new CountDownLatch(threads);
+        long start = System.nanoTime();
+        for (int i = 0; i < threads; i++) {
+            new Thread() {
+                public void run() {
+                    try {
+                        borrowAndReturn(cp, loop);
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    } finally {
+                        latch.countDown();
+                    }
+                }
+            }.start();
+        }
+        latch.await();
+        long end = System.nanoTime();
+
+        long ops = (long) threads * loop;
+        p("threads: " + threads + ", maxConnections: " + cp.getMaxConnections() + ", ops: " + ops //
+                + ", ops/s: " + (ops * 1000000000L / (end - start)) //
+                + ", avg borrow: " + cp.getAverageBorrowMicros() + " us" //
+                + ", max borrow: " + cp.getMaxBorrowMicros() + " us" //
+                + ", created: " + cp.getCreatedConnections());
+        cp.dispose();
+    }
+
+    static void borrowAndReturn(JdbcConnectionPool cp, int loop) throws Exception {
+        for (int i = 0; i < loop; i++) {
+            Connection conn = cp.getConnection();
+            conn.close();
+        }
+    }
+
+    static void p(String str) {
+        System.out.println(str);
+    }
+}
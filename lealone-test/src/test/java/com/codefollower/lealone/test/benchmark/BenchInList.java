@@ -0,0 +1,101 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+//测试带参数的IN列表(1000个元素)与带参数的LIKE：列上没有索引，每一行都要计算一次条件。
+//IN列表在每次执行时只建一次hash集合，LIKE的模式只编译一次
+//用法: BenchInList [表的行数, 默认100000] [IN列表的元素个数, 默认1000]
+public class BenchInList {
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 100000;
+        int inSize = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+        String url = "jdbc:lealone:embedded:memory:BenchInList";
+        Connection conn = DriverManager.getConnection(url, "sa", "");
+        Statement stmt = conn.createStatement();
+        //每次都重新执行查询，不重用上一次的结果
+        stmt.executeUpdate("SET OPTIMIZE_REUSE_RESULTS 0");
+        stmt.executeUpdate("CREATE TABLE BenchInList(id int, v int, name varchar(20))");
+        stmt.executeUpdate("INSERT INTO BenchInList SELECT x, MOD(x * 7, " + rows + "), 'name' || x "
+                + "FROM SYSTEM_RANGE(1, " + rows + ")");
+
+        StringBuilder params = new StringBuilder();
+        StringBuilder constants = new StringBuilder();
+        for (int i = 0; i < inSize; i++) {
+            if (i > 0) {
+                params.append(", ");
+                constants.append(", ");
+            }
+            params.append('?');
+            constants.append(i * 3);
+        }
+
+        PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM BenchInList WHERE v IN(" + params + ")");
+        for (int i = 0; i < inSize; i++) {
+            ps.setInt(i + 1, i * 3);
+        }
+        run("in parameters", ps, 20);
+
+        //常量列表作为对比
+        ps = conn.prepareStatement("SELECT COUNT(*) FROM BenchInList WHERE v IN(" + constants + ")");
+        run("in constants", ps, 20);
+
+        ps = conn.prepareStatement("SELECT COUNT(*) FROM BenchInList WHERE name LIKE ?");
+        ps.setString(1, "name1%");
+        run("like prefix", ps, 20);
+        ps.setString(1, "%99");
+        run("like suffix", ps, 20);
+        ps.setString(1, "%e12%");
+        run("like contains", ps, 20);
+        ps.setString(1, "n_me1%9");
+        run("like pattern", ps, 20);
+
+        stmt.executeUpdate("DROP TABLE BenchInList");
+        stmt.close();
+        conn.close();
+    }
+
+    static void run(String name, PreparedStatement ps, int loop) throws Exception {
+        long count = 0;
+        //预热
+        for (int i = 0; i < loop; i++) {
+            count = query(ps);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < loop; i++) {
+            count = query(ps);
+        }
+        long ms = (System.nanoTime() - start) / 1000000;
+        System.out.println(name + ": count " + count + ", queries: " + loop + ", ms: " + ms);
+    }
+
+    static long query(PreparedStatement ps) throws Exception {
+        ResultSet rs = ps.executeQuery();
+        rs.next();
+        long count = rs.getLong(1);
+        rs.close();
+        return count;
+    }
+}
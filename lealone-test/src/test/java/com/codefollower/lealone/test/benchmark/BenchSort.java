@@ -0,0 +1,70 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.benchmark;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+//测试大结果集ORDER BY的外部排序：行数超过MAX_MEMORY_ROWS时，每一段在多个线程中并行排序后写入临时文件，
+//读取时用败者树做多路归并
+//用法: BenchSort [行数, 默认1000万] [MAX_MEMORY_ROWS, 默认100000]
+//可以加-XX:ActiveProcessorCount=1运行，与单线程排序比较
+public class BenchSort {
+    public static void main(String[] args) throws Exception {
+        int rows = args.length > 0 ? Integer.parseInt(args[0]) : 10000000;
+        int maxMemoryRows = args.length > 1 ? Integer.parseInt(args[1]) : 100000;
+        String url = "jdbc:lealone:embedded:regular:BenchSort;MAX_MEMORY_ROWS=" + maxMemoryRows;
+        Connection conn = DriverManager.getConnection(url, "sa", "");
+        Statement stmt = conn.createStatement();
+        //每次都重新执行查询，不重用上一次的结果
+        stmt.executeUpdate("SET OPTIMIZE_REUSE_RESULTS 0");
+        stmt.executeUpdate("DROP TABLE IF EXISTS BenchSort");
+        stmt.executeUpdate("CREATE TABLE BenchSort(id int, v int, name varchar(20))");
+        long start = System.nanoTime();
+        stmt.executeUpdate("INSERT INTO BenchSort DIRECT SELECT x, RAND() * 2147483647, 'name' || MOD(x, 1000) "
+                + "FROM SYSTEM_RANGE(1, " + rows + ")");
+        System.out.println("insert rows: " + rows + ", ms: " + (System.nanoTime() - start) / 1000000);
+
+        System.out.println("processors: " + Runtime.getRuntime().availableProcessors() + ", max memory rows: "
+                + maxMemoryRows);
+        for (int i = 0; i < 3; i++) {
+            start = System.nanoTime();
+            ResultSet rs = stmt.executeQuery("SELECT id, v, name FROM BenchSort ORDER BY v");
+            long count = 0;
+            int last = Integer.MIN_VALUE;
+            while (rs.next()) {
+                int v = rs.getInt(2);
+                if (v < last) {
+                    throw new AssertionError("not sorted at row " + count);
+                }
+                last = v;
+                count++;
+            }
+            rs.close();
+            long ms = (System.nanoTime() - start) / 1000000;
+            System.out.println("order by rows: " + count + ", ms: " + ms + ", rows/s: " + count * 1000 / Math.max(1, ms));
+        }
+        stmt.executeUpdate("DROP TABLE BenchSort");
+        stmt.close();
+        conn.close();
+    }
+}
@@ -21,6 +21,8 @@ package com.codefollower.lealone.test.jdbc.dml;
 
 import static junit.framework.Assert.assertEquals;
 
+import java.sql.ResultSet;
+
 import org.junit.Test;
 
 import com.codefollower.lealone.test.jdbc.TestBase;
@@ -63,6 +65,7 @@ public class SelectTest extends TestBase {
         where();
         orderBy();
         groupBy();
+        limit();
     }
 
     private void where() throws Exception {
@@ -87,6 +90,29 @@ public class SelectTest extends TestBase {
         printResultSet();
     }
 
+    private String getRowKeys(String sql) throws Exception {
+        ResultSet rs = stmt.executeQuery(sql);
+        StringBuilder buff = new StringBuilder();
+        while (rs.next()) {
+            if (buff.length() > 0)
+                buff.append(',');
+            buff.append(rs.getString(1));
+        }
+        rs.close();
+        return buff.toString();
+    }
+
+    //LIMIT和OFFSET在合并所有Region的结果之后才使用
+    private void limit() throws Exception {
+        sql = "SELECT f1, count(f1) FROM SelectTest GROUP BY f1 ORDER BY f1 LIMIT 1 OFFSET 1";
+        assertEquals(5, getIntValue(2, true));
+
+        assertEquals("03,26", getRowKeys("SELECT _rowkey_ FROM SelectTest ORDER BY cf2.f3 DESC, _rowkey_ LIMIT 2 OFFSET 1"));
+        assertEquals("77,76,75", getRowKeys("SELECT _rowkey_ FROM SelectTest ORDER BY _rowkey_ DESC LIMIT 3"));
+        assertEquals(3, getRowKeys("SELECT _rowkey_ FROM SelectTest LIMIT 3").split(",").length);
+        assertEquals("a1,a2", getRowKeys("SELECT DISTINCT f1 FROM SelectTest ORDER BY f1"));
+    }
+
     void testAggregate() throws Exception {
         sql = "select sum(cf2.f3) from SelectTest";
         assertEquals(418, getIntValue(1, true));
@@ -0,0 +1,196 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.embedded;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.jdbc.JdbcConnection;
+import com.codefollower.lealone.result.SpillManager;
+import com.codefollower.lealone.test.jdbc.TestBase;
+import com.codefollower.lealone.util.HyperLogLog;
+import com.codefollower.lealone.util.TDigest;
+import com.codefollower.lealone.value.ValueInt;
+
+public class ApproxAggregateTest extends TestBase {
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        conn = DriverManager.getConnection("jdbc:lealone:embedded:memory:ApproxAggregateTest", "sa", "");
+        stmt = conn.createStatement();
+        //f1有10个分组，每组1000个不同的f2，f3是1到10000
+        stmt.executeUpdate("CREATE TABLE ApproxAggregateTest (f1 int, f2 int, f3 int)");
+        stmt.executeUpdate("INSERT INTO ApproxAggregateTest SELECT MOD(x, 10), MOD(x, 10000) / 10, x "
+                + "FROM SYSTEM_RANGE(1, 10000)");
+        stmt.executeUpdate("INSERT INTO ApproxAggregateTest VALUES(0, null, null)");
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        stmt.executeUpdate("DROP TABLE IF EXISTS ApproxAggregateTest");
+        stmt.close();
+        conn.close();
+    }
+
+    private static void assertAbout(double expected, double actual, double error) {
+        assertTrue("expected " + expected + " but was " + actual, Math.abs(actual - expected) <= expected * error);
+    }
+
+    @Test
+    public void approxCountDistinct() throws Exception {
+        rs = stmt.executeQuery("SELECT APPROX_COUNT_DISTINCT(f3), APPROX_COUNT_DISTINCT(f2), "
+                + "APPROX_COUNT_DISTINCT(DISTINCT f2) FROM ApproxAggregateTest");
+        assertTrue(rs.next());
+        assertAbout(10000, rs.getLong(1), 0.03);
+        assertAbout(1000, rs.getLong(2), 0.03);
+        //DISTINCT没有影响
+        assertEquals(rs.getLong(2), rs.getLong(3));
+        closeResultSet();
+
+        rs = stmt.executeQuery("SELECT f1, APPROX_COUNT_DISTINCT(f2), COUNT(DISTINCT f2) FROM ApproxAggregateTest "
+                + "GROUP BY f1 ORDER BY f1");
+        int count = 0;
+        while (rs.next()) {
+            assertEquals(count++, rs.getInt(1));
+            assertAbout(rs.getLong(3), rs.getLong(2), 0.03);
+        }
+        closeResultSet();
+        assertEquals(10, count);
+
+        //小的基数是准确的
+        rs = stmt.executeQuery("SELECT APPROX_COUNT_DISTINCT(f1), APPROX_COUNT_DISTINCT(CAST(f1 AS VARCHAR)) "
+                + "FROM ApproxAggregateTest");
+        assertTrue(rs.next());
+        assertEquals(10, rs.getLong(1));
+        assertEquals(10, rs.getLong(2));
+        closeResultSet();
+    }
+
+    @Test
+    public void approxPercentile() throws Exception {
+        rs = stmt.executeQuery("SELECT APPROX_PERCENTILE(f3, 0), APPROX_PERCENTILE(f3, 0.5), "
+                + "APPROX_PERCENTILE(f3, 0.99), APPROX_PERCENTILE(f3, 1) FROM ApproxAggregateTest");
+        assertTrue(rs.next());
+        assertEquals(1, rs.getDouble(1), 0.0);
+        assertAbout(5000, rs.getDouble(2), 0.01);
+        assertAbout(9900, rs.getDouble(3), 0.001);
+        assertEquals(10000, rs.getDouble(4), 0.0);
+        closeResultSet();
+
+        //没有值时返回null
+        rs = stmt.executeQuery("SELECT APPROX_PERCENTILE(f3, 0.5) FROM ApproxAggregateTest WHERE f3 IS NULL");
+        assertTrue(rs.next());
+        rs.getDouble(1);
+        assertTrue(rs.wasNull());
+        closeResultSet();
+
+        try {
+            stmt.executeQuery("SELECT APPROX_PERCENTILE(f3, 2) FROM ApproxAggregateTest");
+            fail();
+        } catch (SQLException e) {
+            //期望的
+        }
+    }
+
+    @Test
+    public void sketches() throws Exception {
+        rs = stmt.executeQuery("SELECT APPROX_COUNT_DISTINCT_SKETCH(f2), APPROX_PERCENTILE_SKETCH(f3), "
+                + "APPROX_COUNT_DISTINCT(f2), APPROX_PERCENTILE(f3, 0.5) FROM ApproxAggregateTest");
+        assertTrue(rs.next());
+        HyperLogLog hyperLogLog = HyperLogLog.read(rs.getBytes(1));
+        TDigest digest = TDigest.read(rs.getBytes(2));
+        assertEquals(rs.getLong(3), hyperLogLog.getEstimate());
+        assertEquals(rs.getDouble(4), digest.getQuantile(0.5), 0.0);
+        closeResultSet();
+
+        //合并两半的sketch与整体的sketch结果相同
+        HyperLogLog h = new HyperLogLog();
+        TDigest d = new TDigest();
+        rs = stmt.executeQuery("SELECT APPROX_COUNT_DISTINCT_SKETCH(f2), APPROX_PERCENTILE_SKETCH(f3) "
+                + "FROM ApproxAggregateTest GROUP BY f3 > 5000");
+        while (rs.next()) {
+            h.merge(HyperLogLog.read(rs.getBytes(1)));
+            d.merge(TDigest.read(rs.getBytes(2)));
+        }
+        closeResultSet();
+        assertArrayEquals(hyperLogLog.getBytes(), h.getBytes());
+        assertAbout(digest.getQuantile(0.5), d.getQuantile(0.5), 0.01);
+
+        try {
+            stmt.executeQuery("SELECT APPROX_PERCENTILE_SKETCH(DISTINCT f3) FROM ApproxAggregateTest");
+            fail();
+        } catch (SQLException e) {
+            //期望的
+        }
+    }
+
+    @Test
+    public void sketchMemory() throws Exception {
+        //很少的值只需要很少的内存
+        TDigest digest = new TDigest();
+        HyperLogLog hyperLogLog = new HyperLogLog();
+        for (int i = 0; i < 3; i++) {
+            digest.add(i);
+            hyperLogLog.add(ValueInt.get(i));
+        }
+        assertTrue(digest.getMemory() < 1024);
+        assertTrue(hyperLogLog.getMemory() < 1024);
+
+        //分组很少，但每个分组的sketch很大, 超过MAX_MEMORY_GROUP_BY时要写临时文件
+        Connection conn = DriverManager.getConnection(
+                "jdbc:lealone:embedded:memory:ApproxAggregateTestMemory;MAX_MEMORY_GROUP_BY=40000", "sa", "");
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.executeUpdate("CREATE TABLE ApproxAggregateTestMemory (f1 int, f2 int)");
+            stmt.executeUpdate("INSERT INTO ApproxAggregateTestMemory SELECT (x - MOD(x, 5000)) / 5000, x "
+                    + "FROM SYSTEM_RANGE(0, 49999)");
+            SpillManager spillManager = ((Session) ((JdbcConnection) conn).getSession()).getDatabase()
+                    .getSpillManager();
+            long files = spillManager.getFileCountTotal();
+            ResultSet rs = stmt.executeQuery("SELECT f1, APPROX_COUNT_DISTINCT(f2), APPROX_PERCENTILE(f2, 0.5) "
+                    + "FROM ApproxAggregateTestMemory GROUP BY f1 ORDER BY f1");
+            int count = 0;
+            while (rs.next()) {
+                assertEquals(count, rs.getInt(1));
+                assertAbout(5000, rs.getLong(2), 0.03);
+                assertAbout(count * 5000 + 2500, rs.getDouble(3), 0.01);
+                count++;
+            }
+            rs.close();
+            assertEquals(10, count);
+            stmt.close();
+            assertTrue(spillManager.getFileCountTotal() > files);
+        } finally {
+            conn.close();
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.embedded;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.codefollower.lealone.engine.Csv;
+
+public class CsvParallelReadTest {
+
+    private static String createCsv(char separator, char escape) {
+        String s = String.valueOf(separator);
+        String d = "\"";
+        StringBuilder buff = new StringBuilder();
+        buff.append("A").append(s).append("B").append(s).append("C\r\n");
+        for (int i = 0; i < 20; i++) {
+            //字段中有分隔符
+            buff.append(i).append(s).append("\"x").append(s).append("y\"").append(s).append("z\n");
+            //两个连续的字段定界符
+            buff.append(i).append(s).append("\"say \"\"hi\"\"\"").append(s).append("\"\"\r\n");
+            //转义字符
+            buff.append(i).append(s).append(d).append("a").append(escape).append(d).append("b").append(escape)
+                    .append(escape).append(d).append(s).append("c\r\n");
+            //字段中有换行, 并且CR和LF可能在不同的块中
+            buff.append(i).append(s).append("\"line1\r\nline2\r\"").append(s).append("d\r\n");
+            buff.append(i).append(s).append(s).append("\r\n");
+            buff.append("\r\n");
+            buff.append(i).append(s).append(" \"spaced\" ").append(s).append("e\n");
+            //比一个块大的记录
+            buff.append(i).append(s);
+            for (int j = 0; j < 50; j++) {
+                buff.append("long").append(j);
+            }
+            buff.append(s).append(d);
+            for (int j = 0; j < 50; j++) {
+                buff.append(j).append(s).append("\"\"\r\n");
+            }
+            buff.append(d).append("\r\n");
+        }
+        //最后一行没有换行符
+        buff.append("last").append(s).append("\"end\"").append(s).append("x");
+        return buff.toString();
+    }
+
+    private static ArrayList<String> read(String fileName, char separator, char escape, int chunkSize)
+            throws Exception {
+        Csv csv = new Csv();
+        csv.setFieldSeparatorRead(separator);
+        csv.setEscapeCharacter(escape);
+        csv.setParallelChunkSize(chunkSize);
+        ResultSet rs = csv.read(fileName, null, "UTF-8");
+        int count = rs.getMetaData().getColumnCount();
+        assertEquals(3, count);
+        ArrayList<String> rows = new ArrayList<String>();
+        while (rs.next()) {
+            StringBuilder buff = new StringBuilder();
+            for (int i = 1; i <= count; i++) {
+                buff.append(rs.getString(i)).append('|');
+            }
+            rows.add(buff.toString());
+        }
+        rs.close();
+        return rows;
+    }
+
+    private static void run(char separator, char escape) throws Exception {
+        File file = File.createTempFile("CsvParallelReadTest", ".csv");
+        try {
+            Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+            writer.write(createCsv(separator, escape));
+            writer.close();
+            String fileName = file.getAbsolutePath();
+
+            ArrayList<String> expected = read(fileName, separator, escape, 0);
+            assertEquals(20 * 7 + 1, expected.size());
+            assertEquals("0|x" + separator + "y|z|", expected.get(0));
+            assertEquals("0|say \"hi\"||", expected.get(1));
+            assertEquals("0|a\"b" + (escape == '"' ? "\"" : "\\") + "|c|", expected.get(2));
+            assertEquals("0|line1\r\nline2\r|d|", expected.get(3));
+            assertEquals("last|end|x|", expected.get(expected.size() - 1));
+
+            //用很小的块, 这样块的边界会落在各种位置
+            for (int chunkSize = 1; chunkSize < 64; chunkSize++) {
+                assertEquals(expected, read(fileName, separator, escape, chunkSize));
+            }
+            assertEquals(expected, read(fileName, separator, escape, 1000));
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void comma() throws Exception {
+        run(',', '"');
+    }
+
+    @Test
+    public void escape() throws Exception {
+        run(',', '\\');
+    }
+
+    @Test
+    public void tab() throws Exception {
+        run('\t', '"');
+        run('\t', '\\');
+    }
+}
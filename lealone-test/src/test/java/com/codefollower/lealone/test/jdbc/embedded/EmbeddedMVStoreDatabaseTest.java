@@ -0,0 +1,158 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.codefollower.lealone.engine.Database;
+import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.hbase.util.HBaseUtils;
+import com.codefollower.lealone.jdbc.JdbcConnection;
+import com.codefollower.lealone.mvstore.engine.MVSession;
+
+public class EmbeddedMVStoreDatabaseTest {
+    private static final String URL = "jdbc:lealone:embedded:mvstore:mvdb;MVCC=TRUE";
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        System.setProperty("lealone.base.dir", HBaseUtils.getConfiguration().get("lealone.test.dir"));
+    }
+
+    private static Session getSession(Connection conn) {
+        return (Session) ((JdbcConnection) conn).getSession();
+    }
+
+    private static int getCount(Statement stmt, String tableName) throws Exception {
+        ResultSet rs = stmt.executeQuery("SELECT count(*) FROM " + tableName);
+        rs.next();
+        int count = rs.getInt(1);
+        rs.close();
+        return count;
+    }
+
+    private static long getLong(Statement stmt, String sql) throws Exception {
+        ResultSet rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        long value = rs.getLong(1);
+        rs.close();
+        return value;
+    }
+
+    @Test
+    public void run() throws Exception {
+        String tableName = "EmbeddedMVStoreDatabaseTest";
+        Connection conn = DriverManager.getConnection(URL, "sa", "");
+        try {
+            //MVStore表需要MVSession
+            assertTrue(getSession(conn) instanceof MVSession);
+
+            Statement stmt = conn.createStatement();
+            stmt.executeUpdate("DROP TABLE IF EXISTS " + tableName);
+            stmt.executeUpdate("CREATE TABLE " + tableName + " (f1 int primary key, f2 long) ENGINE MVSTORE");
+            stmt.executeUpdate("INSERT INTO " + tableName + "(f1, f2) VALUES(1, 2), (2, 3), (3, 4)");
+            assertEquals(3, getCount(stmt, tableName));
+
+            conn.setAutoCommit(false);
+            stmt.executeUpdate("DELETE FROM " + tableName + " WHERE f1 = 1");
+            assertEquals(2, getCount(stmt, tableName));
+            conn.rollback();
+            assertEquals(3, getCount(stmt, tableName));
+            stmt.executeUpdate("UPDATE " + tableName + " SET f2 = f2 + 1 WHERE f1 = 2");
+
+            //提交之前其他session看不到修改, 提交之后不能再用之前的查询结果
+            Connection conn2 = DriverManager.getConnection(URL, "sa", "");
+            Statement stmt2 = conn2.createStatement();
+            String sql = "SELECT f2 FROM " + tableName + " WHERE f1 = 2";
+            assertEquals(3, getLong(stmt2, sql));
+            conn.commit();
+            conn.setAutoCommit(true);
+            assertEquals(4, getLong(stmt2, sql));
+            assertEquals(4, getLong(stmt, sql));
+            stmt2.close();
+            conn2.close();
+
+            stmt.executeUpdate("DROP TABLE " + tableName);
+            stmt.close();
+        } finally {
+            conn.close();
+        }
+    }
+
+    //数据库被锁住时, 查询是否还能执行
+    private static boolean canReadWhileDatabaseIsLocked(String url) throws Exception {
+        String tableName = "EmbeddedMVStoreDatabaseTestReads";
+        Connection conn = DriverManager.getConnection(url, "sa", "");
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.executeUpdate("DROP TABLE IF EXISTS " + tableName);
+            stmt.executeUpdate("CREATE TABLE " + tableName + " (id int primary key, name varchar) ENGINE MVSTORE");
+            stmt.executeUpdate("INSERT INTO " + tableName + " VALUES(1, 'a'), (2, 'b')");
+            final PreparedStatement ps = conn.prepareStatement("SELECT name FROM " + tableName + " WHERE id = ?");
+            final String[] result = new String[1];
+            Thread reader = new Thread() {
+                public void run() {
+                    try {
+                        ps.setInt(1, 2);
+                        ResultSet rs = ps.executeQuery();
+                        rs.next();
+                        result[0] = rs.getString(1);
+                        rs.close();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            Database db = getSession(conn).getDatabase();
+            boolean done;
+            synchronized (db) {
+                reader.start();
+                reader.join(2000);
+                done = !reader.isAlive();
+            }
+            reader.join();
+            assertEquals("b", result[0]);
+            ps.close();
+            stmt.executeUpdate("DROP TABLE " + tableName);
+            stmt.close();
+            return done;
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void concurrentReads() throws Exception {
+        //只读MVStore表的查询不需要等待数据库的锁
+        assertTrue(canReadWhileDatabaseIsLocked("jdbc:lealone:embedded:mvstore:mvdb_reads;MVCC=TRUE;CONCURRENT_READS=TRUE"));
+        //默认不打开
+        assertFalse(canReadWhileDatabaseIsLocked("jdbc:lealone:embedded:mvstore:mvdb_noreads;MVCC=TRUE"));
+    }
+}
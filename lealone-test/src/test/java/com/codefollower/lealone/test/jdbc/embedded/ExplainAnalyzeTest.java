@@ -0,0 +1,99 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.codefollower.lealone.test.jdbc.TestBase;
+
+public class ExplainAnalyzeTest extends TestBase {
+    protected static String url = "jdbc:lealone:embedded:memory:ExplainAnalyzeTest";
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        conn = DriverManager.getConnection(url, "sa", "");
+        stmt = conn.createStatement();
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS ExplainAnalyzeTestA (id int primary key, v int)");
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS ExplainAnalyzeTestB (aid int, w int)");
+        stmt.executeUpdate("CREATE INDEX IF NOT EXISTS ExplainAnalyzeTestB_aid ON ExplainAnalyzeTestB(aid)");
+        stmt.executeUpdate("INSERT INTO ExplainAnalyzeTestA SELECT x, x * 2 FROM SYSTEM_RANGE(1, 10)");
+        //A的每一行在B中有两行
+        stmt.executeUpdate("INSERT INTO ExplainAnalyzeTestB SELECT MOD(x, 10) + 1, x FROM SYSTEM_RANGE(1, 20)");
+        stmt.executeUpdate("ANALYZE");
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        stmt.executeUpdate("DROP TABLE ExplainAnalyzeTestA");
+        stmt.executeUpdate("DROP TABLE ExplainAnalyzeTestB");
+        stmt.close();
+        conn.close();
+    }
+
+    private static String getPlan(PreparedStatement ps) throws Exception {
+        ResultSet rs = ps.executeQuery();
+        assertTrue(rs.next());
+        String plan = rs.getString(1);
+        rs.close();
+        return plan;
+    }
+
+    //返回表名之后的第一个统计注释
+    private static String getFigures(String plan, String tableName) {
+        int start = plan.indexOf("/* lookups: ", plan.indexOf("." + tableName.toUpperCase()));
+        assertTrue(plan, start >= 0);
+        return plan.substring(start, plan.indexOf(", estimated cost", start));
+    }
+
+    @Test
+    public void singleTable() throws Exception {
+        PreparedStatement ps = conn.prepareStatement("EXPLAIN ANALYZE SELECT * FROM ExplainAnalyzeTestA WHERE v > ?");
+        ps.setInt(1, 14);
+        //重复执行时每次只显示本次执行的数字, WHERE条件由Select计算, 所以表返回了全部10行
+        for (int i = 0; i < 3; i++) {
+            String plan = getPlan(ps);
+            assertEquals(plan, "/* lookups: 1, scanCount: 11, rows: 10", getFigures(plan, "ExplainAnalyzeTestA"));
+        }
+        ps.close();
+    }
+
+    @Test
+    public void join() throws Exception {
+        PreparedStatement ps = conn.prepareStatement("EXPLAIN ANALYZE SELECT * FROM ExplainAnalyzeTestA a "
+                + "JOIN ExplainAnalyzeTestB b ON a.id = b.aid WHERE a.id <= ?");
+        ps.setInt(1, 4);
+        for (int i = 0; i < 3; i++) {
+            String plan = getPlan(ps);
+            //A的一次查找得到4行, 每一行在B中查找一次, 每次得到2行, 两个表都返回了连接后的8行
+            assertEquals(plan, "/* lookups: 1, scanCount: 5, rows: 8", getFigures(plan, "ExplainAnalyzeTestA"));
+            assertEquals(plan, "/* lookups: 4, scanCount: 12, rows: 8", getFigures(plan, "ExplainAnalyzeTestB"));
+        }
+        ps.close();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.Test;
+
+import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.jdbc.JdbcConnection;
+import com.codefollower.lealone.result.SpillManager;
+
+public class GroupBySpillTest {
+    private static final int GROUPS = 5000;
+
+    private long run(boolean spillToDisk) throws Exception {
+        //内存数据库, GROUP BY最多只能用10K内存
+        Connection conn = DriverManager.getConnection("jdbc:lealone:embedded:memory:GroupBySpillTest"
+                + spillToDisk + ";SPILL_TO_DISK=" + spillToDisk + ";MAX_MEMORY_GROUP_BY=10000", "sa", "");
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.executeUpdate("CREATE TABLE GroupBySpillTest (f1 int, f2 int)");
+            stmt.executeUpdate("INSERT INTO GroupBySpillTest SELECT MOD(x, " + GROUPS + "), x FROM SYSTEM_RANGE(1, "
+                    + GROUPS * 3 + ")");
+
+            ResultSet rs = stmt.executeQuery("SELECT f1, COUNT(*), SUM(f2) FROM GroupBySpillTest GROUP BY f1");
+            int count = 0;
+            while (rs.next()) {
+                int f1 = rs.getInt(1);
+                assertEquals(3, rs.getInt(2));
+                //f2 = f1 + k * GROUPS (k = 0, 1, 2), f1 = 0时k = 1, 2, 3
+                long sum = f1 == 0 ? 6L * GROUPS : 3L * f1 + 3L * GROUPS;
+                assertEquals(sum, rs.getLong(3));
+                count++;
+            }
+            rs.close();
+            assertEquals(GROUPS, count);
+            stmt.executeUpdate("DROP TABLE GroupBySpillTest");
+            stmt.close();
+
+            SpillManager spillManager = ((Session) ((JdbcConnection) conn).getSession()).getDatabase()
+                    .getSpillManager();
+            return spillManager.getFileCountTotal();
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void spillToDisk() throws Exception {
+        assertTrue(run(true) > 0);
+    }
+
+    @Test
+    public void keepInMemory() throws Exception {
+        //SPILL_TO_DISK=FALSE时不写临时文件，所有分组都在内存中
+        assertEquals(0, run(false));
+    }
+}
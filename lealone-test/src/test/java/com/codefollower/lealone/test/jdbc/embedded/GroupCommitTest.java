@@ -0,0 +1,234 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.codefollower.lealone.hbase.util.HBaseUtils;
+import com.codefollower.lealone.store.fs.FileBase;
+import com.codefollower.lealone.store.fs.FilePath;
+import com.codefollower.lealone.store.fs.FilePathWrapper;
+
+public class GroupCommitTest {
+    private static final String URL = "jdbc:lealone:embedded:regular:syncCount:GroupCommitTest;GROUP_COMMIT=TRUE";
+
+    //每次sync需要的时间
+    private static final int SYNC_MILLIS = 200;
+
+    private static Connection conn;
+    private static Statement stmt;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        System.setProperty("lealone.base.dir", HBaseUtils.getConfiguration().get("lealone.test.dir"));
+        FilePath.register(new SyncCountFilePath());
+        conn = DriverManager.getConnection(URL, "sa", "");
+        stmt = conn.createStatement();
+        stmt.executeUpdate("DROP TABLE IF EXISTS GroupCommitTest");
+        stmt.executeUpdate("CREATE TABLE GroupCommitTest (id int primary key, name varchar)");
+        stmt.executeUpdate("CREATE ALIAS IF NOT EXISTS GroupCommitTest_insert FOR \""
+                + GroupCommitTest.class.getName() + ".insert\"");
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        SyncCountFile.fail = false;
+        stmt.executeUpdate("DROP ALIAS GroupCommitTest_insert");
+        stmt.executeUpdate("DROP TABLE GroupCommitTest");
+        stmt.close();
+        conn.close();
+    }
+
+    /**
+     * 在查询中调用的函数，使用当前session插入一行。
+     */
+    public static int insert(Connection conn, int id) throws SQLException {
+        Statement stmt = conn.createStatement();
+        try {
+            return stmt.executeUpdate("INSERT INTO GroupCommitTest VALUES(" + id + ", 'f')");
+        } finally {
+            stmt.close();
+        }
+    }
+
+    @Test
+    public void commitWaitsForSync() throws Exception {
+        //sync结束后提交才返回
+        int syncs = SyncCountFile.syncs.get();
+        stmt.executeUpdate("INSERT INTO GroupCommitTest VALUES(1, 'a')");
+        assertTrue(SyncCountFile.syncs.get() > syncs);
+
+        //查询的自动提交也一样
+        syncs = SyncCountFile.syncs.get();
+        ResultSet rs = stmt.executeQuery("SELECT GroupCommitTest_insert(2)");
+        assertTrue(rs.next());
+        rs.close();
+        assertTrue(SyncCountFile.syncs.get() > syncs);
+    }
+
+    @Test
+    public void concurrentCommitsShareSync() throws Exception {
+        final int count = 10;
+        final CountDownLatch start = new CountDownLatch(1);
+        final AtomicInteger done = new AtomicInteger();
+        Thread[] threads = new Thread[count];
+        for (int i = 0; i < count; i++) {
+            final int id = 100 + i;
+            final Connection c = DriverManager.getConnection(URL, "sa", "");
+            threads[i] = new Thread() {
+                public void run() {
+                    try {
+                        Statement s = c.createStatement();
+                        start.await();
+                        s.executeUpdate("INSERT INTO GroupCommitTest VALUES(" + id + ", 'b')");
+                        s.close();
+                        c.close();
+                        done.incrementAndGet();
+                    } catch (Exception e) {
+                        e.printStackTrace();
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        int syncs = SyncCountFile.syncs.get();
+        start.countDown();
+        for (Thread t : threads) {
+            t.join();
+        }
+        assertEquals(count, done.get());
+        //第一个提交单独sync，其他提交在它sync的时候到达，由下一次sync一起完成
+        int used = SyncCountFile.syncs.get() - syncs;
+        assertTrue("syncs: " + used, used > 0 && used < count / 2);
+    }
+
+    @Test
+    public void syncFailure() throws Exception {
+        //sync失败时只有这次sync的提交失败，之后的提交还能sync
+        SyncCountFile.fail = true;
+        try {
+            stmt.executeUpdate("INSERT INTO GroupCommitTest VALUES(200, 'c')");
+            Assert.fail("not throw SQLException");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage(), e.getMessage().contains("sync failed"));
+        } finally {
+            SyncCountFile.fail = false;
+        }
+        int syncs = SyncCountFile.syncs.get();
+        stmt.executeUpdate("INSERT INTO GroupCommitTest VALUES(201, 'c')");
+        assertTrue(SyncCountFile.syncs.get() > syncs);
+    }
+
+    /**
+     * 每次sync都比较慢并且记录sync次数的文件系统。
+     */
+    public static class SyncCountFilePath extends FilePathWrapper {
+
+        public FileChannel open(String mode) throws IOException {
+            return new SyncCountFile(super.open(mode));
+        }
+
+        public String getScheme() {
+            return "syncCount";
+        }
+    }
+
+    static class SyncCountFile extends FileBase {
+
+        /**
+         * 已经完成的sync次数
+         */
+        static final AtomicInteger syncs = new AtomicInteger();
+
+        static volatile boolean fail;
+
+        private final FileChannel channel;
+
+        SyncCountFile(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        public void implCloseChannel() throws IOException {
+            channel.close();
+        }
+
+        public long position() throws IOException {
+            return channel.position();
+        }
+
+        public long size() throws IOException {
+            return channel.size();
+        }
+
+        public int read(ByteBuffer dst) throws IOException {
+            return channel.read(dst);
+        }
+
+        public FileChannel position(long pos) throws IOException {
+            channel.position(pos);
+            return this;
+        }
+
+        public FileChannel truncate(long newLength) throws IOException {
+            channel.truncate(newLength);
+            return this;
+        }
+
+        public void force(boolean metaData) throws IOException {
+            try {
+                Thread.sleep(SYNC_MILLIS);
+            } catch (InterruptedException e) {
+                // ignore
+            }
+            if (fail) {
+                //不是IOException, 所以文件不会被关闭
+                throw new IllegalStateException("sync failed");
+            }
+            channel.force(metaData);
+            syncs.incrementAndGet();
+        }
+
+        public int write(ByteBuffer src) throws IOException {
+            return channel.write(src);
+        }
+
+        public synchronized FileLock tryLock(long position, long size, boolean shared) throws IOException {
+            return channel.tryLock(position, size, shared);
+        }
+    }
+}
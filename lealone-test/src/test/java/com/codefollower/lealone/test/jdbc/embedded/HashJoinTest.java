@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.codefollower.lealone.test.jdbc.TestBase;
+
+public class HashJoinTest extends TestBase {
+    protected static String url = "jdbc:lealone:embedded:memory:HashJoinTest";
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        conn = DriverManager.getConnection(url, "sa", "");
+        stmt = conn.createStatement();
+        //两个表都没有索引
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS HashJoinTestA (id int, v int)");
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS HashJoinTestB (aid int, w int)");
+        stmt.executeUpdate("INSERT INTO HashJoinTestA SELECT x, x * 2 FROM SYSTEM_RANGE(1, 1000)");
+        stmt.executeUpdate("INSERT INTO HashJoinTestB SELECT MOD(x, 1500), x FROM SYSTEM_RANGE(1, 2000)");
+        stmt.executeUpdate("INSERT INTO HashJoinTestB VALUES(NULL, 0)");
+        stmt.executeUpdate("ANALYZE");
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        stmt.executeUpdate("SET MAX_MEMORY_ROWS 10000");
+        stmt.executeUpdate("DROP TABLE HashJoinTestA");
+        stmt.executeUpdate("DROP TABLE HashJoinTestB");
+        stmt.close();
+        conn.close();
+    }
+
+    private static long[] getExpected() {
+        long count = 0, sum = 0;
+        for (int x = 1; x <= 2000; x++) {
+            int aid = x % 1500;
+            if (aid >= 1 && aid <= 1000) {
+                count++;
+                sum += aid * 2 + x;
+            }
+        }
+        return new long[] { count, sum };
+    }
+
+    private String getPlan() throws Exception {
+        rs = stmt.executeQuery("EXPLAIN " + sql);
+        rs.next();
+        String plan = rs.getString(1);
+        closeResultSet();
+        return plan;
+    }
+
+    private void checkResult() throws Exception {
+        long[] expected = getExpected();
+        assertEquals(expected[0], getLongValue(1));
+        assertEquals(expected[1], getLongValue(2, true));
+    }
+
+    @Test
+    public void hashJoin() throws Exception {
+        stmt.executeUpdate("SET MAX_MEMORY_ROWS 10000");
+        sql = "SELECT COUNT(*), SUM(a.v + b.w) FROM HashJoinTestA a JOIN HashJoinTestB b ON a.id = b.aid";
+        assertTrue(getPlan().contains(".hashJoin("));
+        checkResult();
+
+        //外表在右边时也一样
+        sql = "SELECT COUNT(*), SUM(a.v + b.w) FROM HashJoinTestB b JOIN HashJoinTestA a ON b.aid = a.id";
+        assertTrue(getPlan().contains(".hashJoin("));
+        checkResult();
+
+        //重复执行时重新建立hash表
+        stmt.executeUpdate("INSERT INTO HashJoinTestA VALUES(2000, 0)");
+        sql = "SELECT COUNT(*) FROM HashJoinTestA a JOIN HashJoinTestB b ON a.id = b.aid";
+        assertEquals(getExpected()[0], getLongValue(1, true));
+        stmt.executeUpdate("DELETE FROM HashJoinTestA WHERE id = 2000");
+    }
+
+    @Test
+    public void fallbackToScan() throws Exception {
+        //内表的行数超过MAX_MEMORY_ROWS时不建hash表，代价与表扫描相同，所以不选hash join
+        stmt.executeUpdate("SET MAX_MEMORY_ROWS 100");
+        sql = "SELECT COUNT(*), SUM(a.v + b.w) FROM HashJoinTestA a JOIN HashJoinTestB b ON a.id = b.aid";
+        assertFalse(getPlan().contains(".hashJoin("));
+        checkResult();
+        stmt.executeUpdate("SET MAX_MEMORY_ROWS 10000");
+    }
+
+    @Test
+    public void errorDuringJoin() throws Exception {
+        stmt.executeUpdate("SET MAX_MEMORY_ROWS 10000");
+        sql = "SELECT a.id / (b.w - 1000) FROM HashJoinTestA a JOIN HashJoinTestB b ON a.id = b.aid";
+        assertTrue(getPlan().contains(".hashJoin("));
+        try {
+            stmt.executeQuery(sql);
+            Assert.fail("not throw SQLException");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage().contains("Division by zero"));
+        }
+        sql = "SELECT COUNT(*), SUM(a.v + b.w) FROM HashJoinTestA a JOIN HashJoinTestB b ON a.id = b.aid";
+        checkResult();
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.codefollower.lealone.test.jdbc.TestBase;
+
+public class LinkedTableTest extends TestBase {
+    private static final String TARGET_URL = "jdbc:lealone:embedded:memory:LinkedTableTestTarget";
+    private static Connection target;
+    private static Statement targetStmt;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        //目标数据库
+        target = DriverManager.getConnection(TARGET_URL, "sa", "");
+        targetStmt = target.createStatement();
+        targetStmt.executeUpdate("CREATE TABLE LinkedTableTest (id int primary key, v int)");
+        targetStmt.executeUpdate("CREATE TABLE LinkedTableTestNoKey (id int, v int)");
+
+        //每批10条记录, 全表扫描分成4个区间并行查询
+        conn = DriverManager.getConnection("jdbc:lealone:embedded:memory:LinkedTableTest"
+                + ";LINK_BATCH_SIZE=10;LINK_PARALLEL_SCAN=4", "sa", "");
+        stmt = conn.createStatement();
+        stmt.executeUpdate("CREATE LINKED TABLE LinkedTableTest('" + com.codefollower.lealone.Driver.class.getName()
+                + "', '" + TARGET_URL + "', 'sa', '', 'LINKEDTABLETEST') EMIT UPDATES");
+        stmt.executeUpdate("CREATE LINKED TABLE LinkedTableTestNoKey('"
+                + com.codefollower.lealone.Driver.class.getName() + "', '" + TARGET_URL
+                + "', 'sa', '', 'LINKEDTABLETESTNOKEY')");
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        stmt.executeUpdate("DROP TABLE IF EXISTS LinkedTableTest");
+        stmt.executeUpdate("DROP TABLE IF EXISTS LinkedTableTestNoKey");
+        stmt.close();
+        conn.close();
+        targetStmt.executeUpdate("DROP TABLE IF EXISTS LinkedTableTest");
+        targetStmt.executeUpdate("DROP TABLE IF EXISTS LinkedTableTestNoKey");
+        targetStmt.close();
+        target.close();
+    }
+
+    private static long targetCount(String where) throws Exception {
+        ResultSet rs = targetStmt.executeQuery("SELECT COUNT(*) FROM LinkedTableTestNoKey " + where);
+        assertTrue(rs.next());
+        long count = rs.getLong(1);
+        rs.close();
+        return count;
+    }
+
+    @Test
+    public void batch() throws Exception {
+        stmt.executeUpdate("DELETE FROM LinkedTableTest");
+        //25条记录分3批发送, 语句结束时发送最后一批
+        assertEquals(25, stmt.executeUpdate("INSERT INTO LinkedTableTest SELECT x, x * 10 FROM SYSTEM_RANGE(1, 25)"));
+        rs = targetStmt.executeQuery("SELECT COUNT(*), SUM(v) FROM LinkedTableTest");
+        assertTrue(rs.next());
+        assertEquals(25, rs.getInt(1));
+        assertEquals(3250, rs.getInt(2));
+        closeResultSet();
+
+        //EMIT UPDATES时更新也是分批发送的
+        assertEquals(25, stmt.executeUpdate("UPDATE LinkedTableTest SET v = v + 1"));
+        rs = targetStmt.executeQuery("SELECT SUM(v) FROM LinkedTableTest");
+        assertTrue(rs.next());
+        assertEquals(3275, rs.getInt(1));
+        closeResultSet();
+
+        //同一个语句中读之前先发送还没发送的记录
+        stmt.executeUpdate("INSERT INTO LinkedTableTest VALUES(26, 0)");
+        sql = "SELECT COUNT(*) FROM LinkedTableTest";
+        assertEquals(26, getLongValue(1, true));
+    }
+
+    @Test
+    public void rollback() throws Exception {
+        stmt.executeUpdate("DELETE FROM LinkedTableTestNoKey");
+        //目标表中已经有一条与要插入的记录相同的记录
+        targetStmt.executeUpdate("INSERT INTO LinkedTableTestNoKey VALUES(25, 0)");
+
+        //插入第30条记录时出错(参数不能转换成int), 前20条记录已经发送, 后9条还没有发送
+        StringBuilder buff = new StringBuilder("INSERT INTO LinkedTableTestNoKey VALUES");
+        for (int i = 1; i <= 40; i++) {
+            buff.append(i == 1 ? "" : ", ").append('(').append(i).append(", ").append(i == 30 ? "?" : "0")
+                    .append(')');
+        }
+        PreparedStatement ps = conn.prepareStatement(buff.toString());
+        ps.setString(1, "x");
+        try {
+            ps.executeUpdate();
+            fail();
+        } catch (SQLException e) {
+            //期望的
+        }
+        ps.close();
+        //已经发送的记录被删除, 没有发送的记录被丢弃, 原有的记录还在
+        assertEquals(1, targetCount(""));
+        assertEquals(1, targetCount("WHERE id = 25"));
+
+        //回滚之后, 下一个语句不会发送被丢弃的记录
+        stmt.executeUpdate("INSERT INTO LinkedTableTestNoKey VALUES(100, 100)");
+        assertEquals(2, targetCount(""));
+
+        //事务回滚
+        conn.setAutoCommit(false);
+        try {
+            stmt.executeUpdate("INSERT INTO LinkedTableTestNoKey SELECT x, 0 FROM SYSTEM_RANGE(1, 5)");
+            assertEquals(7, targetCount(""));
+            conn.rollback();
+            assertEquals(2, targetCount(""));
+            assertEquals(1, targetCount("WHERE id = 25"));
+        } finally {
+            conn.setAutoCommit(true);
+        }
+    }
+
+    @Test
+    public void batchFailure() throws Exception {
+        stmt.executeUpdate("DELETE FROM LinkedTableTest");
+        targetStmt.executeUpdate("INSERT INTO LinkedTableTest VALUES(5, 50)");
+
+        //目标数据库拒绝了这一批中的(5, 50), 回滚时不能删除目标表中原有的相同记录
+        try {
+            stmt.executeUpdate("INSERT INTO LinkedTableTest VALUES(1, 10), (5, 50), (6, 60)");
+            fail();
+        } catch (SQLException e) {
+            //期望的
+        }
+        rs = targetStmt.executeQuery("SELECT id, v FROM LinkedTableTest ORDER BY id");
+        assertTrue(rs.next());
+        assertEquals(5, rs.getInt(1));
+        assertEquals(50, rs.getInt(2));
+        assertTrue(!rs.next());
+        closeResultSet();
+
+        //批量更新时也一样
+        stmt.executeUpdate("INSERT INTO LinkedTableTest VALUES(7, 70), (8, 80)");
+        try {
+            stmt.executeUpdate("UPDATE LinkedTableTest SET id = id - 2 WHERE id > 5");
+            fail();
+        } catch (SQLException e) {
+            //期望的
+        }
+        rs = targetStmt.executeQuery("SELECT COUNT(*), SUM(id), SUM(v) FROM LinkedTableTest");
+        assertTrue(rs.next());
+        assertEquals(3, rs.getInt(1));
+        assertEquals(20, rs.getInt(2));
+        assertEquals(200, rs.getInt(3));
+        closeResultSet();
+    }
+
+    @Test
+    public void parallelScan() throws Exception {
+        stmt.executeUpdate("DELETE FROM LinkedTableTest");
+        //主键的范围足够大时才会分成多个区间
+        stmt.executeUpdate("INSERT INTO LinkedTableTest SELECT x * 10, x FROM SYSTEM_RANGE(1, 1000)");
+
+        sql = "SELECT COUNT(*), SUM(v), MIN(id), MAX(id) FROM (SELECT * FROM LinkedTableTest)";
+        rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        assertEquals(1000, rs.getLong(1));
+        assertEquals(500500, rs.getLong(2));
+        assertEquals(10, rs.getLong(3));
+        assertEquals(10000, rs.getLong(4));
+        closeResultSet();
+
+        //没有读完所有区间就结束的查询
+        for (int i = 0; i < 20; i++) {
+            rs = stmt.executeQuery("SELECT * FROM LinkedTableTest LIMIT 3");
+            int count = 0;
+            while (rs.next()) {
+                count++;
+            }
+            closeResultSet();
+            assertEquals(3, count);
+        }
+
+        //嵌套循环连接时每次都重新扫描
+        sql = "SELECT COUNT(*) FROM SYSTEM_RANGE(1, 5) r, LinkedTableTest t WHERE t.v = r.x * 100";
+        assertEquals(5, getLongValue(1, true));
+
+        sql = "SELECT COUNT(*) FROM LinkedTableTest";
+        assertEquals(1000, getLongValue(1, true));
+    }
+}
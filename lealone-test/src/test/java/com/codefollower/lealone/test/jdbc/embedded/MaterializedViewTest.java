@@ -0,0 +1,277 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+
+import org.junit.Test;
+
+import com.codefollower.lealone.hbase.util.HBaseUtils;
+
+public class MaterializedViewTest {
+    private static final String URL = "jdbc:lealone:embedded:memory:MaterializedViewTest";
+
+    private static ArrayList<String> query(Statement stmt, String sql) throws Exception {
+        ArrayList<String> rows = new ArrayList<String>();
+        ResultSet rs = stmt.executeQuery(sql);
+        int count = rs.getMetaData().getColumnCount();
+        while (rs.next()) {
+            StringBuilder buff = new StringBuilder();
+            for (int i = 1; i <= count; i++) {
+                buff.append(rs.getString(i)).append(',');
+            }
+            rows.add(buff.toString());
+        }
+        rs.close();
+        Collections.sort(rows);
+        return rows;
+    }
+
+    //物化视图中的记录必须跟直接执行视图的查询得到的记录一样
+    private static void check(Statement stmt, String view, String select) throws Exception {
+        assertEquals(query(stmt, select), query(stmt, "SELECT * FROM " + view));
+    }
+
+    private static void modify(Statement stmt, String view, String select) throws Exception {
+        stmt.executeUpdate("INSERT INTO MaterializedViewTestA VALUES(1, 'a1'), (2, 'a2'), (3, 'a3')");
+        check(stmt, view, select);
+        stmt.executeUpdate("INSERT INTO MaterializedViewTestB VALUES(1, 10), (1, 20), (2, 30), (4, 40)");
+        check(stmt, view, select);
+        stmt.executeUpdate("INSERT INTO MaterializedViewTestB VALUES(3, 50)");
+        check(stmt, view, select);
+
+        //改变分组或连接的列
+        stmt.executeUpdate("UPDATE MaterializedViewTestB SET aid = 3 WHERE v = 20");
+        check(stmt, view, select);
+        stmt.executeUpdate("UPDATE MaterializedViewTestB SET v = v + 1");
+        check(stmt, view, select);
+        stmt.executeUpdate("UPDATE MaterializedViewTestA SET id = 4 WHERE id = 2");
+        check(stmt, view, select);
+        stmt.executeUpdate("UPDATE MaterializedViewTestA SET name = 'x' WHERE id = 1");
+        check(stmt, view, select);
+
+        stmt.executeUpdate("DELETE FROM MaterializedViewTestB WHERE aid = 3");
+        check(stmt, view, select);
+        stmt.executeUpdate("DELETE FROM MaterializedViewTestA WHERE id = 1");
+        check(stmt, view, select);
+        stmt.executeUpdate("DELETE FROM MaterializedViewTestB");
+        check(stmt, view, select);
+    }
+
+    private static void run(String select) throws Exception {
+        Connection conn = DriverManager.getConnection(URL, "sa", "");
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.executeUpdate("DROP TABLE IF EXISTS MaterializedViewTestA CASCADE");
+            stmt.executeUpdate("DROP TABLE IF EXISTS MaterializedViewTestB CASCADE");
+            stmt.executeUpdate("CREATE TABLE MaterializedViewTestA (id int, name varchar)");
+            stmt.executeUpdate("CREATE TABLE MaterializedViewTestB (aid int, v int)");
+            stmt.executeUpdate("CREATE MATERIALIZED VIEW MaterializedViewTestV REFRESH INCREMENTAL AS " + select);
+            modify(stmt, "MaterializedViewTestV", select);
+            stmt.executeUpdate("DROP MATERIALIZED VIEW MaterializedViewTestV");
+            stmt.close();
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void aggregate() throws Exception {
+        run("SELECT aid, COUNT(*) c, SUM(v) s FROM MaterializedViewTestB GROUP BY aid");
+    }
+
+    @Test
+    public void innerJoin() throws Exception {
+        run("SELECT a.id, a.name, b.v FROM MaterializedViewTestA a JOIN MaterializedViewTestB b ON a.id = b.aid");
+        run("SELECT a.name, SUM(b.v) s FROM MaterializedViewTestA a, MaterializedViewTestB b "
+                + "WHERE a.id = b.aid GROUP BY a.name");
+    }
+
+    @Test
+    public void outerJoin() throws Exception {
+        //右边表的记录变化时, 左边表中没有匹配的记录对应的是NULL, 所以不能用右边表的列作为key
+        run("SELECT a.id, a.name, b.v FROM MaterializedViewTestA a LEFT JOIN MaterializedViewTestB b ON a.id = b.aid");
+        run("SELECT b.v, a.name FROM MaterializedViewTestB b LEFT JOIN MaterializedViewTestA a ON a.id = b.aid");
+        run("SELECT b.v, a.id FROM MaterializedViewTestA a RIGHT JOIN MaterializedViewTestB b ON a.id = b.aid");
+        run("SELECT a.id, COUNT(b.v) c FROM MaterializedViewTestA a LEFT JOIN MaterializedViewTestB b "
+                + "ON a.id = b.aid GROUP BY a.id");
+    }
+
+    @Test
+    public void subquery() throws Exception {
+        //子查询中的表的记录变化时, 任何key对应的记录都可能变化, 所以要全部刷新
+        run("SELECT id, (SELECT COUNT(*) FROM MaterializedViewTestA) c FROM MaterializedViewTestA");
+        run("SELECT aid, v FROM MaterializedViewTestB WHERE v > (SELECT AVG(v) FROM MaterializedViewTestB)");
+        run("SELECT t1.aid, t1.v FROM MaterializedViewTestB t1 "
+                + "WHERE EXISTS(SELECT 1 FROM MaterializedViewTestB t2 WHERE t2.aid = t1.aid + 1)");
+        run("SELECT id, name FROM MaterializedViewTestA WHERE id IN(SELECT aid FROM MaterializedViewTestB)");
+    }
+
+    @Test
+    public void rollback() throws Exception {
+        String select = "SELECT aid, SUM(v) s FROM MaterializedViewTestC GROUP BY aid";
+        Connection conn = DriverManager.getConnection(URL, "sa", "");
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.executeUpdate("CREATE TABLE MaterializedViewTestC (aid int, v int)");
+            stmt.executeUpdate("INSERT INTO MaterializedViewTestC VALUES(1, 10), (2, 20)");
+            stmt.executeUpdate("CREATE MATERIALIZED VIEW MaterializedViewTestRollback REFRESH INCREMENTAL AS " + select);
+            check(stmt, "MaterializedViewTestRollback", select);
+
+            conn.setAutoCommit(false);
+            stmt.executeUpdate("INSERT INTO MaterializedViewTestC VALUES(1, 5), (3, 30)");
+            stmt.executeUpdate("UPDATE MaterializedViewTestC SET aid = 3 WHERE aid = 2");
+            stmt.executeUpdate("DELETE FROM MaterializedViewTestC WHERE v = 10");
+            check(stmt, "MaterializedViewTestRollback", select);
+            conn.rollback();
+            check(stmt, "MaterializedViewTestRollback", select);
+            assertEquals(2, query(stmt, "SELECT * FROM MaterializedViewTestRollback").size());
+
+            stmt.executeUpdate("INSERT INTO MaterializedViewTestC VALUES(4, 40)");
+            conn.commit();
+            conn.setAutoCommit(true);
+            check(stmt, "MaterializedViewTestRollback", select);
+
+            //TRUNCATE TABLE不会按行记录变化, 所以要重新计算整个视图
+            stmt.executeUpdate("TRUNCATE TABLE MaterializedViewTestC");
+            check(stmt, "MaterializedViewTestRollback", select);
+            assertEquals(0, query(stmt, "SELECT * FROM MaterializedViewTestRollback").size());
+            stmt.executeUpdate("DROP TABLE MaterializedViewTestC CASCADE");
+            stmt.close();
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void refreshAndDrop() throws Exception {
+        String select = "SELECT aid, COUNT(*) c FROM MaterializedViewTestD GROUP BY aid";
+        Connection conn = DriverManager.getConnection(URL, "sa", "");
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.executeUpdate("CREATE TABLE MaterializedViewTestD (aid int, v int)");
+            stmt.executeUpdate("INSERT INTO MaterializedViewTestD VALUES(1, 10), (2, 20)");
+            stmt.executeUpdate("CREATE MATERIALIZED VIEW MaterializedViewTestDemand AS " + select);
+            check(stmt, "MaterializedViewTestDemand", select);
+
+            //REFRESH ON DEMAND的视图只在REFRESH时改变
+            stmt.executeUpdate("INSERT INTO MaterializedViewTestD VALUES(1, 30), (3, 40)");
+            assertEquals(2, query(stmt, "SELECT * FROM MaterializedViewTestDemand").size());
+            stmt.executeUpdate("REFRESH MATERIALIZED VIEW MaterializedViewTestDemand");
+            check(stmt, "MaterializedViewTestDemand", select);
+            stmt.executeUpdate("TRUNCATE TABLE MaterializedViewTestD");
+            assertEquals(3, query(stmt, "SELECT * FROM MaterializedViewTestDemand").size());
+            stmt.executeUpdate("REFRESH MATERIALIZED VIEW MaterializedViewTestDemand");
+            check(stmt, "MaterializedViewTestDemand", select);
+
+            //删除视图时也删除存放记录的表, 所以可以用同样的名字再建一个视图
+            stmt.executeUpdate("DROP MATERIALIZED VIEW MaterializedViewTestDemand");
+            try {
+                stmt.executeQuery("SELECT * FROM MaterializedViewTestDemand");
+                fail("not throw SQLException");
+            } catch (SQLException e) {
+                assertTrue(e.getMessage().contains("not found"));
+            }
+            stmt.executeUpdate("INSERT INTO MaterializedViewTestD VALUES(5, 50)");
+            stmt.executeUpdate("CREATE MATERIALIZED VIEW MaterializedViewTestDemand AS " + select);
+            check(stmt, "MaterializedViewTestDemand", select);
+            stmt.executeUpdate("DROP VIEW MaterializedViewTestDemand");
+
+            //使用FORCE时, 查询无效也能建视图, 第一次REFRESH时才保存记录
+            select = "SELECT aid, SUM(v) s FROM MaterializedViewTestF GROUP BY aid";
+            try {
+                stmt.executeUpdate("CREATE MATERIALIZED VIEW MaterializedViewTestForce AS " + select);
+                fail("not throw SQLException");
+            } catch (SQLException e) {
+                assertTrue(e.getMessage().contains("not found"));
+            }
+            stmt.executeUpdate("CREATE FORCE MATERIALIZED VIEW MaterializedViewTestForce REFRESH INCREMENTAL AS "
+                    + select);
+            try {
+                stmt.executeQuery("SELECT * FROM MaterializedViewTestForce");
+                fail("not throw SQLException");
+            } catch (SQLException e) {
+                assertTrue(e.getMessage().contains("invalid"));
+            }
+            stmt.executeUpdate("CREATE TABLE MaterializedViewTestF (aid int, v int)");
+            stmt.executeUpdate("INSERT INTO MaterializedViewTestF VALUES(1, 10), (1, 20)");
+            stmt.executeUpdate("REFRESH MATERIALIZED VIEW MaterializedViewTestForce");
+            check(stmt, "MaterializedViewTestForce", select);
+            stmt.executeUpdate("INSERT INTO MaterializedViewTestF VALUES(2, 30)");
+            check(stmt, "MaterializedViewTestForce", select);
+            stmt.executeUpdate("DROP TABLE MaterializedViewTestF CASCADE");
+            stmt.executeUpdate("DROP TABLE MaterializedViewTestD");
+            stmt.close();
+        } finally {
+            conn.close();
+        }
+    }
+
+    @Test
+    public void reopen() throws Exception {
+        String select = "SELECT aid, SUM(v) s FROM MaterializedViewTestE GROUP BY aid";
+        System.setProperty("lealone.base.dir", HBaseUtils.getConfiguration().get("lealone.test.dir"));
+        String url = "jdbc:lealone:embedded:regular:MaterializedViewTest";
+        Connection conn = DriverManager.getConnection(url, "sa", "");
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("DROP TABLE IF EXISTS MaterializedViewTestE CASCADE");
+        stmt.executeUpdate("CREATE TABLE MaterializedViewTestE (aid int, v int)");
+        stmt.executeUpdate("INSERT INTO MaterializedViewTestE VALUES(1, 10), (2, 20), (1, 30)");
+        stmt.executeUpdate("CREATE MATERIALIZED VIEW MaterializedViewTestReopen REFRESH INCREMENTAL AS " + select);
+        //这个视图存放记录的表在视图之后才建
+        stmt.executeUpdate("DROP TABLE IF EXISTS MaterializedViewTestG CASCADE");
+        String select2 = "SELECT aid, COUNT(*) c FROM MaterializedViewTestG GROUP BY aid";
+        stmt.executeUpdate("CREATE FORCE MATERIALIZED VIEW MaterializedViewTestReopen2 REFRESH INCREMENTAL AS "
+                + select2);
+        stmt.executeUpdate("CREATE TABLE MaterializedViewTestG (aid int, v int)");
+        stmt.executeUpdate("INSERT INTO MaterializedViewTestG VALUES(1, 10), (1, 20)");
+        stmt.executeUpdate("REFRESH MATERIALIZED VIEW MaterializedViewTestReopen2");
+        stmt.close();
+        conn.close();
+
+        //重新打开数据库后视图中的记录还在, 并且还是增量刷新
+        conn = DriverManager.getConnection(url, "sa", "");
+        try {
+            stmt = conn.createStatement();
+            check(stmt, "MaterializedViewTestReopen", select);
+            stmt.executeUpdate("INSERT INTO MaterializedViewTestE VALUES(2, 5), (3, 40)");
+            stmt.executeUpdate("DELETE FROM MaterializedViewTestE WHERE aid = 1");
+            check(stmt, "MaterializedViewTestReopen", select);
+            check(stmt, "MaterializedViewTestReopen2", select2);
+            stmt.executeUpdate("INSERT INTO MaterializedViewTestG VALUES(2, 30)");
+            check(stmt, "MaterializedViewTestReopen2", select2);
+            stmt.executeUpdate("DROP TABLE MaterializedViewTestE CASCADE");
+            stmt.executeUpdate("DROP TABLE MaterializedViewTestG CASCADE");
+            stmt.close();
+        } finally {
+            conn.close();
+        }
+    }
+}
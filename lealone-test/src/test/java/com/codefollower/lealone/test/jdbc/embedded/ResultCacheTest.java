@@ -0,0 +1,130 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.Statement;
+
+import org.junit.Test;
+
+import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.jdbc.JdbcConnection;
+import com.codefollower.lealone.result.ResultCache;
+
+public class ResultCacheTest {
+    private static final String SQL = "SELECT SUM(f1) FROM ResultCacheTest";
+
+    private static long sum(Connection conn) throws Exception {
+        //每次都用新的Statement, 这样只有数据库级的结果缓存能返回之前的结果
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(SQL);
+        assertTrue(rs.next());
+        long sum = rs.getLong(1);
+        rs.close();
+        stmt.close();
+        return sum;
+    }
+
+    private static ResultCache getResultCache(Connection conn) {
+        return ((Session) ((JdbcConnection) conn).getSession()).getDatabase().getResultCache();
+    }
+
+    private void run(String settings) throws Exception {
+        String url = "jdbc:lealone:embedded:memory:ResultCacheTest" + settings.length() + ";RESULT_CACHE_SIZE=1024"
+                + settings;
+        Connection conn1 = DriverManager.getConnection(url, "sa", "");
+        Connection conn2 = DriverManager.getConnection(url, "sa", "");
+        try {
+            Statement stmt1 = conn1.createStatement();
+            Statement stmt2 = conn2.createStatement();
+            stmt1.executeUpdate("CREATE TABLE ResultCacheTest (f1 int)");
+            stmt1.executeUpdate("INSERT INTO ResultCacheTest VALUES(1)");
+
+            //另一个session得到缓存的结果
+            ResultCache resultCache = getResultCache(conn1);
+            assertEquals(1, sum(conn1));
+            long hits = resultCache.getHits();
+            assertEquals(1, sum(conn2));
+            assertEquals(hits + 1, resultCache.getHits());
+
+            //修改后的结果
+            stmt2.executeUpdate("INSERT INTO ResultCacheTest VALUES(2)");
+            assertEquals(3, sum(conn1));
+            assertEquals(3, sum(conn2));
+            stmt1.close();
+            stmt2.close();
+        } finally {
+            conn1.close();
+            conn2.close();
+        }
+    }
+
+    @Test
+    public void shareBetweenSessions() throws Exception {
+        run("");
+    }
+
+    @Test
+    public void multiVersion() throws Exception {
+        run(";MVCC=TRUE");
+        String url = "jdbc:lealone:embedded:memory:ResultCacheTestMvcc;RESULT_CACHE_SIZE=1024;MVCC=TRUE";
+        Connection conn1 = DriverManager.getConnection(url, "sa", "");
+        Connection conn2 = DriverManager.getConnection(url, "sa", "");
+        try {
+            Statement stmt1 = conn1.createStatement();
+            Statement stmt2 = conn2.createStatement();
+            stmt1.executeUpdate("CREATE TABLE ResultCacheTest (f1 int)");
+            stmt1.executeUpdate("INSERT INTO ResultCacheTest VALUES(1)");
+            conn2.setAutoCommit(false);
+
+            //conn2还没有提交, conn1看不到新的记录, 但提交之后不能再返回之前缓存的结果
+            stmt2.executeUpdate("INSERT INTO ResultCacheTest VALUES(2)");
+            assertEquals(3, sum(conn2));
+            assertEquals(1, sum(conn1));
+            assertEquals(1, sum(conn1));
+            conn2.commit();
+            assertEquals(3, sum(conn1));
+            assertEquals(3, sum(conn2));
+
+            //回滚之后也要返回原来的结果
+            stmt2.executeUpdate("UPDATE ResultCacheTest SET f1 = f1 * 10");
+            assertEquals(30, sum(conn2));
+            assertEquals(3, sum(conn1));
+            conn2.rollback();
+            assertEquals(3, sum(conn1));
+            assertEquals(3, sum(conn2));
+
+            stmt2.executeUpdate("DELETE FROM ResultCacheTest WHERE f1 = 1");
+            assertEquals(3, sum(conn1));
+            conn2.commit();
+            assertEquals(2, sum(conn1));
+            stmt1.close();
+            stmt2.close();
+        } finally {
+            conn1.close();
+            conn2.close();
+        }
+    }
+}
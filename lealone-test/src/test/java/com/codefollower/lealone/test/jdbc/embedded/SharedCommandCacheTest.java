@@ -0,0 +1,190 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.codefollower.lealone.command.Command;
+import com.codefollower.lealone.engine.Session;
+import com.codefollower.lealone.jdbc.JdbcConnection;
+import com.codefollower.lealone.test.jdbc.TestBase;
+
+public class SharedCommandCacheTest extends TestBase {
+    protected static String url = "jdbc:lealone:embedded:memory:SharedCommandCacheTest";
+    private static Connection conn2;
+    private static Statement stmt2;
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        conn = DriverManager.getConnection(url, "sa", "");
+        stmt = conn.createStatement();
+        conn2 = DriverManager.getConnection(url, "sa", "");
+        stmt2 = conn2.createStatement();
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        stmt2.close();
+        conn2.close();
+        stmt.close();
+        conn.close();
+    }
+
+    private static Session getSession(Connection conn) {
+        return (Session) ((JdbcConnection) conn).getSession();
+    }
+
+    @Test
+    public void shareBetweenSessions() throws Exception {
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS SharedCommandCacheTest (f1 int, f2 varchar)");
+        String sql = "SELECT f1, f2 FROM SharedCommandCacheTest WHERE f1 = ?";
+        Session session1 = getSession(conn);
+        Session session2 = getSession(conn2);
+
+        Command c1 = session1.prepareCommand(sql);
+        c1.close();
+        //第一个session关闭命令后，第二个session拿到的是同一个命令
+        Command c2 = session2.prepareCommand(sql);
+        assertTrue(c1 == c2);
+
+        //命令在使用中时不会交给其他session
+        Command c3 = session1.prepareCommand(sql);
+        assertTrue(c2 != c3);
+        c2.close();
+        c3.close();
+
+        //不同的SQL不共享
+        Command c4 = session2.prepareCommand(sql + " AND f2 IS NULL");
+        assertTrue(c4 != c1 && c4 != c3);
+        c4.close();
+
+        //修改表结构后缓存失效
+        stmt.executeUpdate("ALTER TABLE SharedCommandCacheTest ADD COLUMN f3 int");
+        Command c5 = session2.prepareCommand(sql);
+        assertTrue(c5 != c1 && c5 != c3);
+        c5.close();
+
+        stmt.executeUpdate("DROP TABLE SharedCommandCacheTest");
+    }
+
+    @Test
+    public void localTempTables() throws Exception {
+        stmt.executeUpdate("CREATE LOCAL TEMPORARY TABLE SharedCommandCacheTemp (a int)");
+        stmt2.executeUpdate("CREATE LOCAL TEMPORARY TABLE SharedCommandCacheTemp (b int)");
+
+        //同名的临时表在每个session中是不同的表，不能共享命令
+        String sql = "SELECT * FROM SharedCommandCacheTemp";
+        assertEquals("B", getFirstColumnName(stmt2, sql));
+        assertEquals("A", getFirstColumnName(stmt, sql));
+        assertEquals("B", getFirstColumnName(stmt2, sql));
+
+        stmt.executeUpdate("DROP TABLE SharedCommandCacheTemp");
+        //没有这个临时表的session也不能拿到别的session的命令
+        try {
+            getFirstColumnName(stmt, sql);
+            Assert.fail("not throw SQLException");
+        } catch (SQLException e) {
+            assertTrue(e.getMessage().contains("not found"));
+        }
+        stmt2.executeUpdate("DROP TABLE SharedCommandCacheTemp");
+    }
+
+    @Test
+    public void viewsAndSubqueries() throws Exception {
+        stmt.executeUpdate("CREATE TABLE IF NOT EXISTS SharedCommandCacheView (f1 int)");
+        stmt.executeUpdate("CREATE VIEW IF NOT EXISTS SharedCommandCacheV AS SELECT * FROM SharedCommandCacheView");
+        Session session1 = getSession(conn);
+        Session session2 = getSession(conn2);
+
+        //视图的索引和子查询都属于准备命令的session, 不能共享
+        String[] sqls = { "SELECT COUNT(*) FROM SharedCommandCacheV",
+                "SELECT COUNT(*) FROM (SELECT * FROM SharedCommandCacheView)",
+                "SELECT * FROM SharedCommandCacheView WHERE f1 IN (SELECT f1 FROM SharedCommandCacheView)",
+                "SELECT (SELECT COUNT(*) FROM SharedCommandCacheView) FROM SharedCommandCacheView",
+                "SELECT * FROM SharedCommandCacheView WHERE EXISTS(SELECT 1 FROM SharedCommandCacheView)",
+                "DELETE FROM SharedCommandCacheView WHERE f1 > (SELECT MAX(f1) FROM SharedCommandCacheView)",
+                "INSERT INTO SharedCommandCacheView SELECT * FROM SharedCommandCacheV" };
+        for (String sql : sqls) {
+            Command c1 = session1.prepareCommand(sql);
+            c1.close();
+            Command c2 = session2.prepareCommand(sql);
+            assertTrue(sql, c1 != c2);
+            c2.close();
+        }
+        stmt.executeUpdate("DROP VIEW SharedCommandCacheV");
+        stmt.executeUpdate("DROP TABLE SharedCommandCacheView");
+
+        //每个session读视图时都要看到自己还没有提交的记录
+        String mvccUrl = "jdbc:lealone:embedded:memory:SharedCommandCacheMvcc;MVCC=TRUE";
+        Connection c1 = DriverManager.getConnection(mvccUrl, "sa", "");
+        Connection c2 = DriverManager.getConnection(mvccUrl, "sa", "");
+        try {
+            Statement s1 = c1.createStatement();
+            Statement s2 = c2.createStatement();
+            s1.executeUpdate("CREATE TABLE SharedCommandCacheView (f1 int)");
+            s1.executeUpdate("CREATE VIEW SharedCommandCacheV AS SELECT * FROM SharedCommandCacheView");
+            s1.executeUpdate("INSERT INTO SharedCommandCacheView VALUES(1)");
+            c2.setAutoCommit(false);
+            s2.executeUpdate("INSERT INTO SharedCommandCacheView VALUES(2)");
+            String sql = "SELECT COUNT(*) FROM SharedCommandCacheV";
+            assertEquals(1, getCount(s1, sql));
+            assertEquals(2, getCount(s2, sql));
+            assertEquals(1, getCount(s1, sql));
+            c2.commit();
+            assertEquals(2, getCount(s1, sql));
+            s1.close();
+            s2.close();
+        } finally {
+            c1.close();
+            c2.close();
+        }
+    }
+
+    private static long getCount(Statement stmt, String sql) throws Exception {
+        ResultSet rs = stmt.executeQuery(sql);
+        try {
+            assertTrue(rs.next());
+            return rs.getLong(1);
+        } finally {
+            rs.close();
+        }
+    }
+
+    private static String getFirstColumnName(Statement stmt, String sql) throws Exception {
+        ResultSet rs = stmt.executeQuery(sql);
+        try {
+            return rs.getMetaData().getColumnName(1);
+        } finally {
+            rs.close();
+        }
+    }
+}
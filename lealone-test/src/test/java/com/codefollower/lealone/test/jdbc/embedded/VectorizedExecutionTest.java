@@ -0,0 +1,180 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.embedded;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.codefollower.lealone.hbase.util.HBaseUtils;
+
+public class VectorizedExecutionTest {
+    private static final String URL = "jdbc:lealone:embedded:regular:VectorizedExecutionTest";
+
+    //打开和关闭批量计算的两个数据库, 数据相同
+    private static Connection vectorConn;
+    private static Connection rowConn;
+
+    private static final String[] CONDITIONS = {
+            "i > 5",
+            "i IS NULL",
+            "i IS NOT NULL AND i <= 3",
+            "i + l > 100",
+            "d < 2.5 AND i = 3",
+            "i = d",
+            "l > 2.5",
+            "dec * 2 > 10",
+            "dec * 9223372036854775807 > 0",
+            "b = TRUE",
+            "b",
+            "dt >= DATE '2012-01-10'",
+            "NOT (i < 3)",
+            "i < 3 OR d > 40",
+            "s LIKE 'a1%'",
+            "s LIKE 'a1%' AND i > 2",
+            "i IN (1, 2, 3)",
+            "i IN (1, 2, 3) OR d > 40",
+            "i = ?1",
+            "i BETWEEN 2 AND 4 AND l <> 20" };
+
+    @BeforeClass
+    public static void setUpBeforeClass() throws Exception {
+        System.setProperty("lealone.base.dir", HBaseUtils.getConfiguration().get("lealone.test.dir"));
+        vectorConn = createDatabase(URL + "True;MVCC=TRUE;VECTORIZED_EXECUTION=TRUE");
+        rowConn = createDatabase(URL + "False;MVCC=TRUE;VECTORIZED_EXECUTION=FALSE");
+    }
+
+    @AfterClass
+    public static void tearDownAfterClass() throws Exception {
+        for (Connection conn : new Connection[] { vectorConn, rowConn }) {
+            Statement stmt = conn.createStatement();
+            stmt.executeUpdate("DROP TABLE VectorizedExecutionTest");
+            stmt.executeUpdate("DROP TABLE VectorizedExecutionTest2");
+            stmt.close();
+            conn.close();
+        }
+    }
+
+    private static Connection createDatabase(String url) throws Exception {
+        Connection conn = DriverManager.getConnection(url, "sa", "");
+        Statement stmt = conn.createStatement();
+        stmt.executeUpdate("DROP TABLE IF EXISTS VectorizedExecutionTest");
+        stmt.executeUpdate("DROP TABLE IF EXISTS VectorizedExecutionTest2");
+        stmt.executeUpdate("CREATE TABLE VectorizedExecutionTest (id int primary key, i int, l bigint, d double, "
+                + "dec decimal(20, 2), b boolean, dt date, s varchar)");
+        //索引包含i, l, d, 按i查询时只用索引计算条件
+        stmt.executeUpdate("CREATE INDEX VectorizedExecutionTest_i ON VectorizedExecutionTest(i) INCLUDE(l, d)");
+        //每7行有一个NULL, 超过一个批次的大小
+        stmt.executeUpdate("INSERT INTO VectorizedExecutionTest SELECT x, "
+                + "CASEWHEN(MOD(x, 7) = 0, NULL, MOD(x, 10)), "
+                + "CASEWHEN(MOD(x, 11) = 0, NULL, x * 3), "
+                + "CASEWHEN(MOD(x, 13) = 0, NULL, x / 4.0), "
+                + "CASEWHEN(MOD(x, 5) = 0, NULL, MOD(x, 9) - 0.5), "
+                + "CASEWHEN(MOD(x, 17) = 0, NULL, MOD(x, 2) = 0), "
+                + "CASEWHEN(MOD(x, 19) = 0, NULL, DATEADD('DAY', MOD(x, 30), DATE '2012-01-01')), "
+                + "CASEWHEN(MOD(x, 23) = 0, NULL, 'a' || x) FROM SYSTEM_RANGE(1, 3000)");
+        stmt.executeUpdate("CREATE TABLE VectorizedExecutionTest2 (id int primary key, w int)");
+        stmt.executeUpdate("INSERT INTO VectorizedExecutionTest2 SELECT x * 3, MOD(x, 4) FROM SYSTEM_RANGE(1, 1000)");
+        stmt.close();
+        return conn;
+    }
+
+    private static List<String> query(Connection conn, String sql) throws Exception {
+        Statement stmt = conn.createStatement();
+        ResultSet rs = stmt.executeQuery(sql);
+        ResultSetMetaData meta = rs.getMetaData();
+        List<String> rows = new ArrayList<String>();
+        while (rs.next()) {
+            StringBuilder buff = new StringBuilder();
+            for (int i = 1; i <= meta.getColumnCount(); i++) {
+                buff.append(rs.getString(i)).append(',');
+            }
+            rows.add(buff.toString());
+        }
+        rs.close();
+        stmt.close();
+        return rows;
+    }
+
+    private static void check(String sql) throws Exception {
+        List<String> expected = query(rowConn, sql);
+        assertEquals(sql, expected, query(vectorConn, sql));
+    }
+
+    private static void checkAll() throws Exception {
+        for (String condition : CONDITIONS) {
+            condition = condition.replace("?1", "3");
+            check("SELECT * FROM VectorizedExecutionTest WHERE " + condition + " ORDER BY id");
+            //只用到索引中的列
+            check("SELECT id, i, l, d FROM VectorizedExecutionTest WHERE " + condition + " ORDER BY id");
+            check("SELECT COUNT(*), SUM(l), MIN(s) FROM VectorizedExecutionTest WHERE " + condition);
+            check("SELECT i, COUNT(*) FROM VectorizedExecutionTest WHERE " + condition + " GROUP BY i ORDER BY i");
+            //连接
+            check("SELECT a.id, a.s, b.w FROM VectorizedExecutionTest a JOIN VectorizedExecutionTest2 b "
+                    + "ON a.id = b.id WHERE " + condition.replace("i", "a.i").replace("a.a.i", "a.i") + " ORDER BY a.id");
+        }
+        //按索引查找, 条件中有不在索引中的列
+        check("SELECT id, d FROM VectorizedExecutionTest WHERE i = 3 AND dec > 2 ORDER BY id");
+        check("SELECT id, l FROM VectorizedExecutionTest WHERE i >= 8 AND dt < DATE '2012-01-15' ORDER BY id");
+        check("SELECT id FROM VectorizedExecutionTest WHERE i = 5 AND NOT b ORDER BY id");
+        //按索引查找
+        check("SELECT id, d FROM VectorizedExecutionTest WHERE i = 3 AND d > 100 ORDER BY id");
+        check("SELECT id, s FROM VectorizedExecutionTest WHERE i >= 8 AND l < 3000 ORDER BY id");
+        check("SELECT id, s FROM VectorizedExecutionTest WHERE i IS NULL AND d IS NOT NULL ORDER BY id");
+        check("SELECT id, s FROM VectorizedExecutionTest WHERE i = 2 AND d > 100 LIMIT 5");
+    }
+
+    @Test
+    public void sameResults() throws Exception {
+        assertTrue(query(rowConn, "SELECT * FROM VectorizedExecutionTest WHERE i > 5").size() > 1000);
+        checkAll();
+    }
+
+    @Test
+    public void uncommittedRows() throws Exception {
+        //事务中修改过的行与索引中的行混在同一个批次里
+        for (Connection conn : new Connection[] { vectorConn, rowConn }) {
+            conn.setAutoCommit(false);
+            Statement stmt = conn.createStatement();
+            stmt.executeUpdate("UPDATE VectorizedExecutionTest SET i = 3, d = d + 1000, s = s || 'x' WHERE MOD(id, 50) = 1");
+            stmt.executeUpdate("DELETE FROM VectorizedExecutionTest WHERE MOD(id, 50) = 2");
+            stmt.close();
+        }
+        try {
+            checkAll();
+        } finally {
+            vectorConn.rollback();
+            vectorConn.setAutoCommit(true);
+            rowConn.rollback();
+            rowConn.setAutoCommit(true);
+        }
+    }
+}
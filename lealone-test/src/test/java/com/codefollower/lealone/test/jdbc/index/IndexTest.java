@@ -21,12 +21,18 @@ package com.codefollower.lealone.test.jdbc.index;
 
 import static junit.framework.Assert.assertEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
 
 import org.junit.Assert;
 import org.junit.Test;
 
+import com.codefollower.lealone.hbase.util.HBaseUtils;
 import com.codefollower.lealone.test.jdbc.TestBase;
 
 public class IndexTest extends TestBase {
@@ -123,4 +129,62 @@ public class IndexTest extends TestBase {
         sql = "SELECT count(*) FROM IndexTest WHERE f3 >= 'b' AND f3 <= 'c'";
         assertEquals(2, getIntValue(1, true));
     }
+
+    private static String getString(Statement stmt, String sql) throws Exception {
+        ResultSet rs = stmt.executeQuery(sql);
+        assertTrue(rs.next());
+        String s = rs.getString(1);
+        rs.close();
+        return s;
+    }
+
+    //返回EXPLAIN ANALYZE中从表中读出的行数
+    private static int getRowsFetched(Statement stmt, String sql) throws Exception {
+        String plan = getString(stmt, "EXPLAIN ANALYZE " + sql);
+        assertTrue(plan, plan.contains("INDEXTESTINCLUDE_F2"));
+        int start = plan.indexOf("rows fetched: ");
+        assertTrue(plan, start >= 0);
+        start += "rows fetched: ".length();
+        return Integer.parseInt(plan.substring(start, plan.indexOf(',', start)));
+    }
+
+    @Test
+    public void include() throws Exception {
+        //INCLUDE列只能用于嵌入式的regular数据库, 并且要重新打开数据库
+        System.setProperty("lealone.base.dir", HBaseUtils.getConfiguration().get("lealone.test.dir"));
+        String url = "jdbc:lealone:embedded:regular:IndexTestInclude";
+        Connection conn = DriverManager.getConnection(url, "sa", "");
+        try {
+            Statement stmt = conn.createStatement();
+            stmt.executeUpdate("DROP TABLE IF EXISTS IndexTestInclude");
+            stmt.executeUpdate("CREATE TABLE IndexTestInclude (f1 int primary key, f2 int, f3 varchar, f4 varchar, f5 int)");
+            stmt.executeUpdate("CREATE INDEX IndexTestInclude_f2 ON IndexTestInclude(f2) INCLUDE(f3, f5)");
+            stmt.executeUpdate("INSERT INTO IndexTestInclude SELECT x, MOD(x, 10), 'a' || x, 'b' || x, x FROM SYSTEM_RANGE(1, 100)");
+            stmt.close();
+        } finally {
+            conn.close();
+        }
+
+        conn = DriverManager.getConnection(url, "sa", "");
+        try {
+            Statement stmt = conn.createStatement();
+            String sql = "SELECT SQL FROM INFORMATION_SCHEMA.INDEXES WHERE INDEX_NAME = 'INDEXTESTINCLUDE_F2'";
+            assertTrue(getString(stmt, sql).endsWith("(F2) INCLUDE(F3, F5)"));
+
+            //f2 = 3的10行中有5行满足f5 < 50, 只用到索引中的列时不读表
+            sql = "SELECT f3 FROM IndexTestInclude WHERE f2 = 3 AND f5 < 50 ORDER BY f3";
+            assertEquals("a13", getString(stmt, sql));
+            assertEquals(0, getRowsFetched(stmt, sql));
+
+            //f4不在索引中, 只为满足条件的行读表
+            sql = "SELECT f4 FROM IndexTestInclude WHERE f2 = 3 AND f5 < 50 ORDER BY f4";
+            assertEquals("b13", getString(stmt, sql));
+            assertEquals(5, getRowsFetched(stmt, sql));
+
+            stmt.executeUpdate("DROP TABLE IndexTestInclude");
+            stmt.close();
+        } finally {
+            conn.close();
+        }
+    }
 }
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2011 The Apache Software Foundation
+ *
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.codefollower.lealone.test.jdbc.misc;
+
+import static junit.framework.Assert.assertEquals;
+import static junit.framework.Assert.assertTrue;
+
+import java.util.ArrayList;
+
+import org.junit.Test;
+
+import com.codefollower.lealone.command.CommandFuture;
+import com.codefollower.lealone.command.CommandRemote;
+import com.codefollower.lealone.constant.SysProperties;
+import com.codefollower.lealone.engine.SessionRemote;
+import com.codefollower.lealone.jdbc.JdbcConnection;
+import com.codefollower.lealone.result.ResultInterface;
+import com.codefollower.lealone.test.jdbc.TestBase;
+import com.codefollower.lealone.value.ValueInt;
+import com.codefollower.lealone.value.ValueString;
+
+public class AsyncCommandTest extends TestBase {
+    @Test
+    public void run() throws Exception {
+        createTableSQL("CREATE HBASE TABLE IF NOT EXISTS AsyncCommandTest(COLUMN FAMILY cf)");
+        SessionRemote session = (SessionRemote) ((JdbcConnection) conn).getSession();
+
+        CommandRemote insert = (CommandRemote) session.prepareCommand(
+                "INSERT INTO AsyncCommandTest(_rowkey_, f1, f2) VALUES(?, ?, ?)", Integer.MAX_VALUE);
+        ArrayList<CommandFuture<Integer>> updates = new ArrayList<CommandFuture<Integer>>();
+        for (int i = 0; i < 10; i++) {
+            insert.getParameters().get(0).setValue(ValueString.get("0" + i), false);
+            insert.getParameters().get(1).setValue(ValueString.get("a" + i), false);
+            insert.getParameters().get(2).setValue(ValueInt.get(i), false);
+            updates.add(insert.executeUpdateAsync(null));
+        }
+        for (CommandFuture<Integer> f : updates) {
+            assertEquals(1, f.get().intValue());
+        }
+        insert.close();
+
+        CommandRemote select = (CommandRemote) session.prepareCommand(
+                "SELECT count(*) FROM AsyncCommandTest WHERE f2 >= ?", Integer.MAX_VALUE);
+        select.getParameters().get(0).setValue(ValueInt.get(5), false);
+        CommandFuture<ResultInterface> f1 = select.executeQueryAsync(0, null);
+        select.getParameters().get(0).setValue(ValueInt.get(8), false);
+        CommandFuture<ResultInterface> f2 = select.executeQueryAsync(0, null);
+
+        //后发出的请求也可以先取结果，前面的响应会按顺序读出
+        ResultInterface result = f2.get();
+        assertTrue(f1.isDone());
+        assertTrue(result.next());
+        assertEquals(2, result.currentRow()[0].getInt());
+        result.close();
+
+        result = f1.get();
+        assertTrue(result.next());
+        assertEquals(5, result.currentRow()[0].getInt());
+        result.close();
+        select.close();
+    }
+
+    @Test
+    public void manyPendingRequests() throws Exception {
+        createTableSQL("CREATE HBASE TABLE IF NOT EXISTS AsyncCommandTest2(COLUMN FAMILY cf)");
+        SessionRemote session = (SessionRemote) ((JdbcConnection) conn).getSession();
+
+        CommandRemote insert = (CommandRemote) session.prepareCommand(
+                "INSERT INTO AsyncCommandTest2(_rowkey_, f1) VALUES(?, ?)", Integer.MAX_VALUE);
+        //发送的请求数超过client.async.max.pending时，会先读最早的响应，不会出现两端都阻塞
+        int count = SysProperties.CLIENT_ASYNC_MAX_PENDING * 4;
+        ArrayList<CommandFuture<Integer>> updates = new ArrayList<CommandFuture<Integer>>();
+        for (int i = 0; i < count; i++) {
+            insert.getParameters().get(0).setValue(ValueString.get("r" + i), false);
+            insert.getParameters().get(1).setValue(ValueInt.get(i), false);
+            updates.add(insert.executeUpdateAsync(null));
+        }
+        assertTrue(updates.get(0).isDone());
+        for (CommandFuture<Integer> f : updates) {
+            assertEquals(1, f.get().intValue());
+        }
+        insert.close();
+
+        sql = "SELECT count(*) FROM AsyncCommandTest2";
+        assertEquals(count, getIntValue(1, true));
+    }
+}